@@ -17,42 +17,175 @@
 
 package org.keycloak.common.util;
 
+import java.util.Arrays;
 
 /**
+ * Base64 encoding with URL and filename safe alphabet and without padding as used by JOSE (RFC 4648, section 5).
+ *
+ * Decoding also accepts the standard alphabet, trailing padding and whitespace. Encodings with non-zero unused bits in
+ * the last character are rejected, so every byte array has just one accepted encoding in each alphabet.
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
 public class Base64Url {
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final byte[] DECODABET = new byte[128];
+
+    static {
+        Arrays.fill(DECODABET, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODABET[ALPHABET[i]] = (byte) i;
+        }
+        DECODABET['+'] = 62;
+        DECODABET['/'] = 63;
+    }
+
     public static String encode(byte[] bytes) {
-        String s = Base64.encodeBytes(bytes);
-        s = s.split("=")[0]; // Remove any trailing '='s
-        s = s.replace('+', '-'); // 62nd char of encoding
-        s = s.replace('/', '_'); // 63rd char of encoding
-        return s;
+        int length = bytes.length;
+        char[] out = new char[(length / 3) * 4 + (length % 3 == 0 ? 0 : length % 3 + 1)];
+        int o = 0;
+        int i = 0;
+        for (; i + 2 < length; i += 3) {
+            int chunk = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+            out[o++] = ALPHABET[chunk >>> 18];
+            out[o++] = ALPHABET[(chunk >>> 12) & 0x3f];
+            out[o++] = ALPHABET[(chunk >>> 6) & 0x3f];
+            out[o++] = ALPHABET[chunk & 0x3f];
+        }
+        if (i < length) {
+            int chunk = (bytes[i] & 0xff) << 16;
+            if (i + 1 < length) chunk |= (bytes[i + 1] & 0xff) << 8;
+            out[o++] = ALPHABET[chunk >>> 18];
+            out[o++] = ALPHABET[(chunk >>> 12) & 0x3f];
+            if (i + 1 < length) out[o++] = ALPHABET[(chunk >>> 6) & 0x3f];
+        }
+        return new String(out);
     }
 
     public static byte[] decode(String s) {
-        s = s.replace('-', '+'); // 62nd char of encoding
-        s = s.replace('_', '/'); // 63rd char of encoding
-        switch (s.length() % 4) // Pad with trailing '='s
-        {
-            case 0:
-                break; // No pad chars in this case
-            case 2:
-                s += "==";
-                break; // Two pad chars
-            case 3:
-                s += "=";
-                break; // One pad char
-            default:
-                throw new RuntimeException(
-                        "Illegal base64url string!");
-        }
-        try {
-            // KEYCLOAK-2479 : Avoid to try gzip decoding as for some objects, it may display exception to STDERR. And we know that object wasn't encoded as GZIP
-            return Base64.decode(s, Base64.DONT_GUNZIP);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        if (containsWhitespace(s)) {
+            s = removeWhitespace(s);
+        }
+        int length = s.length();
+        while (length > 0 && s.charAt(length - 1) == '=') length--;
+        checkLength(length);
+
+        byte[] out = new byte[decodedLength(length)];
+        int o = 0;
+        int bits = 0;
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            bits = bits << 6 | decodeChar(s.charAt(i));
+            if (++count == 4) {
+                out[o++] = (byte) (bits >> 16);
+                out[o++] = (byte) (bits >> 8);
+                out[o++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        writeTail(out, o, bits, count);
+        return out;
+    }
+
+    /**
+     * Decodes ASCII encoded characters in given range of the array without copying them first.
+     */
+    public static byte[] decode(byte[] src, int offset, int length) {
+        if (containsWhitespace(src, offset, length)) {
+            src = removeWhitespace(src, offset, length);
+            offset = 0;
+            length = src.length;
+        }
+        while (length > 0 && src[offset + length - 1] == '=') length--;
+        checkLength(length);
+
+        byte[] out = new byte[decodedLength(length)];
+        int o = 0;
+        int bits = 0;
+        int count = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            bits = bits << 6 | decodeChar(src[i]);
+            if (++count == 4) {
+                out[o++] = (byte) (bits >> 16);
+                out[o++] = (byte) (bits >> 8);
+                out[o++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        writeTail(out, o, bits, count);
+        return out;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static boolean containsWhitespace(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (isWhitespace(s.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    private static boolean containsWhitespace(byte[] src, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (isWhitespace(src[i])) return true;
+        }
+        return false;
+    }
+
+    private static String removeWhitespace(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!isWhitespace(c)) sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static byte[] removeWhitespace(byte[] src, int offset, int length) {
+        byte[] out = new byte[length];
+        int o = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (!isWhitespace(src[i])) out[o++] = src[i];
+        }
+        return Arrays.copyOf(out, o);
+    }
+
+    private static void checkLength(int length) {
+        if (length % 4 == 1) {
+            throw new RuntimeException("Illegal base64url string!");
+        }
+    }
+
+    private static int decodedLength(int length) {
+        return (length / 4) * 3 + (length % 4 == 0 ? 0 : length % 4 - 1);
+    }
+
+    private static int decodeChar(int c) {
+        int value = c >= 0 && c < DECODABET.length ? DECODABET[c] : -1;
+        if (value < 0) {
+            throw new RuntimeException("Illegal base64url string!");
+        }
+        return value;
+    }
+
+    private static void writeTail(byte[] out, int o, int bits, int count) {
+        // Bits of the last character not used by the decoded bytes must be zero
+        if ((count == 2 && (bits & 0xf) != 0) || (count == 3 && (bits & 0x3) != 0)) {
+            throw new RuntimeException("Illegal base64url string!");
+        }
+        if (count == 2) {
+            out[o] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            out[o++] = (byte) (bits >> 10);
+            out[o] = (byte) (bits >> 2);
         }
     }
 
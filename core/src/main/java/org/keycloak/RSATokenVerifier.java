@@ -35,6 +35,31 @@ public class RSATokenVerifier {
         return verifyToken(tokenString, realmKey, realmUrl, true, true);
     }
 
+    /**
+     * Same as {@link #verifyToken(String, PublicKey, String)}, but tokens which already passed verification against
+     * the same key and realm URL are taken from the given cache, so their signature isn't verified and parsed again.
+     *
+     * @param cache may be null, in which case the token is always fully verified
+     */
+    public static AccessToken verifyToken(String tokenString, PublicKey realmKey, String realmUrl, VerifiedTokenCache cache) throws VerificationException {
+        if (cache == null) {
+            return verifyToken(tokenString, realmKey, realmUrl);
+        }
+
+        AccessToken token = cache.get(tokenString, realmKey, realmUrl);
+        if (token != null) {
+            // Subject, issuer and type were checked when the token was cached. Just ensure it is still active
+            if (!token.isActive()) {
+                throw new VerificationException("Token is not active.");
+            }
+            return token;
+        }
+
+        token = verifyToken(tokenString, realmKey, realmUrl);
+        cache.put(tokenString, realmKey, realmUrl, token);
+        return token;
+    }
+
     public static AccessToken verifyToken(String tokenString, PublicKey realmKey, String realmUrl, boolean checkActive, boolean checkTokenType) throws VerificationException {
         AccessToken token = toAccessToken(tokenString, realmKey);
 
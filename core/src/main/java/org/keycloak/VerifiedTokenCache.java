@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak;
+
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.AccessToken;
+
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of access tokens which were already successfully verified by {@link RSATokenVerifier}.
+ *
+ * Entries are keyed by the signature part of the encoded token. On lookup the whole encoded token, the public key
+ * and the realm URL it was verified with are compared as well, so a hit is only returned for exactly the same token
+ * verified by the same deployment. Entries
+ * are dropped once the token expires. Tokens without expiration are never cached.
+ *
+ * The cached {@link AccessToken} instance is shared between callers and must be treated as read-only.
+ */
+public class VerifiedTokenCache {
+
+    private final int maxSize;
+    private final Map<String, Entry> cache;
+
+    public VerifiedTokenCache(final int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be greater than 0");
+        this.maxSize = maxSize;
+        this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > VerifiedTokenCache.this.maxSize;
+            }
+        };
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return previously verified token or null if the token is not cached, was verified with different key or realm URL or is already expired
+     */
+    public AccessToken get(String tokenString, PublicKey realmKey, String realmUrl) {
+        String key = signatureOf(tokenString);
+        if (key == null) return null;
+
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+            if (entry == null) return null;
+            if (Time.currentTime() > entry.token.getExpiration()) {
+                cache.remove(key);
+                return null;
+            }
+        }
+
+        if (entry.realmKey != realmKey || !entry.realmUrl.equals(realmUrl) || !entry.tokenString.equals(tokenString)) return null;
+        return entry.token;
+    }
+
+    public void put(String tokenString, PublicKey realmKey, String realmUrl, AccessToken token) {
+        if (token.getExpiration() == 0) return;
+        String key = signatureOf(tokenString);
+        if (key == null) return;
+
+        Entry entry = new Entry(tokenString, realmKey, realmUrl, token);
+        synchronized (cache) {
+            cache.put(key, entry);
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static String signatureOf(String tokenString) {
+        if (tokenString == null) return null;
+        int idx = tokenString.lastIndexOf('.');
+        if (idx < 0 || idx == tokenString.length() - 1) return null;
+        return tokenString.substring(idx + 1);
+    }
+
+    private static class Entry {
+        private final String tokenString;
+        private final PublicKey realmKey;
+        private final String realmUrl;
+        private final AccessToken token;
+
+        private Entry(String tokenString, PublicKey realmKey, String realmUrl, AccessToken token) {
+            this.tokenString = tokenString;
+            this.realmKey = realmKey;
+            this.realmUrl = realmUrl;
+            this.token = token;
+        }
+    }
+}
@@ -20,19 +20,26 @@ package org.keycloak.jose.jws;
 import org.keycloak.common.util.Base64Url;
 import org.keycloak.util.JsonSerialization;
 
+import javax.crypto.Mac;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.security.Signature;
+import java.security.SignatureException;
 
 /**
+ * Parsed JWS in compact serialization. The wire string is parsed by offsets into its bytes, only the header and the
+ * content are decoded eagerly. Encoded parts and the signature are created on first access.
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
 public class JWSInput {
     String wireString;
-    String encodedHeader;
-    String encodedContent;
-    String encodedSignature;
-    String encodedSignatureInput;
+    byte[] wireBytes;
+    int headerEnd;
+    int contentEnd;
+    int signatureEnd;
     JWSHeader header;
     byte[] content;
     byte[] signature;
@@ -41,41 +48,70 @@ public class JWSInput {
     public JWSInput(String wire) throws JWSInputException {
         try {
             this.wireString = wire;
-            String[] parts = wire.split("\\.");
-            if (parts.length < 2 || parts.length > 3) throw new IllegalArgumentException("Parsing error");
-            encodedHeader = parts[0];
-            encodedContent = parts[1];
-            encodedSignatureInput = encodedHeader + '.' + encodedContent;
-            content = Base64Url.decode(encodedContent);
-            if (parts.length > 2) {
-                encodedSignature = parts[2];
-                signature = Base64Url.decode(encodedSignature);
-
+            this.wireBytes = wire.getBytes(StandardCharsets.UTF_8);
+
+            // Same as wire.split("\\.") which drops trailing empty parts
+            int end = wireBytes.length;
+            while (end > 0 && wireBytes[end - 1] == '.') end--;
+            headerEnd = indexOfDot(0, end);
+            if (headerEnd < 0) throw new IllegalArgumentException("Parsing error");
+            contentEnd = indexOfDot(headerEnd + 1, end);
+            if (contentEnd < 0) {
+                contentEnd = end;
+                signatureEnd = -1;
+            } else {
+                if (indexOfDot(contentEnd + 1, end) >= 0) throw new IllegalArgumentException("Parsing error");
+                signatureEnd = end;
             }
-            byte[] headerBytes = Base64Url.decode(encodedHeader);
+
+            content = Base64Url.decode(wireBytes, headerEnd + 1, contentEnd - headerEnd - 1);
+            byte[] headerBytes = Base64Url.decode(wireBytes, 0, headerEnd);
             header = JsonSerialization.readValue(headerBytes, JWSHeader.class);
         } catch (Throwable t) {
             throw new JWSInputException(t);
         }
     }
 
+    private int indexOfDot(int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (wireBytes[i] == '.') return i;
+        }
+        return -1;
+    }
+
     public String getWireString() {
         return wireString;
     }
 
     public String getEncodedHeader() {
-        return encodedHeader;
+        return new String(wireBytes, 0, headerEnd, StandardCharsets.UTF_8);
     }
 
     public String getEncodedContent() {
-        return encodedContent;
+        return new String(wireBytes, headerEnd + 1, contentEnd - headerEnd - 1, StandardCharsets.UTF_8);
     }
 
     public String getEncodedSignature() {
-        return encodedSignature;
+        if (signatureEnd < 0) return null;
+        return new String(wireBytes, contentEnd + 1, signatureEnd - contentEnd - 1, StandardCharsets.UTF_8);
     }
+
     public String getEncodedSignatureInput() {
-        return encodedSignatureInput;
+        return new String(wireBytes, 0, contentEnd, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Feeds the signing input (encoded header and content) to the verifier without creating intermediate copies.
+     */
+    public void updateSignatureInput(Signature verifier) throws SignatureException {
+        verifier.update(wireBytes, 0, contentEnd);
+    }
+
+    /**
+     * Feeds the signing input (encoded header and content) to the MAC without creating intermediate copies.
+     */
+    public void updateSignatureInput(Mac mac) {
+        mac.update(wireBytes, 0, contentEnd);
     }
 
     public JWSHeader getHeader() {
@@ -86,7 +122,14 @@ public class JWSInput {
         return content;
     }
 
+    /**
+     * @return decoded signature or null if the input is not signed
+     * @throws RuntimeException if the signature is not valid base64url
+     */
     public byte[] getSignature() {
+        if (signature == null && signatureEnd >= 0) {
+            signature = Base64Url.decode(wireBytes, contentEnd + 1, signatureEnd - contentEnd - 1);
+        }
         return signature;
     }
 
@@ -20,11 +20,11 @@ package org.keycloak.jose.jws.crypto;
 
 import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.common.util.Base64Url;
 
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
@@ -80,9 +80,9 @@ public class HMACProvider implements SignatureProvider {
 
     public static boolean verify(JWSInput input, SecretKey key) {
         try {
-            byte[] signature = sign(input.getEncodedSignatureInput().getBytes("UTF-8"), input.getHeader().getAlgorithm(), key);
-            String x = Base64Url.encode(signature);
-            return x.equals(input.getEncodedSignature());
+            Mac mac = getMAC(input.getHeader().getAlgorithm());
+            mac.init(key);
+            return verify(input, mac);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -91,14 +91,26 @@ public class HMACProvider implements SignatureProvider {
 
     public static boolean verify(JWSInput input, byte[] sharedSecret) {
         try {
-            byte[] signature = sign(input.getEncodedSignatureInput().getBytes("UTF-8"), input.getHeader().getAlgorithm(), sharedSecret);
-            String x = Base64Url.encode(signature);
-            return x.equals(input.getEncodedSignature());
+            Mac mac = getMAC(input.getHeader().getAlgorithm());
+            mac.init(new SecretKeySpec(sharedSecret, mac.getAlgorithm()));
+            return verify(input, mac);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static boolean verify(JWSInput input, Mac mac) {
+        byte[] signature;
+        try {
+            signature = input.getSignature();
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (signature == null) return false;
+        input.updateSignatureInput(mac);
+        return MessageDigest.isEqual(mac.doFinal(), signature);
+    }
+
     @Override
     public boolean verify(JWSInput input, String key) {
         return false;
@@ -78,7 +78,7 @@ public class RSAProvider implements SignatureProvider {
         try {
             Signature verifier = getSignature(input.getHeader().getAlgorithm());
             verifier.initVerify(publicKey);
-            verifier.update(input.getEncodedSignatureInput().getBytes("UTF-8"));
+            input.updateSignatureInput(verifier);
             return verifier.verify(input.getSignature());
         } catch (Exception e) {
             return false;
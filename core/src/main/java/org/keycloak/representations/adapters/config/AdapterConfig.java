@@ -36,7 +36,7 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
         "client-keystore", "client-keystore-password", "client-key-password",
         "always-refresh-token",
         "register-node-at-startup", "register-node-period", "token-store", "principal-attribute",
-        "proxy-url"
+        "proxy-url", "token-cache-size"
 })
 public class AdapterConfig extends BaseAdapterConfig {
 
@@ -75,6 +75,13 @@ public class AdapterConfig extends BaseAdapterConfig {
     @JsonProperty("proxy-url")
     protected String proxyUrl;
 
+    /**
+     * Maximum number of verified bearer tokens kept in memory, configurable via the adapter config property {@code token-cache-size}.
+     * Caching is disabled if not positive.
+     */
+    @JsonProperty("token-cache-size")
+    protected int tokenCacheSize = 0;
+
     public boolean isAllowAnyHostname() {
         return allowAnyHostname;
     }
@@ -194,4 +201,12 @@ public class AdapterConfig extends BaseAdapterConfig {
     public void setProxyUrl(String proxyUrl) {
         this.proxyUrl = proxyUrl;
     }
+
+    public int getTokenCacheSize() {
+        return tokenCacheSize;
+    }
+
+    public void setTokenCacheSize(int tokenCacheSize) {
+        this.tokenCacheSize = tokenCacheSize;
+    }
 }
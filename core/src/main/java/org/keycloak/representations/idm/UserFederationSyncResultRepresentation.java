@@ -28,6 +28,7 @@ public class UserFederationSyncResultRepresentation {
     private int updated;
     private int removed;
     private int failed;
+    private long duration;
 
     private String status;
 
@@ -71,6 +72,14 @@ public class UserFederationSyncResultRepresentation {
         this.failed = failed;
     }
 
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
     public String getStatus() {
         return status;
     }
@@ -122,6 +122,72 @@ public class RSAVerifierTest {
         Assert.assertEquals("CN=Client", token.getSubject());
     }
 
+    @Test
+    public void testCachedVerification() throws Exception {
+        token.expiration(Time.currentTime() + 100);
+        String encoded = new JWSBuilder()
+                .jsonContent(token)
+                .rsa256(idpPair.getPrivate());
+
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        AccessToken first = RSATokenVerifier.verifyToken(encoded, idpPair.getPublic(), "http://localhost:8080/auth/realm", cache);
+        Assert.assertEquals(1, cache.size());
+        AccessToken second = RSATokenVerifier.verifyToken(encoded, idpPair.getPublic(), "http://localhost:8080/auth/realm", cache);
+        Assert.assertSame(first, second);
+
+        // Same token checked against different key must not be served from cache
+        try {
+            RSATokenVerifier.verifyToken(encoded, badPair.getPublic(), "http://localhost:8080/auth/realm", cache);
+            Assert.fail();
+        } catch (VerificationException ignored) {
+        }
+
+        // Same token checked by deployment of different realm must not be served from cache
+        try {
+            RSATokenVerifier.verifyToken(encoded, idpPair.getPublic(), "http://localhost:8080/auth/other-realm", cache);
+            Assert.fail();
+        } catch (VerificationException ignored) {
+        }
+        Assert.assertNull(cache.get(encoded, idpPair.getPublic(), "http://localhost:8080/auth/other-realm"));
+
+        // Tampered payload with the same signature must not be served from cache
+        String[] parts = encoded.split("\\.");
+        String tampered = parts[0] + "." + parts[1] + "x." + parts[2];
+        Assert.assertNull(cache.get(tampered, idpPair.getPublic(), "http://localhost:8080/auth/realm"));
+    }
+
+    @Test
+    public void testCachedVerificationExpired() throws Exception {
+        token.expiration(Time.currentTime() + 100);
+        String encoded = new JWSBuilder()
+                .jsonContent(token)
+                .rsa256(idpPair.getPrivate());
+
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        RSATokenVerifier.verifyToken(encoded, idpPair.getPublic(), "http://localhost:8080/auth/realm", cache);
+
+        Time.setOffset(200);
+        try {
+            Assert.assertNull(cache.get(encoded, idpPair.getPublic(), "http://localhost:8080/auth/realm"));
+            Assert.assertEquals(0, cache.size());
+        } finally {
+            Time.setOffset(0);
+        }
+    }
+
+    @Test
+    public void testCacheSizeBounded() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(2);
+        for (int i = 0; i < 5; i++) {
+            token.id("token-" + i).expiration(Time.currentTime() + 100);
+            String encoded = new JWSBuilder()
+                    .jsonContent(token)
+                    .rsa256(idpPair.getPrivate());
+            RSATokenVerifier.verifyToken(encoded, idpPair.getPublic(), "http://localhost:8080/auth/realm", cache);
+        }
+        Assert.assertEquals(2, cache.size());
+    }
+
     private AccessToken verifySkeletonKeyToken(String encoded) throws VerificationException {
         return RSATokenVerifier.verifyToken(encoded, idpPair.getPublic(), "http://localhost:8080/auth/realm");
     }
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.jose;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.util.Base64;
+import org.keycloak.common.util.Base64Url;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
+import org.keycloak.jose.jws.crypto.HMACProvider;
+import org.keycloak.jose.jws.crypto.RSAProvider;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Random;
+import java.util.UUID;
+
+public class JWSInputTest {
+
+    @Test
+    public void testParse() throws Exception {
+        String encoded = new JWSBuilder().content("content".getBytes("UTF-8")).none();
+        JWSInput input = new JWSInput(encoded);
+
+        Assert.assertEquals(Algorithm.none, input.getHeader().getAlgorithm());
+        Assert.assertEquals("content", input.readContentAsString());
+        Assert.assertEquals(encoded.substring(0, encoded.indexOf('.')), input.getEncodedHeader());
+        Assert.assertEquals(encoded.substring(0, encoded.length() - 1), input.getEncodedSignatureInput());
+        Assert.assertNull(input.getEncodedSignature());
+        Assert.assertNull(input.getSignature());
+
+        input = new JWSInput(encoded + "c2ln");
+        Assert.assertEquals("c2ln", input.getEncodedSignature());
+        Assert.assertArrayEquals("sig".getBytes("UTF-8"), input.getSignature());
+        Assert.assertEquals(encoded.substring(0, encoded.length() - 1), input.getEncodedSignatureInput());
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        String encoded = new JWSBuilder().content("content".getBytes("UTF-8")).none();
+        assertInvalid("");
+        assertInvalid("...");
+        assertInvalid(encoded.substring(0, encoded.indexOf('.')));
+        assertInvalid(encoded + "c2ln.c2ln");
+        assertInvalid(encoded.substring(0, encoded.indexOf('.')) + ".!!!!");
+    }
+
+    @Test
+    public void testRsaSignature() throws Exception {
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        String encoded = new JWSBuilder().content("content".getBytes("UTF-8")).rsa256(keyPair.getPrivate());
+
+        Assert.assertTrue(RSAProvider.verify(new JWSInput(encoded), keyPair.getPublic()));
+
+        String[] parts = encoded.split("\\.");
+        String tampered = parts[0] + "." + Base64Url.encode("contenT".getBytes("UTF-8")) + "." + parts[2];
+        Assert.assertFalse(RSAProvider.verify(new JWSInput(tampered), keyPair.getPublic()));
+        Assert.assertFalse(RSAProvider.verify(new JWSInput(parts[0] + "." + parts[1]), keyPair.getPublic()));
+        Assert.assertFalse(RSAProvider.verify(new JWSInput(parts[0] + "." + parts[1] + ".!!!!"), keyPair.getPublic()));
+    }
+
+    @Test
+    public void testHmacSignature() throws Exception {
+        SecretKey secret = new SecretKeySpec(UUID.randomUUID().toString().getBytes(), "HmacSHA256");
+        String encoded = new JWSBuilder().content("content".getBytes("UTF-8")).hmac256(secret);
+
+        Assert.assertTrue(HMACProvider.verify(new JWSInput(encoded), secret));
+
+        String[] parts = encoded.split("\\.");
+        Assert.assertFalse(HMACProvider.verify(new JWSInput(parts[0] + "." + parts[1]), secret));
+        Assert.assertFalse(HMACProvider.verify(new JWSInput(parts[0] + "." + parts[1] + ".!!!!"), secret));
+        Assert.assertFalse(HMACProvider.verify(new JWSInput(encoded), new SecretKeySpec(UUID.randomUUID().toString().getBytes(), "HmacSHA256")));
+    }
+
+    @Test
+    public void testBase64Url() throws Exception {
+        Random random = new Random(7);
+        for (int length = 0; length < 100; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+
+            String encoded = Base64Url.encode(bytes);
+            String expected = Base64.encodeBytes(bytes).replace("=", "").replace('+', '-').replace('/', '_');
+            Assert.assertEquals(expected, encoded);
+
+            Assert.assertArrayEquals(bytes, Base64Url.decode(encoded));
+            Assert.assertArrayEquals(bytes, Base64Url.decode(Base64.encodeBytes(bytes)));
+
+            byte[] wire = ("." + encoded + ".").getBytes("UTF-8");
+            Assert.assertArrayEquals(bytes, Base64Url.decode(wire, 1, encoded.length()));
+        }
+    }
+
+    @Test
+    public void testBase64UrlNonCanonical() throws Exception {
+        // "QQ" is the only encoding of "A", "QR" to "QW" differ just in the unused bits
+        Assert.assertArrayEquals("A".getBytes("UTF-8"), Base64Url.decode("QQ"));
+        assertIllegal("QR");
+        assertIllegal("QW");
+        Assert.assertArrayEquals("AB".getBytes("UTF-8"), Base64Url.decode("QUI"));
+        assertIllegal("QUJ");
+        assertIllegal("QUL");
+
+        byte[] wire = "xQRx".getBytes("UTF-8");
+        try {
+            Base64Url.decode(wire, 1, 2);
+            Assert.fail("Non-zero unused bits accepted");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    @Test
+    public void testBase64UrlWhitespace() throws Exception {
+        byte[] bytes = "Whitespace is skipped by the decoder".getBytes("UTF-8");
+        String encoded = Base64Url.encode(bytes);
+        String wrapped = " " + encoded.substring(0, 10) + "\r\n" + encoded.substring(10, 20) + "\t" + encoded.substring(20) + "\n";
+        Assert.assertArrayEquals(bytes, Base64Url.decode(wrapped));
+
+        byte[] wire = ("." + wrapped + ".").getBytes("UTF-8");
+        Assert.assertArrayEquals(bytes, Base64Url.decode(wire, 1, wrapped.length()));
+        assertIllegal("Q R");
+    }
+
+    private static void assertIllegal(String encoded) {
+        try {
+            Base64Url.decode(encoded);
+            Assert.fail("Decoded illegal string " + encoded);
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    private static void assertInvalid(String encoded) {
+        try {
+            new JWSInput(encoded);
+            Assert.fail("Expected parsing error for " + encoded);
+        } catch (JWSInputException expected) {
+        }
+    }
+
+}
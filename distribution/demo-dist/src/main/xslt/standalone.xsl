@@ -88,6 +88,8 @@
                 <local-cache name="users"/>
                 <local-cache name="sessions"/>
                 <local-cache name="offlineSessions"/>
+                <local-cache name="sessionIndexes"/>
+                <local-cache name="offlineSessionIndexes"/>
                 <local-cache name="loginFailures"/>
                 <local-cache name="work"/>
                 <local-cache name="realmVersions">
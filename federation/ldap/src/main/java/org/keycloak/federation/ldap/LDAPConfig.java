@@ -108,6 +108,16 @@ public class LDAPConfig {
         return config.get(LDAPConstants.CONNECTION_POOLING);
     }
 
+    public int getConnectionPoolSize() {
+        String poolSize = config.get(LDAPConstants.CONNECTION_POOL_SIZE);
+        return (poolSize != null && !poolSize.trim().isEmpty()) ? Integer.parseInt(poolSize.trim()) : 0;
+    }
+
+    public int getConnectionPoolValidationInterval() {
+        String interval = config.get(LDAPConstants.CONNECTION_POOL_VALIDATION_INTERVAL);
+        return (interval != null && !interval.trim().isEmpty()) ? Integer.parseInt(interval.trim()) : LDAPConstants.DEFAULT_CONNECTION_POOL_VALIDATION_INTERVAL;
+    }
+
     public Properties getAdditionalConnectionProperties() {
         // not supported for now
         return null;
@@ -139,6 +149,16 @@ public class LDAPConfig {
         return pageSizeConfig!=null ? Integer.parseInt(pageSizeConfig) : LDAPConstants.DEFAULT_BATCH_SIZE_FOR_SYNC;
     }
 
+    public int getUsersPerTransactionForSync() {
+        String usersPerTransaction = config.get(LDAPConstants.USERS_PER_TRANSACTION_FOR_SYNC);
+        return (usersPerTransaction != null && !usersPerTransaction.trim().isEmpty()) ? Integer.parseInt(usersPerTransaction.trim()) : LDAPConstants.DEFAULT_USERS_PER_TRANSACTION_FOR_SYNC;
+    }
+
+    public int getSyncThreads() {
+        String syncThreads = config.get(LDAPConstants.SYNC_THREADS);
+        return (syncThreads != null && !syncThreads.trim().isEmpty()) ? Integer.parseInt(syncThreads.trim()) : LDAPConstants.DEFAULT_SYNC_THREADS;
+    }
+
     public String getUsernameLdapAttribute() {
         String username = config.get(LDAPConstants.USERNAME_LDAP_ATTRIBUTE);
         if (username == null) {
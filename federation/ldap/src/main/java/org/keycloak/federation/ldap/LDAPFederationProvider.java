@@ -311,14 +311,21 @@ public class LDAPFederationProvider implements UserFederationProvider {
     }
 
     protected UserModel importUserFromLDAP(KeycloakSession session, RealmModel realm, LDAPObject ldapUser) {
+        Set<UserFederationMapperModel> federationMappers = realm.getUserFederationMappersByFederationProvider(getModel().getId());
+        List<UserFederationMapperModel> sortedMappers = sortMappersDesc(federationMappers);
+        return importUserFromLDAP(session, realm, ldapUser, sortedMappers);
+    }
+
+    /**
+     * Import user with already sorted mappers of this provider. Useful when more users are imported at once
+     */
+    protected UserModel importUserFromLDAP(KeycloakSession session, RealmModel realm, LDAPObject ldapUser, List<UserFederationMapperModel> sortedMappers) {
         String ldapUsername = LDAPUtils.getUsername(ldapUser, ldapIdentityStore.getConfig());
         LDAPUtils.checkUuid(ldapUser, ldapIdentityStore.getConfig());
 
         UserModel imported = session.userStorage().addUser(realm, ldapUsername);
         imported.setEnabled(true);
 
-        Set<UserFederationMapperModel> federationMappers = realm.getUserFederationMappersByFederationProvider(getModel().getId());
-        List<UserFederationMapperModel> sortedMappers = sortMappersDesc(federationMappers);
         for (UserFederationMapperModel mapperModel : sortedMappers) {
             if (logger.isTraceEnabled()) {
                 logger.tracef("Using mapper %s during import user from LDAP", mapperModel);
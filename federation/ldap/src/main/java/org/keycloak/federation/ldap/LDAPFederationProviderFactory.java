@@ -50,10 +50,12 @@ import org.keycloak.models.UserFederationSyncResult;
 import org.keycloak.models.UserFederationValidatingProviderFactory;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
 
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -61,7 +63,7 @@ import java.util.Set;
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class LDAPFederationProviderFactory extends UserFederationEventAwareProviderFactory implements UserFederationValidatingProviderFactory {
+public class LDAPFederationProviderFactory extends UserFederationEventAwareProviderFactory implements UserFederationValidatingProviderFactory, ServerInfoAwareProviderFactory {
     private static final Logger logger = Logger.getLogger(LDAPFederationProviderFactory.class);
     public static final String PROVIDER_NAME = LDAPConstants.LDAP_PROVIDER;
 
@@ -92,9 +94,18 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
 
     @Override
     public void close() {
+        if (this.ldapStoreRegistry != null) {
+            this.ldapStoreRegistry.close();
+        }
         this.ldapStoreRegistry = null;
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        LDAPIdentityStoreRegistry registry = this.ldapStoreRegistry;
+        return registry != null ? registry.getPoolStatistics() : Collections.<String, String>emptyMap();
+    }
+
     @Override
     public String getId() {
         return PROVIDER_NAME;
@@ -283,27 +294,35 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
     protected UserFederationSyncResult syncImpl(KeycloakSessionFactory sessionFactory, LDAPQuery userQuery, final String realmId, final UserFederationProviderModel fedModel) {
 
         final UserFederationSyncResult syncResult = new UserFederationSyncResult();
+        long start = System.currentTimeMillis();
 
         LDAPConfig ldapConfig = new LDAPConfig(fedModel.getConfig());
-        boolean pagination = ldapConfig.isPagination();
-        if (pagination) {
-            int pageSize = ldapConfig.getBatchSizeForSync();
-
-            boolean nextPage = true;
-            while (nextPage) {
-                userQuery.setLimit(pageSize);
+        LDAPSyncExecutor executor = new LDAPSyncExecutor(this, sessionFactory, realmId, fedModel, ldapConfig.getUsersPerTransactionForSync(), ldapConfig.getSyncThreads());
+        try {
+            boolean pagination = ldapConfig.isPagination();
+            if (pagination) {
+                int pageSize = ldapConfig.getBatchSizeForSync();
+
+                // Next page is read from LDAP while the users of previous pages are imported
+                boolean nextPage = true;
+                while (nextPage) {
+                    userQuery.setLimit(pageSize);
+                    final List<LDAPObject> users = userQuery.getResultList();
+                    nextPage = userQuery.getPaginationContext() != null;
+                    executor.submit(users);
+                }
+            } else {
+                // LDAP pagination not available. Read all users at once
                 final List<LDAPObject> users = userQuery.getResultList();
-                nextPage = userQuery.getPaginationContext() != null;
-                UserFederationSyncResult currentPageSync = importLdapUsers(sessionFactory, realmId, fedModel, users);
-                syncResult.add(currentPageSync);
+                executor.submit(users);
             }
-        } else {
-            // LDAP pagination not available. Do everything in single transaction
-            final List<LDAPObject> users = userQuery.getResultList();
-            UserFederationSyncResult currentSync = importLdapUsers(sessionFactory, realmId, fedModel, users);
-            syncResult.add(currentSync);
+
+            syncResult.add(executor.awaitAll());
+        } finally {
+            executor.close();
         }
 
+        syncResult.setDuration(System.currentTimeMillis() - start);
         return syncResult;
     }
 
@@ -326,12 +345,43 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
         return queryHolder.query;
     }
 
-    protected UserFederationSyncResult importLdapUsers(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, List<LDAPObject> ldapUsers) {
+    /**
+     * Import all users in single transaction. Provider, realm and mappers are looked-up just once for all the users. If the transaction
+     * fails, users are imported again each in separate transaction by {@link #importLdapUsers}, so the failure affects just the failed users.
+     */
+    protected UserFederationSyncResult importLdapUsersBatch(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, final List<LDAPObject> ldapUsers) {
+        if (ldapUsers.size() <= 1) {
+            return importLdapUsers(sessionFactory, realmId, fedModel, ldapUsers);
+        }
+
         final UserFederationSyncResult syncResult = new UserFederationSyncResult();
+        try {
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+                @Override
+                public void run(KeycloakSession session) {
+                    LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
+                    RealmModel currentRealm = session.realms().getRealm(realmId);
+                    Set<UserFederationMapperModel> federationMappers = currentRealm.getUserFederationMappersByFederationProvider(fedModel.getId());
+                    List<UserFederationMapperModel> sortedMappers = ldapFedProvider.sortMappersDesc(federationMappers);
+
+                    for (LDAPObject ldapUser : ldapUsers) {
+                        importLdapUser(session, ldapFedProvider, currentRealm, sortedMappers, fedModel, ldapUser, syncResult, new BooleanHolder());
+                    }
+                }
 
-        class BooleanHolder {
-            private boolean value = true;
+            });
+            return syncResult;
+        } catch (RuntimeException re) {
+            // Not just ModelException. Flush or commit of the batch may fail with any exception of the underlying store
+            logger.warnf("Failed to import %d users from LDAP in single transaction, going to import them one by one. Cause: %s", ldapUsers.size(), re.getMessage());
+            return importLdapUsers(sessionFactory, realmId, fedModel, ldapUsers);
         }
+    }
+
+    protected UserFederationSyncResult importLdapUsers(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, List<LDAPObject> ldapUsers) {
+        final UserFederationSyncResult syncResult = new UserFederationSyncResult();
+
         final BooleanHolder exists = new BooleanHolder();
 
         for (final LDAPObject ldapUser : ldapUsers) {
@@ -345,42 +395,15 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
                     public void run(KeycloakSession session) {
                         LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
                         RealmModel currentRealm = session.realms().getRealm(realmId);
+                        Set<UserFederationMapperModel> federationMappers = currentRealm.getUserFederationMappersByFederationProvider(fedModel.getId());
+                        List<UserFederationMapperModel> sortedMappers = ldapFedProvider.sortMappersDesc(federationMappers);
 
-                        String username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                        exists.value = true;
-                        LDAPUtils.checkUuid(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                        UserModel currentUser = session.userStorage().getUserByUsername(username, currentRealm);
-
-                        if (currentUser == null) {
-
-                            // Add new user to Keycloak
-                            exists.value = false;
-                            ldapFedProvider.importUserFromLDAP(session, currentRealm, ldapUser);
-                            syncResult.increaseAdded();
-
-                        } else {
-                            if ((fedModel.getId().equals(currentUser.getFederationLink())) && (ldapUser.getUuid().equals(currentUser.getFirstAttribute(LDAPConstants.LDAP_ID)))) {
-
-                                // Update keycloak user
-                                Set<UserFederationMapperModel> federationMappers = currentRealm.getUserFederationMappersByFederationProvider(fedModel.getId());
-                                List<UserFederationMapperModel> sortedMappers = ldapFedProvider.sortMappersDesc(federationMappers);
-                                for (UserFederationMapperModel mapperModel : sortedMappers) {
-                                    LDAPFederationMapper ldapMapper = ldapFedProvider.getMapper(mapperModel);
-                                    ldapMapper.onImportUserFromLDAP(mapperModel, ldapFedProvider, ldapUser, currentUser, currentRealm, false);
-                                }
-
-                                logger.debugf("Updated user from LDAP: %s", currentUser.getUsername());
-                                syncResult.increaseUpdated();
-                            } else {
-                                logger.warnf("User '%s' is not updated during sync as he already exists in Keycloak database but is not linked to federation provider '%s'", username, fedModel.getDisplayName());
-                                syncResult.increaseFailed();
-                            }
-                        }
+                        importLdapUser(session, ldapFedProvider, currentRealm, sortedMappers, fedModel, ldapUser, syncResult, exists);
                     }
 
                 });
-            } catch (ModelException me) {
-                logger.error("Failed during import user from LDAP", me);
+            } catch (RuntimeException re) {
+                logger.error("Failed during import user from LDAP", re);
                 syncResult.increaseFailed();
 
                 // Remove user if we already added him during this transaction
@@ -413,6 +436,42 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
         return syncResult;
     }
 
+    private void importLdapUser(KeycloakSession session, LDAPFederationProvider ldapFedProvider, RealmModel currentRealm, List<UserFederationMapperModel> sortedMappers,
+                                UserFederationProviderModel fedModel, LDAPObject ldapUser, UserFederationSyncResult syncResult, BooleanHolder exists) {
+        String username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
+        exists.value = true;
+        LDAPUtils.checkUuid(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
+        UserModel currentUser = session.userStorage().getUserByUsername(username, currentRealm);
+
+        if (currentUser == null) {
+
+            // Add new user to Keycloak
+            exists.value = false;
+            ldapFedProvider.importUserFromLDAP(session, currentRealm, ldapUser, sortedMappers);
+            syncResult.increaseAdded();
+
+        } else {
+            if ((fedModel.getId().equals(currentUser.getFederationLink())) && (ldapUser.getUuid().equals(currentUser.getFirstAttribute(LDAPConstants.LDAP_ID)))) {
+
+                // Update keycloak user
+                for (UserFederationMapperModel mapperModel : sortedMappers) {
+                    LDAPFederationMapper ldapMapper = ldapFedProvider.getMapper(mapperModel);
+                    ldapMapper.onImportUserFromLDAP(mapperModel, ldapFedProvider, ldapUser, currentUser, currentRealm, false);
+                }
+
+                logger.debugf("Updated user from LDAP: %s", currentUser.getUsername());
+                syncResult.increaseUpdated();
+            } else {
+                logger.warnf("User '%s' is not updated during sync as he already exists in Keycloak database but is not linked to federation provider '%s'", username, fedModel.getDisplayName());
+                syncResult.increaseFailed();
+            }
+        }
+    }
+
+    private static class BooleanHolder {
+        private boolean value = true;
+    }
+
     protected SPNEGOAuthenticator createSPNEGOAuthenticator(String spnegoToken, CommonKerberosConfig kerberosConfig) {
         KerberosServerSubjectAuthenticator kerberosAuth = createKerberosSubjectAuthenticator(kerberosConfig);
         return new SPNEGOAuthenticator(kerberosConfig, kerberosAuth, spnegoToken);
@@ -19,10 +19,12 @@ package org.keycloak.federation.ldap;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.jboss.logging.Logger;
 import org.keycloak.federation.ldap.idm.store.ldap.LDAPIdentityStore;
+import org.keycloak.federation.ldap.idm.store.ldap.LDAPOperationManager;
 import org.keycloak.models.LDAPConstants;
 import org.keycloak.models.UserFederationProviderModel;
 
@@ -44,12 +46,39 @@ public class LDAPIdentityStoreRegistry {
             logLDAPConfig(model.getDisplayName(), config);
 
             LDAPIdentityStore store = createLdapIdentityStore(config);
-            context = new LDAPIdentityStoreContext(config, store);
-            ldapStores.put(model.getId(), context);
+            LDAPIdentityStoreContext previous = ldapStores.put(model.getId(), new LDAPIdentityStoreContext(config, store));
+
+            // Release pooled connections of the store with outdated configuration
+            if (previous != null) {
+                previous.store.close();
+            }
+            return store;
         }
         return context.store;
     }
 
+    /**
+     * @return statistics of connection pools of all the LDAP stores, keyed by the federation provider ID
+     */
+    public Map<String, String> getPoolStatistics() {
+        Map<String, String> statistics = new TreeMap<String, String>();
+        for (Map.Entry<String, LDAPIdentityStoreContext> entry : ldapStores.entrySet()) {
+            LDAPOperationManager operationManager = entry.getValue().store.getOperationManager();
+            if (operationManager.getContextPool() != null) {
+                statistics.put(entry.getKey() + ".pool", operationManager.getContextPool().toString());
+                statistics.put(entry.getKey() + ".authPool", operationManager.getAuthContextPool().toString());
+            }
+        }
+        return statistics;
+    }
+
+    public void close() {
+        for (LDAPIdentityStoreContext context : ldapStores.values()) {
+            context.store.close();
+        }
+        ldapStores.clear();
+    }
+
     // Don't log LDAP password
     private void logLDAPConfig(String fedProviderDisplayName, Map<String, String> ldapConfig) {
         Map<String, String> copy = new HashMap<String, String>(ldapConfig);
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.keycloak.federation.ldap;
+
+import org.keycloak.federation.ldap.idm.model.LDAPObject;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.ModelException;
+import org.keycloak.models.UserFederationProviderModel;
+import org.keycloak.models.UserFederationSyncResult;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports pages of LDAP users read during sync. Each page is split into batches of {@link LDAPConfig#getUsersPerTransactionForSync()}
+ * users and every batch is imported in separate transaction on one of {@link LDAPConfig#getSyncThreads()} threads.
+ *
+ * At most one batch per thread is waiting or in progress at any time. {@link #submit(List)} blocks until the oldest batch is finished when
+ * all threads are busy, so next page of users is read from LDAP while previous one is imported, but the pages are not read faster than
+ * they can be imported. Results of the batches are merged on the submitting thread.
+ */
+class LDAPSyncExecutor {
+
+    private final LDAPFederationProviderFactory factory;
+    private final KeycloakSessionFactory sessionFactory;
+    private final String realmId;
+    private final UserFederationProviderModel fedModel;
+
+    private final int usersPerTransaction;
+    private final int threads;
+    private final ExecutorService executor;
+    private final LinkedList<Future<UserFederationSyncResult>> pending = new LinkedList<>();
+
+    private final UserFederationSyncResult syncResult = new UserFederationSyncResult();
+
+    LDAPSyncExecutor(LDAPFederationProviderFactory factory, KeycloakSessionFactory sessionFactory, String realmId, UserFederationProviderModel fedModel,
+                     int usersPerTransaction, int threads) {
+        this.factory = factory;
+        this.sessionFactory = sessionFactory;
+        this.realmId = realmId;
+        this.fedModel = fedModel;
+        this.usersPerTransaction = Math.max(usersPerTransaction, 1);
+        this.threads = Math.max(threads, 1);
+        this.executor = this.threads > 1 ? Executors.newFixedThreadPool(this.threads) : null;
+    }
+
+    void submit(List<LDAPObject> ldapUsers) {
+        for (int i = 0; i < ldapUsers.size(); i += usersPerTransaction) {
+            List<LDAPObject> batch = new ArrayList<>(ldapUsers.subList(i, Math.min(i + usersPerTransaction, ldapUsers.size())));
+            submitBatch(batch);
+        }
+    }
+
+    /**
+     * Waits until all submitted batches are imported
+     *
+     * @return merged results of all batches
+     */
+    UserFederationSyncResult awaitAll() {
+        while (!pending.isEmpty()) {
+            completeOldest();
+        }
+        return syncResult;
+    }
+
+    /**
+     * Stops the import threads. Batches which were not imported yet are cancelled.
+     */
+    void close() {
+        for (Future<UserFederationSyncResult> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        if (executor != null) executor.shutdownNow();
+    }
+
+    private void submitBatch(final List<LDAPObject> batch) {
+        if (executor == null) {
+            syncResult.add(factory.importLdapUsersBatch(sessionFactory, realmId, fedModel, batch));
+            return;
+        }
+
+        while (pending.size() >= threads) {
+            completeOldest();
+        }
+
+        pending.add(executor.submit(new Callable<UserFederationSyncResult>() {
+
+            @Override
+            public UserFederationSyncResult call() throws Exception {
+                return factory.importLdapUsersBatch(sessionFactory, realmId, fedModel, batch);
+            }
+
+        }));
+    }
+
+    private void completeOldest() {
+        Future<UserFederationSyncResult> oldest = pending.removeFirst();
+        try {
+            syncResult.add(oldest.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModelException("Interrupted while waiting for import of LDAP users", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ModelException(cause);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+
+import org.jboss.logging.Logger;
+
+/**
+ * <p>Bounded pool of open {@link LdapContext} instances, so that LDAP operations don't need to open new TCP (and TLS)
+ * connection every time.</p>
+ *
+ * <p>Contexts are handed out exclusively, as {@link LdapContext} is not thread-safe. Context, which was idle for longer than
+ * the validation interval, is checked by reading the root DSE before it's handed out again. Contexts, whose connection
+ * failed, should be returned with {@link #release(LdapContext, boolean)} with <code>broken</code> flag, so they are closed
+ * instead of being reused.</p>
+ */
+public class LDAPContextPool {
+
+    private static final Logger logger = Logger.getLogger(LDAPContextPool.class);
+
+    private static final String[] NO_ATTRIBUTES = new String[] { "1.1" };
+
+    public interface ContextFactory {
+        LdapContext create() throws NamingException;
+    }
+
+    private final String name;
+    private final int maxSize;
+    private final long validationIntervalMillis;
+    private final long borrowTimeoutMillis;
+    private final ContextFactory factory;
+
+    // Most recently used contexts are at the head, so contexts at the tail are the ones most likely to be stale
+    private final LinkedBlockingDeque<PooledContext> idle = new LinkedBlockingDeque<PooledContext>();
+    private final Semaphore permits;
+    private volatile boolean closed;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+
+    public LDAPContextPool(String name, int maxSize, long validationIntervalMillis, long borrowTimeoutMillis, ContextFactory factory) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be greater than 0");
+        }
+
+        this.name = name;
+        this.maxSize = maxSize;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.factory = factory;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Returns idle context from the pool or opens new one. Blocks if all contexts are in use. If the pool is already closed,
+     * new context is opened, which is closed again when released.
+     *
+     * @throws ServiceUnavailableException if no context becomes available within the borrow timeout
+     */
+    public LdapContext borrow() throws NamingException {
+        if (closed) {
+            // Store was replaced (for example due to configuration change) while in use. Context will be closed on release
+            LdapContext context = factory.create();
+            created.incrementAndGet();
+            return checkedOut(context);
+        }
+
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.incrementAndGet();
+                throw new ServiceUnavailableException("Timeout when waiting for connection from LDAP connection pool " + name);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted when waiting for connection from LDAP connection pool " + name);
+        }
+
+        try {
+            PooledContext pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isValid(pooled)) {
+                    return checkedOut(pooled.context);
+                }
+                destroy(pooled.context);
+            }
+
+            LdapContext context = factory.create();
+            created.incrementAndGet();
+            return checkedOut(context);
+        } catch (NamingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns context previously obtained from {@link #borrow()} back to the pool.
+     *
+     * @param broken true if the connection of the context failed and context shouldn't be reused
+     */
+    public void release(LdapContext context, boolean broken) {
+        active.decrementAndGet();
+        try {
+            if (broken || closed) {
+                destroy(context);
+            } else {
+                try {
+                    // Don't leak request controls (like paged results) of previous operation
+                    context.setRequestControls(null);
+                    idle.offerFirst(new PooledContext(context, System.currentTimeMillis()));
+                } catch (NamingException ne) {
+                    destroy(context);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+
+        // Pool might have been closed concurrently
+        if (closed) {
+            closeIdle();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        closeIdle();
+
+        if (logger.isDebugEnabled()) {
+            logger.debugf("Closed LDAP connection pool: %s", this);
+        }
+    }
+
+    private void closeIdle() {
+        PooledContext pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled.context);
+        }
+    }
+
+    private LdapContext checkedOut(LdapContext context) {
+        active.incrementAndGet();
+        borrowed.incrementAndGet();
+        return context;
+    }
+
+    private boolean isValid(PooledContext pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < validationIntervalMillis) {
+            return true;
+        }
+
+        try {
+            pooled.context.getAttributes("", NO_ATTRIBUTES);
+            return true;
+        } catch (NamingException ne) {
+            validationFailures.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debugf(ne, "Idle connection of LDAP connection pool %s is not valid anymore", name);
+            }
+            return false;
+        }
+    }
+
+    private void destroy(LdapContext context) {
+        destroyed.incrementAndGet();
+        try {
+            context.close();
+        } catch (NamingException ne) {
+            logger.debug("Could not close Ldap context.", ne);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return count of contexts currently in use
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return count of open contexts waiting in the pool
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return count of threads waiting for context
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyed.get();
+    }
+
+    public long getBorrowedCount() {
+        return borrowed.get();
+    }
+
+    public long getValidationFailuresCount() {
+        return validationFailures.get();
+    }
+
+    public long getBorrowTimeoutsCount() {
+        return borrowTimeouts.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [maxSize=%d, active=%d, idle=%d, waiting=%d, created=%d, destroyed=%d, borrowed=%d, validationFailures=%d, borrowTimeouts=%d]",
+                name, maxSize, getActiveCount(), getIdleCount(), getWaitingCount(), getCreatedCount(), getDestroyedCount(), getBorrowedCount(),
+                getValidationFailuresCount(), getBorrowTimeoutsCount());
+    }
+
+    private static class PooledContext {
+
+        private final LdapContext context;
+        private final long lastUsed;
+
+        private PooledContext(LdapContext context, long lastUsed) {
+            this.context = context;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -80,6 +80,17 @@ public class LDAPIdentityStore implements IdentityStore {
         return this.config;
     }
 
+    public LDAPOperationManager getOperationManager() {
+        return this.operationManager;
+    }
+
+    /**
+     * Releases connections held by this store
+     */
+    public void close() {
+        this.operationManager.close();
+    }
+
     @Override
     public void add(LDAPObject ldapObject) {
         // id will be assigned by the ldap server
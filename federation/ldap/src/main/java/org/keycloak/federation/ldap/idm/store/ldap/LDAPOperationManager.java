@@ -31,10 +31,12 @@ import java.util.Set;
 
 import javax.naming.AuthenticationException;
 import javax.naming.Binding;
+import javax.naming.CommunicationException;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
@@ -63,12 +65,68 @@ public class LDAPOperationManager {
 
     private static final Logger logger = Logger.getLogger(LDAPOperationManager.class);
 
+    private static final long POOL_BORROW_TIMEOUT_MILLIS = 10000;
+
     private final LDAPConfig config;
     private final Map<String, Object> connectionProperties;
 
+    // Both pools are null if connection pool size is not configured
+    private final LDAPContextPool contextPool;
+    private final LDAPContextPool authContextPool;
+
     public LDAPOperationManager(LDAPConfig config) throws NamingException {
         this.config = config;
         this.connectionProperties = Collections.unmodifiableMap(createConnectionProperties());
+
+        int poolSize = config.getConnectionPoolSize();
+        if (poolSize > 0) {
+            // Pooled contexts are kept open by us, so JNDI pooling must not be used for them
+            final Hashtable<Object, Object> pooledProperties = new Hashtable<Object, Object>(this.connectionProperties);
+            pooledProperties.put("com.sun.jndi.ldap.connect.pool", "false");
+
+            LDAPContextPool.ContextFactory factory = new LDAPContextPool.ContextFactory() {
+
+                @Override
+                public LdapContext create() throws NamingException {
+                    return new InitialLdapContext(new Hashtable<Object, Object>(pooledProperties), null);
+                }
+
+            };
+
+            long validationInterval = config.getConnectionPoolValidationInterval() * 1000L;
+            String url = config.getConnectionUrl();
+            this.contextPool = new LDAPContextPool(url, poolSize, validationInterval, POOL_BORROW_TIMEOUT_MILLIS, factory);
+            this.authContextPool = new LDAPContextPool(url + " (authentication)", poolSize, validationInterval, POOL_BORROW_TIMEOUT_MILLIS, factory);
+        } else {
+            this.contextPool = null;
+            this.authContextPool = null;
+        }
+    }
+
+    /**
+     * @return pool of connections used for LDAP operations or null if pooling is not configured
+     */
+    public LDAPContextPool getContextPool() {
+        return contextPool;
+    }
+
+    /**
+     * @return pool of connections used for password validation or null if pooling is not configured
+     */
+    public LDAPContextPool getAuthContextPool() {
+        return authContextPool;
+    }
+
+    /**
+     * Closes all pooled connections
+     */
+    public void close() {
+        if (contextPool != null) {
+            contextPool.close();
+        }
+        if (authContextPool != null) {
+            authContextPool.close();
+        }
     }
 
     /**
@@ -342,6 +400,11 @@ public class LDAPOperationManager {
      *
      */
     public void authenticate(String dn, String password) throws AuthenticationException {
+        if (authContextPool != null) {
+            authenticatePooled(dn, password);
+            return;
+        }
+
         InitialContext authCtx = null;
 
         try {
@@ -380,6 +443,77 @@ public class LDAPOperationManager {
         }
     }
 
+    /**
+     * Validates password by re-binding already open connection from the authentication pool as the given DN. Credentials are
+     * removed from the context environment afterwards, so the password isn't kept in the pool. After failed bind, the connection
+     * is bound with the configured identity again, so that it can be returned to the pool instead of being closed.
+     */
+    private void authenticatePooled(String dn, String password) throws AuthenticationException {
+        if (password == null || password.isEmpty()) {
+            throw new AuthenticationException("Empty password used");
+        }
+
+        LdapContext authCtx;
+        try {
+            authCtx = authContextPool.borrow();
+        } catch (NamingException e) {
+            logger.errorf(e, "Could not obtain LDAP connection when validating password of DN [%s]", dn);
+            throw new AuthenticationException("Unexpected exception when validating password of user");
+        }
+
+        boolean broken = true;
+        try {
+            authCtx.addToEnvironment(Context.SECURITY_AUTHENTICATION, LDAPConstants.AUTH_TYPE_SIMPLE);
+            authCtx.addToEnvironment(Context.SECURITY_PRINCIPAL, dn);
+            authCtx.addToEnvironment(Context.SECURITY_CREDENTIALS, password);
+
+            // Re-authenticates on the existing connection
+            authCtx.reconnect(null);
+            broken = false;
+        } catch (AuthenticationException ae) {
+            if (logger.isDebugEnabled()) {
+                logger.debugf(ae, "Authentication failed for DN [%s]", dn);
+            }
+
+            // Wrong password doesn't mean that the connection failed
+            broken = !rebindServiceIdentity(authCtx);
+            throw ae;
+        } catch (Exception e) {
+            logger.errorf(e, "Unexpected exception when validating password of DN [%s]", dn);
+            throw new AuthenticationException("Unexpected exception when validating password of user");
+        } finally {
+            try {
+                authCtx.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+            } catch (NamingException ne) {
+                broken = true;
+            }
+            authContextPool.release(authCtx, broken);
+        }
+    }
+
+    /**
+     * @return true if the context is bound with the identity from the connection properties again
+     */
+    private boolean rebindServiceIdentity(LdapContext authCtx) {
+        try {
+            for (String property : new String[] { Context.SECURITY_AUTHENTICATION, Context.SECURITY_PRINCIPAL, Context.SECURITY_CREDENTIALS }) {
+                Object value = connectionProperties.get(property);
+                if (value != null) {
+                    authCtx.addToEnvironment(property, value);
+                } else {
+                    authCtx.removeFromEnvironment(property);
+                }
+            }
+            authCtx.reconnect(null);
+            return true;
+        } catch (NamingException ne) {
+            if (logger.isDebugEnabled()) {
+                logger.debugf(ne, "Could not rebind LDAP connection of pool %s after failed authentication", authContextPool.getName());
+            }
+            return false;
+        }
+    }
+
     public void modifyAttributes(final String dn, final ModificationItem[] mods) {
         try {
             if (logger.isTraceEnabled()) {
@@ -529,6 +663,10 @@ public class LDAPOperationManager {
     }
 
     private <R> R execute(LdapOperation<R> operation) throws NamingException {
+        if (contextPool != null) {
+            return executePooled(operation);
+        }
+
         LdapContext context = null;
 
         try {
@@ -547,6 +685,23 @@ public class LDAPOperationManager {
         }
     }
 
+    private <R> R executePooled(LdapOperation<R> operation) throws NamingException {
+        LdapContext context = contextPool.borrow();
+        boolean broken = false;
+
+        try {
+            return operation.execute(context);
+        } catch (CommunicationException | ServiceUnavailableException ce) {
+            broken = true;
+            throw ce;
+        } catch (RuntimeException re) {
+            broken = true;
+            throw re;
+        } finally {
+            contextPool.release(context, broken);
+        }
+    }
+
     private interface LdapOperation<R> {
         R execute(LdapContext context) throws NamingException;
     }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LDAPContextPoolTest {
+
+    @Test
+    public void testReuse() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", 2, 60000, 100, new TestContextFactory());
+
+        LdapContext ctx1 = pool.borrow();
+        pool.release(ctx1, false);
+        LdapContext ctx2 = pool.borrow();
+
+        Assert.assertSame(ctx1, ctx2);
+        Assert.assertEquals(1, pool.getCreatedCount());
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+
+        pool.release(ctx2, false);
+        Assert.assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testBrokenNotReused() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", 2, 60000, 100, new TestContextFactory());
+
+        LdapContext ctx1 = pool.borrow();
+        pool.release(ctx1, true);
+        LdapContext ctx2 = pool.borrow();
+
+        Assert.assertNotSame(ctx1, ctx2);
+        Assert.assertEquals(2, pool.getCreatedCount());
+        Assert.assertEquals(1, pool.getDestroyedCount());
+    }
+
+    @Test
+    public void testBorrowTimeout() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", 1, 60000, 50, new TestContextFactory());
+
+        LdapContext ctx1 = pool.borrow();
+        try {
+            pool.borrow();
+            Assert.fail("Expected timeout");
+        } catch (ServiceUnavailableException expected) {
+        }
+        Assert.assertEquals(1, pool.getBorrowTimeoutsCount());
+
+        pool.release(ctx1, false);
+        Assert.assertSame(ctx1, pool.borrow());
+    }
+
+    @Test
+    public void testInvalidIdleContextReplaced() throws Exception {
+        TestContextFactory factory = new TestContextFactory();
+        LDAPContextPool pool = new LDAPContextPool("test", 1, 0, 100, factory);
+
+        LdapContext ctx1 = pool.borrow();
+        pool.release(ctx1, false);
+
+        factory.failValidation.set(true);
+        LdapContext ctx2 = pool.borrow();
+
+        Assert.assertNotSame(ctx1, ctx2);
+        Assert.assertEquals(1, pool.getValidationFailuresCount());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        LDAPContextPool pool = new LDAPContextPool("test", 2, 60000, 100, new TestContextFactory());
+
+        LdapContext ctx1 = pool.borrow();
+        LdapContext ctx2 = pool.borrow();
+        pool.release(ctx1, false);
+
+        pool.close();
+        Assert.assertEquals(0, pool.getIdleCount());
+        Assert.assertEquals(1, pool.getDestroyedCount());
+
+        // Context borrowed before close is closed when released
+        pool.release(ctx2, false);
+        Assert.assertEquals(0, pool.getIdleCount());
+        Assert.assertEquals(2, pool.getDestroyedCount());
+    }
+
+    private static class TestContextFactory implements LDAPContextPool.ContextFactory {
+
+        private final AtomicBoolean failValidation = new AtomicBoolean();
+
+        @Override
+        public LdapContext create() throws NamingException {
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { LdapContext.class }, new InvocationHandler() {
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if (method.getName().equals("getAttributes") && failValidation.get()) {
+                        throw new NamingException("Connection closed");
+                    }
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    }
+                    if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    return null;
+                }
+
+            });
+        }
+    }
+}
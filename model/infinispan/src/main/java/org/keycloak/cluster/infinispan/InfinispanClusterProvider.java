@@ -19,6 +19,7 @@ package org.keycloak.cluster.infinispan;
 
 import java.io.Serializable;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import org.infinispan.Cache;
 import org.infinispan.context.Flag;
@@ -83,7 +84,7 @@ public class InfinispanClusterProvider implements ClusterProvider {
     @Override
     public <T> ExecutionResult<T> executeIfNotExecuted(String taskKey, int taskTimeoutInSeconds, Callable<T> task) {
         String cacheKey = TASK_KEY_PREFIX + taskKey;
-        boolean locked = tryLock(cacheKey, taskTimeoutInSeconds);
+        boolean locked = tryLock(cacheKey, taskTimeoutInSeconds, false);
         if (locked) {
             try {
                 try {
@@ -103,6 +104,32 @@ public class InfinispanClusterProvider implements ClusterProvider {
     }
 
 
+    @Override
+    public <T> ExecutionResult<T> executeOncePerInterval(String taskKey, int intervalInSeconds, Callable<T> task) {
+        String cacheKey = TASK_KEY_PREFIX + taskKey;
+        boolean locked = tryLock(cacheKey, intervalInSeconds, true);
+        if (locked) {
+            boolean success = false;
+            try {
+                T result = task.call();
+                success = true;
+                return ExecutionResult.executed(result);
+            } catch (RuntimeException re) {
+                throw re;
+            } catch (Exception e) {
+                throw new RuntimeException("Unexpected exception when executed task " + taskKey, e);
+            } finally {
+                // Entry is kept until the interval expires, so that other nodes don't execute the task again in this interval
+                if (!success) {
+                    removeFromCache(cacheKey);
+                }
+            }
+        } else {
+            return ExecutionResult.notExecuted();
+        }
+    }
+
+
     @Override
     public void registerListener(String taskKey, ClusterListener task) {
         factory.registerListener(taskKey, task);
@@ -130,10 +157,12 @@ public class InfinispanClusterProvider implements ClusterProvider {
     }
 
 
-    private boolean tryLock(String cacheKey, int taskTimeoutInSeconds) {
+    private boolean tryLock(String cacheKey, int taskTimeoutInSeconds, boolean expire) {
         LockEntry myLock = createLockEntry(cache);
 
-        LockEntry existingLock = (LockEntry) cache.putIfAbsent(cacheKey, myLock);
+        // Entries kept after the task finished expire, so they don't stay in the cache forever
+        long lifespan = expire ? taskTimeoutInSeconds : -1;
+        LockEntry existingLock = (LockEntry) cache.putIfAbsent(cacheKey, myLock, lifespan, TimeUnit.SECONDS);
         if (existingLock != null) {
             // Task likely already in progress. Check if timestamp is not outdated
             int thatTime = existingLock.getTimestamp();
@@ -142,7 +171,7 @@ public class InfinispanClusterProvider implements ClusterProvider {
                 if (logger.isTraceEnabled()) {
                     logger.tracef("Task %s outdated when in progress by node %s. Will try to replace task with our node %s", cacheKey, existingLock.getNode(), myLock.getNode());
                 }
-                boolean replaced = cache.replace(cacheKey, existingLock, myLock);
+                boolean replaced = cache.replace(cacheKey, existingLock, myLock, lifespan, TimeUnit.SECONDS);
                 if (!replaced) {
                     if (logger.isTraceEnabled()) {
                         logger.tracef("Failed to replace the task %s. Other thread replaced in the meantime. Ignoring task.", cacheKey);
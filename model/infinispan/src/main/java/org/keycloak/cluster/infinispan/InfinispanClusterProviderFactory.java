@@ -19,11 +19,11 @@ package org.keycloak.cluster.infinispan;
 
 import java.io.Serializable;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -60,7 +60,8 @@ public class InfinispanClusterProviderFactory implements ClusterProviderFactory
 
     private volatile Cache<String, Serializable> workCache;
 
-    private Map<String, ClusterListener> listeners = new HashMap<>();
+    // Listeners are registered lazily on request threads and read on Infinispan listener threads
+    private final Map<String, ClusterListener> listeners = new ConcurrentHashMap<>();
 
     @Override
     public ClusterProvider create(KeycloakSession session) {
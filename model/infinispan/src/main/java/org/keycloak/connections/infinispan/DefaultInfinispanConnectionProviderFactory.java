@@ -149,6 +149,13 @@ public class DefaultInfinispanConnectionProviderFactory implements InfinispanCon
         cacheManager.defineConfiguration(InfinispanConnectionProvider.OFFLINE_SESSION_CACHE_NAME, sessionCacheConfiguration);
         cacheManager.defineConfiguration(InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME, sessionCacheConfiguration);
 
+        // Session indexes have same mode and owners as sessions. Entries of single client are grouped, so they can be looked up together
+        ConfigurationBuilder sessionIndexConfigBuilder = new ConfigurationBuilder().read(sessionCacheConfiguration);
+        sessionIndexConfigBuilder.clustering().hash().groups().enabled();
+        Configuration sessionIndexCacheConfiguration = sessionIndexConfigBuilder.build();
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.SESSION_INDEX_CACHE_NAME, sessionIndexCacheConfiguration);
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.OFFLINE_SESSION_INDEX_CACHE_NAME, sessionIndexCacheConfiguration);
+
         ConfigurationBuilder replicationConfigBuilder = new ConfigurationBuilder();
         if (clustered) {
             replicationConfigBuilder.clustering().cacheMode(async ? CacheMode.REPL_ASYNC : CacheMode.REPL_SYNC);
@@ -30,6 +30,8 @@ public interface InfinispanConnectionProvider extends Provider {
     static final String USER_CACHE_NAME = "users";
     static final String SESSION_CACHE_NAME = "sessions";
     static final String OFFLINE_SESSION_CACHE_NAME = "offlineSessions";
+    static final String SESSION_INDEX_CACHE_NAME = "sessionIndexes";
+    static final String OFFLINE_SESSION_INDEX_CACHE_NAME = "offlineSessionIndexes";
     static final String LOGIN_FAILURE_CACHE_NAME = "loginFailures";
     static final String WORK_CACHE_NAME = "work";
 
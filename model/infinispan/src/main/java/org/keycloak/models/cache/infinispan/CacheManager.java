@@ -1,13 +1,18 @@
 package org.keycloak.models.cache.infinispan;
 
 import org.infinispan.Cache;
+import org.infinispan.context.Flag;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryInvalidated;
 import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
 import org.infinispan.notifications.cachelistener.event.CacheEntryInvalidatedEvent;
 import org.jboss.logging.Logger;
-import org.keycloak.models.cache.infinispan.entities.AbstractRevisioned;
+import org.keycloak.cluster.ClusterEvent;
+import org.keycloak.cluster.ClusterListener;
+import org.keycloak.cluster.ClusterProvider;
+import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
+import org.keycloak.models.utils.KeycloakModelUtils;
 
 import java.util.HashSet;
 import java.util.Iterator;
@@ -16,6 +21,13 @@ import java.util.Set;
 import java.util.function.Predicate;
 
 /**
+ * Invalidations of a transaction are sent to all cluster nodes as one {@link InvalidationEvent} through
+ * {@link ClusterProvider}. Each node then removes the keys from its local cache and bumps their revisions in its
+ * local revisions cache, so no invalidation messages are sent per key.
+ *
+ * Adding objects to the cache doesn't lock. An object which is invalidated concurrently with being added may end up in
+ * the cache, but it is never returned by {@link #get(String, Class)} as its revision is lower than the current one.
+ *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
@@ -24,6 +36,7 @@ public abstract class CacheManager {
     protected final Cache<String, Long> revisions;
     protected final Cache<String, Revisioned> cache;
     protected final UpdateCounter counter = new UpdateCounter();
+    protected final String id = KeycloakModelUtils.generateId();
 
     public CacheManager(Cache<String, Revisioned> cache, Cache<String, Long> revisions) {
         this.cache = cache;
@@ -31,6 +44,22 @@ public abstract class CacheManager {
         this.cache.addListener(this);
     }
 
+    /**
+     * @return key under which invalidation events of this cache are sent through {@link ClusterProvider}
+     */
+    protected abstract String getInvalidationEventKey();
+
+    public void registerInvalidationListener(KeycloakSession session) {
+        session.getProvider(ClusterProvider.class).registerListener(getInvalidationEventKey(), new ClusterListener() {
+
+            @Override
+            public void run(ClusterEvent event) {
+                invalidationEventReceived((InvalidationEvent) event);
+            }
+
+        });
+    }
+
     public Cache<String, Revisioned> getCache() {
         return cache;
     }
@@ -44,21 +73,9 @@ public abstract class CacheManager {
         if (revision == null) {
             revision = counter.current();
         }
-        // if you do cache.remove() on node 1 and the entry doesn't exist on node 2, node 2 never receives a invalidation event
-        // so, we do this to force this.
-        String invalidationKey = "invalidation.key" + id;
-        cache.putForExternalRead(invalidationKey, new AbstractRevisioned(-1L, invalidationKey));
         return revision;
     }
 
-    public void endRevisionBatch() {
-        try {
-            revisions.endBatch(true);
-        } catch (Exception e) {
-        }
-
-    }
-
     public <T> T get(String id, Class<T> type) {
         Revisioned o = (Revisioned)cache.get(id);
         if (o == null) {
@@ -77,64 +94,65 @@ public abstract class CacheManager {
         return o != null && type.isInstance(o) ? type.cast(o) : null;
     }
 
-    public Object invalidateObject(String id) {
-        Revisioned removed = (Revisioned)cache.remove(id);
-        // if you do cache.remove() on node 1 and the entry doesn't exist on node 2, node 2 never receives a invalidation event
-        // so, we do this to force the event.
-        cache.remove("invalidation.key" + id);
-        bumpVersion(id);
-        return removed;
+    /**
+     * Sends invalidations to all cluster nodes including this one. The event is processed synchronously on this node.
+     */
+    public void sendInvalidationEvent(KeycloakSession session, Set<String> invalidations) {
+        if (invalidations.isEmpty()) return;
+        session.getProvider(ClusterProvider.class).notify(getInvalidationEventKey(), new InvalidationEvent(id, invalidations));
+    }
+
+    protected void invalidationEventReceived(InvalidationEvent event) {
+        boolean local = id.equals(event.getSender());
+        for (String key : event.getIds()) {
+            Object removed = cache.getAdvancedCache().withFlags(Flag.CACHE_MODE_LOCAL).remove(key);
+            bumpVersion(key);
+
+            // Sender already included dependent objects it had cached, other nodes may have cached different ones
+            if (!local && removed != null) {
+                Predicate<Map.Entry<String, Revisioned>> predicate = getInvalidationPredicate(removed);
+                if (predicate != null) runEvictions(predicate);
+            }
+        }
     }
 
     protected void bumpVersion(String id) {
         long next = counter.next();
-        Object rev = revisions.put(id, next);
+        revisions.put(id, next);
     }
 
     public void addRevisioned(Revisioned object, long startupRevision) {
-        //startRevisionBatch();
         String id = object.getId();
-        try {
-            //revisions.getAdvancedCache().lock(id);
-            Long rev = revisions.get(id);
-            if (rev == null) {
-                if (id.endsWith("realm.clients")) RealmCacheManager.logger.trace("addRevisioned rev == null realm.clients");
-                rev = counter.current();
-                revisions.put(id, rev);
-            }
-            revisions.startBatch();
-            if (!revisions.getAdvancedCache().lock(id)) {
-                RealmCacheManager.logger.trace("Could not obtain version lock");
-                return;
-            }
-            rev = revisions.get(id);
-            if (rev == null) {
-                if (id.endsWith("realm.clients")) RealmCacheManager.logger.trace("addRevisioned rev2 == null realm.clients");
-                return;
-            }
-            if (rev > startupRevision) { // revision is ahead transaction start. Other transaction updated in the meantime. Don't cache
-                if (RealmCacheManager.logger.isTraceEnabled()) {
-                    RealmCacheManager.logger.tracev("Skipped cache. Current revision {0}, Transaction start revision {1}", object.getRevision(), startupRevision);
-                }
-                return;
+        Long rev = revisions.get(id);
+        if (rev == null) {
+            rev = counter.current();
+            Long existing = revisions.putIfAbsent(id, rev);
+            if (existing != null) {
+                rev = existing;
             }
-            if (rev.equals(object.getRevision())) {
-                if (id.endsWith("realm.clients")) RealmCacheManager.logger.tracev("adding Object.revision {0} rev {1}", object.getRevision(), rev);
-                cache.putForExternalRead(id, object);
-                return;
+        }
+        if (rev > startupRevision) { // revision is ahead transaction start. Other transaction updated in the meantime. Don't cache
+            if (logger.isTraceEnabled()) {
+                logger.tracev("Skipped cache. Current revision {0}, Transaction start revision {1}", object.getRevision(), startupRevision);
             }
-            if (rev > object.getRevision()) { // revision is ahead, don't cache
-                if (id.endsWith("realm.clients")) RealmCacheManager.logger.trace("addRevisioned revision is ahead realm.clients");
+            return;
+        }
+        if (rev > object.getRevision()) { // revision is ahead, don't cache
+            return;
+        }
+        if (rev < object.getRevision()) {
+            // revisions cache has a lower value than the object.revision, so update revision and add it to cache
+            if (!revisions.replace(id, rev, object.getRevision())) {
                 return;
             }
-            // revisions cache has a lower value than the object.revision, so update revision and add it to cache
-            if (id.endsWith("realm.clients")) RealmCacheManager.logger.tracev("adding Object.revision {0} rev {1}", object.getRevision(), rev);
-            revisions.put(id, object.getRevision());
-            cache.putForExternalRead(id, object);
-        } finally {
-            endRevisionBatch();
         }
+        cache.putForExternalRead(id, object);
 
+        // Invalidated in the meantime. get() won't return it, but remove it so a fresh object can be cached again
+        Long current = revisions.get(id);
+        if (current == null || current > object.getRevision()) {
+            cache.getAdvancedCache().withFlags(Flag.CACHE_MODE_LOCAL).remove(id);
+        }
     }
 
     public void clear() {
@@ -157,35 +175,14 @@ public abstract class CacheManager {
 
     @CacheEntryInvalidated
     public void cacheInvalidated(CacheEntryInvalidatedEvent<String, Object> event) {
-        if (event.isPre()) {
+        if (!event.isPre()) {
             String key = event.getKey();
-            if (key.startsWith("invalidation.key")) {
-                // if you do cache.remove() on node 1 and the entry doesn't exist on node 2, node 2 never receives a invalidation event
-                // so, we do this to force this.
-                String bump = key.substring("invalidation.key".length());
-                RealmCacheManager.logger.tracev("bumping invalidation key {0}", bump);
-                bumpVersion(bump);
-                return;
-            }
-
-        } else {
-        //if (!event.isPre()) {
-            String key = event.getKey();
-            if (key.startsWith("invalidation.key")) {
-                // if you do cache.remove() on node 1 and the entry doesn't exist on node 2, node 2 never receives a invalidation event
-                // so, we do this to force this.
-                String bump = key.substring("invalidation.key".length());
-                bumpVersion(bump);
-                RealmCacheManager.logger.tracev("bumping invalidation key {0}", bump);
-                return;
-            }
             bumpVersion(key);
             Object object = event.getValue();
             if (object != null) {
-                bumpVersion(key);
                 Predicate<Map.Entry<String, Revisioned>> predicate = getInvalidationPredicate(object);
                 if (predicate != null) runEvictions(predicate);
-                RealmCacheManager.logger.tracev("invalidating: {0}" + object.getClass().getName());
+                logger.tracev("invalidating: {0}", object.getClass().getName());
             }
         }
     }
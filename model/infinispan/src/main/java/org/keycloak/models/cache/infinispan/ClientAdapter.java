@@ -364,10 +364,8 @@ public class ClientAdapter implements ClientModel {
 
     @Override
     public ProtocolMapperModel getProtocolMapperById(String id) {
-        for (ProtocolMapperModel mapping : cached.getProtocolMappers()) {
-            if (mapping.getId().equals(id)) return mapping;
-        }
-        return null;
+        if (isUpdated()) return updated.getProtocolMapperById(id);
+        return cached.getProtocolMapperById(id);
     }
 
     @Override
@@ -108,10 +108,8 @@ public class ClientTemplateAdapter implements ClientTemplateModel {
 
     @Override
     public ProtocolMapperModel getProtocolMapperById(String id) {
-        for (ProtocolMapperModel mapping : cached.getProtocolMappers()) {
-            if (mapping.getId().equals(id)) return mapping;
-        }
-        return null;
+        if (isUpdated()) return updated.getProtocolMapperById(id);
+        return cached.getProtocolMapperById(id);
     }
 
     @Override
@@ -49,7 +49,9 @@ public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFa
                 if (realmCache == null) {
                     Cache<String, Revisioned> cache = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.REALM_CACHE_NAME);
                     Cache<String, Long> revisions = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.VERSION_CACHE_NAME);
-                    realmCache = new RealmCacheManager(cache, revisions);
+                    RealmCacheManager manager = new RealmCacheManager(cache, revisions);
+                    manager.registerInvalidationListener(session);
+                    realmCache = manager;
                 }
             }
         }
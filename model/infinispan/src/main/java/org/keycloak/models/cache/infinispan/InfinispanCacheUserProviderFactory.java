@@ -56,7 +56,9 @@ public class InfinispanCacheUserProviderFactory implements CacheUserProviderFact
                 if (userCache == null) {
                     Cache<String, Revisioned> cache = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.USER_CACHE_NAME);
                     Cache<String, Long> revisions = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.VERSION_CACHE_NAME);
-                    userCache = new UserCacheManager(cache, revisions);
+                    UserCacheManager manager = new UserCacheManager(cache, revisions);
+                    manager.registerInvalidationListener(session);
+                    userCache = manager;
                 }
             }
         }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.keycloak.models.cache.infinispan;
+
+import org.keycloak.cluster.ClusterEvent;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * All cache keys invalidated by one transaction. Sent to every cluster node as single message.
+ */
+public class InvalidationEvent implements ClusterEvent {
+
+    private final String sender;
+    private final Set<String> ids;
+
+    public InvalidationEvent(String sender, Set<String> ids) {
+        this.sender = sender;
+        this.ids = new HashSet<>(ids);
+    }
+
+    /**
+     * @return id of the {@link CacheManager} which sent the event
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    public Set<String> getIds() {
+        return ids;
+    }
+
+}
@@ -39,10 +39,6 @@ public class RealmAdapter implements RealmModel {
     protected RealmCacheSession cacheSession;
     protected RealmModel updated;
     protected RealmCache cache;
-    protected volatile transient PublicKey publicKey;
-    protected volatile transient PrivateKey privateKey;
-    protected volatile transient Key codeSecretKey;
-    protected volatile transient X509Certificate certificate;
 
     public RealmAdapter(CachedRealm cached, RealmCacheSession cacheSession) {
         this.cached = cached;
@@ -429,16 +425,11 @@ public class RealmAdapter implements RealmModel {
     @Override
     public PublicKey getPublicKey() {
         if (isUpdated()) return updated.getPublicKey();
-        if (publicKey != null) return publicKey;
-        publicKey = cached.getPublicKey();
-        if (publicKey != null) return publicKey;
-        publicKey = KeycloakModelUtils.getPublicKey(getPublicKeyPem());
-        return publicKey;
+        return cached.getPublicKey();
     }
 
     @Override
     public void setPublicKey(PublicKey publicKey) {
-        this.publicKey = publicKey;
         String publicKeyPem = KeycloakModelUtils.getPemFromKey(publicKey);
         setPublicKeyPem(publicKeyPem);
     }
@@ -446,16 +437,11 @@ public class RealmAdapter implements RealmModel {
     @Override
     public X509Certificate getCertificate() {
         if (isUpdated()) return updated.getCertificate();
-        if (certificate != null) return certificate;
-        certificate = cached.getCertificate();
-        if (certificate != null) return certificate;
-        certificate = KeycloakModelUtils.getCertificate(getCertificatePem());
-        return certificate;
+        return cached.getCertificate();
     }
 
     @Override
     public void setCertificate(X509Certificate certificate) {
-        this.certificate = certificate;
         String certPem = KeycloakModelUtils.getPemFromCertificate(certificate);
         setCertificatePem(certPem);
     }
@@ -476,20 +462,11 @@ public class RealmAdapter implements RealmModel {
     @Override
     public PrivateKey getPrivateKey() {
         if (isUpdated()) return updated.getPrivateKey();
-        if (privateKey != null) {
-            return privateKey;
-        }
-        privateKey = cached.getPrivateKey();
-        if (privateKey != null) {
-            return privateKey;
-        }
-        privateKey = KeycloakModelUtils.getPrivateKey(getPrivateKeyPem());
-        return privateKey;
+        return cached.getPrivateKey();
     }
 
     @Override
     public void setPrivateKey(PrivateKey privateKey) {
-        this.privateKey = privateKey;
         String privateKeyPem = KeycloakModelUtils.getPemFromKey(privateKey);
         setPrivateKeyPem(privateKeyPem);
     }
@@ -501,10 +478,8 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public Key getCodeSecretKey() {
-        if (codeSecretKey == null) {
-            codeSecretKey = KeycloakModelUtils.getSecretKey(getCodeSecret());
-        }
-        return codeSecretKey;
+        if (isUpdated()) return updated.getCodeSecretKey();
+        return cached.getCodeSecretKey();
     }
 
     @Override
@@ -556,6 +531,11 @@ public class RealmAdapter implements RealmModel {
         return cacheSession.getRoleById(id, this);
      }
 
+    @Override
+    public RoleClosure getRoleClosure(Collection<RoleModel> roles) {
+        return cacheSession.getRoleClosure(this, roles);
+    }
+
     @Override
     public List<GroupModel> getDefaultGroups() {
         if (isUpdated()) return updated.getDefaultGroups();
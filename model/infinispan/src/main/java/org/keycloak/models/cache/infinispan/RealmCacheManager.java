@@ -46,10 +46,17 @@ public class RealmCacheManager extends CacheManager {
 
     protected static final Logger logger = Logger.getLogger(RealmCacheManager.class);
 
+    public static final String INVALIDATION_EVENT_KEY = "realm-cache-invalidations";
+
     public RealmCacheManager(Cache<String, Revisioned> cache, Cache<String, Long> revisions) {
         super(cache, revisions);
     }
 
+    @Override
+    protected String getInvalidationEventKey() {
+        return INVALIDATION_EVENT_KEY;
+    }
+
 
     public void realmInvalidation(String id, Set<String> invalidations) {
         Predicate<Map.Entry<String, Revisioned>> predicate = getRealmInvalidationPredicate(id);
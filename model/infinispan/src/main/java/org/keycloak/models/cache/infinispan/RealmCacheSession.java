@@ -26,6 +26,7 @@ import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakTransaction;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProvider;
+import org.keycloak.models.RoleClosure;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.cache.infinispan.entities.CachedClient;
@@ -35,11 +36,13 @@ import org.keycloak.models.cache.infinispan.entities.CachedGroup;
 import org.keycloak.models.cache.infinispan.entities.CachedRealm;
 import org.keycloak.models.cache.infinispan.entities.CachedRealmRole;
 import org.keycloak.models.cache.infinispan.entities.CachedRole;
+import org.keycloak.models.cache.infinispan.entities.CachedRoleClosure;
 import org.keycloak.models.cache.infinispan.entities.ClientListQuery;
 import org.keycloak.models.cache.infinispan.entities.RealmListQuery;
 import org.keycloak.models.cache.infinispan.entities.RoleListQuery;
 import org.keycloak.models.utils.KeycloakModelUtils;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -98,6 +101,8 @@ import java.util.Set;
  * Groups and Roles:
  * - roles are tricky because of composites.  Composite lists are cached too.  So, when a role is removed
  * we also iterate and invalidate any role or group that contains that role being removed.
+ * - the composite role closure of a realm is cached as a single entry which contains all roles of the realm.  It is
+ * invalidated whenever any role of the realm is added, updated or removed.
  *
  * - any relationship should be resolved from session.realms().  For example if JPA.getClientByClientId() is invoked,
  *  JPA should find the id of the client and then call session.realms().getClientById().  THis is to ensure that the cached
@@ -111,6 +116,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     public static final String REALM_CLIENTS_QUERY_SUFFIX = ".realm.clients";
     public static final String ROLES_QUERY_SUFFIX = ".roles";
     public static final String ROLE_BY_NAME_QUERY_SUFFIX = ".role.by-name";
+    public static final String ROLE_CLOSURE_QUERY_SUFFIX = ".role.closure";
     protected RealmCacheManager cache;
     protected KeycloakSession session;
     protected RealmProvider delegate;
@@ -236,7 +242,10 @@ public class RealmCacheSession implements CacheRealmProvider {
     private void invalidateRole(String id) {
         invalidations.add(id);
         RoleAdapter adapter = managedRoles.get(id);
-        if (adapter != null) adapter.invalidate();
+        if (adapter != null) {
+            adapter.invalidate();
+            invalidations.add(getRoleClosureCacheKey(adapter.realm.getId()));
+        }
     }
 
     @Override
@@ -252,9 +261,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     }
 
     protected void runInvalidations() {
-        for (String id : invalidations) {
-            cache.invalidateObject(id);
-        }
+        cache.sendInvalidationEvent(session, invalidations);
     }
 
     private KeycloakTransaction getPrepareTransaction() {
@@ -311,27 +318,19 @@ public class RealmCacheSession implements CacheRealmProvider {
 
             @Override
             public void commit() {
-                try {
-                    if (delegate == null) return;
-                    if (clearAll) {
-                        cache.clear();
-                    }
-                    runInvalidations();
-                    transactionActive = false;
-                } finally {
-                    cache.endRevisionBatch();
+                if (delegate == null) return;
+                if (clearAll) {
+                    cache.clear();
                 }
+                runInvalidations();
+                transactionActive = false;
             }
 
             @Override
             public void rollback() {
-                try {
-                    setRollbackOnly = true;
-                    runInvalidations();
-                    transactionActive = false;
-                } finally {
-                    cache.endRevisionBatch();
-                }
+                setRollbackOnly = true;
+                runInvalidations();
+                transactionActive = false;
             }
 
             @Override
@@ -439,7 +438,7 @@ public class RealmCacheSession implements CacheRealmProvider {
 
         invalidations.add(getRealmClientsQueryCacheKey(id));
         invalidations.add(getRealmByNameCacheKey(realm.getName()));
-        cache.invalidateObject(id);
+        invalidations.add(id);
         cache.realmRemoval(id, invalidations);
         return getDelegate().removeRealm(id);
     }
@@ -492,6 +491,9 @@ public class RealmCacheSession implements CacheRealmProvider {
     private String getRoleByNameCacheKey(String container, String name) {
         return container + "." + name + ROLES_QUERY_SUFFIX;
     }
+    private String getRoleClosureCacheKey(String realm) {
+        return realm + ROLE_CLOSURE_QUERY_SUFFIX;
+    }
 
     @Override
     public List<ClientModel> getClients(RealmModel realm) {
@@ -536,6 +538,7 @@ public class RealmCacheSession implements CacheRealmProvider {
         if (client == null) return false;
         // need to invalidate realm client query cache every time client list is changed
         invalidateClient(realm, client);
+        invalidations.add(getRoleClosureCacheKey(realm.getId()));
         cache.clientRemoval(realm.getId(), id, invalidations);
         for (RoleModel role : client.getRoles()) {
             String roleId = role.getId();
@@ -558,6 +561,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public RoleModel addRealmRole(RealmModel realm, String id, String name) {
         invalidations.add(getRolesCacheKey(realm.getId()));
+        invalidations.add(getRoleClosureCacheKey(realm.getId()));
         // this is needed so that a new role that hasn't been committed isn't cached in a query
         listInvalidations.add(realm.getId());
         RoleModel role = getDelegate().addRealmRole(realm, name);
@@ -645,6 +649,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public RoleModel addClientRole(RealmModel realm, ClientModel client, String id, String name) {
         invalidations.add(getRolesCacheKey(client.getId()));
+        invalidations.add(getRoleClosureCacheKey(realm.getId()));
         // this is needed so that a new role that hasn't been committed isn't cached in a query
         listInvalidations.add(client.getId());
         RoleModel role = getDelegate().addClientRole(realm, client, id, name);
@@ -716,11 +721,33 @@ public class RealmCacheSession implements CacheRealmProvider {
     public boolean removeRole(RealmModel realm, RoleModel role) {
         invalidations.add(getRolesCacheKey(role.getContainer().getId()));
         invalidations.add(getRoleByNameCacheKey(role.getContainer().getId(), role.getName()));
+        invalidations.add(getRoleClosureCacheKey(realm.getId()));
         listInvalidations.add(role.getContainer().getId());
         registerRoleInvalidation(role.getId());
         return getDelegate().removeRole(realm, role);
     }
 
+    public RoleClosure getRoleClosure(RealmModel realm, Collection<RoleModel> roles) {
+        String cacheKey = getRoleClosureCacheKey(realm.getId());
+        boolean queryDB = invalidations.contains(cacheKey) || listInvalidations.contains(realm.getId());
+        if (queryDB) {
+            return RoleClosure.buildFrom(roles);
+        }
+
+        CachedRoleClosure cached = cache.get(cacheKey, CachedRoleClosure.class);
+        if (cached != null) {
+            logger.tracev("getRoleClosure cache hit: {0}", realm.getName());
+            return cached.getClosure();
+        }
+
+        Long loaded = cache.getCurrentRevision(cacheKey);
+        RoleClosure closure = RoleClosure.build(realm);
+        cached = new CachedRoleClosure(loaded, cacheKey, realm, closure);
+        logger.tracev("adding role closure cache miss: realm {0} key {1}", realm.getName(), cacheKey);
+        cache.addRevisioned(cached, startupRevision);
+        return closure;
+    }
+
     @Override
     public RoleModel getRoleById(String id, RealmModel realm) {
         CachedRole cached = cache.get(id, CachedRole.class);
@@ -37,11 +37,18 @@ public class UserCacheManager extends CacheManager {
 
     protected static final Logger logger = Logger.getLogger(UserCacheManager.class);
 
+    public static final String INVALIDATION_EVENT_KEY = "user-cache-invalidations";
+
     protected volatile boolean enabled = true;
     public UserCacheManager(Cache<String, Revisioned> cache, Cache<String, Long> revisions) {
         super(cache, revisions);
     }
 
+    @Override
+    protected String getInvalidationEventKey() {
+        return INVALIDATION_EVENT_KEY;
+    }
+
     @Override
     public void clear() {
         cache.clear();
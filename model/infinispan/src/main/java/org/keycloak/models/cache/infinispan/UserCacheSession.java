@@ -89,9 +89,7 @@ public class UserCacheSession implements CacheUserProvider {
         for (String realmId : realmInvalidations) {
             cache.invalidateRealmUsers(realmId, invalidations);
         }
-        for (String invalidation : invalidations) {
-            cache.invalidateObject(invalidation);
-        }
+        cache.sendInvalidationEvent(session, invalidations);
     }
 
     private KeycloakTransaction getTransaction() {
@@ -378,6 +376,11 @@ public class UserCacheSession implements CacheUserProvider {
         return getDelegate().searchForUser(search, realm, firstResult, maxResults);
     }
 
+    @Override
+    public List<UserModel> searchForUserByPrefix(String search, RealmModel realm, String lastUsername, int maxResults) {
+        return getDelegate().searchForUserByPrefix(search, realm, lastUsername, maxResults);
+    }
+
     @Override
     public List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm) {
         return getDelegate().searchForUserByAttributes(attributes, realm);
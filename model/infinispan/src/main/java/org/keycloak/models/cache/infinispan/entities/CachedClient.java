@@ -56,6 +56,7 @@ public class CachedClient extends AbstractRevisioned implements InRealm {
     protected Set<String> scope = new HashSet<String>();
     protected Set<String> webOrigins = new HashSet<String>();
     protected Set<ProtocolMapperModel> protocolMappers = new HashSet<ProtocolMapperModel>();
+    protected Map<String, ProtocolMapperModel> protocolMappersById = new HashMap<>();
     protected boolean surrogateAuthRequired;
     protected String managementUrl;
     protected String rootUrl;
@@ -97,6 +98,7 @@ public class CachedClient extends AbstractRevisioned implements InRealm {
         }
         for (ProtocolMapperModel mapper : model.getProtocolMappers()) {
             this.protocolMappers.add(mapper);
+            this.protocolMappersById.put(mapper.getId(), mapper);
         }
         surrogateAuthRequired = model.isSurrogateAuthRequired();
         managementUrl = model.getManagementUrl();
@@ -192,6 +194,10 @@ public class CachedClient extends AbstractRevisioned implements InRealm {
         return protocolMappers;
     }
 
+    public ProtocolMapperModel getProtocolMapperById(String id) {
+        return protocolMappersById.get(id);
+    }
+
     public boolean isSurrogateAuthRequired() {
         return surrogateAuthRequired;
     }
@@ -51,6 +51,7 @@ public class CachedClientTemplate extends AbstractRevisioned implements InRealm
     private boolean serviceAccountsEnabled;
     private Set<String> scope = new HashSet<>();
     private Set<ProtocolMapperModel> protocolMappers = new HashSet<ProtocolMapperModel>();
+    private Map<String, ProtocolMapperModel> protocolMappersById = new HashMap<>();
     private Map<String, String> attributes = new HashMap<>();
 
     public CachedClientTemplate(Long revision, RealmModel realm, ClientTemplateModel model) {
@@ -62,6 +63,7 @@ public class CachedClientTemplate extends AbstractRevisioned implements InRealm
         fullScopeAllowed = model.isFullScopeAllowed();
         for (ProtocolMapperModel mapper : model.getProtocolMappers()) {
             this.protocolMappers.add(mapper);
+            this.protocolMappersById.put(mapper.getId(), mapper);
         }
         for (RoleModel role : model.getScopeMappings())  {
             scope.add(role.getId());
@@ -92,6 +94,10 @@ public class CachedClientTemplate extends AbstractRevisioned implements InRealm
         return protocolMappers;
     }
 
+    public ProtocolMapperModel getProtocolMapperById(String id) {
+        return protocolMappersById.get(id);
+    }
+
     public String getProtocol() {
         return protocol;
     }
@@ -36,9 +36,11 @@ import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserFederationMapperModel;
 import org.keycloak.models.UserFederationProviderModel;
 import org.keycloak.models.cache.infinispan.RealmCache;
+import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.common.util.MultivaluedHashMap;
 
 import java.io.Serializable;
+import java.security.Key;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
@@ -93,12 +95,14 @@ public class CachedRealm extends AbstractRevisioned {
     protected PasswordPolicy passwordPolicy;
     protected OTPPolicy otpPolicy;
 
-    protected transient PublicKey publicKey;
+    // Keys are decoded on first use and then shared by all requests until the realm is invalidated
+    protected volatile transient PublicKey publicKey;
     protected String publicKeyPem;
-    protected transient PrivateKey privateKey;
+    protected volatile transient PrivateKey privateKey;
     protected String privateKeyPem;
-    protected transient X509Certificate certificate;
+    protected volatile transient X509Certificate certificate;
     protected String certificatePem;
+    protected volatile transient Key codeSecretKey;
     protected String codeSecret;
 
     protected String loginTheme;
@@ -190,11 +194,8 @@ public class CachedRealm extends AbstractRevisioned {
         otpPolicy = model.getOTPPolicy();
 
         publicKeyPem = model.getPublicKeyPem();
-        publicKey = model.getPublicKey();
         privateKeyPem = model.getPrivateKeyPem();
-        privateKey = model.getPrivateKey();
         certificatePem = model.getCertificatePem();
-        certificate = model.getCertificate();
         codeSecret = model.getCodeSecret();
 
         loginTheme = model.getLoginTheme();
@@ -570,17 +571,33 @@ public class CachedRealm extends AbstractRevisioned {
     }
 
     public PublicKey getPublicKey() {
+        if (publicKey == null && publicKeyPem != null) {
+            publicKey = KeycloakModelUtils.getPublicKey(publicKeyPem);
+        }
         return publicKey;
     }
 
     public PrivateKey getPrivateKey() {
+        if (privateKey == null && privateKeyPem != null) {
+            privateKey = KeycloakModelUtils.getPrivateKey(privateKeyPem);
+        }
         return privateKey;
     }
 
     public X509Certificate getCertificate() {
+        if (certificate == null && certificatePem != null) {
+            certificate = KeycloakModelUtils.getCertificate(certificatePem);
+        }
         return certificate;
     }
 
+    public Key getCodeSecretKey() {
+        if (codeSecretKey == null && codeSecret != null) {
+            codeSecretKey = KeycloakModelUtils.getSecretKey(codeSecret);
+        }
+        return codeSecretKey;
+    }
+
     public Set<UserFederationMapperModel> getUserFederationMapperSet() {
         return userFederationMapperSet;
     }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan.entities;
+
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleClosure;
+
+import java.util.Set;
+
+/**
+ * Cached composite role graph of a realm. It is a {@link RoleQuery} over all roles of the realm, so any role
+ * invalidation evicts it.
+ */
+public class CachedRoleClosure extends AbstractRevisioned implements RoleQuery {
+    private final String realm;
+    private final RoleClosure closure;
+
+    public CachedRoleClosure(Long revision, String id, RealmModel realm, RoleClosure closure) {
+        super(revision, id);
+        this.realm = realm.getId();
+        this.closure = closure;
+    }
+
+    public RoleClosure getClosure() {
+        return closure;
+    }
+
+    @Override
+    public Set<String> getRoles() {
+        return closure.getRoleIds();
+    }
+
+    @Override
+    public String getRealm() {
+        return realm;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedRoleClosure{" +
+                "id='" + getId() + "'" +
+                ", roles=" + closure.size() +
+                '}';
+    }
+}
@@ -37,10 +37,13 @@ import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexKey;
 import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
 import org.keycloak.models.sessions.infinispan.stream.ClientInitialAccessPredicate;
 import org.keycloak.models.sessions.infinispan.stream.ClientSessionPredicate;
 import org.keycloak.models.sessions.infinispan.stream.Comparators;
+import org.keycloak.models.sessions.infinispan.stream.SessionIndexPredicate;
 import org.keycloak.models.sessions.infinispan.stream.Mappers;
 import org.keycloak.models.sessions.infinispan.stream.SessionPredicate;
 import org.keycloak.models.sessions.infinispan.stream.UserLoginFailurePredicate;
@@ -71,14 +74,31 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     protected final Cache<String, SessionEntity> sessionCache;
     protected final Cache<String, SessionEntity> offlineSessionCache;
     protected final Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache;
+    protected final Cache<SessionIndexKey, SessionIndexEntity> sessionIndexCache;
+    protected final Cache<SessionIndexKey, SessionIndexEntity> offlineSessionIndexCache;
     protected final InfinispanKeycloakTransaction tx;
+    protected final boolean loadOfflineSessionsOnMiss;
 
     public InfinispanUserSessionProvider(KeycloakSession session, Cache<String, SessionEntity> sessionCache, Cache<String, SessionEntity> offlineSessionCache,
-                                         Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache) {
+                                         Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache,
+                                         Cache<SessionIndexKey, SessionIndexEntity> sessionIndexCache, Cache<SessionIndexKey, SessionIndexEntity> offlineSessionIndexCache) {
+        this(session, sessionCache, offlineSessionCache, loginFailureCache, sessionIndexCache, offlineSessionIndexCache, false);
+    }
+
+    /**
+     * @param loadOfflineSessionsOnMiss true if offline sessions are not yet loaded from persistent storage, so missing offline userSession should be loaded from persister
+     */
+    public InfinispanUserSessionProvider(KeycloakSession session, Cache<String, SessionEntity> sessionCache, Cache<String, SessionEntity> offlineSessionCache,
+                                         Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache,
+                                         Cache<SessionIndexKey, SessionIndexEntity> sessionIndexCache, Cache<SessionIndexKey, SessionIndexEntity> offlineSessionIndexCache,
+                                         boolean loadOfflineSessionsOnMiss) {
         this.session = session;
         this.sessionCache = sessionCache;
         this.offlineSessionCache = offlineSessionCache;
         this.loginFailureCache = loginFailureCache;
+        this.sessionIndexCache = sessionIndexCache;
+        this.offlineSessionIndexCache = offlineSessionIndexCache;
+        this.loadOfflineSessionsOnMiss = loadOfflineSessionsOnMiss;
         this.tx = new InfinispanKeycloakTransaction();
 
         session.getTransaction().enlistAfterCompletion(tx);
@@ -88,6 +108,51 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         return offline ? offlineSessionCache : sessionCache;
     }
 
+    protected Cache<SessionIndexKey, SessionIndexEntity> getIndexCache(boolean offline) {
+        return offline ? offlineSessionIndexCache : sessionIndexCache;
+    }
+
+    /**
+     * Returns ids of client sessions of the client referenced by the index. The index may contain ids of sessions which were
+     * not replicated to this node yet, so callers must always check the session itself.
+     */
+    protected Set<String> getIndexedClientSessionIds(RealmModel realm, ClientModel client, boolean offline) {
+        Cache<SessionIndexKey, SessionIndexEntity> indexCache = getIndexCache(offline);
+
+        Set<String> ids = new HashSet<>();
+        if (indexCache.getCacheConfiguration().clustering().hash().groups().enabled()) {
+            for (SessionIndexKey key : indexCache.getAdvancedCache().getGroup(SessionIndexKey.clientGroup(realm.getId(), client.getId())).keySet()) {
+                ids.add(key.getSessionId());
+            }
+        } else {
+            // Index cache configured without grouping, for example in the server subsystem
+            Iterator<SessionIndexKey> itr = indexCache.entrySet().stream().filter(SessionIndexPredicate.create(realm.getId()).client(client.getId())).map(Mappers.sessionIndexKey()).iterator();
+            while (itr.hasNext()) {
+                ids.add(itr.next().getSessionId());
+            }
+        }
+        return ids;
+    }
+
+    protected void indexClientSession(ClientSessionEntity entity, boolean offline) {
+        tx.addToIndex(getIndexCache(offline), SessionIndexKey.client(entity.getRealm(), entity.getClient(), entity.getId()));
+    }
+
+    protected void unindexClientSession(ClientSessionEntity entity, boolean offline) {
+        tx.removeFromIndex(getIndexCache(offline), SessionIndexKey.client(entity.getRealm(), entity.getClient(), entity.getId()));
+    }
+
+    protected void unindexClientSession(String clientSessionId, boolean offline) {
+        Cache<String, SessionEntity> cache = getCache(offline);
+        SessionEntity entity = cache.get(clientSessionId);
+        if (entity == null) {
+            entity = (SessionEntity) tx.get(cache, clientSessionId);
+        }
+        if (entity instanceof ClientSessionEntity) {
+            unindexClientSession((ClientSessionEntity) entity, offline);
+        }
+    }
+
     @Override
     public ClientSessionModel createClientSession(RealmModel realm, ClientModel client) {
         String id = KeycloakModelUtils.generateId();
@@ -100,6 +165,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
 
         tx.put(sessionCache, id, entity);
+        indexClientSession(entity, false);
 
         ClientSessionAdapter wrap = wrap(realm, entity, false);
         wrap.setNote(ClientSessionModel.ACTION_KEY, KeycloakModelUtils.generateCodeSecret());
@@ -194,9 +260,28 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public List<UserSessionModel> getUserSessions(final RealmModel realm, UserModel user) {
+        // Used to logout the user, so it must not miss any session. Hence it doesn't rely on the index
         return getUserSessions(realm, UserSessionPredicate.create(realm.getId()).user(user.getId()), false);
     }
 
+    protected List<ClientSessionEntity> getClientSessionEntities(RealmModel realm, ClientModel client, boolean offline) {
+        Cache<String, SessionEntity> cache = getCache(offline);
+
+        List<ClientSessionEntity> entities = new LinkedList<>();
+        Set<String> ids = getIndexedClientSessionIds(realm, client, offline);
+        if (ids.isEmpty()) {
+            return entities;
+        }
+
+        // Read in bulk, so the owners of the sessions are contacted once
+        for (SessionEntity entity : cache.getAdvancedCache().getAll(ids).values()) {
+            if (entity instanceof ClientSessionEntity && client.getId().equals(((ClientSessionEntity) entity).getClient())) {
+                entities.add((ClientSessionEntity) entity);
+            }
+        }
+        return entities;
+    }
+
     @Override
     public List<UserSessionModel> getUserSessionByBrokerUserId(RealmModel realm, String brokerUserId) {
         return getUserSessions(realm, UserSessionPredicate.create(realm.getId()).brokerUserId(brokerUserId), false);
@@ -221,14 +306,13 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     protected List<UserSessionModel> getUserSessions(final RealmModel realm, ClientModel client, int firstResult, int maxResults, final boolean offline) {
         final Cache<String, SessionEntity> cache = getCache(offline);
 
-        Iterator<UserSessionTimestamp> itr = cache.entrySet().stream()
-                .filter(ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession())
-                .map(Mappers.clientSessionToUserSessionTimestamp())
-                .iterator();
-
         Map<String, UserSessionTimestamp> m = new HashMap<>();
-        while(itr.hasNext()) {
-            UserSessionTimestamp next = itr.next();
+        for (ClientSessionEntity clientSession : getClientSessionEntities(realm, client, offline)) {
+            if (clientSession.getUserSession() == null) {
+                continue;
+            }
+
+            UserSessionTimestamp next = new UserSessionTimestamp(clientSession.getUserSession(), clientSession.getTimestamp());
             if (!m.containsKey(next.getUserSessionId()) || m.get(next.getUserSessionId()).getClientSessionTimestamp() < next.getClientSessionTimestamp()) {
                 m.put(next.getUserSessionId(), next);
             }
@@ -263,8 +347,28 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         return getUserSessionsCount(realm, client, false);
     }
 
+    @Override
+    public Map<String, Long> getActiveClientSessionStats(RealmModel realm, boolean offline) {
+        // Same index lookup as getActiveUserSessions, so the stats always agree with it. Every lookup reads only the index
+        // entries of single client
+        Map<String, Long> stats = new HashMap<>();
+        for (ClientModel client : realm.getClients()) {
+            long count = getUserSessionsCount(realm, client, offline);
+            if (count > 0) {
+                stats.put(client.getId(), count);
+            }
+        }
+        return stats;
+    }
+
     protected long getUserSessionsCount(RealmModel realm, ClientModel client, boolean offline) {
-        return getCache(offline).entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession()).map(Mappers.clientSessionToUserSessionId()).distinct().count();
+        Set<String> userSessionIds = new HashSet<>();
+        for (ClientSessionEntity clientSession : getClientSessionEntities(realm, client, offline)) {
+            if (clientSession.getUserSession() != null) {
+                userSessionIds.add(clientSession.getUserSession());
+            }
+        }
+        return userSessionIds.size();
     }
 
     @Override
@@ -311,6 +415,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
             if (entity.getClientSessions() != null) {
                 for (String clientSessionId : entity.getClientSessions()) {
+                    unindexClientSession(clientSessionId, false);
                     tx.remove(sessionCache, clientSessionId);
                 }
             }
@@ -322,7 +427,9 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
         Iterator<Map.Entry<String, SessionEntity>> itr = sessionCache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredDettachedClientSession).requireNullUserSession()).iterator();
         while (itr.hasNext()) {
-            tx.remove(sessionCache, itr.next().getKey());
+            ClientSessionEntity entity = (ClientSessionEntity) itr.next().getValue();
+            tx.remove(sessionCache, entity.getId());
+            unindexClientSession(entity, false);
         }
     }
 
@@ -338,6 +445,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             persister.removeUserSession(entity.getId(), true);
 
             for (String clientSessionId : entity.getClientSessions()) {
+                unindexClientSession(clientSessionId, true);
                 tx.remove(offlineSessionCache, clientSessionId);
             }
         }
@@ -347,11 +455,12 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
         int expiredOffline = Time.currentTime() - realm.getOfflineSessionIdleTimeout();
 
-        Iterator<String> itr = offlineSessionCache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredOffline)).map(Mappers.sessionId()).iterator();
+        Iterator<Map.Entry<String, SessionEntity>> itr = offlineSessionCache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredOffline)).iterator();
         while (itr.hasNext()) {
-            String sessionId = itr.next();
-            tx.remove(offlineSessionCache, sessionId);
-            persister.removeClientSession(sessionId, true);
+            ClientSessionEntity entity = (ClientSessionEntity) itr.next().getValue();
+            tx.remove(offlineSessionCache, entity.getId());
+            unindexClientSession(entity, true);
+            persister.removeClientSession(entity.getId(), true);
         }
     }
 
@@ -374,6 +483,12 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         while (itr.hasNext()) {
             cache.remove(itr.next());
         }
+
+        Cache<SessionIndexKey, SessionIndexEntity> indexCache = getIndexCache(offline);
+        Iterator<SessionIndexKey> indexItr = indexCache.entrySet().stream().filter(SessionIndexPredicate.create(realm.getId())).map(Mappers.sessionIndexKey()).iterator();
+        while (indexItr.hasNext()) {
+            indexCache.remove(indexItr.next());
+        }
     }
 
     @Override
@@ -429,6 +544,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             adapter.setUserSession(null);
 
             tx.remove(cache, entity.getId());
+            unindexClientSession(entity, offline);
         }
     }
 
@@ -475,6 +591,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             tx.replace(cache, entity.getId(), entity);
         }
         tx.remove(cache, clientSession.getId());
+        tx.removeFromIndex(getIndexCache(offline), SessionIndexKey.client(realm.getId(), clientSession.getClient().getId(), clientSession.getId()));
     }
 
 
@@ -497,6 +614,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
         if (sessionEntity.getClientSessions() != null) {
             for (String clientSessionId : sessionEntity.getClientSessions()) {
+                unindexClientSession(clientSessionId, offline);
                 tx.remove(cache, clientSessionId);
             }
         }
@@ -574,7 +692,59 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public UserSessionModel getOfflineUserSession(RealmModel realm, String userSessionId) {
-        return getUserSession(realm, userSessionId, true);
+        UserSessionModel userSession = getUserSession(realm, userSessionId, true);
+        if (userSession == null && loadOfflineSessionsOnMiss) {
+            userSession = loadOfflineUserSession(realm, userSessionId);
+        }
+        return userSession;
+    }
+
+    // Offline sessions are still being loaded from persistent storage. Load this one with it's clientSessions now
+    protected UserSessionModel loadOfflineUserSession(RealmModel realm, String userSessionId) {
+        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+        UserSessionModel persistentSession = persister.loadUserSession(realm, userSessionId, true);
+        if (persistentSession == null) {
+            return null;
+        }
+
+        log.debugf("Offline userSession '%s' loaded from persistent storage on demand", userSessionId);
+
+        return importOfflineUserSession(persistentSession);
+    }
+
+    // Offline sessions are still being loaded from persistent storage. Load those of the user, which are not loaded yet, with their clientSessions now
+    protected List<UserSessionEntity> loadOfflineUserSessions(RealmModel realm, UserModel user, Set<String> loadedUserSessionIds) {
+        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+
+        List<UserSessionEntity> entities = new LinkedList<>();
+        for (UserSessionModel persistentSession : persister.loadUserSessions(realm, user, true)) {
+            String userSessionId = persistentSession.getId();
+            if (loadedUserSessionIds.contains(userSessionId)) {
+                continue;
+            }
+
+            // Already loaded or removed in this transaction
+            if (tx.contains(offlineSessionCache, userSessionId)) {
+                UserSessionEntity entity = (UserSessionEntity) tx.get(offlineSessionCache, userSessionId);
+                if (entity != null) {
+                    entities.add(entity);
+                }
+                continue;
+            }
+
+            log.debugf("Offline userSession '%s' loaded from persistent storage on demand", userSessionId);
+            entities.add(importOfflineUserSession(persistentSession).getEntity());
+        }
+        return entities;
+    }
+
+    private UserSessionAdapter importOfflineUserSession(UserSessionModel persistentSession) {
+        UserSessionAdapter offlineUserSession = importUserSession(persistentSession, true);
+        for (ClientSessionModel persistentClientSession : persistentSession.getClientSessions()) {
+            ClientSessionModel offlineClientSession = importClientSession(persistentClientSession, true);
+            offlineClientSession.setUserSession(offlineUserSession);
+        }
+        return offlineUserSession;
     }
 
     @Override
@@ -603,13 +773,30 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     @Override
     public List<ClientSessionModel> getOfflineClientSessions(RealmModel realm, UserModel user) {
         Iterator<Map.Entry<String, SessionEntity>> itr = offlineSessionCache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).user(user.getId())).iterator();
-        List<ClientSessionModel> clientSessions = new LinkedList<>();
-
-        while(itr.hasNext()) {
+        List<UserSessionEntity> userSessions = new LinkedList<>();
+        Set<String> userSessionIds = new HashSet<>();
+        while (itr.hasNext()) {
             UserSessionEntity entity = (UserSessionEntity) itr.next().getValue();
+            userSessions.add(entity);
+            userSessionIds.add(entity.getId());
+        }
+
+        // Sessions of the user may not be loaded yet. Revoking offline tokens must see all of them, otherwise a revoked session would be loaded later
+        if (loadOfflineSessionsOnMiss) {
+            userSessions.addAll(loadOfflineUserSessions(realm, user, userSessionIds));
+        }
+
+        List<ClientSessionModel> clientSessions = new LinkedList<>();
+        for (UserSessionEntity entity : userSessions) {
             Set<String> currClientSessions = entity.getClientSessions();
+            if (currClientSessions == null) {
+                continue;
+            }
             for (String clientSessionId : currClientSessions) {
                 ClientSessionEntity cls = (ClientSessionEntity) offlineSessionCache.get(clientSessionId);
+                if (cls == null) {
+                    cls = (ClientSessionEntity) tx.get(offlineSessionCache, clientSessionId);
+                }
                 if (cls != null) {
                     clientSessions.add(wrap(realm, cls, true));
                 }
@@ -654,8 +841,9 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         entity.setStarted(userSession.getStarted());
         entity.setLastSessionRefresh(userSession.getLastSessionRefresh());
 
+        // Session loaded from persistent storage on demand may be already in the cache and updated since
         Cache<String, SessionEntity> cache = getCache(offline);
-        tx.put(cache, userSession.getId(), entity);
+        tx.putIfAbsent(cache, userSession.getId(), entity);
         return wrap(userSession.getRealm(), entity, offline);
     }
 
@@ -680,7 +868,8 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         entity.setUserSessionNotes(clientSession.getUserSessionNotes());
 
         Cache<String, SessionEntity> cache = getCache(offline);
-        tx.put(cache, clientSession.getId(), entity);
+        tx.putIfAbsent(cache, clientSession.getId(), entity);
+        indexClientSession(entity, offline);
         return wrap(clientSession.getRealm(), entity, offline);
     }
 
@@ -734,6 +923,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         private boolean active;
         private boolean rollback;
         private Map<Object, CacheTask> tasks = new HashMap<>();
+        private Map<Object, CacheTask> indexTasks = new HashMap<>();
 
         @Override
         public void begin() {
@@ -749,11 +939,17 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             for (CacheTask task : tasks.values()) {
                 task.execute();
             }
+
+            // Index is updated after the sessions themselves, so every session referenced from the index is already in the cache
+            for (CacheTask task : indexTasks.values()) {
+                task.execute();
+            }
         }
 
         @Override
         public void rollback() {
             tasks.clear();
+            indexTasks.clear();
         }
 
         @Override
@@ -782,6 +978,17 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             }
         }
 
+        public void putIfAbsent(Cache cache, Object key, Object value) {
+            log.tracev("Adding cache operation: {0} on {1}", CacheOperation.ADD_IF_ABSENT, key);
+
+            Object taskKey = getTaskKey(cache, key);
+            if (tasks.containsKey(taskKey)) {
+                throw new IllegalStateException("Can't add session: task in progress for session");
+            } else {
+                tasks.put(taskKey, new CacheTask(cache, CacheOperation.ADD_IF_ABSENT, key, value));
+            }
+        }
+
         public void replace(Cache cache, Object key, Object value) {
             log.tracev("Adding cache operation: {0} on {1}", CacheOperation.REPLACE, key);
 
@@ -790,6 +997,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             if (current != null) {
                 switch (current.operation) {
                     case ADD:
+                    case ADD_IF_ABSENT:
                     case REPLACE:
                         current.value = value;
                         return;
@@ -808,6 +1016,18 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             tasks.put(taskKey, new CacheTask(cache, CacheOperation.REMOVE, key, null));
         }
 
+        public void addToIndex(Cache<SessionIndexKey, SessionIndexEntity> cache, SessionIndexKey key) {
+            log.tracev("Adding index operation: {0} on {1}", CacheOperation.ADD, key);
+
+            indexTasks.put(getTaskKey(cache, key), new CacheTask(cache, CacheOperation.ADD, key, SessionIndexEntity.INSTANCE));
+        }
+
+        public void removeFromIndex(Cache<SessionIndexKey, SessionIndexEntity> cache, SessionIndexKey key) {
+            log.tracev("Adding index operation: {0} on {1}", CacheOperation.REMOVE, key);
+
+            indexTasks.put(getTaskKey(cache, key), new CacheTask(cache, CacheOperation.REMOVE, key, null));
+        }
+
         // This is for possibility to lookup for session by id, which was created in this transaction
         public Object get(Cache cache, Object key) {
             Object taskKey = getTaskKey(cache, key);
@@ -815,6 +1035,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             if (current != null) {
                 switch (current.operation) {
                     case ADD:
+                    case ADD_IF_ABSENT:
                     case REPLACE:
                         return current.value;                 }
             }
@@ -822,8 +1043,13 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             return null;
         }
 
+        // Whether the session was added, updated or removed in this transaction
+        public boolean contains(Cache cache, Object key) {
+            return tasks.containsKey(getTaskKey(cache, key));
+        }
+
         private Object getTaskKey(Cache cache, Object key) {
-            if (key instanceof String) {
+            if (key instanceof String || key instanceof SessionIndexKey) {
                 return new StringBuilder(cache.getName())
                         .append("::")
                         .append(key.toString()).toString();
@@ -853,6 +1079,9 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
                     case ADD:
                         cache.put(key, value);
                         break;
+                    case ADD_IF_ABSENT:
+                        cache.putIfAbsent(key, value);
+                        break;
                     case REMOVE:
                         cache.remove(key);
                         break;
@@ -866,7 +1095,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     }
 
     public enum CacheOperation {
-        ADD, REMOVE, REPLACE
+        ADD, ADD_IF_ABSENT, REMOVE, REPLACE
     }
 
 }
@@ -18,6 +18,8 @@
 package org.keycloak.models.sessions.infinispan;
 
 import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.infinispan.Cache;
 import org.jboss.logging.Logger;
@@ -27,27 +29,37 @@ import org.keycloak.models.*;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexKey;
 import org.keycloak.models.sessions.infinispan.initializer.InfinispanUserSessionInitializer;
 import org.keycloak.models.sessions.infinispan.initializer.OfflineUserSessionLoader;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.PostMigrationEvent;
 import org.keycloak.provider.ProviderEvent;
 import org.keycloak.provider.ProviderEventListener;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
 
-public class InfinispanUserSessionProviderFactory implements UserSessionProviderFactory {
+public class InfinispanUserSessionProviderFactory implements UserSessionProviderFactory, ServerInfoAwareProviderFactory {
 
     private static final Logger log = Logger.getLogger(InfinispanUserSessionProviderFactory.class);
 
     private Config.Scope config;
 
+    private volatile KeycloakSessionFactory sessionFactory;
+
+    // Until offline sessions are loaded from persistent storage, missing offline sessions are loaded from persister on demand
+    private volatile boolean offlineSessionsLoaded;
+
     @Override
     public UserSessionProvider create(KeycloakSession session) {
         InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
         Cache<String, SessionEntity> cache = connections.getCache(InfinispanConnectionProvider.SESSION_CACHE_NAME);
         Cache<String, SessionEntity> offlineSessionsCache = connections.getCache(InfinispanConnectionProvider.OFFLINE_SESSION_CACHE_NAME);
         Cache<LoginFailureKey, LoginFailureEntity> loginFailures = connections.getCache(InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME);
+        Cache<SessionIndexKey, SessionIndexEntity> sessionIndexes = connections.getCache(InfinispanConnectionProvider.SESSION_INDEX_CACHE_NAME);
+        Cache<SessionIndexKey, SessionIndexEntity> offlineSessionIndexes = connections.getCache(InfinispanConnectionProvider.OFFLINE_SESSION_INDEX_CACHE_NAME);
 
-        return new InfinispanUserSessionProvider(session, cache, offlineSessionsCache, loginFailures);
+        return new InfinispanUserSessionProvider(session, cache, offlineSessionsCache, loginFailures, sessionIndexes, offlineSessionIndexes, !offlineSessionsLoaded);
     }
 
     @Override
@@ -57,18 +69,40 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
 
     @Override
     public void postInit(final KeycloakSessionFactory factory) {
+        this.sessionFactory = factory;
+
         // Max count of worker errors. Initialization will end with exception when this number is reached
         final int maxErrors = config.getInt("maxErrors", 20);
 
         // Count of sessions to be computed in each segment
         final int sessionsPerSegment = config.getInt("sessionsPerSegment", 100);
 
+        // Load sessions in background thread, so the server is available before loading is finished
+        final boolean loadInBackground = config.getBoolean("loadInBackground", false);
+
         factory.register(new ProviderEventListener() {
 
             @Override
             public void onEvent(ProviderEvent event) {
                 if (event instanceof PostMigrationEvent) {
-                    loadPersistentSessions(factory, maxErrors, sessionsPerSegment);
+                    if (loadInBackground) {
+                        Thread loader = new Thread(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                try {
+                                    loadPersistentSessions(factory, maxErrors, sessionsPerSegment);
+                                } catch (RuntimeException e) {
+                                    log.error("Failed to pre-load userSessions and clientSessions from persistent storage", e);
+                                }
+                            }
+
+                        }, "Offline sessions loader");
+                        loader.setDaemon(true);
+                        loader.start();
+                    } else {
+                        loadPersistentSessions(factory, maxErrors, sessionsPerSegment);
+                    }
                 }
             }
         });
@@ -93,6 +127,7 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
 
         });
 
+        offlineSessionsLoaded = true;
         log.debug("Pre-loading userSessions and clientSessions from persistent storage finished");
     }
 
@@ -100,6 +135,34 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
     public void close() {
     }
 
+    /**
+     * Number of entries held by this node in each of the session caches. Counting is local, so it doesn't slow down the cluster.
+     */
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("offlineSessionsLoaded", String.valueOf(offlineSessionsLoaded));
+
+        KeycloakSessionFactory factory = sessionFactory;
+        if (factory == null) {
+            return info;
+        }
+
+        KeycloakSession session = factory.create();
+        try {
+            InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
+            for (String cacheName : new String[] { InfinispanConnectionProvider.SESSION_CACHE_NAME, InfinispanConnectionProvider.OFFLINE_SESSION_CACHE_NAME,
+                    InfinispanConnectionProvider.SESSION_INDEX_CACHE_NAME, InfinispanConnectionProvider.OFFLINE_SESSION_INDEX_CACHE_NAME,
+                    InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME }) {
+                Cache<Object, Object> cache = connections.getCache(cacheName);
+                info.put(cacheName + ".localEntries", String.valueOf(cache.getAdvancedCache().getDataContainer().size()));
+            }
+        } finally {
+            session.close();
+        }
+        return info;
+    }
+
     @Override
     public String getId() {
         return "infinispan";
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.models.sessions.infinispan.entities;
+
+import org.infinispan.distribution.group.Group;
+
+import java.io.Serializable;
+
+/**
+ * Key of the secondary index entry, which references single client session of the client.
+ *
+ * Every client session has its own entry, so that concurrent logins to the same client never update the same entry. Entries
+ * of the same client share the group returned by {@link #getGroup()}, so they are stored on the same nodes and can be
+ * looked up together.
+ */
+public class SessionIndexKey implements Serializable {
+
+    private final String realm;
+    private final String id;
+    private final String sessionId;
+
+    public SessionIndexKey(String realm, String id, String sessionId) {
+        this.realm = realm;
+        this.id = id;
+        this.sessionId = sessionId;
+    }
+
+    public static SessionIndexKey client(String realm, String clientId, String clientSessionId) {
+        return new SessionIndexKey(realm, clientId, clientSessionId);
+    }
+
+    /**
+     * @return group of all the entries referencing client sessions of the client
+     */
+    public static String clientGroup(String realm, String clientId) {
+        return realm + "::" + clientId;
+    }
+
+    public String getRealm() {
+        return realm;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    @Group
+    public String getGroup() {
+        return clientGroup(realm, id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SessionIndexKey key = (SessionIndexKey) o;
+
+        if (realm != null ? !realm.equals(key.realm) : key.realm != null) return false;
+        if (id != null ? !id.equals(key.id) : key.id != null) return false;
+        if (sessionId != null ? !sessionId.equals(key.sessionId) : key.sessionId != null) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = realm != null ? realm.hashCode() : 0;
+        result = 31 * result + (id != null ? id.hashCode() : 0);
+        result = 31 * result + (sessionId != null ? sessionId.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return realm + "::" + id + "::" + sessionId;
+    }
+}
@@ -91,16 +91,24 @@ public class InfinispanUserSessionInitializer {
     }
 
 
-    private boolean isFinished() {
+    public boolean isFinished() {
         InitializerState state = (InitializerState) workCache.get(stateKey);
         return state != null && state.isFinished();
     }
 
+    /**
+     * @return current state of loading or null if loading was not yet started
+     */
+    public InitializerState getState() {
+        return (InitializerState) workCache.get(stateKey);
+    }
+
 
     private InitializerState getOrCreateInitializerState() {
         InitializerState state = (InitializerState) workCache.get(stateKey);
         if (state == null) {
             final int[] count = new int[1];
+            final List<String> segmentBoundaries = new LinkedList<>();
 
             // Rather use separate transactions for update and counting
 
@@ -116,12 +124,13 @@ public class InfinispanUserSessionInitializer {
                 @Override
                 public void run(KeycloakSession session) {
                     count[0] = sessionLoader.getSessionsCount(session);
+                    segmentBoundaries.addAll(sessionLoader.getSegmentBoundaries(session, sessionsPerSegment));
                 }
 
             });
 
             state = new InitializerState();
-            state.init(count[0], sessionsPerSegment);
+            state.init(count[0], segmentBoundaries);
             saveStateToCache(state);
         }
         return state;
@@ -183,7 +192,7 @@ public class InfinispanUserSessionInitializer {
                 List<Future<WorkerResult>> futures = new LinkedList<>();
                 for (Integer segment : segments) {
                     SessionInitializerWorker worker = new SessionInitializerWorker();
-                    worker.setWorkerEnvironment(segment, sessionsPerSegment, sessionLoader);
+                    worker.setWorkerEnvironment(segment, state.getSegmentFrom(segment), state.getSegmentTo(segment), sessionLoader);
                     if (!distributed) {
                         worker.setEnvironment(workCache, null);
                     }
@@ -31,19 +31,23 @@ public class InitializerState extends SessionEntity {
     private static final Logger log = Logger.getLogger(InitializerState.class);
 
     private int sessionsCount;
+    private List<String> segmentBoundaries = new ArrayList<>();
     private List<Boolean> segments = new ArrayList<>();
     private int lowestUnfinishedSegment = 0;
+    private int finishedSegmentsCount = 0;
 
 
-    public void init(int sessionsCount, int sessionsPerSegment) {
+    /**
+     * @param sessionsCount total count of sessions to load
+     * @param segmentBoundaries first key of each segment. Segment ends before the first key of the next segment
+     */
+    public void init(int sessionsCount, List<String> segmentBoundaries) {
         this.sessionsCount = sessionsCount;
+        this.segmentBoundaries.addAll(segmentBoundaries);
 
-        int segmentsCount = sessionsCount / sessionsPerSegment;
-        if (sessionsPerSegment * segmentsCount < sessionsCount) {
-            segmentsCount = segmentsCount + 1;
-        }
+        int segmentsCount = segmentBoundaries.size();
 
-        log.debugf("sessionsCount: %d, sessionsPerSegment: %d, segmentsCount: %d", sessionsCount, sessionsPerSegment, segmentsCount);
+        log.debugf("sessionsCount: %d, segmentsCount: %d", sessionsCount, segmentsCount);
 
         for (int i=0 ; i<segmentsCount ; i++) {
             segments.add(false);
@@ -77,10 +81,41 @@ public class InitializerState extends SessionEntity {
     }
 
     public void markSegmentFinished(int index) {
-        segments.set(index, true);
+        if (!segments.get(index)) {
+            segments.set(index, true);
+            finishedSegmentsCount++;
+        }
         updateLowestUnfinishedSegment();
     }
 
+    // First key of the segment (inclusive)
+    public String getSegmentFrom(int index) {
+        return segmentBoundaries.get(index);
+    }
+
+    // Last key of the segment (exclusive) or null for the last segment
+    public String getSegmentTo(int index) {
+        return index + 1 < segmentBoundaries.size() ? segmentBoundaries.get(index + 1) : null;
+    }
+
+    public int getSessionsCount() {
+        return sessionsCount;
+    }
+
+    public int getSegmentsCount() {
+        return segments.size();
+    }
+
+    public int getFinishedSegmentsCount() {
+        return finishedSegmentsCount;
+    }
+
+    // Return percentage of finished segments. Segments have roughly the same count of sessions
+    public int getProgress() {
+        int segmentsCount = segments.size();
+        return segmentsCount == 0 ? 100 : finishedSegmentsCount * 100 / segmentsCount;
+    }
+
     private void updateLowestUnfinishedSegment() {
         this.lowestUnfinishedSegment = getNextUnfinishedSegmentFromIndex(lowestUnfinishedSegment);
     }
@@ -98,22 +133,10 @@ public class InitializerState extends SessionEntity {
     }
 
     public String printState() {
-        int finished = 0;
-        int nonFinished = 0;
-
-        int size = segments.size();
-        for (int i=0 ; i<size ; i++) {
-            Boolean done = segments.get(i);
-            if (done) {
-                finished++;
-            } else {
-                nonFinished++;
-            }
-        }
-
         StringBuilder strBuilder = new StringBuilder("sessionsCount: " + sessionsCount)
-                .append(", finished segments count: " + finished)
-                .append(", non-finished segments count: " + nonFinished);
+                .append(", finished segments count: " + finishedSegmentsCount)
+                .append(", non-finished segments count: " + (segments.size() - finishedSegmentsCount))
+                .append(", progress: " + getProgress() + "%");
 
         return strBuilder.toString();
     }
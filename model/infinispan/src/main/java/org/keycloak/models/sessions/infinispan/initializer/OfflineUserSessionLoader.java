@@ -17,14 +17,23 @@
 
 package org.keycloak.models.sessions.infinispan.initializer;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.jboss.logging.Logger;
 import org.keycloak.cluster.ClusterProvider;
 import org.keycloak.models.ClientSessionModel;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.session.UserSessionPersisterProvider;
+import org.keycloak.models.utils.KeycloakModelUtils;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -53,27 +62,150 @@ public class OfflineUserSessionLoader implements SessionLoader {
     }
 
     @Override
-    public boolean loadSessions(KeycloakSession session, int first, int max) {
+    public List<String> getSegmentBoundaries(KeycloakSession session, int sessionsPerSegment) {
+        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+        return persister.loadUserSessionIdBoundaries(sessionsPerSegment, true);
+    }
+
+    @Override
+    public boolean loadSessions(KeycloakSession session, String from, String to) {
         if (log.isTraceEnabled()) {
-            log.tracef("Loading sessions - first: %d, max: %d", first, max);
+            log.tracef("Loading sessions - from: %s, to: %s", from, to);
         }
 
         UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
-        List<UserSessionModel> sessions = persister.loadUserSessions(first, max, true);
+        List<UserSessionModel> sessions = persister.loadUserSessions(from, to, true);
 
+        Map<String, ImportedSession> imported = new HashMap<>();
         for (UserSessionModel persistentSession : sessions) {
 
             // Save to memory/infinispan
             UserSessionModel offlineUserSession = session.sessions().importUserSession(persistentSession, true);
 
+            ImportedSession importedSession = new ImportedSession(persistentSession.getRealm().getId());
             for (ClientSessionModel persistentClientSession : persistentSession.getClientSessions()) {
                 ClientSessionModel offlineClientSession = session.sessions().importClientSession(persistentClientSession, true);
                 offlineClientSession.setUserSession(offlineUserSession);
+                importedSession.clientSessionIds.add(persistentClientSession.getId());
             }
+            imported.put(persistentSession.getId(), importedSession);
+        }
+
+        // Enlisted after the transaction of session provider, so it runs once the imported sessions are in the cache
+        if (!imported.isEmpty()) {
+            session.getTransaction().enlistAfterCompletion(new RevokedSessionsCheck(session.getKeycloakSessionFactory(), from, to, imported));
         }
 
         return true;
     }
 
 
+    /**
+     * Sessions revoked while the segment was being imported would be put back to the cache by the import. Revocation removes the
+     * session from persistent storage before it's removed from the cache. So reading the segment from persistent storage again
+     * after the import finds every such session, either it's not there anymore or its removal from the cache is still to come.
+     */
+    private static class RevokedSessionsCheck implements KeycloakTransaction {
+
+        private final KeycloakSessionFactory sessionFactory;
+        private final String from;
+        private final String to;
+        private final Map<String, ImportedSession> imported;
+        private boolean active;
+        private boolean rollbackOnly;
+
+        private RevokedSessionsCheck(KeycloakSessionFactory sessionFactory, String from, String to, Map<String, ImportedSession> imported) {
+            this.sessionFactory = sessionFactory;
+            this.from = from;
+            this.to = to;
+            this.imported = imported;
+        }
+
+        @Override
+        public void begin() {
+            active = true;
+        }
+
+        @Override
+        public void commit() {
+            active = false;
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+                @Override
+                public void run(KeycloakSession session) {
+                    removeRevokedSessions(session);
+                }
+
+            });
+        }
+
+        private void removeRevokedSessions(KeycloakSession session) {
+            UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+
+            Map<String, UserSessionModel> persisted = new HashMap<>();
+            for (UserSessionModel persistentSession : persister.loadUserSessions(from, to, true)) {
+                persisted.put(persistentSession.getId(), persistentSession);
+            }
+
+            for (Map.Entry<String, ImportedSession> entry : imported.entrySet()) {
+                String userSessionId = entry.getKey();
+                RealmModel realm = session.realms().getRealm(entry.getValue().realmId);
+                if (realm == null) {
+                    continue;
+                }
+
+                UserSessionModel persistentSession = persisted.get(userSessionId);
+                if (persistentSession == null) {
+                    UserSessionModel userSession = session.sessions().getOfflineUserSession(realm, userSessionId);
+                    if (userSession != null) {
+                        log.debugf("Offline userSession '%s' was revoked during loading", userSessionId);
+                        session.sessions().removeOfflineUserSession(realm, userSession);
+                    }
+                    continue;
+                }
+
+                Set<String> revokedClientSessionIds = new HashSet<>(entry.getValue().clientSessionIds);
+                for (ClientSessionModel persistentClientSession : persistentSession.getClientSessions()) {
+                    revokedClientSessionIds.remove(persistentClientSession.getId());
+                }
+                for (String clientSessionId : revokedClientSessionIds) {
+                    if (session.sessions().getOfflineClientSession(realm, clientSessionId) != null) {
+                        log.debugf("Offline clientSession '%s' was revoked during loading", clientSessionId);
+                        session.sessions().removeOfflineClientSession(realm, clientSessionId);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void rollback() {
+            active = false;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return rollbackOnly;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+    }
+
+
+    private static class ImportedSession {
+
+        private final String realmId;
+        private final Set<String> clientSessionIds = new HashSet<>();
+
+        private ImportedSession(String realmId) {
+            this.realmId = realmId;
+        }
+    }
 }
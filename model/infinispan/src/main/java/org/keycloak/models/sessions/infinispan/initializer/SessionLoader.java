@@ -18,6 +18,7 @@
 package org.keycloak.models.sessions.infinispan.initializer;
 
 import java.io.Serializable;
+import java.util.List;
 
 import org.keycloak.models.KeycloakSession;
 
@@ -30,5 +31,9 @@ public interface SessionLoader extends Serializable {
 
     int getSessionsCount(KeycloakSession session);
 
-    boolean loadSessions(KeycloakSession session, int first, int max);
+    // Return first key of each segment. Segments should contain roughly "sessionsPerSegment" sessions
+    List<String> getSegmentBoundaries(KeycloakSession session, int sessionsPerSegment);
+
+    // Load sessions with key from "from" (inclusive) to "to" (exclusive, null for the last segment)
+    boolean loadSessions(KeycloakSession session, String from, String to);
 }
@@ -22,6 +22,8 @@ import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexKey;
 
 import java.io.Serializable;
 import java.util.Map;
@@ -57,6 +59,10 @@ public class Mappers {
         return new ClientSessionToUserSessionIdMapper();
     }
 
+    public static Function<Map.Entry<SessionIndexKey, SessionIndexEntity>, SessionIndexKey> sessionIndexKey() {
+        return new SessionIndexKeyMapper();
+    }
+
     private static class ClientSessionToUserSessionTimestampMapper implements Function<Map.Entry<String, SessionEntity>, UserSessionTimestamp>, Serializable {
         @Override
         public UserSessionTimestamp apply(Map.Entry<String, SessionEntity> entry) {
@@ -102,4 +108,11 @@ public class Mappers {
             return entity.getUserSession();
         }
     }
+
+    private static class SessionIndexKeyMapper implements Function<Map.Entry<SessionIndexKey, SessionIndexEntity>, SessionIndexKey>, Serializable {
+        @Override
+        public SessionIndexKey apply(Map.Entry<SessionIndexKey, SessionIndexEntity> entry) {
+            return entry.getKey();
+        }
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.stream;
+
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexKey;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Matches secondary index entries of the sessions cache by realm and optionally by client
+ */
+public class SessionIndexPredicate implements Predicate<Map.Entry<SessionIndexKey, SessionIndexEntity>>, Serializable {
+
+    private String realm;
+
+    private String client;
+
+    private SessionIndexPredicate(String realm) {
+        this.realm = realm;
+    }
+
+    public static SessionIndexPredicate create(String realm) {
+        return new SessionIndexPredicate(realm);
+    }
+
+    public SessionIndexPredicate client(String client) {
+        this.client = client;
+        return this;
+    }
+
+    @Override
+    public boolean test(Map.Entry<SessionIndexKey, SessionIndexEntity> entry) {
+        SessionIndexKey key = entry.getKey();
+
+        if (!realm.equals(key.getRealm())) {
+            return false;
+        }
+
+        if (client != null && !client.equals(key.getId())) {
+            return false;
+        }
+
+        return true;
+    }
+
+}
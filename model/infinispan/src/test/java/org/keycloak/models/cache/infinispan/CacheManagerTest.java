@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.keycloak.models.cache.infinispan;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.transaction.LockingMode;
+import org.infinispan.transaction.TransactionMode;
+import org.infinispan.transaction.lookup.DummyTransactionManagerLookup;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.models.cache.infinispan.entities.AbstractRevisioned;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Tests revision checks of {@link CacheManager} with local caches configured as in DefaultInfinispanConnectionProviderFactory.
+ */
+public class CacheManagerTest {
+
+    private DefaultCacheManager cacheManager;
+    private UserCacheManager manager;
+
+    @Before
+    public void before() {
+        GlobalConfigurationBuilder gcb = new GlobalConfigurationBuilder();
+        gcb.globalJmxStatistics().allowDuplicateDomains(true);
+        cacheManager = new DefaultCacheManager(gcb.build());
+
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.USER_CACHE_NAME, new ConfigurationBuilder().build());
+
+        ConfigurationBuilder counterConfigBuilder = new ConfigurationBuilder();
+        counterConfigBuilder.invocationBatching().enable()
+                .transaction().transactionMode(TransactionMode.TRANSACTIONAL);
+        counterConfigBuilder.transaction().transactionManagerLookup(new DummyTransactionManagerLookup());
+        counterConfigBuilder.transaction().lockingMode(LockingMode.PESSIMISTIC);
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.VERSION_CACHE_NAME, counterConfigBuilder.build());
+
+        Cache<String, Revisioned> cache = cacheManager.getCache(InfinispanConnectionProvider.USER_CACHE_NAME);
+        Cache<String, Long> revisions = cacheManager.getCache(InfinispanConnectionProvider.VERSION_CACHE_NAME);
+        manager = new UserCacheManager(cache, revisions);
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void addAndGet() {
+        long startupRevision = manager.getCurrentCounter();
+        manager.addRevisioned(new AbstractRevisioned(manager.getCurrentRevision("a"), "a"), startupRevision);
+
+        Assert.assertNotNull(manager.get("a", AbstractRevisioned.class));
+    }
+
+    @Test
+    public void invalidationEvent() {
+        long startupRevision = manager.getCurrentCounter();
+        manager.addRevisioned(new AbstractRevisioned(manager.getCurrentRevision("a"), "a"), startupRevision);
+        manager.addRevisioned(new AbstractRevisioned(manager.getCurrentRevision("b"), "b"), startupRevision);
+
+        manager.invalidationEventReceived(new InvalidationEvent("other-node", new HashSet<>(Arrays.asList("a", "c"))));
+
+        Assert.assertNull(manager.get("a", AbstractRevisioned.class));
+        Assert.assertNull(manager.getCache().get("a"));
+        Assert.assertNotNull(manager.get("b", AbstractRevisioned.class));
+
+        // Object loaded by transaction started before invalidation is not cached
+        manager.addRevisioned(new AbstractRevisioned(manager.getCurrentRevision("c"), "c"), startupRevision);
+        Assert.assertNull(manager.get("c", AbstractRevisioned.class));
+
+        // Transaction started after invalidation caches it again
+        startupRevision = manager.getCurrentCounter();
+        manager.addRevisioned(new AbstractRevisioned(manager.getCurrentRevision("a"), "a"), startupRevision);
+        Assert.assertNotNull(manager.get("a", AbstractRevisioned.class));
+    }
+
+    @Test
+    public void invalidatedWhileLoading() {
+        long startupRevision = manager.getCurrentCounter();
+        AbstractRevisioned loaded = new AbstractRevisioned(manager.getCurrentRevision("a"), "a");
+
+        manager.invalidationEventReceived(new InvalidationEvent("other-node", new HashSet<>(Arrays.asList("a"))));
+
+        manager.addRevisioned(loaded, startupRevision);
+        Assert.assertNull(manager.get("a", AbstractRevisioned.class));
+        Assert.assertNull(manager.getCache().get("a"));
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.cache.infinispan.entities.CachedRealm;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class CachedRealmKeysTest {
+
+    private final Map<String, Object> attributes = new HashMap<String, Object>();
+    private final List<String> keyGetterCalls = new ArrayList<String>();
+
+    private RealmModel database;
+
+    @Before
+    public void before() throws Exception {
+        attributes.put("Id", "test");
+        attributes.put("Name", "test");
+        setKeys(generateKeyPair());
+        attributes.put("CodeSecret", KeycloakModelUtils.generateCodeSecret());
+
+        database = (RealmModel) Proxy.newProxyInstance(CachedRealmKeysTest.class.getClassLoader(), new Class<?>[] { RealmModel.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("getPublicKey") || name.equals("getPrivateKey") || name.equals("getCertificate") || name.equals("getCodeSecretKey")) {
+                    keyGetterCalls.add(name);
+                    if (name.equals("getPublicKey")) return KeycloakModelUtils.getPublicKey((String) attributes.get("PublicKeyPem"));
+                    if (name.equals("getPrivateKey")) return KeycloakModelUtils.getPrivateKey((String) attributes.get("PrivateKeyPem"));
+                    if (name.equals("getCodeSecretKey")) return KeycloakModelUtils.getSecretKey((String) attributes.get("CodeSecret"));
+                    return null;
+                }
+                if (name.startsWith("set") && args != null && args.length == 1) {
+                    attributes.put(name.substring(3), args[0]);
+                    return null;
+                }
+                if (name.startsWith("get") && attributes.containsKey(name.substring(3))) {
+                    return attributes.get(name.substring(3));
+                }
+                Class<?> type = method.getReturnType();
+                if (type == boolean.class) return Boolean.FALSE;
+                if (type == int.class) return 0;
+                if (type == long.class) return 0L;
+                if (Set.class.isAssignableFrom(type)) return new HashSet<Object>();
+                if (Collection.class.isAssignableFrom(type)) return new ArrayList<Object>();
+                if (Map.class.isAssignableFrom(type)) return new HashMap<Object, Object>();
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void keysDecodedOnFirstUse() {
+        CachedRealm cached = new CachedRealm(1L, database);
+        Assert.assertTrue("cached realm must not ask the delegate for decoded keys", keyGetterCalls.isEmpty());
+
+        Assert.assertEquals(attributes.get("PublicKeyPem"), KeycloakModelUtils.getPemFromKey(cached.getPublicKey()));
+        Assert.assertEquals(attributes.get("PrivateKeyPem"), KeycloakModelUtils.getPemFromKey(cached.getPrivateKey()));
+        Assert.assertNotNull(cached.getCodeSecretKey());
+        Assert.assertNull(cached.getCertificate());
+        Assert.assertTrue(keyGetterCalls.isEmpty());
+    }
+
+    @Test
+    public void decodedKeysSharedByAdapters() {
+        CachedRealm cached = new CachedRealm(1L, database);
+        RealmAdapter first = new RealmAdapter(cached, null);
+        RealmAdapter second = new RealmAdapter(cached, null);
+
+        Assert.assertSame(first.getPublicKey(), second.getPublicKey());
+        Assert.assertSame(first.getPrivateKey(), second.getPrivateKey());
+        Assert.assertSame(first.getCodeSecretKey(), second.getCodeSecretKey());
+    }
+
+    @Test
+    public void keysDecodedAgainAfterDeserialization() throws Exception {
+        CachedRealm cached = new CachedRealm(1L, database);
+        cached.getPublicKey();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(cached);
+        out.close();
+        CachedRealm copy = (CachedRealm) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        Assert.assertEquals(cached.getPublicKey(), copy.getPublicKey());
+        Assert.assertEquals(cached.getPrivateKey(), copy.getPrivateKey());
+    }
+
+    @Test
+    public void rotatedKeysNotServedFromCache() throws Exception {
+        CachedRealm cached = new CachedRealm(1L, database);
+        RealmAdapter adapter = new RealmAdapter(cached, null) {
+            @Override
+            protected void getDelegateForUpdate() {
+                if (updated == null) updated = database;
+            }
+        };
+        String oldPublicKeyPem = KeycloakModelUtils.getPemFromKey(adapter.getPublicKey());
+        Object oldCodeSecretKey = adapter.getCodeSecretKey();
+
+        KeyPair rotated = generateKeyPair();
+        adapter.setPublicKey(rotated.getPublic());
+        adapter.setPrivateKey(rotated.getPrivate());
+        adapter.setCodeSecret(KeycloakModelUtils.generateCodeSecret());
+
+        // The adapter that rotated the keys reads them from the delegate
+        Assert.assertEquals(rotated.getPublic(), adapter.getPublicKey());
+        Assert.assertEquals(rotated.getPrivate(), adapter.getPrivateKey());
+        Assert.assertNotEquals(oldCodeSecretKey, adapter.getCodeSecretKey());
+
+        // The revision cached after the invalidation decodes the new keys, the old revision keeps its own
+        CachedRealm reloaded = new CachedRealm(2L, database);
+        Assert.assertEquals(rotated.getPublic(), reloaded.getPublicKey());
+        Assert.assertEquals(rotated.getPrivate(), reloaded.getPrivateKey());
+        Assert.assertEquals(adapter.getCodeSecretKey(), reloaded.getCodeSecretKey());
+        Assert.assertEquals(oldPublicKeyPem, KeycloakModelUtils.getPemFromKey(cached.getPublicKey()));
+    }
+
+    private void setKeys(KeyPair keyPair) {
+        attributes.put("PublicKeyPem", KeycloakModelUtils.getPemFromKey(keyPair.getPublic()));
+        attributes.put("PrivateKeyPem", KeycloakModelUtils.getPemFromKey(keyPair.getPrivate()));
+    }
+
+    private static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        return generator.generateKeyPair();
+    }
+}
@@ -17,6 +17,8 @@
 
 package org.keycloak.models.sessions.infinispan.initializer;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Assert;
@@ -30,7 +32,7 @@ public class InitializerStateTest {
     @Test
     public void testComputationState() {
         InitializerState state = new InitializerState();
-        state.init(28, 5);
+        state.init(28, Arrays.asList("a", "b", "c", "d", "e", "f"));
 
         Assert.assertFalse(state.isFinished());
         List<Integer> segments = state.getUnfinishedSegments(3);
@@ -40,6 +42,8 @@ public class InitializerStateTest {
         state.markSegmentFinished(2);
         segments = state.getUnfinishedSegments(4);
         assertContains(segments, 4, 0, 3, 4, 5);
+        Assert.assertEquals(2, state.getFinishedSegmentsCount());
+        Assert.assertEquals(33, state.getProgress());
 
         state.markSegmentFinished(0);
         state.markSegmentFinished(3);
@@ -51,6 +55,33 @@ public class InitializerStateTest {
         segments = state.getUnfinishedSegments(4);
         Assert.assertTrue(segments.isEmpty());
         Assert.assertTrue(state.isFinished());
+        Assert.assertEquals(100, state.getProgress());
+    }
+
+    @Test
+    public void testSegmentBoundaries() {
+        InitializerState state = new InitializerState();
+        state.init(7, Arrays.asList("a", "d", "g"));
+
+        Assert.assertEquals(3, state.getSegmentsCount());
+        Assert.assertEquals("a", state.getSegmentFrom(0));
+        Assert.assertEquals("d", state.getSegmentTo(0));
+        Assert.assertEquals("g", state.getSegmentFrom(2));
+        Assert.assertNull(state.getSegmentTo(2));
+
+        // Marking same segment twice doesn't count twice
+        state.markSegmentFinished(1);
+        state.markSegmentFinished(1);
+        Assert.assertEquals(1, state.getFinishedSegmentsCount());
+    }
+
+    @Test
+    public void testEmpty() {
+        InitializerState state = new InitializerState();
+        state.init(0, Collections.<String>emptyList());
+
+        Assert.assertTrue(state.isFinished());
+        Assert.assertEquals(100, state.getProgress());
     }
 
     private void assertContains(List<Integer> segments, int expectedLength, int... expected) {
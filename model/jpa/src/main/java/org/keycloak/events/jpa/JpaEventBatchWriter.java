@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.keycloak.events.jpa;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.jboss.logging.Logger;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import javax.persistence.EntityManager;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes events and admin events in the background. Events are put into a bounded queue once the transaction which
+ * produced them is committed, and a single writer thread stores them with JDBC batch inserts in its own transaction,
+ * either once {@code flushSize} events are queued or {@code flushInterval} milliseconds after the first event of the
+ * batch was taken from the queue.
+ *
+ * What happens when the queue is full is controlled by {@link QueueFullPolicy}.
+ */
+public class JpaEventBatchWriter implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(JpaEventBatchWriter.class);
+
+    public enum QueueFullPolicy {
+
+        /**
+         * Caller waits until there is free space in the queue
+         */
+        BLOCK,
+
+        /**
+         * Event is discarded
+         */
+        DROP,
+
+        /**
+         * Event is written by the caller in a separate transaction, once the transaction of the event was committed
+         */
+        SYNC
+
+    }
+
+    private final KeycloakSessionFactory factory;
+    private final String eventInsert;
+    private final String adminEventInsert;
+    private final BlockingQueue<Object> queue;
+    private final int flushSize;
+    private final long flushInterval;
+    private final QueueFullPolicy queueFullPolicy;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+
+    private volatile boolean run = true;
+    private final CountDownLatch shutdownLatch = new CountDownLatch(1);
+
+    public JpaEventBatchWriter(KeycloakSessionFactory factory, String schema, int queueSize, int flushSize, long flushInterval, QueueFullPolicy queueFullPolicy) {
+        this.factory = factory;
+        this.queue = new ArrayBlockingQueue<Object>(queueSize);
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.queueFullPolicy = queueFullPolicy;
+
+        String prefix = schema != null ? schema + "." : "";
+        this.eventInsert = "insert into " + prefix + "EVENT_ENTITY (ID, EVENT_TIME, TYPE, REALM_ID, CLIENT_ID, USER_ID, SESSION_ID, IP_ADDRESS, ERROR, DETAILS_JSON) " +
+                "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        this.adminEventInsert = "insert into " + prefix + "ADMIN_EVENT_ENTITY (ID, ADMIN_EVENT_TIME, REALM_ID, OPERATION_TYPE, AUTH_REALM_ID, AUTH_CLIENT_ID, AUTH_USER_ID, IP_ADDRESS, RESOURCE_PATH, REPRESENTATION, ERROR) " +
+                "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    public void start() {
+        Thread thread = new Thread(this, "Event Store Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops accepting new events and waits until the events already queued are written.
+     */
+    public void shutdown() {
+        run = false;
+        try {
+            if (!shutdownLatch.await(flushInterval + TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS)) {
+                logger.warnf("Event store writer did not finish in time, %d events not written", queue.size());
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        logger.debugf("Event store writer stopped. Written: %d, failed: %d, dropped: %d, delayed: %d", getWritten(), getFailed(), getDropped(), getDelayed());
+    }
+
+    /**
+     * Queues {@link EventEntity} or {@link AdminEventEntity} to be written in the background.
+     *
+     * @return false if the caller needs to write the entity itself
+     */
+    public boolean offer(Object entity) {
+        if (!run) {
+            return false;
+        }
+        if (queue.offer(entity)) {
+            return true;
+        }
+
+        switch (queueFullPolicy) {
+            case DROP:
+                dropped.incrementAndGet();
+                logger.debug("Event queue is full, dropping event");
+                return true;
+            case SYNC:
+                delayed.incrementAndGet();
+                return false;
+            default:
+                delayed.incrementAndGet();
+                try {
+                    while (!queue.offer(entity, 1, TimeUnit.SECONDS)) {
+                        if (!run) {
+                            return false;
+                        }
+                    }
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Object> batch = new ArrayList<Object>(flushSize);
+        try {
+            while (run || !queue.isEmpty()) {
+                try {
+                    Object first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+
+                    long flushAt = System.currentTimeMillis() + flushInterval;
+                    while (batch.size() < flushSize) {
+                        queue.drainTo(batch, flushSize - batch.size());
+                        long wait = flushAt - System.currentTimeMillis();
+                        if (!run || batch.size() >= flushSize || wait <= 0) {
+                            break;
+                        }
+                        Object next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+
+                    write(batch);
+                } catch (InterruptedException e) {
+                    if (!batch.isEmpty()) {
+                        write(batch);
+                    }
+                    run = false;
+                } finally {
+                    batch.clear();
+                }
+            }
+        } finally {
+            shutdownLatch.countDown();
+        }
+    }
+
+    protected void write(final List<Object> batch) {
+        try {
+            KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+
+                @Override
+                public void run(KeycloakSession session) {
+                    EntityManager em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+                    em.unwrap(Session.class).doWork(new Work() {
+
+                        @Override
+                        public void execute(Connection connection) throws SQLException {
+                            insert(connection, batch);
+                        }
+
+                    });
+                }
+
+            });
+            written.addAndGet(batch.size());
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            logger.error("Failed to write " + batch.size() + " events", e);
+        }
+    }
+
+    private void insert(Connection connection, List<Object> batch) throws SQLException {
+        PreparedStatement events = null;
+        PreparedStatement adminEvents = null;
+        try {
+            for (Object o : batch) {
+                if (o instanceof EventEntity) {
+                    if (events == null) {
+                        events = connection.prepareStatement(eventInsert);
+                    }
+                    setParameters(events, (EventEntity) o);
+                    events.addBatch();
+                } else {
+                    if (adminEvents == null) {
+                        adminEvents = connection.prepareStatement(adminEventInsert);
+                    }
+                    setParameters(adminEvents, (AdminEventEntity) o);
+                    adminEvents.addBatch();
+                }
+            }
+
+            if (events != null) {
+                events.executeBatch();
+            }
+            if (adminEvents != null) {
+                adminEvents.executeBatch();
+            }
+        } finally {
+            if (events != null) {
+                events.close();
+            }
+            if (adminEvents != null) {
+                adminEvents.close();
+            }
+        }
+    }
+
+    private static void setParameters(PreparedStatement statement, EventEntity event) throws SQLException {
+        statement.setString(1, event.getId());
+        statement.setLong(2, event.getTime());
+        statement.setString(3, event.getType());
+        statement.setString(4, event.getRealmId());
+        statement.setString(5, event.getClientId());
+        statement.setString(6, event.getUserId());
+        statement.setString(7, event.getSessionId());
+        statement.setString(8, event.getIpAddress());
+        statement.setString(9, event.getError());
+        statement.setString(10, event.getDetailsJson());
+    }
+
+    private static void setParameters(PreparedStatement statement, AdminEventEntity event) throws SQLException {
+        statement.setString(1, event.getId());
+        statement.setLong(2, event.getTime());
+        statement.setString(3, event.getRealmId());
+        statement.setString(4, event.getOperationType());
+        statement.setString(5, event.getAuthRealmId());
+        statement.setString(6, event.getAuthClientId());
+        statement.setString(7, event.getAuthUserId());
+        statement.setString(8, event.getAuthIpAddress());
+        statement.setString(9, event.getResourcePath());
+        statement.setString(10, event.getRepresentation());
+        statement.setString(11, event.getError());
+    }
+
+    /**
+     * @return number of events written to the database
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return number of events lost because the batch they were part of failed to write
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return number of events discarded because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of events which found the queue full and had to wait or were written synchronously
+     */
+    public long getDelayed() {
+        return delayed.get();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+}
@@ -28,10 +28,14 @@ import org.keycloak.events.Event;
 import org.keycloak.events.EventQuery;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventType;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransaction;
 
 import javax.persistence.EntityManager;
 
 import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -45,10 +49,19 @@ public class JpaEventStoreProvider implements EventStoreProvider {
     };
     private static final Logger logger = Logger.getLogger(JpaEventStoreProvider.class);
 
+    private KeycloakSession session;
     private EntityManager em;
+    private JpaEventBatchWriter writer;
+    private PendingEventsTransaction pendingEvents;
 
     public JpaEventStoreProvider(EntityManager em) {
+        this(null, em, null);
+    }
+
+    public JpaEventStoreProvider(KeycloakSession session, EntityManager em, JpaEventBatchWriter writer) {
+        this.session = session;
         this.em = em;
+        this.writer = writer;
     }
 
     @Override
@@ -73,7 +86,7 @@ public class JpaEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(Event event) {
-        em.persist(convertEvent(event));
+        persist(convertEvent(event));
     }
 
     @Override
@@ -98,13 +111,79 @@ public class JpaEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(AdminEvent event, boolean includeRepresentation) {
-        em.persist(convertAdminEvent(event, includeRepresentation));
+        persist(convertAdminEvent(event, includeRepresentation));
     }
 
     @Override
     public void close() {
     }
 
+    private void persist(Object entity) {
+        if (writer == null) {
+            em.persist(entity);
+            return;
+        }
+
+        // Handed to the writer only once the transaction is committed, so events of rolled back transactions are not written
+        if (pendingEvents == null) {
+            pendingEvents = new PendingEventsTransaction();
+            session.getTransaction().enlistAfterCompletion(pendingEvents);
+        }
+        pendingEvents.events.add(entity);
+    }
+
+    /**
+     * Hands events to the writer once the transaction is committed
+     */
+    private class PendingEventsTransaction implements KeycloakTransaction {
+
+        private final List<Object> events = new LinkedList<>();
+        private boolean active;
+        private boolean rollbackOnly;
+
+        @Override
+        public void begin() {
+            active = true;
+        }
+
+        @Override
+        public void commit() {
+            List<Object> rejected = new LinkedList<>();
+            for (Object entity : events) {
+                if (!writer.offer(entity)) {
+                    rejected.add(entity);
+                }
+            }
+            if (!rejected.isEmpty()) {
+                // Queue is full or writer already stopped
+                writer.write(rejected);
+            }
+            events.clear();
+            active = false;
+        }
+
+        @Override
+        public void rollback() {
+            events.clear();
+            active = false;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return rollbackOnly;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+    }
+
     static EventEntity convertEvent(Event event) {
         EventEntity eventEntity = new EventEntity();
         eventEntity.setId(UUID.randomUUID().toString());
@@ -18,7 +18,9 @@
 package org.keycloak.events.jpa;
 
 import org.keycloak.Config;
+import org.jboss.logging.Logger;
 import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.connections.jpa.JpaConnectionProviderFactory;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventStoreProviderFactory;
 import org.keycloak.models.KeycloakSession;
@@ -29,25 +31,54 @@ import org.keycloak.models.KeycloakSessionFactory;
  */
 public class JpaEventStoreProviderFactory implements EventStoreProviderFactory {
 
+    private static final Logger logger = Logger.getLogger(JpaEventStoreProviderFactory.class);
+
     public static final String ID = "jpa";
 
+    private Config.Scope config;
+    private JpaEventBatchWriter writer;
+
     @Override
     public EventStoreProvider create(KeycloakSession session) {
         JpaConnectionProvider connection = session.getProvider(JpaConnectionProvider.class);
-        return new JpaEventStoreProvider(connection.getEntityManager());
+        return new JpaEventStoreProvider(session, connection.getEntityManager(), writer);
     }
 
     @Override
     public void init(Config.Scope config) {
+        this.config = config;
     }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
+        if (config.getBoolean("asyncWrites", false)) {
+            int queueSize = config.getInt("queueSize", 10000);
+            int flushSize = config.getInt("flushSize", 100);
+            long flushInterval = config.getLong("flushInterval", 1000L);
+            JpaEventBatchWriter.QueueFullPolicy queueFullPolicy = JpaEventBatchWriter.QueueFullPolicy.valueOf(config.get("queueFullPolicy", "block").toUpperCase());
+
+            String schema = ((JpaConnectionProviderFactory) factory.getProviderFactory(JpaConnectionProvider.class)).getSchema();
 
+            writer = new JpaEventBatchWriter(factory, schema, queueSize, flushSize, flushInterval, queueFullPolicy);
+            writer.start();
+
+            logger.debugf("Async event writes enabled. Queue size: %d, flush size: %d, flush interval: %d ms, queue full policy: %s", queueSize, flushSize, flushInterval, queueFullPolicy);
+        }
     }
 
     @Override
     public void close() {
+        if (writer != null) {
+            writer.shutdown();
+            writer = null;
+        }
+    }
+
+    /**
+     * @return writer used for async event writes or null if async writes are disabled
+     */
+    public JpaEventBatchWriter getWriter() {
+        return writer;
     }
 
     @Override
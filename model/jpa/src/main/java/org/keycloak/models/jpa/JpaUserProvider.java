@@ -39,6 +39,7 @@ import org.keycloak.models.utils.KeycloakModelUtils;
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -412,6 +413,43 @@ public class JpaUserProvider implements UserProvider {
         return users;
     }
 
+    @Override
+    public List<UserModel> searchForUserByPrefix(String search, RealmModel realm, String lastUsername, int maxResults) {
+        StringBuilder builder = new StringBuilder("select u from UserEntity u where u.realmId = :realmId and u.serviceAccountClientLink is null");
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (search != null && !search.trim().isEmpty()) {
+            search = search.trim().toLowerCase();
+            int spaceIndex = search.lastIndexOf(' ');
+            if (spaceIndex > -1) {
+                builder.append(" and u.normalizedFirstName like :firstName and u.normalizedLastName like :lastName");
+                parameters.put("firstName", search.substring(0, spaceIndex).trim() + "%");
+                parameters.put("lastName", search.substring(spaceIndex).trim() + "%");
+            } else {
+                // All columns are stored lowercase and indexed, so each condition is an index range scan
+                builder.append(" and (u.username like :search or u.email like :search or u.normalizedFirstName like :search or u.normalizedLastName like :search)");
+                parameters.put("search", search + "%");
+            }
+        }
+        if (lastUsername != null) {
+            builder.append(" and u.username > :lastUsername");
+            parameters.put("lastUsername", lastUsername);
+        }
+        builder.append(" order by u.username");
+
+        TypedQuery<UserEntity> query = em.createQuery(builder.toString(), UserEntity.class);
+        query.setParameter("realmId", realm.getId());
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            query.setParameter(parameter.getKey(), parameter.getValue());
+        }
+        if (maxResults != -1) {
+            query.setMaxResults(maxResults);
+        }
+        List<UserEntity> results = query.getResultList();
+        List<UserModel> users = new ArrayList<UserModel>();
+        for (UserEntity entity : results) users.add(new UserAdapter(session, realm, em, entity));
+        return users;
+    }
+
     @Override
     public List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm) {
         return searchForUserByAttributes(attributes, realm, -1, -1);
@@ -36,6 +36,7 @@ import org.keycloak.models.PasswordPolicy;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RequiredActionProviderModel;
 import org.keycloak.models.RequiredCredentialModel;
+import org.keycloak.models.RoleClosure;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserFederationMapperModel;
 import org.keycloak.models.UserFederationProviderCreationEventImpl;
@@ -1024,6 +1025,11 @@ public class RealmAdapter implements RealmModel, JpaModel<RealmEntity> {
         return session.realms().getRoleById(id, this);
     }
 
+    @Override
+    public RoleClosure getRoleClosure(Collection<RoleModel> roles) {
+        return RoleClosure.buildFrom(roles);
+    }
+
     @Override
     public boolean removeRoleById(String id) {
         RoleModel role = getRoleById(id);
@@ -72,6 +72,10 @@ public class UserEntity {
     protected Long createdTimestamp;
     @Column(name = "LAST_NAME")
     protected String lastName;
+    @Column(name = "NORMALIZED_FIRST_NAME")
+    protected String normalizedFirstName;
+    @Column(name = "NORMALIZED_LAST_NAME")
+    protected String normalizedLastName;
     @Column(name = "EMAIL")
     protected String email;
     @Column(name = "ENABLED")
@@ -133,6 +137,7 @@ public class UserEntity {
 
     public void setFirstName(String firstName) {
         this.firstName = firstName;
+        this.normalizedFirstName = KeycloakModelUtils.toLowerCaseSafe(firstName);
     }
 
     public String getLastName() {
@@ -141,6 +146,15 @@ public class UserEntity {
 
     public void setLastName(String lastName) {
         this.lastName = lastName;
+        this.normalizedLastName = KeycloakModelUtils.toLowerCaseSafe(lastName);
+    }
+
+    public String getNormalizedFirstName() {
+        return normalizedFirstName;
+    }
+
+    public String getNormalizedLastName() {
+        return normalizedLastName;
     }
 
     public String getEmail() {
@@ -18,16 +18,24 @@
 package org.keycloak.models.jpa.session;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 
+import org.keycloak.connections.jpa.JpaConnectionProvider;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.ClientSessionModel;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.KeycloakTransaction;
 import org.keycloak.models.ModelException;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
@@ -37,6 +45,7 @@ import org.keycloak.models.session.PersistentClientSessionModel;
 import org.keycloak.models.session.PersistentUserSessionAdapter;
 import org.keycloak.models.session.PersistentUserSessionModel;
 import org.keycloak.models.session.UserSessionPersisterProvider;
+import org.keycloak.models.utils.KeycloakModelUtils;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -45,10 +54,20 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
 
     private final KeycloakSession session;
     private final EntityManager em;
+    private final PersistentUserSessionWriter writer;
+    private PendingUpdatesTransaction pendingUpdates;
 
     public JpaUserSessionPersisterProvider(KeycloakSession session, EntityManager em) {
+        this(session, em, null);
+    }
+
+    /**
+     * @param writer writer of user session updates or null if updates should be written in the transaction of the caller
+     */
+    public JpaUserSessionPersisterProvider(KeycloakSession session, EntityManager em, PersistentUserSessionWriter writer) {
         this.session = session;
         this.em = em;
+        this.writer = writer;
     }
 
     @Override
@@ -97,6 +116,12 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
         PersistentUserSessionModel model = adapter.getUpdatedModel();
 
         String offlineStr = offlineToString(offline);
+        if (writer != null) {
+            // Written in the background after the transaction is committed
+            getPendingUpdates().updates.put(new PersistentUserSessionEntity.Key(userSession.getId(), offlineStr), model);
+            return;
+        }
+
         PersistentUserSessionEntity entity = em.find(PersistentUserSessionEntity.class, new PersistentUserSessionEntity.Key(userSession.getId(), offlineStr));
         if (entity == null) {
             throw new ModelException("UserSession with ID " + userSession.getId() + ", offline: " + offline + " not found");
@@ -108,6 +133,7 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
     @Override
     public void removeUserSession(String userSessionId, boolean offline) {
         String offlineStr = offlineToString(offline);
+        discardPendingUpdate(userSessionId, offlineStr);
 
         em.createNamedQuery("deleteClientSessionsByUserSession")
                 .setParameter("userSessionId", userSessionId)
@@ -135,6 +161,7 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
                 PersistentUserSessionEntity userSessionEntity = em.find(PersistentUserSessionEntity.class, new PersistentUserSessionEntity.Key(sessionEntity.getUserSessionId(), offlineStr));
                 if (userSessionEntity != null) {
                     em.remove(userSessionEntity);
+                    discardPendingUpdate(sessionEntity.getUserSessionId(), offlineStr);
                 }
             }
 
@@ -142,6 +169,24 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
         }
     }
 
+    private void discardPendingUpdate(String userSessionId, String offlineStr) {
+        if (writer != null) {
+            // Update queued by other transaction is still valid if this transaction is rolled back
+            PersistentUserSessionEntity.Key key = new PersistentUserSessionEntity.Key(userSessionId, offlineStr);
+            PendingUpdatesTransaction pendingUpdates = getPendingUpdates();
+            pendingUpdates.updates.remove(key);
+            pendingUpdates.removed.add(key);
+        }
+    }
+
+    private PendingUpdatesTransaction getPendingUpdates() {
+        if (pendingUpdates == null) {
+            pendingUpdates = new PendingUpdatesTransaction();
+            session.getTransaction().enlistAfterCompletion(pendingUpdates);
+        }
+        return pendingUpdates;
+    }
+
     private List<PersistentClientSessionEntity> getClientSessionsByUserSession(String userSessionId, boolean offline) {
         String offlineStr = offlineToString(offline);
 
@@ -183,6 +228,10 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
 
     @Override
     public void updateAllTimestamps(int time) {
+        if (writer != null) {
+            // Pending updates would otherwise overwrite the new timestamps later
+            writer.flush();
+        }
         int num = em.createNamedQuery("updateClientSessionsTimestamps").setParameter("timestamp", time).executeUpdate();
         num = em.createNamedQuery("updateUserSessionsTimestamps").setParameter("lastSessionRefresh", time).executeUpdate();
     }
@@ -201,17 +250,95 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
             query.setMaxResults(maxResults);
         }
 
-        List<PersistentUserSessionEntity> results = query.getResultList();
+        List<UserSessionModel> result = toAdapters(query.getResultList(), offlineStr);
+
+        // Case when user was deleted in the meantime
+        return result != null ? result : loadUserSessions(firstResult, maxResults, offline);
+    }
+
+    @Override
+    public List<String> loadUserSessionIdBoundaries(int interval, boolean offline) {
+        String offlineStr = offlineToString(offline);
+        List<String> boundaries = new ArrayList<>();
+
+        // Each query skips just "interval" entries after the previous boundary, so it's not getting slower with growing offset
+        TypedQuery<String> query = em.createNamedQuery("findUserSessionIds", String.class)
+                .setParameter("offline", offlineStr);
+        query.setMaxResults(1);
+        List<String> next = query.getResultList();
+
+        while (!next.isEmpty()) {
+            String boundary = next.get(0);
+            boundaries.add(boundary);
+
+            query = em.createNamedQuery("findUserSessionIdsAfter", String.class)
+                    .setParameter("offline", offlineStr)
+                    .setParameter("lastUserSessionId", boundary);
+            query.setFirstResult(interval - 1);
+            query.setMaxResults(1);
+            next = query.getResultList();
+        }
+
+        return boundaries;
+    }
+
+    @Override
+    public List<UserSessionModel> loadUserSessions(String fromUserSessionId, String toUserSessionId, boolean offline) {
+        String offlineStr = offlineToString(offline);
+
+        TypedQuery<PersistentUserSessionEntity> query;
+        if (toUserSessionId == null) {
+            query = em.createNamedQuery("findUserSessionsFrom", PersistentUserSessionEntity.class);
+        } else {
+            query = em.createNamedQuery("findUserSessionsFromTo", PersistentUserSessionEntity.class);
+            query.setParameter("toUserSessionId", toUserSessionId);
+        }
+        query.setParameter("offline", offlineStr);
+        query.setParameter("fromUserSessionId", fromUserSessionId);
+
+        List<UserSessionModel> result = toAdapters(query.getResultList(), offlineStr);
+
+        // Case when user was deleted in the meantime
+        return result != null ? result : loadUserSessions(fromUserSessionId, toUserSessionId, offline);
+    }
+
+    @Override
+    public UserSessionModel loadUserSession(RealmModel realm, String userSessionId, boolean offline) {
+        String offlineStr = offlineToString(offline);
+
+        PersistentUserSessionEntity entity = em.find(PersistentUserSessionEntity.class, new PersistentUserSessionEntity.Key(userSessionId, offlineStr));
+        if (entity == null || !entity.getRealmId().equals(realm.getId())) {
+            return null;
+        }
+
+        List<UserSessionModel> result = toAdapters(Collections.singletonList(entity), offlineStr);
+        return result != null ? result.get(0) : null;
+    }
+
+    @Override
+    public List<UserSessionModel> loadUserSessions(RealmModel realm, UserModel user, boolean offline) {
+        String offlineStr = offlineToString(offline);
+
+        TypedQuery<PersistentUserSessionEntity> query = em.createNamedQuery("findUserSessionsByUser", PersistentUserSessionEntity.class);
+        query.setParameter("offline", offlineStr);
+        query.setParameter("realmId", realm.getId());
+        query.setParameter("userId", user.getId());
+
+        List<UserSessionModel> result = toAdapters(query.getResultList(), offlineStr);
+        return result != null ? result : Collections.<UserSessionModel>emptyList();
+    }
+
+    // Returns null if some user was deleted in the meantime. Sessions of such user are removed and caller should run the query again
+    private List<UserSessionModel> toAdapters(List<PersistentUserSessionEntity> results, String offlineStr) {
         List<UserSessionModel> result = new ArrayList<>();
         List<String> userSessionIds = new ArrayList<>();
         for (PersistentUserSessionEntity entity : results) {
             RealmModel realm = session.realms().getRealm(entity.getRealmId());
             UserModel user = session.users().getUserById(entity.getUserId(), realm);
 
-            // Case when user was deleted in the meantime
             if (user == null) {
                 onUserRemoved(realm, entity.getUserId());
-                return loadUserSessions(firstResult, maxResults, offline);
+                return null;
             }
 
             result.add(toAdapter(realm, user, entity));
@@ -253,6 +380,15 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
         model.setLastSessionRefresh(entity.getLastSessionRefresh());
         model.setData(entity.getData());
 
+        // Update not written yet is newer than the database state
+        if (writer != null) {
+            PersistentUserSessionWriter.PendingUpdate pendingUpdate = writer.getPendingUpdate(entity.getUserSessionId(), entity.getOffline());
+            if (pendingUpdate != null) {
+                model.setLastSessionRefresh(pendingUpdate.getLastSessionRefresh());
+                model.setData(pendingUpdate.getData());
+            }
+        }
+
         List<ClientSessionModel> clientSessions = new LinkedList<>();
         return new PersistentUserSessionAdapter(model, realm, user, clientSessions);
     }
@@ -288,4 +424,76 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
     private String offlineToString(boolean offline) {
         return offline ? "1" : "0";
     }
+
+    /**
+     * Hands updates of user sessions to the writer and discards updates of removed user sessions once the transaction is committed
+     */
+    private class PendingUpdatesTransaction implements KeycloakTransaction {
+
+        private final Map<PersistentUserSessionEntity.Key, PersistentUserSessionModel> updates = new LinkedHashMap<>();
+        private final Set<PersistentUserSessionEntity.Key> removed = new HashSet<>();
+        private boolean active;
+        private boolean rollbackOnly;
+
+        @Override
+        public void begin() {
+            active = true;
+        }
+
+        @Override
+        public void commit() {
+            for (PersistentUserSessionEntity.Key key : removed) {
+                writer.discard(key.getUserSessionId(), key.getOffline());
+            }
+            for (Map.Entry<PersistentUserSessionEntity.Key, PersistentUserSessionModel> entry : updates.entrySet()) {
+                PersistentUserSessionEntity.Key key = entry.getKey();
+                PersistentUserSessionModel model = entry.getValue();
+                if (!writer.update(key.getUserSessionId(), key.getOffline(), model.getLastSessionRefresh(), model.getData())) {
+                    // Writer already stopped
+                    updateInNewTransaction(key.getUserSessionId(), key.getOffline(), model);
+                }
+            }
+            updates.clear();
+            removed.clear();
+            active = false;
+        }
+
+        @Override
+        public void rollback() {
+            updates.clear();
+            removed.clear();
+            active = false;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return rollbackOnly;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+    }
+
+    private void updateInNewTransaction(final String userSessionId, final String offlineStr, final PersistentUserSessionModel model) {
+        KeycloakModelUtils.runJobInTransaction(session.getKeycloakSessionFactory(), new KeycloakSessionTask() {
+
+            @Override
+            public void run(KeycloakSession session) {
+                EntityManager em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+                PersistentUserSessionEntity entity = em.find(PersistentUserSessionEntity.class, new PersistentUserSessionEntity.Key(userSessionId, offlineStr));
+                if (entity != null) {
+                    entity.setLastSessionRefresh(model.getLastSessionRefresh());
+                    entity.setData(model.getData());
+                }
+            }
+
+        });
+    }
 }
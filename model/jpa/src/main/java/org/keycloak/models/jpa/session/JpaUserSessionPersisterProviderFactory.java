@@ -21,6 +21,7 @@ import javax.persistence.EntityManager;
 
 import org.keycloak.Config;
 import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.connections.jpa.JpaConnectionProviderFactory;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.session.UserSessionPersisterProvider;
@@ -33,25 +34,45 @@ public class JpaUserSessionPersisterProviderFactory implements UserSessionPersis
 
     public static final String ID = "jpa";
 
+    private Config.Scope config;
+    private PersistentUserSessionWriter writer;
+
     @Override
     public UserSessionPersisterProvider create(KeycloakSession session) {
         EntityManager em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
-        return new JpaUserSessionPersisterProvider(session, em);
+        return new JpaUserSessionPersisterProvider(session, em, writer);
     }
 
     @Override
     public void init(Config.Scope config) {
-
+        this.config = config;
     }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
+        if (config.getBoolean("writeBehind", false)) {
+            int flushSize = config.getInt("flushSize", 100);
+            long flushInterval = config.getLong("flushInterval", 1000L);
+            String schema = ((JpaConnectionProviderFactory) factory.getProviderFactory(JpaConnectionProvider.class)).getSchema();
 
+            writer = new PersistentUserSessionWriter(factory, schema, flushSize, flushInterval);
+            writer.start();
+        }
     }
 
     @Override
     public void close() {
+        if (writer != null) {
+            writer.shutdown();
+            writer = null;
+        }
+    }
 
+    /**
+     * @return writer of user session updates or null if write-behind is disabled
+     */
+    public PersistentUserSessionWriter getWriter() {
+        return writer;
     }
 
     @Override
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.keycloak.models.jpa.session;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.jboss.logging.Logger;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import javax.persistence.EntityManager;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes updates of persistent user sessions in the background. Updates of the same user session are merged until the next flush,
+ * so just the latest state of the session is written. Every {@code flushInterval} milliseconds a single writer thread writes pending
+ * updates with JDBC batch updates, {@code flushSize} sessions per transaction.
+ *
+ * Just updates are written in the background. Creating and removing sessions is still done in the transaction of the caller, so a
+ * session created in committed transaction is never lost. Pending updates are lost if the server crashes before they are written.
+ */
+public class PersistentUserSessionWriter implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(PersistentUserSessionWriter.class);
+
+    private final KeycloakSessionFactory factory;
+    private final String userSessionUpdate;
+    private final int flushSize;
+    private final long flushInterval;
+
+    private final ConcurrentMap<PersistentUserSessionEntity.Key, PendingUpdate> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile boolean run = true;
+    private final CountDownLatch shutdownLatch = new CountDownLatch(1);
+
+    public PersistentUserSessionWriter(KeycloakSessionFactory factory, String schema, int flushSize, long flushInterval) {
+        this.factory = factory;
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+
+        String prefix = schema != null ? schema + "." : "";
+        this.userSessionUpdate = "update " + prefix + "OFFLINE_USER_SESSION set LAST_SESSION_REFRESH = ?, DATA = ? where USER_SESSION_ID = ? and OFFLINE_FLAG = ?";
+    }
+
+    public void start() {
+        Thread thread = new Thread(this, "User Session Persister Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the writer thread after pending updates are written.
+     */
+    public void shutdown() {
+        run = false;
+        try {
+            if (!shutdownLatch.await(flushInterval + TimeUnit.SECONDS.toMillis(10), TimeUnit.MILLISECONDS)) {
+                logger.warnf("User session writer did not finish in time, %d updates not written", pending.size());
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        logger.debugf("User session writer stopped. Received: %d, written: %d, failed: %d", getReceived(), getWritten(), getFailed());
+    }
+
+    /**
+     * Schedules update of the session. It replaces previous update of the same session, which wasn't written yet.
+     *
+     * @return false if the writer was already stopped and the caller needs to update the session itself
+     */
+    public boolean update(String userSessionId, String offline, int lastSessionRefresh, String data) {
+        if (!run) {
+            return false;
+        }
+        pending.put(new PersistentUserSessionEntity.Key(userSessionId, offline), new PendingUpdate(lastSessionRefresh, data));
+        received.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Discards update of the session, which wasn't written yet. Used when the session is removed.
+     */
+    public void discard(String userSessionId, String offline) {
+        pending.remove(new PersistentUserSessionEntity.Key(userSessionId, offline));
+    }
+
+    /**
+     * @return update of the session, which wasn't written yet or null
+     */
+    public PendingUpdate getPendingUpdate(String userSessionId, String offline) {
+        return pending.get(new PersistentUserSessionEntity.Key(userSessionId, offline));
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (run) {
+                try {
+                    Thread.sleep(flushInterval);
+                } catch (InterruptedException e) {
+                    run = false;
+                }
+                flush();
+            }
+            flush();
+        } finally {
+            shutdownLatch.countDown();
+        }
+    }
+
+    /**
+     * Writes all pending updates.
+     */
+    public void flush() {
+        List<Map.Entry<PersistentUserSessionEntity.Key, PendingUpdate>> batch = new ArrayList<>(flushSize);
+        for (Map.Entry<PersistentUserSessionEntity.Key, PendingUpdate> entry : pending.entrySet()) {
+            batch.add(entry);
+            if (batch.size() >= flushSize) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    protected void write(final List<Map.Entry<PersistentUserSessionEntity.Key, PendingUpdate>> batch) {
+        try {
+            KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+
+                @Override
+                public void run(KeycloakSession session) {
+                    EntityManager em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+                    em.unwrap(Session.class).doWork(new Work() {
+
+                        @Override
+                        public void execute(Connection connection) throws SQLException {
+                            update(connection, batch);
+                        }
+
+                    });
+                }
+
+            });
+            written.addAndGet(batch.size());
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            logger.error("Failed to write " + batch.size() + " user session updates", e);
+        } finally {
+            // Keep updates which came after the snapshot was taken for next flush
+            for (Map.Entry<PersistentUserSessionEntity.Key, PendingUpdate> entry : batch) {
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void update(Connection connection, List<Map.Entry<PersistentUserSessionEntity.Key, PendingUpdate>> batch) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(userSessionUpdate);
+        try {
+            for (Map.Entry<PersistentUserSessionEntity.Key, PendingUpdate> entry : batch) {
+                statement.setInt(1, entry.getValue().getLastSessionRefresh());
+                statement.setString(2, entry.getValue().getData());
+                statement.setString(3, entry.getKey().getUserSessionId());
+                statement.setString(4, entry.getKey().getOffline());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * @return number of updates received. Updates of the same session merged before flush are counted each
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * @return number of session updates written to the database
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return number of session updates lost because the batch they were part of failed to write
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public static class PendingUpdate {
+
+        private final int lastSessionRefresh;
+        private final String data;
+
+        public PendingUpdate(int lastSessionRefresh, String data) {
+            this.lastSessionRefresh = lastSessionRefresh;
+            this.data = data;
+        }
+
+        public int getLastSessionRefresh() {
+            return lastSessionRefresh;
+        }
+
+        public String getData() {
+            return data;
+        }
+    }
+}
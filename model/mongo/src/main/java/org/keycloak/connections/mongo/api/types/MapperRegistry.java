@@ -19,6 +19,7 @@ package org.keycloak.connections.mongo.api.types;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Registry of mappers, which allow to convert application object to database objects. MapperRegistry is main entry point to be used by application.
@@ -32,6 +33,9 @@ public class MapperRegistry {
     // Mappers of Application objects to DB objects
     private Map<Class<?>, Mapper<?, ?>> appObjectMappers = new HashMap<Class<?>, Mapper<?, ?>>();
 
+    // Mappers of Application objects resolved for concrete types, so that supertypes are searched just once per type
+    private final Map<Class<?>, Mapper<?, ?>> resolvedAppObjectMappers = new ConcurrentHashMap<Class<?>, Mapper<?, ?>>();
+
     // Mappers of DB objects to Application objects
     private Map<Class<?>, Map<Class<?>, Mapper<?, ?>>> dbObjectMappers = new HashMap<Class<?>, Map<Class<?>, Mapper<?,?>>>();
 
@@ -43,6 +47,7 @@ public class MapperRegistry {
      */
     public void addAppObjectMapper(Mapper<?, ?> mapper) {
         appObjectMappers.put(mapper.getTypeOfObjectToConvert(), mapper);
+        resolvedAppObjectMappers.clear();
     }
 
 
@@ -100,9 +105,13 @@ public class MapperRegistry {
         }
 
         Class<?> appObjectType = applicationObject.getClass();
-        Mapper<Object, S> mapper = (Mapper<Object, S>)getAppConverterForType(appObjectType, appObjectMappers);
+        Mapper<Object, S> mapper = (Mapper<Object, S>)resolvedAppObjectMappers.get(appObjectType);
         if (mapper == null) {
-            throw new IllegalArgumentException("Can't found converter for type " + appObjectType + " in registered appObjectMappers");
+            mapper = (Mapper<Object, S>)getAppConverterForType(appObjectType, appObjectMappers);
+            if (mapper == null) {
+                throw new IllegalArgumentException("Can't found converter for type " + appObjectType + " in registered appObjectMappers");
+            }
+            resolvedAppObjectMappers.put(appObjectType, mapper);
         }
         if (!expectedDBObjectType.isAssignableFrom(mapper.getExpectedReturnType())) {
             throw new IllegalArgumentException("Converter " + mapper + " has return type " + mapper.getExpectedReturnType() +
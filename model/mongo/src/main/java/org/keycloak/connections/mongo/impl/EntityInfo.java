@@ -17,12 +17,23 @@
 
 package org.keycloak.connections.mongo.impl;
 
+import org.keycloak.common.util.reflections.Types;
 import org.keycloak.models.utils.reflection.Property;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
+ * Mapping metadata of the entity type, resolved once when the type is first used. This caches just the reflection metadata: the
+ * properties, their types needed for conversion of DB values and the no-arg constructor. Values of the properties are still
+ * read and written through {@link Property}, so the per-property access itself is not generated code.
+ *
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
 public class EntityInfo {
@@ -33,10 +44,29 @@ public class EntityInfo {
 
     private final Map<String, Property<Object>> properties;
 
+    // Type information needed to convert DB values of the properties. Resolved once instead of on every load
+    private final Map<String, PropertyType> propertyTypes;
+
+    private final Constructor<?> constructor;
+
     public EntityInfo(Class<?> entityClass, String dbCollectionName, Map<String, Property<Object>> properties) {
         this.entityClass = entityClass;
         this.dbCollectionName = dbCollectionName;
         this.properties = properties;
+
+        this.propertyTypes = new HashMap<String, PropertyType>();
+        for (Property<Object> property : properties.values()) {
+            propertyTypes.put(property.getName(), new PropertyType(property));
+        }
+
+        Constructor<?> constructor;
+        try {
+            constructor = entityClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (Exception e) {
+            constructor = null;
+        }
+        this.constructor = constructor;
     }
 
     public Class<?> getEntityClass() {
@@ -54,4 +84,52 @@ public class EntityInfo {
     public Property<Object> getPropertyByName(String propertyName) {
         return properties.get(propertyName);
     }
+
+    public PropertyType getPropertyType(String propertyName) {
+        return propertyTypes.get(propertyName);
+    }
+
+    public Object newInstance() {
+        try {
+            return constructor != null ? constructor.newInstance() : entityClass.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static class PropertyType {
+
+        private final Class<?> expectedReturnType;
+        private final List<Type> genericTypes;
+        private final Class<?> boxedJavaClass;
+
+        private PropertyType(Property<Object> property) {
+            Type type = property.getBaseType();
+
+            // This can be the case when we have parameterized type (like "List<String>")
+            if (type instanceof ParameterizedType) {
+                ParameterizedType parameterized = (ParameterizedType) type;
+                this.expectedReturnType = (Class<?>) parameterized.getRawType();
+                this.genericTypes = Arrays.asList(parameterized.getActualTypeArguments());
+            } else {
+                // handle primitives
+                this.expectedReturnType = Types.boxedClass(type instanceof Class ? (Class<?>) type : property.getJavaClass());
+                this.genericTypes = null;
+            }
+
+            this.boxedJavaClass = Types.boxedClass(property.getJavaClass());
+        }
+
+        public Class<?> getExpectedReturnType() {
+            return expectedReturnType;
+        }
+
+        public List<Type> getGenericTypes() {
+            return genericTypes;
+        }
+
+        public Class<?> getBoxedJavaClass() {
+            return boxedJavaClass;
+        }
+    }
 }
@@ -427,6 +427,10 @@ public class MongoStoreImpl implements MongoStore {
         mapperRegistry.addDBObjectMapper(mapper);
     }
 
+    MapperRegistry getMapperRegistry() {
+        return mapperRegistry;
+    }
+
     public EntityInfo getEntityInfo(Class<?> entityClass) {
         EntityInfo entityInfo = entityInfoCache.get(entityClass);
         if (entityInfo == null) {
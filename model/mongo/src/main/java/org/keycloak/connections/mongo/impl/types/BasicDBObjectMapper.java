@@ -26,12 +26,6 @@ import org.keycloak.connections.mongo.api.types.MapperRegistry;
 import org.keycloak.connections.mongo.impl.EntityInfo;
 import org.keycloak.connections.mongo.impl.MongoStoreImpl;
 import org.keycloak.models.utils.reflection.Property;
-import org.keycloak.common.util.reflections.Types;
-
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
-import java.util.Arrays;
-import java.util.List;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -59,12 +53,7 @@ public class BasicDBObjectMapper<S> implements Mapper<BasicDBObject, S> {
 
         EntityInfo entityInfo = mongoStoreImpl.getEntityInfo(expectedEntityType);
 
-        S entity;
-        try {
-            entity = expectedEntityType.newInstance();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        S entity = expectedEntityType.cast(entityInfo.newInstance());
 
         for (String key : dbObject.keySet()) {
             Object value = dbObject.get(key);
@@ -78,7 +67,7 @@ public class BasicDBObjectMapper<S> implements Mapper<BasicDBObject, S> {
 
             } else if ((property = entityInfo.getPropertyByName(key)) != null) {
                 // It's declared property with @DBField annotation
-                setPropertyValue(entity, value, property);
+                setPropertyValue(entity, value, property, entityInfo.getPropertyType(key));
 
             } else {
                 // Show warning if it's unknown
@@ -89,35 +78,17 @@ public class BasicDBObjectMapper<S> implements Mapper<BasicDBObject, S> {
         return entity;
     }
 
-    private void setPropertyValue(Object entity, Object valueFromDB, Property property) {
+    private void setPropertyValue(Object entity, Object valueFromDB, Property property, EntityInfo.PropertyType propertyType) {
         if (valueFromDB == null) {
             property.setValue(entity, null);
             return;
         }
 
-        MapperContext<Object, Object> context;
-
-        Type type = property.getBaseType();
-
-        // This can be the case when we have parameterized type (like "List<String>")
-        if (type instanceof ParameterizedType) {
-            ParameterizedType parameterized = (ParameterizedType) type;
-            Type[] genericTypeArguments = parameterized.getActualTypeArguments();
-
-            List<Type> genericTypes = Arrays.asList(genericTypeArguments);
-
-            Class<?> expectedReturnType = (Class<?>)parameterized.getRawType();
-            context = new MapperContext<Object, Object>(valueFromDB, expectedReturnType, genericTypes);
-        } else {
-            Class<?> expectedReturnType = (Class<?>)type;
-            // handle primitives
-            expectedReturnType = Types.boxedClass(expectedReturnType);
-            context = new MapperContext<Object, Object>(valueFromDB, expectedReturnType, null);
-        }
+        MapperContext<Object, Object> context = new MapperContext<Object, Object>(valueFromDB, propertyType.getExpectedReturnType(), propertyType.getGenericTypes());
 
         Object appObject = mapperRegistry.convertDBObjectToApplicationObject(context);
 
-        if (Types.boxedClass(property.getJavaClass()).isAssignableFrom(appObject.getClass())) {
+        if (propertyType.getBoxedJavaClass().isAssignableFrom(appObject.getClass())) {
             property.setValue(entity, appObject);
         } else {
             throw new IllegalStateException("Converted object " + appObject + " is not of type " +  context.getExpectedReturnType() +
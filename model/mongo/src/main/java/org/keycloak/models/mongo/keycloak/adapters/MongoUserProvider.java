@@ -234,6 +234,46 @@ public class MongoUserProvider implements UserProvider {
         return convertUserEntities(realm, users);
     }
 
+    @Override
+    public List<UserModel> searchForUserByPrefix(String search, RealmModel realm, String lastUsername, int maxResults) {
+        QueryBuilder builder = new QueryBuilder().and("realmId").is(realm.getId()).and("serviceAccountClientLink").is(null);
+
+        if (search != null && !search.trim().isEmpty()) {
+            search = search.trim().toLowerCase();
+            int spaceInd = search.lastIndexOf(" ");
+
+            // Username and email are stored lowercase, so anchored case-sensitive regex can use index
+            if (spaceInd != -1) {
+                Pattern firstNamePattern = Pattern.compile("^" + escapeRegex(search.substring(0, spaceInd).trim()), Pattern.CASE_INSENSITIVE);
+                Pattern lastNamePattern = Pattern.compile("^" + escapeRegex(search.substring(spaceInd + 1)), Pattern.CASE_INSENSITIVE);
+                builder.and("firstName").regex(firstNamePattern).and("lastName").regex(lastNamePattern);
+            } else {
+                Pattern prefixPattern = Pattern.compile("^" + escapeRegex(search));
+                Pattern caseInsensitivePrefixPattern = Pattern.compile("^" + escapeRegex(search), Pattern.CASE_INSENSITIVE);
+                builder.or(
+                        new QueryBuilder().put("username").regex(prefixPattern).get(),
+                        new QueryBuilder().put("email").regex(prefixPattern).get(),
+                        new QueryBuilder().put("firstName").regex(caseInsensitivePrefixPattern).get(),
+                        new QueryBuilder().put("lastName").regex(caseInsensitivePrefixPattern).get()
+                );
+            }
+        }
+
+        if (lastUsername != null) {
+            builder.and("username").greaterThan(lastUsername);
+        }
+
+        DBObject sort = new BasicDBObject("username", 1);
+
+        List<MongoUserEntity> users = getMongoStore().loadEntities(MongoUserEntity.class, builder.get(), sort, -1, maxResults, invocationContext);
+        return convertUserEntities(realm, users);
+    }
+
+    // Escapes with backslashes rather than \Q...\E, as only plain prefix regex can be served by index
+    private static String escapeRegex(String s) {
+        return s.replaceAll("[\\\\.\\[\\]{}()*+?^$|]", "\\\\$0");
+    }
+
     @Override
     public List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm) {
         return searchForUserByAttributes(attributes, realm, -1, -1);
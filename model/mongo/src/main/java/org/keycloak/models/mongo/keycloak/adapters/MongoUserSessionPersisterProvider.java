@@ -281,16 +281,88 @@ public class MongoUserSessionPersisterProvider implements UserSessionPersisterPr
         Class<? extends MongoUserSessionEntity> clazz = offline ? MongoOfflineUserSessionEntity.class : MongoOnlineUserSessionEntity.class;
 
         List<? extends MongoUserSessionEntity> entities = getMongoStore().loadEntities(clazz, query, sort, firstResult, maxResults, invocationContext);
+        List<UserSessionModel> results = toAdapters(entities);
 
+        // Case when user was deleted in the meantime
+        return results != null ? results : loadUserSessions(firstResult, maxResults, offline);
+    }
+
+    @Override
+    public List<String> loadUserSessionIdBoundaries(int interval, boolean offline) {
+        DBObject sort = new BasicDBObject("_id", 1);
+        Class<? extends MongoUserSessionEntity> clazz = offline ? MongoOfflineUserSessionEntity.class : MongoOnlineUserSessionEntity.class;
+
+        List<String> boundaries = new ArrayList<>();
+
+        // Each query skips just "interval" entries after the previous boundary, so it's not getting slower with growing offset
+        List<? extends MongoUserSessionEntity> next = getMongoStore().loadEntities(clazz, new QueryBuilder().get(), sort, 0, 1, invocationContext);
+        while (!next.isEmpty()) {
+            String boundary = next.get(0).getId();
+            boundaries.add(boundary);
+
+            DBObject query = new QueryBuilder()
+                    .and("_id").greaterThan(boundary)
+                    .get();
+            next = getMongoStore().loadEntities(clazz, query, sort, interval - 1, 1, invocationContext);
+        }
+
+        return boundaries;
+    }
+
+    @Override
+    public List<UserSessionModel> loadUserSessions(String fromUserSessionId, String toUserSessionId, boolean offline) {
+        QueryBuilder queryBuilder = new QueryBuilder()
+                .and("_id").greaterThanEquals(fromUserSessionId);
+        if (toUserSessionId != null) {
+            queryBuilder.lessThan(toUserSessionId);
+        }
+        DBObject sort = new BasicDBObject("_id", 1);
+
+        Class<? extends MongoUserSessionEntity> clazz = offline ? MongoOfflineUserSessionEntity.class : MongoOnlineUserSessionEntity.class;
+
+        List<? extends MongoUserSessionEntity> entities = getMongoStore().loadEntities(clazz, queryBuilder.get(), sort, -1, -1, invocationContext);
+        List<UserSessionModel> results = toAdapters(entities);
+
+        // Case when user was deleted in the meantime
+        return results != null ? results : loadUserSessions(fromUserSessionId, toUserSessionId, offline);
+    }
+
+    @Override
+    public UserSessionModel loadUserSession(RealmModel realm, String userSessionId, boolean offline) {
+        MongoUserSessionEntity entity = loadUserSession(userSessionId, offline);
+        if (entity == null || !entity.getRealmId().equals(realm.getId())) {
+            return null;
+        }
+
+        List<UserSessionModel> results = toAdapters(Collections.singletonList(entity));
+        return results != null ? results.get(0) : null;
+    }
+
+    @Override
+    public List<UserSessionModel> loadUserSessions(RealmModel realm, UserModel user, boolean offline) {
+        DBObject query = new QueryBuilder()
+                .and("realmId").is(realm.getId())
+                .and("userId").is(user.getId())
+                .get();
+        DBObject sort = new BasicDBObject("_id", 1);
+
+        Class<? extends MongoUserSessionEntity> clazz = offline ? MongoOfflineUserSessionEntity.class : MongoOnlineUserSessionEntity.class;
+
+        List<? extends MongoUserSessionEntity> entities = getMongoStore().loadEntities(clazz, query, sort, -1, -1, invocationContext);
+        List<UserSessionModel> results = toAdapters(entities);
+        return results != null ? results : Collections.<UserSessionModel>emptyList();
+    }
+
+    // Returns null if some user was deleted in the meantime. Sessions of such user are removed and caller should run the query again
+    private List<UserSessionModel> toAdapters(List<? extends MongoUserSessionEntity> entities) {
         List<UserSessionModel> results = new LinkedList<>();
         for (MongoUserSessionEntity entity : entities) {
             RealmModel realm = session.realms().getRealm(entity.getRealmId());
             UserModel user = session.users().getUserById(entity.getUserId(), realm);
 
-            // Case when user was deleted in the meantime
             if (user == null) {
                 onUserRemoved(realm, entity.getUserId());
-                return loadUserSessions(firstResult, maxResults, offline);
+                return null;
             }
 
             PersistentUserSessionAdapter userSession = toAdapter(realm, user, entity);
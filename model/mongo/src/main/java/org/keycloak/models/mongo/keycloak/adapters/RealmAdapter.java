@@ -39,6 +39,7 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProvider;
 import org.keycloak.models.RequiredActionProviderModel;
 import org.keycloak.models.RequiredCredentialModel;
+import org.keycloak.models.RoleClosure;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserFederationMapperModel;
 import org.keycloak.models.UserFederationProviderCreationEventImpl;
@@ -644,6 +645,11 @@ public class RealmAdapter extends AbstractMongoAdapter<MongoRealmEntity> impleme
         return session.realms().getRoleById(id, this);
     }
 
+    @Override
+    public RoleClosure getRoleClosure(Collection<RoleModel> roles) {
+        return RoleClosure.buildFrom(roles);
+    }
+
     @Override
     public GroupModel createGroup(String name) {
         return session.realms().createGroup(this, name);
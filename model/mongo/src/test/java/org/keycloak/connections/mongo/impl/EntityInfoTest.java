@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.connections.mongo.impl;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.connections.mongo.api.types.MapperContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class EntityInfoTest {
+
+    private MongoStoreImpl store;
+
+    @Before
+    public void before() {
+        store = new MongoStoreImpl(null, new Class<?>[] { TestEntity.class });
+    }
+
+    @Test
+    public void propertyTypes() {
+        EntityInfo entityInfo = store.getEntityInfo(TestEntity.class);
+
+        EntityInfo.PropertyType count = entityInfo.getPropertyType("count");
+        Assert.assertEquals(Integer.class, count.getExpectedReturnType());
+        Assert.assertEquals(Integer.class, count.getBoxedJavaClass());
+        Assert.assertNull(count.getGenericTypes());
+
+        EntityInfo.PropertyType tags = entityInfo.getPropertyType("tags");
+        Assert.assertEquals(List.class, tags.getExpectedReturnType());
+        Assert.assertEquals(Collections.singletonList(String.class), tags.getGenericTypes());
+
+        EntityInfo.PropertyType attributes = entityInfo.getPropertyType("attributes");
+        Assert.assertEquals(Map.class, attributes.getExpectedReturnType());
+        Assert.assertEquals(2, attributes.getGenericTypes().size());
+        Assert.assertEquals(String.class, attributes.getGenericTypes().get(0));
+
+        Assert.assertSame(entityInfo, store.getEntityInfo(TestEntity.class));
+    }
+
+    @Test
+    public void newInstanceWithPrivateConstructor() {
+        Object entity = store.getEntityInfo(TestEntity.class).newInstance();
+        Assert.assertTrue(entity instanceof TestEntity);
+    }
+
+    @Test
+    public void roundTrip() {
+        TestEntity entity = TestEntity.create();
+        entity.setName("entity");
+        entity.setCount(5);
+        entity.setEnabled(true);
+        entity.setTags(new ArrayList<String>(Arrays.asList("a", "b")));
+        entity.setRoles(new HashSet<String>(Arrays.asList("admin", "user")));
+        entity.setState(TestState.ACTIVE);
+        Map<String, List<String>> attributes = new HashMap<String, List<String>>();
+        attributes.put("email", Arrays.asList("test@localhost"));
+        entity.setAttributes(attributes);
+
+        BasicDBObject dbObject = store.getMapperRegistry().convertApplicationObjectToDBObject(entity, BasicDBObject.class);
+        Assert.assertEquals("entity", dbObject.get("name"));
+        Assert.assertEquals(5, dbObject.get("count"));
+        Assert.assertEquals("ACTIVE", dbObject.get("state"));
+        Assert.assertTrue(dbObject.get("tags") instanceof BasicDBList);
+        Assert.assertFalse(dbObject.containsField("description"));
+
+        // Repeated to convert with the mappers resolved by the first conversion
+        for (int i = 0; i < 2; i++) {
+            TestEntity loaded = store.getMapperRegistry().convertDBObjectToApplicationObject(new MapperContext<Object, TestEntity>(dbObject, TestEntity.class, null));
+            Assert.assertNotSame(entity, loaded);
+            Assert.assertEquals("entity", loaded.getName());
+            Assert.assertEquals(5, loaded.getCount());
+            Assert.assertTrue(loaded.isEnabled());
+            Assert.assertEquals(Arrays.asList("a", "b"), loaded.getTags());
+            Assert.assertEquals(new HashSet<String>(Arrays.asList("admin", "user")), loaded.getRoles());
+            Assert.assertEquals(TestState.ACTIVE, loaded.getState());
+            Assert.assertEquals(attributes, loaded.getAttributes());
+            Assert.assertNull(loaded.getDescription());
+        }
+    }
+
+    public enum TestState {
+        ACTIVE, DISABLED
+    }
+
+    public static class TestEntity {
+
+        private String name;
+        private String description;
+        private int count;
+        private boolean enabled;
+        private List<String> tags;
+        private Set<String> roles;
+        private Map<String, List<String>> attributes;
+        private TestState state;
+
+        private TestEntity() {
+        }
+
+        public static TestEntity create() {
+            return new TestEntity();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+
+        public Set<String> getRoles() {
+            return roles;
+        }
+
+        public void setRoles(Set<String> roles) {
+            this.roles = roles;
+        }
+
+        public Map<String, List<String>> getAttributes() {
+            return attributes;
+        }
+
+        public void setAttributes(Map<String, List<String>> attributes) {
+            this.attributes = attributes;
+        }
+
+        public TestState getState() {
+            return state;
+        }
+
+        public void setState(TestState state) {
+            this.state = state;
+        }
+    }
+}
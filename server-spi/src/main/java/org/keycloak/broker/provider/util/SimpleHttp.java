@@ -17,6 +17,19 @@
 
 package org.keycloak.broker.provider.util;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.keycloak.connections.httpclient.HttpClientProvider;
+import org.keycloak.models.KeycloakSession;
+
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
@@ -29,6 +42,8 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
@@ -47,6 +62,8 @@ public class SimpleHttp {
     private SSLSocketFactory sslFactory;
     private HostnameVerifier hostnameVerifier;
 
+    private HttpClient client;
+
     protected SimpleHttp(String url, String method) {
         this.url = url;
         this.method = method;
@@ -60,6 +77,26 @@ public class SimpleHttp {
         return new SimpleHttp(url, "POST");
     }
 
+    /**
+     * Request sent through the pooled client of {@link HttpClientProvider}, so connections to the same host are reused.
+     * Truststore is configured by the provider.
+     */
+    public static SimpleHttp doGet(String url, KeycloakSession session) {
+        return doGet(url).client(session);
+    }
+
+    /**
+     * @see #doGet(String, KeycloakSession)
+     */
+    public static SimpleHttp doPost(String url, KeycloakSession session) {
+        return doPost(url).client(session);
+    }
+
+    protected SimpleHttp client(KeycloakSession session) {
+        client = session.getProvider(HttpClientProvider.class).getHttpClient();
+        return this;
+    }
+
     public SimpleHttp header(String name, String value) {
         if (headers == null) {
             headers = new HashMap<String, String>();
@@ -87,34 +124,21 @@ public class SimpleHttp {
     }
 
     public String asString() throws IOException {
-        boolean get = method.equals("GET");
-        boolean post = method.equals("POST");
-
-        StringBuilder sb = new StringBuilder();
-        if (get) {
-            sb.append(url);
-        }
-
-        if (params != null) {
-            boolean f = true;
-            for (Map.Entry<String, String> p : params.entrySet()) {
-                if (f) {
-                    f = false;
-                    if (get) {
-                        sb.append("?");
-                    }
-                } else {
-                    sb.append("&");
-                }
-                sb.append(URLEncoder.encode(p.getKey(), "UTF-8"));
-                sb.append("=");
-                sb.append(URLEncoder.encode(p.getValue(), "UTF-8"));
+        if (client != null) {
+            HttpResponse response = execute();
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status >= 400) {
+                EntityUtils.consumeQuietly(entity);
+                throw new IOException("Server returned HTTP response code: " + status + " for URL: " + url);
             }
+            return entity != null ? EntityUtils.toString(entity, "UTF-8") : "";
         }
 
-        if (get) {
-            url = sb.toString();
-        }
+        boolean get = method.equals("GET");
+        boolean post = method.equals("POST");
+
+        String data = buildParams(get);
 
         HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
         setupTruststoreIfApplicable(connection);
@@ -131,8 +155,6 @@ public class SimpleHttp {
             }
 
             if (post) {
-                String data = sb.toString();
-
                 connection.setDoOutput(true);
                 connection.setRequestMethod("POST");
                 connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
@@ -151,57 +173,21 @@ public class SimpleHttp {
 	          }
             return toString(is);
         } finally {
-            if (os != null) {
-                try {
-                    os.close();
-                } catch (IOException e) {
-                }
-            }
-
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException e) {
-                }
-            }
-            if (connection != null) {
-                try {
-                    connection.disconnect();
-                } catch (Exception e) {
-                }
-            }
+            close(os, is);
         }
     }
 
     public int asStatus() throws IOException {
-        boolean get = method.equals("GET");
-        boolean post = method.equals("POST");
-
-        StringBuilder sb = new StringBuilder();
-        if (get) {
-            sb.append(url);
+        if (client != null) {
+            HttpResponse response = execute();
+            EntityUtils.consumeQuietly(response.getEntity());
+            return response.getStatusLine().getStatusCode();
         }
 
-        if (params != null) {
-            boolean f = true;
-            for (Map.Entry<String, String> p : params.entrySet()) {
-                if (f) {
-                    f = false;
-                    if (get) {
-                        sb.append("?");
-                    }
-                } else {
-                    sb.append("&");
-                }
-                sb.append(URLEncoder.encode(p.getKey(), "UTF-8"));
-                sb.append("=");
-                sb.append(URLEncoder.encode(p.getValue(), "UTF-8"));
-            }
-        }
+        boolean get = method.equals("GET");
+        boolean post = method.equals("POST");
 
-        if (get) {
-            url = sb.toString();
-        }
+        String data = buildParams(get);
 
         HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
         setupTruststoreIfApplicable(connection);
@@ -218,8 +204,6 @@ public class SimpleHttp {
             }
 
             if (post) {
-                String data = sb.toString();
-
                 connection.setDoOutput(true);
                 connection.setRequestMethod("POST");
                 connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
@@ -232,28 +216,70 @@ public class SimpleHttp {
             }
 
             is = connection.getInputStream();
-            return connection.getResponseCode();
+            int status = connection.getResponseCode();
+            drain(is);
+            return status;
         } finally {
-            if (os != null) {
-                try {
-                    os.close();
-                } catch (IOException e) {
+            close(os, is);
+        }
+    }
+
+    private HttpResponse execute() throws IOException {
+        HttpRequestBase request;
+        if (method.equals("POST")) {
+            HttpPost post = new HttpPost(url);
+            if (params != null) {
+                List<NameValuePair> formParams = new LinkedList<NameValuePair>();
+                for (Map.Entry<String, String> p : params.entrySet()) {
+                    formParams.add(new BasicNameValuePair(p.getKey(), p.getValue()));
                 }
+                post.setEntity(new UrlEncodedFormEntity(formParams, "UTF-8"));
             }
+            request = post;
+        } else {
+            buildParams(true);
+            request = new HttpGet(url);
+        }
 
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException e) {
-                }
+        if (headers != null) {
+            for (Map.Entry<String, String> h : headers.entrySet()) {
+                request.setHeader(h.getKey(), h.getValue());
             }
-            if (connection != null) {
-                try {
-                    connection.disconnect();
-                } catch (Exception e) {
+        }
+
+        return client.execute(request);
+    }
+
+    /**
+     * Appends params to the url for GET requests, otherwise returns them encoded as form data.
+     */
+    private String buildParams(boolean get) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (get) {
+            sb.append(url);
+        }
+
+        if (params != null) {
+            boolean f = true;
+            for (Map.Entry<String, String> p : params.entrySet()) {
+                if (f) {
+                    f = false;
+                    if (get) {
+                        sb.append("?");
+                    }
+                } else {
+                    sb.append("&");
                 }
+                sb.append(URLEncoder.encode(p.getKey(), "UTF-8"));
+                sb.append("=");
+                sb.append(URLEncoder.encode(p.getValue(), "UTF-8"));
             }
         }
+
+        if (get) {
+            url = sb.toString();
+        }
+        return sb.toString();
     }
 
     private String toString(InputStream is) throws IOException {
@@ -269,6 +295,30 @@ public class SimpleHttp {
         return writer.toString();
     }
 
+    // Fully read response can be returned to the JDK keep-alive cache
+    private void drain(InputStream is) throws IOException {
+        byte[] buffer = new byte[1024 * 4];
+        while (is.read(buffer) != -1) {
+        }
+    }
+
+    // The connection isn't disconnected, so that it can be reused by the next request to the same host
+    private void close(OutputStream os, InputStream is) {
+        if (os != null) {
+            try {
+                os.close();
+            } catch (IOException e) {
+            }
+        }
+
+        if (is != null) {
+            try {
+                is.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
     private void setupTruststoreIfApplicable(HttpURLConnection connection) {
         if (connection instanceof HttpsURLConnection && sslFactory != null) {
             HttpsURLConnection con = (HttpsURLConnection) connection;
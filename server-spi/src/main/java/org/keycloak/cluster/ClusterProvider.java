@@ -47,6 +47,20 @@ public interface ClusterProvider extends Provider {
     <T> ExecutionResult<T> executeIfNotExecuted(String taskKey, int taskTimeoutInSeconds, Callable<T> task);
 
 
+    /**
+     * Execute given task just if it wasn't already executed or isn't in progress in last intervalInSeconds (either on this or any other cluster node).
+     * Unlike {@link #executeIfNotExecuted(String, int, Callable)}, the execution is remembered until the interval expires even if the task already finished.
+     * If the task fails, it may be executed again by any node.
+     *
+     * @param taskKey
+     * @param intervalInSeconds
+     * @param task
+     * @param <T>
+     * @return result with "executed" flag specifying if execution was executed or ignored.
+     */
+    <T> ExecutionResult<T> executeOncePerInterval(String taskKey, int intervalInSeconds, Callable<T> task);
+
+
     /**
      * Register task (listener) under given key. When this key will be put to the cache on any cluster node, the task will be executed
      *
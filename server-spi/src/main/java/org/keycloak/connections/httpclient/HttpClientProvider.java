@@ -22,6 +22,7 @@ import org.keycloak.provider.Provider;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -47,4 +48,12 @@ public interface HttpClientProvider extends Provider {
      * @throws IOException
      */
     public InputStream get(String uri) throws IOException;
+
+    /**
+     * Executor for sending requests concurrently. It is shared and shut down together with the HTTP client, so callers
+     * must not shut it down. When its queue is full, the task is run by the calling thread.
+     *
+     * @return executor
+     */
+    ExecutorService getExecutor();
 }
@@ -28,4 +28,12 @@ public interface EmailSenderProvider extends Provider {
 
     void send(RealmModel realm, UserModel user, String subject, String textBody, String htmlBody) throws EmailException;
 
+    /**
+     * Emails sent after this call are delivered before {@link #send} returns, even if the provider delivers emails in the
+     * background otherwise. Used when the caller needs to know whether the email was sent, for example for emails sent by admin.
+     *
+     * @param synchronous
+     */
+    void setSynchronous(boolean synchronous);
+
 }
@@ -26,6 +26,8 @@ import org.keycloak.models.UserCredentialValueModel;
 
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
+import java.io.IOException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
@@ -39,14 +41,29 @@ public class Pbkdf2PasswordHashProvider implements PasswordHashProviderFactory,
     public static final String ID = "pbkdf2";
 
     private static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA1";
-    private static final int DERIVED_KEY_SIZE = 512;
+    protected static final int DERIVED_KEY_SIZE = 512;
+
+    // SecureRandom is thread-safe, so there's no need to seed new instance for every salt
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    // SecretKeyFactory is not thread-safe, but lookup of the provider is expensive
+    private static final ThreadLocal<SecretKeyFactory> SECRET_KEY_FACTORY = new ThreadLocal<SecretKeyFactory>() {
+        @Override
+        protected SecretKeyFactory initialValue() {
+            try {
+                return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("PBKDF2 algorithm not found", e);
+            }
+        }
+    };
 
     public UserCredentialValueModel encode(String rawPassword, int iterations) {
         byte[] salt = getSalt();
-        String encodedPassword = encode(rawPassword, iterations, salt);
+        String encodedPassword = Base64.encodeBytes(deriveKey(rawPassword, iterations, salt));
 
         UserCredentialValueModel credentials = new UserCredentialValueModel();
-        credentials.setAlgorithm(ID);
+        credentials.setAlgorithm(getId());
         credentials.setType(UserCredentialModel.PASSWORD);
         credentials.setSalt(salt);
         credentials.setHashIterations(iterations);
@@ -55,7 +72,21 @@ public class Pbkdf2PasswordHashProvider implements PasswordHashProviderFactory,
     }
 
     public boolean verify(String rawPassword, UserCredentialValueModel credential) {
-        return encode(rawPassword, credential.getHashIterations(), credential.getSalt()).equals(credential.getValue());
+        if (credential.getValue() == null) {
+            return false;
+        }
+
+        byte[] expected;
+        try {
+            expected = Base64.decode(credential.getValue());
+        } catch (IOException e) {
+            return false;
+        }
+
+        byte[] actual = deriveKey(rawPassword, credential.getHashIterations(), credential.getSalt());
+
+        // Constant-time comparison of the raw keys
+        return MessageDigest.isEqual(expected, actual);
     }
 
     @Override
@@ -79,12 +110,11 @@ public class Pbkdf2PasswordHashProvider implements PasswordHashProviderFactory,
         return ID;
     }
 
-    private String encode(String rawPassword, int iterations, byte[] salt) {
+    protected byte[] deriveKey(String rawPassword, int iterations, byte[] salt) {
         KeySpec spec = new PBEKeySpec(rawPassword.toCharArray(), salt, iterations, DERIVED_KEY_SIZE);
 
         try {
-            byte[] key = getSecretKeyFactory().generateSecret(spec).getEncoded();
-            return Base64.encodeBytes(key);
+            return SECRET_KEY_FACTORY.get().generateSecret(spec).getEncoded();
         } catch (InvalidKeySpecException e) {
             throw new RuntimeException("Credential could not be encoded", e);
         }
@@ -92,17 +122,8 @@ public class Pbkdf2PasswordHashProvider implements PasswordHashProviderFactory,
 
     private byte[] getSalt() {
         byte[] buffer = new byte[16];
-        SecureRandom secureRandom = new SecureRandom();
-        secureRandom.nextBytes(buffer);
+        SECURE_RANDOM.nextBytes(buffer);
         return buffer;
     }
 
-    private SecretKeyFactory getSecretKeyFactory() {
-        try {
-            return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("PBKDF2 algorithm not found", e);
-        }
-    }
-
 }
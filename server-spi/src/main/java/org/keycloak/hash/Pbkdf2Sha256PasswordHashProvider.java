@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.hash;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * PBKDF2 with HMAC-SHA256 as pseudo random function (RFC 2898). The key derivation is implemented directly on top of
+ * a thread-local {@link Mac}, so the inner loop doesn't allocate and JCA provider lookup happens only once per thread.
+ */
+public class Pbkdf2Sha256PasswordHashProvider extends Pbkdf2PasswordHashProvider {
+
+    public static final String ID = "pbkdf2-sha256";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final ThreadLocal<Mac> MAC = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance(HMAC_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("HMAC-SHA256 algorithm not found", e);
+            }
+        }
+    };
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    protected byte[] deriveKey(String rawPassword, int iterations, byte[] salt) {
+        byte[] password = rawPassword.getBytes(StandardCharsets.UTF_8);
+        try {
+            return deriveKey(MAC.get(), password, salt, iterations, DERIVED_KEY_SIZE / 8);
+        } finally {
+            Arrays.fill(password, (byte) 0);
+        }
+    }
+
+    static byte[] deriveKey(Mac mac, byte[] password, byte[] salt, int iterations, int keyLength) {
+        try {
+            mac.init(new PasswordKey(password));
+        } catch (InvalidKeyException e) {
+            throw new RuntimeException("Credential could not be encoded", e);
+        }
+
+        int macLength = mac.getMacLength();
+        int blocks = (keyLength + macLength - 1) / macLength;
+
+        byte[] key = new byte[keyLength];
+        byte[] u = new byte[macLength];
+        byte[] t = new byte[macLength];
+        byte[] blockIndex = new byte[4];
+
+        try {
+            for (int block = 1; block <= blocks; block++) {
+                blockIndex[0] = (byte) (block >>> 24);
+                blockIndex[1] = (byte) (block >>> 16);
+                blockIndex[2] = (byte) (block >>> 8);
+                blockIndex[3] = (byte) block;
+
+                // U_1 = PRF(P, S || INT(i))
+                mac.update(salt);
+                mac.update(blockIndex);
+                mac.doFinal(u, 0);
+                System.arraycopy(u, 0, t, 0, macLength);
+
+                // U_j = PRF(P, U_{j-1}), T_i = U_1 ^ U_2 ^ ... ^ U_c
+                for (int i = 1; i < iterations; i++) {
+                    mac.update(u);
+                    mac.doFinal(u, 0);
+                    for (int j = 0; j < macLength; j++) {
+                        t[j] ^= u[j];
+                    }
+                }
+
+                int offset = (block - 1) * macLength;
+                System.arraycopy(t, 0, key, offset, Math.min(macLength, keyLength - offset));
+            }
+        } catch (javax.crypto.ShortBufferException e) {
+            throw new RuntimeException("Credential could not be encoded", e);
+        }
+
+        return key;
+    }
+
+    /**
+     * Password as HMAC key. {@link javax.crypto.spec.SecretKeySpec} can't be used as it rejects empty keys.
+     */
+    private static class PasswordKey implements SecretKey {
+
+        private final byte[] password;
+
+        private PasswordKey(byte[] password) {
+            this.password = password;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return HMAC_ALGORITHM;
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return password.clone();
+        }
+    }
+
+}
@@ -56,6 +56,11 @@ public class LDAPConstants {
 
     public static final String SEARCH_SCOPE = "searchScope";
     public static final String CONNECTION_POOLING = "connectionPooling";
+    // Size of the connection pool maintained for each federation provider. Pool is not used if not set
+    public static final String CONNECTION_POOL_SIZE = "connectionPoolSize";
+    // Idle time in seconds after which pooled connection is validated before being used again
+    public static final String CONNECTION_POOL_VALIDATION_INTERVAL = "connectionPoolValidationInterval";
+    public static final int DEFAULT_CONNECTION_POOL_VALIDATION_INTERVAL = 30;
     public static final String PAGINATION = "pagination";
 
     public static final String EDIT_MODE = "editMode";
@@ -63,6 +68,12 @@ public class LDAPConstants {
     // Count of users processed per single transaction during sync process
     public static final String BATCH_SIZE_FOR_SYNC = "batchSizeForSync";
     public static final int DEFAULT_BATCH_SIZE_FOR_SYNC = 1000;
+    // Count of users imported from single page of LDAP users within one transaction during sync process
+    public static final String USERS_PER_TRANSACTION_FOR_SYNC = "usersPerTransactionForSync";
+    public static final int DEFAULT_USERS_PER_TRANSACTION_FOR_SYNC = 1;
+    // Count of threads importing users during sync process
+    public static final String SYNC_THREADS = "syncThreads";
+    public static final int DEFAULT_SYNC_THREADS = 1;
 
     // Config option to specify if registrations will be synced or not
     public static final String SYNC_REGISTRATIONS = "syncRegistrations";
@@ -24,6 +24,7 @@ import java.security.Key;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -181,6 +182,15 @@ public interface RealmModel extends RoleContainerModel {
 
     RoleModel getRoleById(String id);
 
+    /**
+     * Providers which keep the composite role graph of the whole realm around may return it, others should build the
+     * closure just from given roles with {@link RoleClosure#buildFrom(Collection)}.
+     *
+     * @param roles roles which must be part of the returned closure
+     * @return composite role graph containing at least given roles and all their composites
+     */
+    RoleClosure getRoleClosure(Collection<RoleModel> roles);
+
     List<GroupModel> getDefaultGroups();
 
     void addDefaultGroup(GroupModel group);
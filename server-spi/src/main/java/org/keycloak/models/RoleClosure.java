@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Precomputed composite role graph of a realm. Every realm and client role of the realm is assigned a bit index and for
+ * each role the transitive closure of its composites is kept as a {@link BitSet}, so checking whether a role is contained
+ * in another one or intersecting role sets doesn't need to walk the composite graph.
+ *
+ * Instances are immutable snapshots and must be rebuilt whenever a role or a composite mapping of the realm changes.
+ *
+ * @see RealmModel#getRoleClosure(Collection)
+ */
+public class RoleClosure implements Serializable {
+
+    private final String[] roleIds;
+    private final Map<String, Integer> indexes;
+    private final int[][] composites;
+    private final BitSet[] closures;
+
+    RoleClosure(String[] roleIds, int[][] composites) {
+        this.roleIds = roleIds;
+        this.indexes = new HashMap<>();
+        for (int i = 0; i < roleIds.length; i++) {
+            indexes.put(roleIds[i], i);
+        }
+        this.composites = composites;
+        this.closures = new BitSet[roleIds.length];
+        for (int i = 0; i < roleIds.length; i++) {
+            closures[i] = computeClosure(i);
+        }
+    }
+
+    public static RoleClosure build(RealmModel realm) {
+        List<RoleModel> roles = new ArrayList<>(realm.getRoles());
+        for (ClientModel client : realm.getClients()) {
+            roles.addAll(client.getRoles());
+        }
+        return build(roles);
+    }
+
+    /**
+     * Builds closure which contains just given roles and all their direct and indirect composites. Unlike
+     * {@link #build(RealmModel)} it doesn't need to load every role of the realm.
+     */
+    public static RoleClosure buildFrom(Collection<RoleModel> roots) {
+        List<RoleModel> roles = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (RoleModel root : roots) {
+            if (seen.add(root.getId())) roles.add(root);
+        }
+        for (int i = 0; i < roles.size(); i++) {
+            RoleModel role = roles.get(i);
+            if (!role.isComposite()) continue;
+            for (RoleModel child : role.getComposites()) {
+                if (seen.add(child.getId())) roles.add(child);
+            }
+        }
+        return build(roles);
+    }
+
+    private static RoleClosure build(List<RoleModel> roles) {
+        String[] roleIds = new String[roles.size()];
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < roleIds.length; i++) {
+            roleIds[i] = roles.get(i).getId();
+            indexes.put(roleIds[i], i);
+        }
+
+        int[][] composites = new int[roleIds.length][];
+        for (int i = 0; i < roleIds.length; i++) {
+            RoleModel role = roles.get(i);
+            if (!role.isComposite()) {
+                composites[i] = new int[0];
+                continue;
+            }
+
+            Set<RoleModel> children = role.getComposites();
+            int[] childIndexes = new int[children.size()];
+            int count = 0;
+            for (RoleModel child : children) {
+                Integer index = indexes.get(child.getId());
+                if (index != null) childIndexes[count++] = index;
+            }
+            composites[i] = count == childIndexes.length ? childIndexes : Arrays.copyOf(childIndexes, count);
+        }
+        return new RoleClosure(roleIds, composites);
+    }
+
+    private BitSet computeClosure(int role) {
+        BitSet closure = new BitSet(roleIds.length);
+        closure.set(role);
+        int[] stack = new int[roleIds.length];
+        int top = 0;
+        stack[top++] = role;
+        while (top > 0) {
+            int current = stack[--top];
+            for (int child : composites[current]) {
+                if (closure.get(child)) continue;
+                if (closures[child] != null) {
+                    closure.or(closures[child]);
+                } else {
+                    closure.set(child);
+                    stack[top++] = child;
+                }
+            }
+        }
+        return closure;
+    }
+
+    public int size() {
+        return roleIds.length;
+    }
+
+    public Set<String> getRoleIds() {
+        return Collections.unmodifiableSet(indexes.keySet());
+    }
+
+    /**
+     * @return bit index of the role or -1 if the role is not part of this closure
+     */
+    public int indexOf(String roleId) {
+        Integer index = indexes.get(roleId);
+        return index == null ? -1 : index;
+    }
+
+    public String getRoleId(int index) {
+        return roleIds[index];
+    }
+
+    /**
+     * @return bits of given roles or null if any of the roles is not part of this closure (for example it was created after
+     * the closure was built)
+     */
+    public BitSet toBits(Collection<RoleModel> roles) {
+        BitSet bits = new BitSet(roleIds.length);
+        for (RoleModel role : roles) {
+            int index = indexOf(role.getId());
+            if (index < 0) return null;
+            bits.set(index);
+        }
+        return bits;
+    }
+
+    /**
+     * @return given roles together with all their direct and indirect composites
+     */
+    public BitSet expand(BitSet roles) {
+        BitSet expanded = new BitSet(roleIds.length);
+        for (int i = roles.nextSetBit(0); i >= 0; i = roles.nextSetBit(i + 1)) {
+            expanded.or(closures[i]);
+        }
+        return expanded;
+    }
+
+    /**
+     * Same as {@link RoleModel#hasRole(RoleModel)}
+     */
+    public boolean hasRole(int role, int targetRole) {
+        return closures[role].get(targetRole);
+    }
+
+    /**
+     * Computes roles of the user which are visible through given scope mappings. For each of the user's roles, scope
+     * mappings are walked down through their composites and every scope role contained in the user's role is selected.
+     * Composites of a selected scope role are not walked any further as they are implied by it.
+     *
+     * @param roles roles mapped to the user
+     * @param scopeMappings roles in the scope of the client
+     * @return selected roles
+     */
+    public BitSet applyScope(BitSet roles, BitSet scopeMappings) {
+        BitSet requested = new BitSet(roleIds.length);
+        BitSet scope = expand(scopeMappings);
+        BitSet visited = new BitSet(roleIds.length);
+        int[] stack = new int[roleIds.length];
+
+        for (int role = roles.nextSetBit(0); role >= 0; role = roles.nextSetBit(role + 1)) {
+            BitSet userRole = closures[role];
+            if (!userRole.intersects(scope)) continue;
+
+            visited.clear();
+            int top = 0;
+            for (int i = scopeMappings.nextSetBit(0); i >= 0; i = scopeMappings.nextSetBit(i + 1)) {
+                visited.set(i);
+                stack[top++] = i;
+            }
+            while (top > 0) {
+                int current = stack[--top];
+                if (userRole.get(current)) {
+                    requested.set(current);
+                    continue;
+                }
+                for (int child : composites[current]) {
+                    if (visited.get(child)) continue;
+                    visited.set(child);
+                    stack[top++] = child;
+                }
+            }
+        }
+        return requested;
+    }
+
+}
@@ -333,8 +333,7 @@ public class UserFederationManager implements UserProvider {
         }
     }
 
-    @Override
-    public List<UserModel> searchForUser(final String search, RealmModel realm, int firstResult, int maxResults) {
+    Map<String, String> searchAttributes(String search) {
         Map<String, String> attributes = new HashMap<String, String>();
         int spaceIndex = search.lastIndexOf(' ');
         if (spaceIndex > -1) {
@@ -349,7 +348,12 @@ public class UserFederationManager implements UserProvider {
             attributes.put(UserModel.LAST_NAME, search.trim());
             attributes.put(UserModel.USERNAME, search.trim().toLowerCase());
         }
-        federationLoad(realm, attributes);
+        return attributes;
+    }
+
+    @Override
+    public List<UserModel> searchForUser(final String search, RealmModel realm, int firstResult, int maxResults) {
+        federationLoad(realm, searchAttributes(search));
         return query(new PaginatedQuery() {
             @Override
             public List<UserModel> query(RealmModel realm, int first, int max) {
@@ -358,6 +362,30 @@ public class UserFederationManager implements UserProvider {
         }, realm, firstResult, maxResults);
     }
 
+    @Override
+    public List<UserModel> searchForUserByPrefix(String search, RealmModel realm, String lastUsername, int maxResults) {
+        if (search != null && !search.trim().isEmpty()) {
+            federationLoad(realm, searchAttributes(search));
+        }
+
+        List<UserModel> results = new LinkedList<UserModel>();
+        if (maxResults == 0) return results;
+        String cursor = lastUsername;
+        do {
+            int max = maxResults == -1 ? -1 : maxResults - results.size();
+            List<UserModel> query = session.userStorage().searchForUserByPrefix(search, realm, cursor, max);
+            if (query == null || query.size() == 0) return results;
+            for (UserModel user : query) {
+                // Users removed by validation still move the cursor forward
+                cursor = user.getUsername();
+                user = validateAndProxyUser(realm, user);
+                if (user == null) continue;
+                results.add(user);
+            }
+            if (max == -1 || query.size() < max || results.size() == maxResults) return results;
+        } while (true);
+    }
+
     @Override
     public List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm) {
         return searchForUserByAttributes(attributes, realm, 0, Integer.MAX_VALUE - 1);
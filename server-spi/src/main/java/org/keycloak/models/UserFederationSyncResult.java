@@ -29,6 +29,9 @@ public class UserFederationSyncResult {
     private int removed;
     private int failed;
 
+    // Duration of the synchronization in milliseconds. Zero if not tracked by the provider
+    private long duration;
+
     public boolean isIgnored() {
         return ignored;
     }
@@ -69,6 +72,14 @@ public class UserFederationSyncResult {
         this.failed = failed;
     }
 
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
     public void increaseAdded() {
         added++;
     }
@@ -103,6 +114,10 @@ public class UserFederationSyncResult {
             if (failed != 0) {
                 status += String.format(", %d users failed sync! See server log for more details", failed);
             }
+            if (duration > 0) {
+                int processed = added + updated + failed;
+                status += String.format(", finished in %d ms (%d users/s)", duration, processed * 1000L / duration);
+            }
             return status;
         }
     }
@@ -57,6 +57,10 @@ public interface UserProvider extends Provider {
     List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm);
     List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm, int firstResult, int maxResults);
 
+    // Prefix search on username, email, first and last name (search may be null to list all users). Service accounts are not included.
+    // Results are ordered by username and start after lastUsername, so the last username of a page is the cursor for the next one
+    List<UserModel> searchForUserByPrefix(String search, RealmModel realm, String lastUsername, int maxResults);
+
     // Searching by UserModel.attribute (not property)
     List<UserModel> searchForUserByUserAttribute(String attrName, String attrValue, RealmModel realm);
 
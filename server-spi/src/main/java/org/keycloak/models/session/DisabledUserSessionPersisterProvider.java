@@ -119,6 +119,26 @@ public class DisabledUserSessionPersisterProvider implements UserSessionPersiste
         return Collections.emptyList();
     }
 
+    @Override
+    public List<String> loadUserSessionIdBoundaries(int interval, boolean offline) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<UserSessionModel> loadUserSessions(String fromUserSessionId, String toUserSessionId, boolean offline) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public UserSessionModel loadUserSession(RealmModel realm, String userSessionId, boolean offline) {
+        return null;
+    }
+
+    @Override
+    public List<UserSessionModel> loadUserSessions(RealmModel realm, UserModel user, boolean offline) {
+        return Collections.emptyList();
+    }
+
     @Override
     public int getUserSessionsCount(boolean offline) {
         return 0;
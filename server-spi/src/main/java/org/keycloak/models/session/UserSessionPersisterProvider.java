@@ -58,6 +58,18 @@ public interface UserSessionPersisterProvider extends Provider {
     // Called during startup. For each userSession, it loads also clientSessions
     List<UserSessionModel> loadUserSessions(int firstResult, int maxResults, boolean offline);
 
+    // Called during startup. Returns ID of every "interval"-th userSession ordered by ID, starting with the first one. Used to split loading into segments
+    List<String> loadUserSessionIdBoundaries(int interval, boolean offline);
+
+    // Called during startup. Loads userSessions with ID from "fromUserSessionId" (inclusive) to "toUserSessionId" (exclusive, null for no upper bound) ordered by ID. For each userSession, it loads also clientSessions
+    List<UserSessionModel> loadUserSessions(String fromUserSessionId, String toUserSessionId, boolean offline);
+
+    // Loads single userSession with it's clientSessions or null if it doesn't exist. Used when sessions are needed before loading at startup is finished
+    UserSessionModel loadUserSession(RealmModel realm, String userSessionId, boolean offline);
+
+    // Loads all userSessions of the user with their clientSessions. Used when sessions of the user are needed before loading at startup is finished
+    List<UserSessionModel> loadUserSessions(RealmModel realm, UserModel user, boolean offline);
+
     int getUserSessionsCount(boolean offline);
 
 }
@@ -30,4 +30,21 @@ public interface BruteForceProtector extends Provider {
     void failedLogin(RealmModel realm, String username, ClientConnection clientConnection);
 
     boolean isTemporarilyDisabled(KeycloakSession session, RealmModel realm, String username);
+
+    /**
+     * @return true if there were too many failed logins from the address of the client connection recently
+     */
+    boolean isTemporarilyDisabled(KeycloakSession session, RealmModel realm, ClientConnection clientConnection);
+
+    /**
+     * Forget the lockout of the username kept in memory, after its login failure was cleared. The lockout is forgotten on all
+     * cluster nodes once the transaction of the session is committed
+     */
+    void clearLockout(KeycloakSession session, RealmModel realm, String username);
+
+    /**
+     * Forget all the lockouts of usernames and client addresses of the realm kept in memory, after its login failures were cleared.
+     * The lockouts are forgotten on all cluster nodes once the transaction of the session is committed
+     */
+    void clearLockouts(KeycloakSession session, RealmModel realm);
 }
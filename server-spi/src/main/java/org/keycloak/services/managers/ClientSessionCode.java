@@ -28,10 +28,13 @@ import org.keycloak.common.util.Base64Url;
 import org.keycloak.common.util.Time;
 
 import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
+import java.util.WeakHashMap;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -41,6 +44,15 @@ public class ClientSessionCode {
 
     private static final byte[] HASH_SEPERATOR = "//".getBytes();
 
+    // Initialised Mac instances per thread, keyed by the realm code secret. Keys are shared by the realm cache, so entries
+    // go away together with the cached realm
+    private static final ThreadLocal<Map<Key, Mac>> MACS = new ThreadLocal<Map<Key, Mac>>() {
+        @Override
+        protected Map<Key, Mac> initialValue() {
+            return new WeakHashMap<Key, Mac>();
+        }
+    };
+
     private final RealmModel realm;
     private final ClientSessionModel clientSession;
 
@@ -57,16 +69,15 @@ public class ClientSessionCode {
 
     public static ClientSessionCode parse(String code, KeycloakSession session) {
         try {
-            String[] parts = code.split("\\.");
-            String id = parts[1];
+            int dot = code.indexOf('.');
+            String id = code.substring(dot + 1);
 
             ClientSessionModel clientSession = session.sessions().getClientSession(id);
             if (clientSession == null) {
                 return null;
             }
 
-            String hash = createHash(clientSession.getRealm(), clientSession);
-            if (!hash.equals(parts[0])) {
+            if (!verifyHash(code, dot, clientSession.getRealm(), clientSession)) {
                 return null;
             }
 
@@ -106,8 +117,8 @@ public class ClientSessionCode {
             return result;
         }
         try {
-            String[] parts = code.split("\\.");
-            String id = parts[1];
+            int dot = code.indexOf('.');
+            String id = code.substring(dot + 1);
 
             result.clientSession = session.sessions().getClientSession(realm, id);
             if (result.clientSession == null) {
@@ -115,8 +126,7 @@ public class ClientSessionCode {
                 return result;
             }
 
-            String hash = createHash(realm, result.clientSession);
-            if (!hash.equals(parts[0])) {
+            if (!verifyHash(code, dot, realm, result.clientSession)) {
                 result.illegalHash = true;
                 return result;
             }
@@ -133,16 +143,15 @@ public class ClientSessionCode {
 
     public static ClientSessionCode parse(String code, KeycloakSession session, RealmModel realm) {
         try {
-            String[] parts = code.split("\\.");
-            String id = parts[1];
+            int dot = code.indexOf('.');
+            String id = code.substring(dot + 1);
 
             ClientSessionModel clientSession = session.sessions().getClientSession(realm, id);
             if (clientSession == null) {
                 return null;
             }
 
-            String hash = createHash(realm, clientSession);
-            if (!hash.equals(parts[0])) {
+            if (!verifyHash(code, dot, realm, clientSession)) {
                 return null;
             }
 
@@ -234,28 +243,51 @@ public class ClientSessionCode {
     }
 
     private static String generateCode(RealmModel realm, ClientSessionModel clientSession) {
-        String hash = createHash(realm, clientSession);
+        String hash = Base64Url.encode(createHash(realm, clientSession));
+        String id = clientSession.getId();
 
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(hash.length() + 1 + id.length());
         sb.append(hash);
         sb.append(".");
-        sb.append(clientSession.getId());
+        sb.append(id);
 
         return sb.toString();
     }
 
-    private static String createHash(RealmModel realm, ClientSessionModel clientSession) {
+    private static boolean verifyHash(String code, int dot, RealmModel realm, ClientSessionModel clientSession) {
+        if (dot <= 0) {
+            return false;
+        }
+        byte[] expected = createHash(realm, clientSession);
+        byte[] actual = Base64Url.decode(code.substring(0, dot));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private static byte[] createHash(RealmModel realm, ClientSessionModel clientSession) {
         try {
-            Key codeSecretKey = realm.getCodeSecretKey();
-            Mac mac = Mac.getInstance(codeSecretKey.getAlgorithm());
-            mac.init(codeSecretKey);
-            mac.update(clientSession.getId().getBytes());
+            byte[] id = clientSession.getId().getBytes(StandardCharsets.UTF_8);
+            byte[] action = clientSession.getNote(ClientSessionModel.ACTION_KEY).getBytes(StandardCharsets.UTF_8);
+
+            // Mac is reused by the thread, so it's only touched once all input is available
+            Mac mac = getMac(realm.getCodeSecretKey());
+            mac.update(id);
             mac.update(HASH_SEPERATOR);
-            mac.update(clientSession.getNote(ClientSessionModel.ACTION_KEY).getBytes());
-            return Base64Url.encode(mac.doFinal());
+            mac.update(action);
+            return mac.doFinal();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static Mac getMac(Key codeSecretKey) throws Exception {
+        Map<Key, Mac> macs = MACS.get();
+        Mac mac = macs.get(codeSecretKey);
+        if (mac == null) {
+            mac = Mac.getInstance(codeSecretKey.getAlgorithm());
+            mac.init(codeSecretKey);
+            macs.put(codeSecretKey, mac);
+        }
+        return mac;
+    }
+
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.keycloak.timer;
+
+import org.keycloak.models.KeycloakSession;
+
+import java.util.List;
+
+/**
+ * Scheduled task, which can be split to independent partitions (for example one partition per realm). When the task is run by
+ * cluster aware runner, each partition is run in separate transaction and cluster nodes running the task at the same time share the
+ * partitions instead of all the work being done by one node.
+ *
+ * {@link #run(KeycloakSession)} is still used to run the whole task at once by the runners, which are not aware of partitions.
+ */
+public interface PartitionedScheduledTask extends ScheduledTask {
+
+    /**
+     * @return keys of the partitions to run, for example ids of realms
+     */
+    List<String> getPartitions(KeycloakSession session);
+
+    void run(KeycloakSession session, String partition);
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.broker.provider.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.connections.httpclient.HttpClientProvider;
+import org.keycloak.models.KeycloakSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class SimpleHttpTest {
+
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    private HttpServer server;
+    private String baseUrl;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient client;
+    private KeycloakSession session;
+
+    @Before
+    public void before() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/echo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+
+                StringBuilder sb = new StringBuilder();
+                sb.append(exchange.getRequestMethod()).append(' ').append(exchange.getRequestURI().getRawQuery());
+                sb.append(' ').append(exchange.getRequestHeaders().getFirst("X-Test"));
+                sb.append(' ').append(read(exchange.getRequestBody()));
+                respond(exchange, 200, sb.toString());
+            }
+        });
+        server.createContext("/error", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                read(exchange.getRequestBody());
+                respond(exchange, 400, "{\"error\":\"invalid_request\"}");
+            }
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        // A single pooled connection, so every request has to reuse it
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(1);
+        connectionManager.setDefaultMaxPerRoute(1);
+        client = HttpClients.custom().setConnectionManager(connectionManager).build();
+
+        final HttpClientProvider provider = stub(HttpClientProvider.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getHttpClient")) return client;
+                return null;
+            }
+        });
+        session = stub(KeycloakSession.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getProvider") && args[0] == HttpClientProvider.class) return provider;
+                return null;
+            }
+        });
+    }
+
+    @After
+    public void after() throws Exception {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void postThroughPooledClient() throws Exception {
+        String response = SimpleHttp.doPost(baseUrl + "/echo", session)
+                .header("X-Test", "header")
+                .param("grant_type", "authorization_code")
+                .asString();
+
+        Assert.assertEquals("POST null header grant_type=authorization_code", response);
+        assertConnectionReleased();
+    }
+
+    @Test
+    public void getThroughPooledClient() throws Exception {
+        String response = SimpleHttp.doGet(baseUrl + "/echo", session)
+                .param("id_token_hint", "a b")
+                .asString();
+
+        Assert.assertEquals("GET id_token_hint=a+b null ", response);
+        assertConnectionReleased();
+    }
+
+    @Test
+    public void connectionReused() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(200, SimpleHttp.doPost(baseUrl + "/echo", session).param("i", String.valueOf(i)).asStatus());
+            Assert.assertTrue(SimpleHttp.doGet(baseUrl + "/echo", session).asString().startsWith("GET"));
+        }
+
+        Assert.assertEquals(1, clientPorts.size());
+        assertConnectionReleased();
+    }
+
+    @Test
+    public void errorResponseReleasesConnection() throws Exception {
+        try {
+            SimpleHttp.doPost(baseUrl + "/error", session).param("token", "invalid").asString();
+            Assert.fail("Expected error status");
+        } catch (IOException expected) {
+            Assert.assertTrue(expected.getMessage().contains("400"));
+        }
+        assertConnectionReleased();
+
+        Assert.assertEquals(400, SimpleHttp.doPost(baseUrl + "/error", session).asStatus());
+        assertConnectionReleased();
+
+        Assert.assertEquals(200, SimpleHttp.doGet(baseUrl + "/echo", session).asStatus());
+        Assert.assertEquals(1, clientPorts.size());
+    }
+
+    private void assertConnectionReleased() {
+        Assert.assertEquals(0, connectionManager.getTotalStats().getLeased());
+        Assert.assertEquals(1, connectionManager.getTotalStats().getAvailable());
+    }
+
+    private static String read(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int n = is.read(buffer); n != -1; n = is.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(SimpleHttpTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.hash;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.util.Base64;
+import org.keycloak.models.UserCredentialValueModel;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+
+public class Pbkdf2PasswordHashProviderTest {
+
+    @Test
+    public void testPbkdf2() throws Exception {
+        Pbkdf2PasswordHashProvider provider = new Pbkdf2PasswordHashProvider();
+
+        UserCredentialValueModel credential = provider.encode("password", 100);
+        Assert.assertEquals(Pbkdf2PasswordHashProvider.ID, credential.getAlgorithm());
+        Assert.assertTrue(provider.verify("password", credential));
+        Assert.assertFalse(provider.verify("passwore", credential));
+    }
+
+    @Test
+    public void testPbkdf2CompatibleWithPreviouslyEncoded() throws Exception {
+        byte[] salt = new byte[16];
+        byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1").generateSecret(new PBEKeySpec("password".toCharArray(), salt, 100, 512)).getEncoded();
+
+        UserCredentialValueModel credential = new UserCredentialValueModel();
+        credential.setAlgorithm(Pbkdf2PasswordHashProvider.ID);
+        credential.setSalt(salt);
+        credential.setHashIterations(100);
+        credential.setValue(Base64.encodeBytes(key));
+
+        Pbkdf2PasswordHashProvider provider = new Pbkdf2PasswordHashProvider();
+        Assert.assertTrue(provider.verify("password", credential));
+        Assert.assertFalse(provider.verify("passwore", credential));
+    }
+
+    @Test
+    public void testPbkdf2Sha256() throws Exception {
+        Pbkdf2PasswordHashProvider provider = new Pbkdf2Sha256PasswordHashProvider();
+
+        UserCredentialValueModel credential = provider.encode("password", 100);
+        Assert.assertEquals(Pbkdf2Sha256PasswordHashProvider.ID, credential.getAlgorithm());
+        Assert.assertTrue(provider.verify("password", credential));
+        Assert.assertFalse(provider.verify("passwore", credential));
+        Assert.assertFalse(provider.verify("", credential));
+    }
+
+    @Test
+    public void testPbkdf2Sha256MatchesJdk() throws Exception {
+        byte[] salt = "saltSALTsaltSALT".getBytes(StandardCharsets.UTF_8);
+        for (String password : new String[] { "password", "pässwörd", "x" }) {
+            for (int iterations : new int[] { 1, 2, 1000 }) {
+                for (int keyLength : new int[] { 20, 32, 64 }) {
+                    byte[] expected = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                            .generateSecret(new PBEKeySpec(password.toCharArray(), salt, iterations, keyLength * 8)).getEncoded();
+                    byte[] actual = Pbkdf2Sha256PasswordHashProvider.deriveKey(Mac.getInstance("HmacSHA256"), password.getBytes(StandardCharsets.UTF_8), salt, iterations, keyLength);
+                    Assert.assertArrayEquals(expected, actual);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class RoleClosureTest {
+
+    @Test
+    public void testClosure() {
+        // 0 -> 1 -> 2, 3 -> 1, 4 <-> 5
+        RoleClosure closure = create(new int[][] { { 1 }, { 2 }, {}, { 1 }, { 5 }, { 4 } });
+
+        Assert.assertTrue(closure.hasRole(0, 0));
+        Assert.assertTrue(closure.hasRole(0, 2));
+        Assert.assertTrue(closure.hasRole(3, 2));
+        Assert.assertFalse(closure.hasRole(2, 1));
+        Assert.assertFalse(closure.hasRole(0, 3));
+        Assert.assertTrue(closure.hasRole(4, 5));
+        Assert.assertTrue(closure.hasRole(5, 4));
+
+        Assert.assertEquals(1, closure.indexOf("role-1"));
+        Assert.assertEquals(-1, closure.indexOf("unknown"));
+        Assert.assertEquals("role-3", closure.getRoleId(3));
+    }
+
+    @Test
+    public void testApplyScope() {
+        // user has 1, client scope is 0 -> 1 -> 2, only 1 is requested as 2 is implied by it
+        RoleClosure closure = create(new int[][] { { 1 }, { 2 }, {} });
+        Assert.assertEquals(bits(1), closure.applyScope(bits(1), bits(0)));
+        Assert.assertEquals(bits(2), closure.applyScope(bits(2), bits(0)));
+        Assert.assertEquals(bits(2), closure.applyScope(bits(0), bits(2)));
+    }
+
+    @Test
+    public void testApplyScopeMatchesCompositeWalk() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            int size = 1 + random.nextInt(40);
+            int[][] composites = new int[size][];
+            for (int i = 0; i < size; i++) {
+                int count = random.nextInt(4);
+                composites[i] = new int[count];
+                for (int j = 0; j < count; j++) {
+                    composites[i][j] = random.nextInt(size);
+                }
+            }
+            RoleClosure closure = create(composites);
+
+            BitSet roles = randomBits(random, size);
+            BitSet scope = randomBits(random, size);
+            Assert.assertEquals(walk(composites, roles, scope), closure.applyScope(roles, scope));
+        }
+    }
+
+    @Test
+    public void testBuildFrom() {
+        // 0 -> 1 -> 2, 3 -> 1, 1 <-> 4, only roles reachable from 0 are part of the closure
+        RoleModel[] roles = roles(new int[][] { { 1 }, { 2, 4 }, {}, { 1 }, { 1 } });
+        RoleClosure closure = RoleClosure.buildFrom(Arrays.asList(roles[0], roles[0]));
+
+        Assert.assertEquals(4, closure.size());
+        Assert.assertEquals(-1, closure.indexOf("role-3"));
+        Assert.assertTrue(closure.hasRole(closure.indexOf("role-0"), closure.indexOf("role-2")));
+        Assert.assertTrue(closure.hasRole(closure.indexOf("role-4"), closure.indexOf("role-1")));
+        Assert.assertFalse(closure.hasRole(closure.indexOf("role-2"), closure.indexOf("role-0")));
+        Assert.assertNull(closure.toBits(Arrays.asList(roles[0], roles[3])));
+    }
+
+    private static RoleModel[] roles(final int[][] composites) {
+        final RoleModel[] roles = new RoleModel[composites.length];
+        for (int i = 0; i < roles.length; i++) {
+            final int index = i;
+            roles[i] = (RoleModel) Proxy.newProxyInstance(RoleModel.class.getClassLoader(), new Class[] { RoleModel.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                        case "getId":
+                            return "role-" + index;
+                        case "isComposite":
+                            return composites[index].length > 0;
+                        case "getComposites":
+                            Set<RoleModel> children = new HashSet<>();
+                            for (int child : composites[index]) children.add(roles[child]);
+                            return children;
+                        case "hashCode":
+                            return index;
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+            });
+        }
+        return roles;
+    }
+
+    private static RoleClosure create(int[][] composites) {
+        String[] ids = new String[composites.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "role-" + i;
+        }
+        return new RoleClosure(ids, composites);
+    }
+
+    private static BitSet bits(int... indexes) {
+        BitSet bits = new BitSet();
+        for (int i : indexes) bits.set(i);
+        return bits;
+    }
+
+    private static BitSet randomBits(Random random, int size) {
+        BitSet bits = new BitSet();
+        int count = random.nextInt(5);
+        for (int i = 0; i < count; i++) {
+            bits.set(random.nextInt(size));
+        }
+        return bits;
+    }
+
+    // Same algorithm as TokenManager.applyScope on plain indexes
+    private static BitSet walk(int[][] composites, BitSet roles, BitSet scope) {
+        BitSet requested = new BitSet();
+        for (int role = roles.nextSetBit(0); role >= 0; role = roles.nextSetBit(role + 1)) {
+            for (int desired = scope.nextSetBit(0); desired >= 0; desired = scope.nextSetBit(desired + 1)) {
+                applyScope(composites, role, desired, new HashSet<Integer>(), requested);
+            }
+        }
+        return requested;
+    }
+
+    private static void applyScope(int[][] composites, int role, int scope, Set<Integer> visited, BitSet requested) {
+        if (!visited.add(scope)) return;
+        if (hasRole(composites, role, scope, new HashSet<Integer>())) {
+            requested.set(scope);
+            return;
+        }
+        for (int contained : composites[scope]) {
+            applyScope(composites, role, contained, visited, requested);
+        }
+    }
+
+    private static boolean hasRole(int[][] composites, int role, int target, Set<Integer> visited) {
+        if (role == target) return true;
+        if (!visited.add(role)) return false;
+        for (int contained : composites[role]) {
+            if (hasRole(composites, contained, target, visited)) return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.services.managers;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserSessionProvider;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ClientSessionCodeTest {
+
+    private final Map<String, ClientSessionModel> clientSessions = new HashMap<String, ClientSessionModel>();
+
+    private KeycloakSession session;
+    private TestRealm realm;
+    private TestRealm otherRealm;
+
+    @Before
+    public void before() {
+        realm = new TestRealm("realm");
+        otherRealm = new TestRealm("other");
+
+        final UserSessionProvider sessions = stub(UserSessionProvider.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getClientSession")) return clientSessions.get(args[args.length - 1]);
+                return null;
+            }
+        });
+        session = stub(KeycloakSession.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("sessions")) return sessions;
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void roundTrip() {
+        ClientSessionModel clientSession = clientSession("cs1", realm, "AUTHENTICATE");
+        String code = new ClientSessionCode(realm.model, clientSession).getCode();
+
+        Assert.assertTrue(code.endsWith(".cs1"));
+        Assert.assertSame(clientSession, ClientSessionCode.parse(code, session).getClientSession());
+        Assert.assertSame(clientSession, ClientSessionCode.parse(code, session, realm.model).getClientSession());
+
+        ClientSessionCode.ParseResult result = ClientSessionCode.parseResult(code, session, realm.model);
+        Assert.assertFalse(result.isIllegalHash());
+        Assert.assertFalse(result.isClientSessionNotFound());
+        Assert.assertSame(clientSession, result.getCode().getClientSession());
+    }
+
+    @Test
+    public void reusedMacGivesSameCode() {
+        ClientSessionModel cs1 = clientSession("cs1", realm, "AUTHENTICATE");
+        ClientSessionModel cs2 = clientSession("cs2", realm, "AUTHENTICATE");
+        ClientSessionModel cs3 = clientSession("cs3", otherRealm, "AUTHENTICATE");
+
+        String code1 = new ClientSessionCode(realm.model, cs1).getCode();
+        String code2 = new ClientSessionCode(realm.model, cs2).getCode();
+        String code3 = new ClientSessionCode(otherRealm.model, cs3).getCode();
+
+        Assert.assertEquals(code1, new ClientSessionCode(realm.model, cs1).getCode());
+        Assert.assertEquals(code2, new ClientSessionCode(realm.model, cs2).getCode());
+        Assert.assertEquals(code3, new ClientSessionCode(otherRealm.model, cs3).getCode());
+
+        Assert.assertNotNull(ClientSessionCode.parse(code1, session, realm.model));
+        Assert.assertNotNull(ClientSessionCode.parse(code3, session, otherRealm.model));
+        Assert.assertNotNull(ClientSessionCode.parse(code2, session, realm.model));
+    }
+
+    @Test
+    public void codeFromOtherRealmRejected() {
+        ClientSessionModel clientSession = clientSession("cs1", realm, "AUTHENTICATE");
+        String code = new ClientSessionCode(realm.model, clientSession).getCode();
+
+        Assert.assertNull(ClientSessionCode.parse(code, session, otherRealm.model));
+        Assert.assertTrue(ClientSessionCode.parseResult(code, session, otherRealm.model).isIllegalHash());
+    }
+
+    @Test
+    public void codeRejectedAfterActionChange() {
+        ClientSessionModel clientSession = clientSession("cs1", realm, "AUTHENTICATE");
+        String code = new ClientSessionCode(realm.model, clientSession).getCode();
+
+        clientSession.setNote(ClientSessionModel.ACTION_KEY, "CODE_TO_TOKEN");
+
+        Assert.assertNull(ClientSessionCode.parse(code, session, realm.model));
+        Assert.assertNotEquals(code, new ClientSessionCode(realm.model, clientSession).getCode());
+    }
+
+    @Test
+    public void codeRejectedAfterSecretRotation() {
+        ClientSessionModel clientSession = clientSession("cs1", realm, "AUTHENTICATE");
+        String code = new ClientSessionCode(realm.model, clientSession).getCode();
+
+        realm.codeSecret = KeycloakModelUtils.generateCodeSecret();
+
+        Assert.assertNull(ClientSessionCode.parse(code, session, realm.model));
+        Assert.assertNotNull(ClientSessionCode.parse(new ClientSessionCode(realm.model, clientSession).getCode(), session, realm.model));
+    }
+
+    @Test
+    public void tamperedCodeRejected() {
+        ClientSessionModel clientSession = clientSession("cs1", realm, "AUTHENTICATE");
+        clientSession("cs2", realm, "AUTHENTICATE");
+        String code = new ClientSessionCode(realm.model, clientSession).getCode();
+        int dot = code.indexOf('.');
+
+        char c = code.charAt(0);
+        String tamperedHash = (c == 'A' ? 'B' : 'A') + code.substring(1);
+        Assert.assertNull(ClientSessionCode.parse(tamperedHash, session, realm.model));
+        Assert.assertTrue(ClientSessionCode.parseResult(tamperedHash, session, realm.model).isIllegalHash());
+
+        String truncatedHash = code.substring(0, dot - 2) + code.substring(dot);
+        Assert.assertNull(ClientSessionCode.parse(truncatedHash, session, realm.model));
+
+        String otherSession = code.substring(0, dot) + ".cs2";
+        Assert.assertNull(ClientSessionCode.parse(otherSession, session, realm.model));
+        Assert.assertTrue(ClientSessionCode.parseResult(otherSession, session, realm.model).isIllegalHash());
+
+        String unknownSession = code.substring(0, dot) + ".cs3";
+        Assert.assertNull(ClientSessionCode.parse(unknownSession, session, realm.model));
+        Assert.assertTrue(ClientSessionCode.parseResult(unknownSession, session, realm.model).isClientSessionNotFound());
+    }
+
+    @Test
+    public void invalidCodeRejected() {
+        clientSession("cs1", realm, "AUTHENTICATE");
+
+        Assert.assertNull(ClientSessionCode.parse(null, session));
+        Assert.assertNull(ClientSessionCode.parse(null, session, realm.model));
+        Assert.assertTrue(ClientSessionCode.parseResult(null, session, realm.model).isIllegalHash());
+
+        for (String code : new String[] { "", "cs1", ".cs1", "!!!.cs1", "invalid.cs1" }) {
+            Assert.assertNull(code, ClientSessionCode.parse(code, session));
+            Assert.assertNull(code, ClientSessionCode.parse(code, session, realm.model));
+            Assert.assertNull(code, ClientSessionCode.parseResult(code, session, realm.model).getCode());
+        }
+    }
+
+    @Test
+    public void failedHashDoesNotAffectLaterCodes() {
+        ClientSessionModel clientSession = clientSession("cs1", realm, "AUTHENTICATE");
+        String code = new ClientSessionCode(realm.model, clientSession).getCode();
+
+        // No action note, so computing the hash fails after the Mac was already used by this thread
+        ClientSessionModel broken = clientSession("cs2", realm, null);
+        try {
+            new ClientSessionCode(realm.model, broken).getCode();
+            Assert.fail("Expected failure without action");
+        } catch (RuntimeException expected) {
+        }
+        Assert.assertTrue(ClientSessionCode.parseResult("AAAA.cs2", session, realm.model).isIllegalHash());
+
+        Assert.assertEquals(code, new ClientSessionCode(realm.model, clientSession).getCode());
+        Assert.assertNotNull(ClientSessionCode.parse(code, session, realm.model));
+    }
+
+    @Test
+    public void concurrentCodes() throws Exception {
+        final int count = 50;
+        final List<ClientSessionModel> models = new ArrayList<ClientSessionModel>();
+        final List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            TestRealm r = i % 2 == 0 ? realm : otherRealm;
+            ClientSessionModel clientSession = clientSession("cs" + i, r, "AUTHENTICATE");
+            models.add(clientSession);
+            expected.add(new ClientSessionCode(r.model, clientSession).getCode());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        for (int n = 0; n < 20; n++) {
+                            for (int i = 0; i < count; i++) {
+                                RealmModel r = models.get(i).getRealm();
+                                if (!expected.get(i).equals(new ClientSessionCode(r, models.get(i)).getCode())) return false;
+                                if (ClientSessionCode.parse(expected.get(i), session, r) == null) return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private ClientSessionModel clientSession(final String id, final TestRealm realm, String action) {
+        final Map<String, String> notes = new HashMap<String, String>();
+        if (action != null) {
+            notes.put(ClientSessionModel.ACTION_KEY, action);
+        }
+        ClientSessionModel clientSession = stub(ClientSessionModel.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("getId")) return id;
+                if (name.equals("getRealm")) return realm.model;
+                if (name.equals("getNote")) return notes.get(args[0]);
+                if (name.equals("setNote")) return notes.put((String) args[0], (String) args[1]);
+                return null;
+            }
+        });
+        clientSessions.put(id, clientSession);
+        return clientSession;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(ClientSessionCodeTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static class TestRealm {
+
+        private final RealmModel model;
+        private volatile String codeSecret = KeycloakModelUtils.generateCodeSecret();
+
+        private TestRealm(final String id) {
+            model = stub(RealmModel.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if (name.equals("getId")) return id;
+                    if (name.equals("getCodeSecretKey")) return KeycloakModelUtils.getSecretKey(codeSecret);
+                    return null;
+                }
+            });
+        }
+    }
+}
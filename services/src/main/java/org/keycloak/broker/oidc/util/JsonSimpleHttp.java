@@ -20,6 +20,7 @@ package org.keycloak.broker.oidc.util;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.keycloak.broker.provider.util.SimpleHttp;
+import org.keycloak.models.KeycloakSession;
 
 import java.io.IOException;
 
@@ -40,6 +41,18 @@ public class JsonSimpleHttp extends SimpleHttp {
         return new JsonSimpleHttp(url, "POST");
     }
 
+    public static JsonSimpleHttp doGet(String url, KeycloakSession session) {
+        JsonSimpleHttp request = doGet(url);
+        request.client(session);
+        return request;
+    }
+
+    public static JsonSimpleHttp doPost(String url, KeycloakSession session) {
+        JsonSimpleHttp request = doPost(url);
+        request.client(session);
+        return request;
+    }
+
     private static ObjectMapper mapper = new ObjectMapper();
 
     public static JsonNode asJson(SimpleHttp request) throws IOException {
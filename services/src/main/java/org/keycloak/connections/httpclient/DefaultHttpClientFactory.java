@@ -20,6 +20,7 @@ package org.keycloak.connections.httpclient;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.EntityBuilder;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
@@ -36,7 +37,14 @@ import org.keycloak.common.util.KeystoreUtil;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.KeyStore;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -45,7 +53,12 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
 
     private static final Logger logger = Logger.getLogger(DefaultHttpClientFactory.class);
 
+    // Used by postText if no timeouts are configured, so requests sent from the executor can't block its threads forever
+    private static final int DEFAULT_POST_TIMEOUT_MILLIS = 30000;
+
     private volatile CloseableHttpClient httpClient;
+    private RequestConfig postConfig;
+    private ThreadPoolExecutor executor;
     private Config.Scope config;
 
     @Override
@@ -66,6 +79,7 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
             @Override
             public int postText(String uri, String text) throws IOException {
                 HttpPost request = new HttpPost(uri);
+                request.setConfig(postConfig);
                 request.setEntity(EntityBuilder.create().setText(text).setContentType(ContentType.TEXT_PLAIN).build());
                 HttpResponse response = httpClient.execute(request);
                 try {
@@ -89,18 +103,32 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
                 return entity.getContent();
 
             }
+
+            @Override
+            public ExecutorService getExecutor() {
+                return executor;
+            }
         };
     }
 
     @Override
     public void close() {
+        executor.shutdown();
         try {
+            // Closing the client aborts requests still running in the executor
             if (httpClient != null) {
                 httpClient.close();
             }
         } catch (IOException e) {
 
         }
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warnf("HTTP client executor not terminated on shutdown, %d requests were not sent", executor.getQueue().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
@@ -111,6 +139,28 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
     @Override
     public void init(Config.Scope config) {
         this.config = config;
+
+        int maxConcurrentRequests = config.getInt("max-concurrent-requests", 16);
+        int requestQueueSize = config.getInt("request-queue-size", 1000);
+        executor = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(requestQueueSize), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "keycloak-http-client-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("HTTP client is closed");
+                }
+                r.run();
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
     }
 
     private void lazyInit(KeycloakSession session) {
@@ -166,6 +216,10 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
                             throw new RuntimeException("Failed to load keystore", e);
                         }
                     }
+                    postConfig = RequestConfig.custom()
+                            .setConnectTimeout(establishConnectionTimeout > 0 ? (int) establishConnectionTimeout : DEFAULT_POST_TIMEOUT_MILLIS)
+                            .setSocketTimeout(socketTimeout > 0 ? (int) socketTimeout : DEFAULT_POST_TIMEOUT_MILLIS)
+                            .build();
                     httpClient = builder.build();
                 }
             }
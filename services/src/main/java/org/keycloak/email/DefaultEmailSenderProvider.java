@@ -25,10 +25,8 @@ import org.keycloak.models.UserModel;
 import org.keycloak.services.ServicesLogger;
 
 import javax.mail.Message;
-import javax.mail.MessagingException;
 import javax.mail.Multipart;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
@@ -37,6 +35,7 @@ import javax.net.ssl.SSLSocketFactory;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
@@ -47,94 +46,128 @@ public class DefaultEmailSenderProvider implements EmailSenderProvider {
 
     private static final ServicesLogger logger = ServicesLogger.ROOT_LOGGER;
 
+    // SMTP configuration properties which are used to open the connection
+    private static final String[] TRANSPORT_CONFIG = { "host", "port", "auth", "user", "password", "ssl", "starttls" };
+
     private final KeycloakSession session;
+    private final EmailDeliveryQueue queue;
+    private final SmtpTransportPool transportPool;
+
+    private boolean synchronous;
 
     public DefaultEmailSenderProvider(KeycloakSession session) {
+        // Pool without idle transports closes every transport once the email is sent
+        this(session, null, new SmtpTransportPool(0, 0));
+    }
+
+    DefaultEmailSenderProvider(KeycloakSession session, EmailDeliveryQueue queue, SmtpTransportPool transportPool) {
         this.session = session;
+        this.queue = queue;
+        this.transportPool = transportPool;
+    }
+
+    @Override
+    public void setSynchronous(boolean synchronous) {
+        this.synchronous = synchronous;
     }
 
     @Override
     public void send(RealmModel realm, UserModel user, String subject, String textBody, String htmlBody) throws EmailException {
-        Transport transport = null;
+        EmailDeliveryQueue.Delivery delivery;
         try {
-            String address = user.getEmail();
-            Map<String, String> config = realm.getSmtpConfig();
+            delivery = createDelivery(realm, user, subject, textBody, htmlBody);
+        } catch (Exception e) {
+            logger.failedToSendEmail(e);
+            throw new EmailException(e);
+        }
 
-            Properties props = new Properties();
-            props.setProperty("mail.smtp.host", config.get("host"));
+        if (queue != null && !synchronous) {
+            queue.submit(delivery);
+            return;
+        }
 
-            boolean auth = "true".equals(config.get("auth"));
-            boolean ssl = "true".equals(config.get("ssl"));
-            boolean starttls = "true".equals(config.get("starttls"));
+        try {
+            delivery.deliver();
+        } catch (Exception e) {
+            logger.failedToSendEmail(e);
+            throw new EmailException(e);
+        }
+    }
 
-            if (config.containsKey("port")) {
-                props.setProperty("mail.smtp.port", config.get("port"));
-            }
+    // Everything which needs the realm or the session is done here in the request thread
+    private EmailDeliveryQueue.Delivery createDelivery(RealmModel realm, UserModel user, String subject, String textBody, String htmlBody) throws Exception {
+        final String address = user.getEmail();
+        Map<String, String> config = realm.getSmtpConfig();
 
-            if (auth) {
-                props.setProperty("mail.smtp.auth", "true");
-            }
+        Properties props = new Properties();
+        props.setProperty("mail.smtp.host", config.get("host"));
 
-            if (ssl) {
-                props.setProperty("mail.smtp.ssl.enable", "true");
-            }
+        boolean auth = "true".equals(config.get("auth"));
+        final String smtpUser = auth ? config.get("user") : null;
+        final String smtpPassword = auth ? config.get("password") : null;
+        boolean ssl = "true".equals(config.get("ssl"));
+        boolean starttls = "true".equals(config.get("starttls"));
 
-            if (starttls) {
-                props.setProperty("mail.smtp.starttls.enable", "true");
-            }
+        if (config.containsKey("port")) {
+            props.setProperty("mail.smtp.port", config.get("port"));
+        }
 
-            if (ssl || starttls) {
-                setupTruststore(props);
-            }
+        if (auth) {
+            props.setProperty("mail.smtp.auth", "true");
+        }
 
-            props.setProperty("mail.smtp.timeout", "10000");
-            props.setProperty("mail.smtp.connectiontimeout", "10000");
+        if (ssl) {
+            props.setProperty("mail.smtp.ssl.enable", "true");
+        }
 
-            String from = config.get("from");
+        if (starttls) {
+            props.setProperty("mail.smtp.starttls.enable", "true");
+        }
 
-            Session session = Session.getInstance(props);
+        if (ssl || starttls) {
+            setupTruststore(props);
+        }
 
-            Multipart multipart = new MimeMultipart("alternative");
+        props.setProperty("mail.smtp.timeout", "10000");
+        props.setProperty("mail.smtp.connectiontimeout", "10000");
 
-            if(textBody != null) {
-                MimeBodyPart textPart = new MimeBodyPart();
-                textPart.setText(textBody, "UTF-8");
-                multipart.addBodyPart(textPart);
-            }
+        String from = config.get("from");
 
-            if(htmlBody != null) {
-                MimeBodyPart htmlPart = new MimeBodyPart();
-                htmlPart.setContent(htmlBody, "text/html; charset=UTF-8");
-                multipart.addBodyPart(htmlPart);
-            }
+        final Session session = Session.getInstance(props);
 
-            Message msg = new MimeMessage(session);
-            msg.setFrom(new InternetAddress(from));
-            msg.setHeader("To", address);
-            msg.setSubject(subject);
-            msg.setContent(multipart);
-            msg.saveChanges();
-            msg.setSentDate(new Date());
-
-            transport = session.getTransport("smtp");
-            if (auth) {
-                transport.connect(config.get("user"), config.get("password"));
-            } else {
-                transport.connect();
-            }
-            transport.sendMessage(msg, new InternetAddress[]{new InternetAddress(address)});
-        } catch (Exception e) {
-            logger.failedToSendEmail(e);
-            throw new EmailException(e);
-        } finally {
-            if (transport != null) {
-                try {
-                    transport.close();
-                } catch (MessagingException e) {
-                    logger.warn("Failed to close transport", e);
-                }
-            }
+        Multipart multipart = new MimeMultipart("alternative");
+
+        if(textBody != null) {
+            MimeBodyPart textPart = new MimeBodyPart();
+            textPart.setText(textBody, "UTF-8");
+            multipart.addBodyPart(textPart);
+        }
+
+        if(htmlBody != null) {
+            MimeBodyPart htmlPart = new MimeBodyPart();
+            htmlPart.setContent(htmlBody, "text/html; charset=UTF-8");
+            multipart.addBodyPart(htmlPart);
+        }
+
+        final Map<String, String> transportKey = new HashMap<>();
+        for (String name : TRANSPORT_CONFIG) {
+            transportKey.put(name, config.get(name));
         }
+
+        final Message msg = new MimeMessage(session);
+        msg.setFrom(new InternetAddress(from));
+        msg.setHeader("To", address);
+        msg.setSubject(subject);
+        msg.setContent(multipart);
+        msg.saveChanges();
+        msg.setSentDate(new Date());
+
+        return new EmailDeliveryQueue.Delivery() {
+            @Override
+            public void deliver() throws Exception {
+                transportPool.send(transportKey, session, smtpUser, smtpPassword, msg, new InternetAddress[]{new InternetAddress(address)});
+            }
+        };
     }
 
     private void setupTruststore(Properties props) throws NoSuchAlgorithmException, KeyManagementException {
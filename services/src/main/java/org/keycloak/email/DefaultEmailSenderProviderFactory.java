@@ -20,19 +20,38 @@ package org.keycloak.email;
 import org.keycloak.Config;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class DefaultEmailSenderProviderFactory implements EmailSenderProviderFactory {
+public class DefaultEmailSenderProviderFactory implements EmailSenderProviderFactory, ServerInfoAwareProviderFactory {
+
+    private EmailDeliveryQueue queue;
+    private SmtpTransportPool transportPool;
 
     @Override
     public EmailSenderProvider create(KeycloakSession session) {
-        return new DefaultEmailSenderProvider(session);
+        return new DefaultEmailSenderProvider(session, queue, transportPool);
     }
 
     @Override
     public void init(Config.Scope config) {
+        int maxIdleConnections = config.getInt("maxIdleConnections", 2);
+        long idleTimeout = config.getLong("idleTimeout", 30000L);
+        transportPool = new SmtpTransportPool(maxIdleConnections, idleTimeout);
+
+        if (config.getBoolean("async", false)) {
+            int threads = config.getInt("threads", 2);
+            int queueSize = config.getInt("queueSize", 1000);
+            int maxAttempts = config.getInt("maxAttempts", 3);
+            long retryInterval = config.getLong("retryInterval", 5000L);
+
+            queue = new EmailDeliveryQueue(threads, queueSize, maxAttempts, retryInterval);
+        }
     }
 
     @Override
@@ -41,6 +60,30 @@ public class DefaultEmailSenderProviderFactory implements EmailSenderProviderFac
 
     @Override
     public void close() {
+        if (queue != null) {
+            queue.shutdown(10000);
+            queue = null;
+        }
+        if (transportPool != null) {
+            transportPool.close();
+        }
+    }
+
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("async", String.valueOf(queue != null));
+        info.put("sent", String.valueOf(transportPool.getSent()));
+        info.put("failedAttempts", String.valueOf(transportPool.getFailed()));
+        info.put("openConnections", String.valueOf(transportPool.getOpenConnections()));
+        info.put("idleConnections", String.valueOf(transportPool.getIdleConnections()));
+        if (queue != null) {
+            info.put("queued", String.valueOf(queue.getQueued()));
+            info.put("retried", String.valueOf(queue.getRetried()));
+            info.put("sentByCaller", String.valueOf(queue.getSentByCaller()));
+            info.put("dropped", String.valueOf(queue.getDropped()));
+        }
+        return info;
     }
 
     @Override
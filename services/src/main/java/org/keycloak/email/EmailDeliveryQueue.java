@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.email;
+
+import org.keycloak.services.ServicesLogger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers emails with background sender threads. Messages are prepared by {@link DefaultEmailSenderProvider} in the
+ * request thread, so only the SMTP conversation happens here. Failed deliveries are retried with linear backoff. If the
+ * queue is full, the email is sent once by the calling thread without retries, so bursts slow down the callers instead of
+ * dropping emails. Once the queue is shut down, emails are rejected.
+ */
+class EmailDeliveryQueue {
+
+    private static final ServicesLogger logger = ServicesLogger.ROOT_LOGGER;
+
+    interface Delivery {
+        void deliver() throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int maxAttempts;
+    private final long retryInterval;
+
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong sentByCaller = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    EmailDeliveryQueue(int threads, int queueSize, int maxAttempts, long retryInterval) {
+        this.maxAttempts = maxAttempts;
+        this.retryInterval = retryInterval;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "keycloak-email-sender-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    void submit(final Delivery delivery) throws EmailException {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(delivery);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                logger.failedToSendEmail(e);
+                throw new EmailException("Email queue is shut down", e);
+            }
+
+            sentByCaller.incrementAndGet();
+            try {
+                delivery.deliver();
+            } catch (Exception de) {
+                logger.failedToSendEmail(de);
+                throw new EmailException(de);
+            }
+        }
+    }
+
+    private void deliver(Delivery delivery) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                delivery.deliver();
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts || executor.isShutdown()) {
+                    dropped.incrementAndGet();
+                    logger.failedToSendEmail(e);
+                    return;
+                }
+                retried.incrementAndGet();
+                logger.debugf("Failed to send email, attempt %d of %d: %s", attempt, maxAttempts, e.getMessage());
+                try {
+                    Thread.sleep(retryInterval * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                    logger.failedToSendEmail(e);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of emails waiting in the queue
+     */
+    int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return number of failed deliveries which were attempted again
+     */
+    long getRetried() {
+        return retried.get();
+    }
+
+    /**
+     * @return number of emails sent by the calling thread as the queue was full
+     */
+    long getSentByCaller() {
+        return sentByCaller.get();
+    }
+
+    /**
+     * @return number of emails not sent after all the attempts
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops accepting new emails and waits for a while until the queued ones are sent.
+     */
+    void shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warnf("Email queue not drained on shutdown, %d emails were not sent", executor.getQueue().size());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.email;
+
+import org.keycloak.services.ServicesLogger;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps connected SMTP transports for reuse, keyed by the SMTP configuration of the realm. A transport is borrowed to send
+ * single message and returned afterwards. Transports idle for longer than the idle timeout are closed, and a transport which
+ * failed to send is always closed, so the next message opens a new connection.
+ */
+class SmtpTransportPool {
+
+    private static final ServicesLogger logger = ServicesLogger.ROOT_LOGGER;
+
+    private final int maxIdle;
+    private final long idleTimeout;
+
+    private final ConcurrentMap<Map<String, String>, Deque<IdleTransport>> idle = new ConcurrentHashMap<>();
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile boolean closed;
+
+    SmtpTransportPool(int maxIdle, long idleTimeout) {
+        this.maxIdle = maxIdle;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @param key SMTP configuration the transport is connected with. Transports are reused only for the same configuration
+     * @param session mail session created for the configuration, used to open new transport
+     * @param user user to authenticate as, or null if authentication is disabled
+     */
+    void send(Map<String, String> key, Session session, String user, String password, Message msg, Address[] recipients) throws MessagingException {
+        Transport transport = null;
+        try {
+            transport = borrow(key, session, user, password);
+            transport.sendMessage(msg, recipients);
+        } catch (MessagingException | RuntimeException e) {
+            failed.incrementAndGet();
+            if (transport != null) {
+                close(transport);
+            }
+            throw e;
+        }
+
+        sent.incrementAndGet();
+        release(key, transport);
+    }
+
+    private Transport borrow(Map<String, String> key, Session session, String user, String password) throws MessagingException {
+        Deque<IdleTransport> transports = idle.get(key);
+        if (transports != null) {
+            IdleTransport t;
+            while ((t = transports.pollFirst()) != null) {
+                // Server may have closed the connection in the meantime
+                if (!t.isExpired() && t.transport.isConnected()) {
+                    return t.transport;
+                }
+                close(t.transport);
+            }
+        }
+
+        Transport transport = session.getTransport("smtp");
+        if (user != null) {
+            transport.connect(user, password);
+        } else {
+            transport.connect();
+        }
+        open.incrementAndGet();
+        return transport;
+    }
+
+    private void release(Map<String, String> key, Transport transport) {
+        closeExpired();
+
+        Deque<IdleTransport> transports = idle.get(key);
+        if (transports == null) {
+            transports = new ConcurrentLinkedDeque<>();
+            Deque<IdleTransport> existing = idle.putIfAbsent(key, transports);
+            if (existing != null) {
+                transports = existing;
+            }
+        }
+
+        if (closed || transports.size() >= maxIdle) {
+            close(transport);
+            return;
+        }
+
+        transports.offerFirst(new IdleTransport(transport));
+
+        // Pool could have been closed while the transport was returned
+        if (closed) {
+            closeAll();
+        }
+    }
+
+    private void closeExpired() {
+        for (Deque<IdleTransport> transports : idle.values()) {
+            Iterator<IdleTransport> itr = transports.descendingIterator();
+            while (itr.hasNext()) {
+                IdleTransport t = itr.next();
+                if (t.isExpired() && transports.removeLastOccurrence(t)) {
+                    close(t.transport);
+                }
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (Deque<IdleTransport> transports : idle.values()) {
+            IdleTransport t;
+            while ((t = transports.pollFirst()) != null) {
+                close(t.transport);
+            }
+        }
+    }
+
+    private void close(Transport transport) {
+        open.decrementAndGet();
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            logger.warn("Failed to close transport", e);
+        }
+    }
+
+    void close() {
+        closed = true;
+        closeAll();
+    }
+
+    int getOpenConnections() {
+        return open.get();
+    }
+
+    int getIdleConnections() {
+        int count = 0;
+        for (Deque<IdleTransport> transports : idle.values()) {
+            count += transports.size();
+        }
+        return count;
+    }
+
+    long getSent() {
+        return sent.get();
+    }
+
+    long getFailed() {
+        return failed.get();
+    }
+
+    private class IdleTransport {
+
+        private final Transport transport;
+        private final long since = System.currentTimeMillis();
+
+        private IdleTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - since >= idleTimeout;
+        }
+    }
+}
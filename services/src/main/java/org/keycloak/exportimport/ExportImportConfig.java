@@ -47,6 +47,14 @@ public class ExportImportConfig {
     public static final String USERS_PER_FILE = PREFIX + "usersPerFile";
     public static final Integer DEFAULT_USERS_PER_FILE = 50;
 
+    // Number of users exported or imported in single transaction
+    public static final String USERS_PER_TRANSACTION = PREFIX + "usersPerTransaction";
+    public static final Integer DEFAULT_USERS_PER_TRANSACTION = 50;
+
+    // Number of threads used to export or import chunks of users in parallel
+    public static final String THREADS = PREFIX + "threads";
+    public static final Integer DEFAULT_THREADS = 1;
+
     // Strategy used during import data
     public static final String STRATEGY = PREFIX + "strategy";
     public static final Strategy DEFAULT_STRATEGY = Strategy.OVERWRITE_EXISTING;
@@ -113,6 +121,24 @@ public class ExportImportConfig {
         System.setProperty(USERS_PER_FILE, String.valueOf(usersPerFile));
     }
 
+    public static Integer getUsersPerTransaction() {
+        String usersPerTransaction = System.getProperty(USERS_PER_TRANSACTION, String.valueOf(DEFAULT_USERS_PER_TRANSACTION));
+        return Integer.parseInt(usersPerTransaction.trim());
+    }
+
+    public static void setUsersPerTransaction(Integer usersPerTransaction) {
+        System.setProperty(USERS_PER_TRANSACTION, String.valueOf(usersPerTransaction));
+    }
+
+    public static Integer getThreads() {
+        String threads = System.getProperty(THREADS, String.valueOf(DEFAULT_THREADS));
+        return Integer.parseInt(threads.trim());
+    }
+
+    public static void setThreads(Integer threads) {
+        System.setProperty(THREADS, String.valueOf(threads));
+    }
+
     public static Strategy getStrategy() {
         String strategy = System.getProperty(STRATEGY, DEFAULT_STRATEGY.toString());
         return Enum.valueOf(Strategy.class, strategy);
@@ -19,8 +19,11 @@ package org.keycloak.exportimport.dir;
 
 import org.jboss.logging.Logger;
 import org.keycloak.Config;
+import org.keycloak.exportimport.ExportImportConfig;
 import org.keycloak.exportimport.ImportProvider;
 import org.keycloak.exportimport.Strategy;
+import org.keycloak.exportimport.util.ExportImportExecutor;
+import org.keycloak.exportimport.util.ExportImportProgress;
 import org.keycloak.exportimport.util.ExportImportSessionTask;
 import org.keycloak.exportimport.util.ImportUtils;
 import org.keycloak.models.KeycloakSession;
@@ -116,9 +119,8 @@ public class DirImportProvider implements ImportProvider {
             }
         });
 
-        // Import realm first
-        FileInputStream is = new FileInputStream(realmFile);
-        final RealmRepresentation realmRep = JsonSerialization.readValue(is, RealmRepresentation.class);
+        // Import realm first. Users are imported afterwards in chunks, so they are skipped now
+        final RealmRepresentation realmRep = ImportUtils.getRealmFromStreamWithoutUsers(JsonSerialization.mapper, new FileInputStream(realmFile));
         final AtomicBoolean realmImported = new AtomicBoolean();
 
         KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
@@ -133,15 +135,21 @@ public class DirImportProvider implements ImportProvider {
 
         if (realmImported.get()) {
             // Import users
-            for (final File userFile : userFiles) {
-                final FileInputStream fis = new FileInputStream(userFile);
-                KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
-                    @Override
-                    protected void runExportImportTask(KeycloakSession session) throws IOException {
-                        ImportUtils.importUsersFromStream(session, realmName, JsonSerialization.mapper, fis);
-                        logger.infof("Imported users from %s", userFile.getAbsolutePath());
-                    }
-                });
+            int usersPerTransaction = ExportImportConfig.getUsersPerTransaction();
+            ExportImportExecutor executor = new ExportImportExecutor(factory, ExportImportConfig.getThreads());
+            ExportImportProgress progress = new ExportImportProgress(logger, realmName, "imported", -1);
+            try {
+                ImportUtils.importUsersFromStream(realmName, JsonSerialization.mapper, new FileInputStream(realmFile), usersPerTransaction, executor, progress);
+
+                for (File userFile : userFiles) {
+                    ImportUtils.importUsersFromStream(realmName, JsonSerialization.mapper, new FileInputStream(userFile), usersPerTransaction, executor, progress);
+                    logger.debugf("Read users from %s", userFile.getAbsolutePath());
+                }
+
+                executor.awaitAll();
+                progress.finish();
+            } finally {
+                executor.close();
             }
         }
     }
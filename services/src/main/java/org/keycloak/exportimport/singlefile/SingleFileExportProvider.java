@@ -17,9 +17,12 @@
 
 package org.keycloak.exportimport.singlefile;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.jboss.logging.Logger;
+import org.keycloak.exportimport.ExportImportConfig;
 import org.keycloak.exportimport.ExportProvider;
+import org.keycloak.exportimport.util.ExportImportExecutor;
 import org.keycloak.exportimport.util.ExportImportSessionTask;
 import org.keycloak.exportimport.util.ExportUtils;
 import org.keycloak.models.KeycloakSession;
@@ -55,36 +58,62 @@ public class SingleFileExportProvider implements ExportProvider {
     @Override
     public void exportModel(KeycloakSessionFactory factory) throws IOException {
         logger.infof("Exporting model into file %s", this.file.getAbsolutePath());
+        final List<String> realmNames = new ArrayList<String>();
         KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
 
             @Override
             protected void runExportImportTask(KeycloakSession session) throws IOException {
-                List<RealmModel> realms = session.realms().getRealms();
-                List<RealmRepresentation> reps = new ArrayList<RealmRepresentation>();
-                for (RealmModel realm : realms) {
-                    reps.add(ExportUtils.exportRealm(session, realm, true));
+                for (RealmModel realm : session.realms().getRealms()) {
+                    realmNames.add(realm.getName());
                 }
-
-                writeToFile(reps);
             }
 
         });
 
+        JsonGenerator generator = ExportUtils.createGenerator(getObjectMapper(), new FileOutputStream(this.file));
+        try {
+            generator.writeStartArray();
+            for (String realmName : realmNames) {
+                writeRealm(factory, realmName, generator);
+            }
+            generator.writeEndArray();
+        } finally {
+            generator.close();
+        }
     }
 
     @Override
     public void exportRealm(KeycloakSessionFactory factory, final String realmName) throws IOException {
         logger.infof("Exporting realm '%s' into file %s", realmName, this.file.getAbsolutePath());
+        JsonGenerator generator = ExportUtils.createGenerator(getObjectMapper(), new FileOutputStream(this.file));
+        try {
+            writeRealm(factory, realmName, generator);
+        } finally {
+            generator.close();
+        }
+    }
+
+    // Users are loaded and written in chunks, so the whole realm is never held in memory
+    private void writeRealm(KeycloakSessionFactory factory, final String realmName, JsonGenerator generator) throws IOException {
+        final RealmRepresentation[] realmRep = new RealmRepresentation[1];
+        final int[] usersCount = new int[1];
         KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
 
             @Override
             protected void runExportImportTask(KeycloakSession session) throws IOException {
                 RealmModel realm = session.realms().getRealmByName(realmName);
-                RealmRepresentation realmRep = ExportUtils.exportRealm(session, realm, true);
-                writeToFile(realmRep);
+                realmRep[0] = ExportUtils.exportRealm(session, realm, false);
+                usersCount[0] = session.users().getUsersCount(realm);
             }
 
         });
+
+        ExportImportExecutor executor = new ExportImportExecutor(factory, ExportImportConfig.getThreads());
+        try {
+            ExportUtils.exportRealmToStream(realmRep[0], usersCount[0], ExportImportConfig.getUsersPerTransaction(), executor, getObjectMapper(), generator);
+        } finally {
+            executor.close();
+        }
     }
 
     @Override
@@ -94,9 +123,4 @@ public class SingleFileExportProvider implements ExportProvider {
     private ObjectMapper getObjectMapper() {
         return JsonSerialization.prettyMapper;
     }
-
-    private void writeToFile(Object reps) throws IOException {
-        FileOutputStream stream = new FileOutputStream(this.file);
-        getObjectMapper().writeValue(stream, reps);
-    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.exportimport.util;
+
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs chunks of export/import work, each of them in separate {@link KeycloakSession} and transaction, on a fixed number
+ * of threads.
+ *
+ * At most one chunk per thread is in progress at any time. {@link #submit(Task, Callback)} blocks until the oldest chunk is
+ * finished when all threads are busy, so the amount of data held by pending chunks doesn't depend on the size of the
+ * exported or imported realm. Callbacks are always invoked on the submitting thread in the order in which the chunks
+ * were submitted, so they can write results into a single stream.
+ */
+public class ExportImportExecutor {
+
+    public interface Task<T> {
+        T run(KeycloakSession session) throws IOException;
+    }
+
+    public interface Callback<T> {
+        void done(T result) throws IOException;
+    }
+
+    private final KeycloakSessionFactory factory;
+    private final int threads;
+    private final ExecutorService executor;
+    private final LinkedList<Pending<?>> pending = new LinkedList<>();
+
+    public ExportImportExecutor(KeycloakSessionFactory factory, int threads) {
+        this.factory = factory;
+        this.threads = Math.max(threads, 1);
+        this.executor = this.threads > 1 ? Executors.newFixedThreadPool(this.threads) : null;
+    }
+
+    public <T> void submit(final Task<T> task, Callback<T> callback) throws IOException {
+        if (executor == null) {
+            T result = runInTransaction(task);
+            if (callback != null) callback.done(result);
+            return;
+        }
+
+        while (pending.size() >= threads) {
+            completeOldest();
+        }
+
+        Future<T> future = executor.submit(new Callable<T>() {
+
+            @Override
+            public T call() throws Exception {
+                return runInTransaction(task);
+            }
+
+        });
+        pending.add(new Pending<>(future, callback));
+    }
+
+    /**
+     * Waits until all submitted chunks are finished and their callbacks invoked
+     */
+    public void awaitAll() throws IOException {
+        while (!pending.isEmpty()) {
+            completeOldest();
+        }
+    }
+
+    /**
+     * Stops the worker threads. Chunks which were not finished yet are cancelled.
+     */
+    public void close() {
+        for (Pending<?> p : pending) {
+            p.future.cancel(true);
+        }
+        pending.clear();
+        if (executor != null) executor.shutdownNow();
+    }
+
+    private <T> T runInTransaction(final Task<T> task) {
+        final AtomicReference<T> result = new AtomicReference<>();
+        KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+
+            @Override
+            protected void runExportImportTask(KeycloakSession session) throws IOException {
+                result.set(task.run(session));
+            }
+
+        });
+        return result.get();
+    }
+
+    private void completeOldest() throws IOException {
+        Pending<?> oldest = pending.removeFirst();
+        oldest.complete();
+    }
+
+    private static class Pending<T> {
+        private final Future<T> future;
+        private final Callback<T> callback;
+
+        private Pending(Future<T> future, Callback<T> callback) {
+            this.future = future;
+            this.callback = callback;
+        }
+
+        private void complete() throws IOException {
+            T result;
+            try {
+                result = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for export/import task", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IOException(cause);
+            }
+            if (callback != null) callback.done(result);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.exportimport.util;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Logs progress of exporting or importing users of single realm. Progress is logged roughly on every 5% of users when
+ * the total count is known, otherwise on every 10000 users.
+ *
+ * Not thread-safe, it is supposed to be updated from {@link ExportImportExecutor.Callback}.
+ */
+public class ExportImportProgress {
+
+    private static final int UNKNOWN_TOTAL_STEP = 10000;
+
+    private final Logger logger;
+    private final String realmName;
+    private final String action;
+    private final int total;
+    private final int step;
+    private int count;
+
+    /**
+     * @param action past tense of the action e.g. "exported"
+     * @param total total count of users or -1 if not known
+     */
+    public ExportImportProgress(Logger logger, String realmName, String action, int total) {
+        this.logger = logger;
+        this.realmName = realmName;
+        this.action = action;
+        this.total = total;
+        this.step = total >= 0 ? Math.max(total / 20, 1) : UNKNOWN_TOTAL_STEP;
+    }
+
+    public void add(int processed) {
+        int previous = count;
+        count += processed;
+        if (count / step != previous / step) {
+            log();
+        }
+    }
+
+    public void finish() {
+        if (count % step != 0 || count == 0) {
+            log();
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    private void log() {
+        if (total >= 0) {
+            logger.infof("Realm '%s' - %d of %d users %s", realmName, count, total, action);
+        } else {
+            logger.infof("Realm '%s' - %d users %s", realmName, count, action);
+        }
+    }
+}
@@ -18,10 +18,12 @@
 package org.keycloak.exportimport.util;
 
 import com.fasterxml.jackson.core.JsonEncoding;
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jboss.logging.Logger;
 import org.keycloak.common.Version;
 import org.keycloak.common.util.Base64;
 import org.keycloak.models.*;
@@ -37,6 +39,8 @@ import java.util.*;
  */
 public class ExportUtils {
 
+    private static final Logger logger = Logger.getLogger(ExportUtils.class);
+
     public static RealmRepresentation exportRealm(KeycloakSession session, RealmModel realm, boolean includeUsers) {
         RealmRepresentation rep = ModelToRepresentation.toRepresentation(realm, true);
 
@@ -372,12 +376,8 @@ public class ExportUtils {
     // Streaming API
 
     public static void exportUsersToStream(KeycloakSession session, RealmModel realm, List<UserModel> usersToExport, ObjectMapper mapper, OutputStream os) throws IOException {
-        JsonFactory factory = mapper.getFactory();
-        JsonGenerator generator = factory.createGenerator(os, JsonEncoding.UTF8);
+        JsonGenerator generator = createGenerator(mapper, os);
         try {
-            if (mapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
-                generator.useDefaultPrettyPrinter();
-            }
             generator.writeStartObject();
             generator.writeStringField("realm", realm.getName());
             // generator.writeStringField("strategy", strategy.toString());
@@ -395,4 +395,98 @@ public class ExportUtils {
             generator.close();
         }
     }
+
+    public static JsonGenerator createGenerator(ObjectMapper mapper, OutputStream os) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(os, JsonEncoding.UTF8);
+        if (mapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
+            generator.useDefaultPrettyPrinter();
+        }
+        return generator;
+    }
+
+    /**
+     * Writes realm object with users. Realm representation must not contain users, they are loaded and written in chunks
+     * of given size, each chunk in separate transaction, and added as last field of the realm object.
+     *
+     * @param rep realm representation without users
+     * @param usersCount count of users to export
+     */
+    public static void exportRealmToStream(RealmRepresentation rep, int usersCount, int usersPerTransaction, ExportImportExecutor executor, ObjectMapper mapper, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+
+        ObjectNode node = mapper.valueToTree(rep);
+        node.remove("users");
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            generator.writeFieldName(field.getKey());
+            generator.writeTree(field.getValue());
+        }
+
+        if (usersCount > 0) {
+            generator.writeFieldName("users");
+            generator.writeStartArray();
+            exportUsers(rep.getRealm(), 0, usersCount, usersPerTransaction, executor, generator);
+            generator.writeEndArray();
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes users file with given range of users of the realm. Users are loaded and written in chunks of given size,
+     * each chunk in separate transaction.
+     */
+    public static void exportUsersToStream(String realmName, int first, int count, int usersPerTransaction, ExportImportExecutor executor, ObjectMapper mapper, OutputStream os) throws IOException {
+        JsonGenerator generator = createGenerator(mapper, os);
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("realm", realmName);
+            generator.writeFieldName("users");
+            generator.writeStartArray();
+            exportUsers(realmName, first, count, usersPerTransaction, executor, generator);
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } finally {
+            generator.close();
+        }
+    }
+
+    private static void exportUsers(final String realmName, int first, int count, int usersPerTransaction, ExportImportExecutor executor, final JsonGenerator generator) throws IOException {
+        final ExportImportProgress progress = new ExportImportProgress(logger, realmName, "exported", count);
+        int end = first + count;
+
+        for (int start = first; start < end; start += usersPerTransaction) {
+            final int pageStart = start;
+            final int pageSize = Math.min(usersPerTransaction, end - start);
+
+            executor.submit(new ExportImportExecutor.Task<List<UserRepresentation>>() {
+
+                @Override
+                public List<UserRepresentation> run(KeycloakSession session) {
+                    RealmModel realm = session.realms().getRealmByName(realmName);
+                    List<UserModel> users = session.users().getUsers(realm, pageStart, pageSize, true);
+                    List<UserRepresentation> reps = new ArrayList<>(users.size());
+                    for (UserModel user : users) {
+                        reps.add(exportUser(session, realm, user));
+                    }
+                    return reps;
+                }
+
+            }, new ExportImportExecutor.Callback<List<UserRepresentation>>() {
+
+                @Override
+                public void done(List<UserRepresentation> reps) throws IOException {
+                    for (UserRepresentation rep : reps) {
+                        generator.writeObject(rep);
+                    }
+                    progress.add(reps.size());
+                }
+
+            });
+        }
+
+        executor.awaitAll();
+        progress.finish();
+    }
 }
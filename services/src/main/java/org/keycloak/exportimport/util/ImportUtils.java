@@ -20,7 +20,9 @@ package org.keycloak.exportimport.util;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.exportimport.ExportImportConfig;
@@ -171,40 +173,67 @@ public class ImportUtils {
 
 
     // Assuming that it's invoked inside transaction
-    public static void importUsersFromStream(KeycloakSession session, String realmName, ObjectMapper mapper, InputStream is) throws IOException {
-        RealmProvider model = session.realms();
-        JsonFactory factory = mapper.getJsonFactory();
-        JsonParser parser = factory.createJsonParser(is);
+    /**
+     * Reads single realm from the stream, skipping its users. Users can be imported afterwards with
+     * {@link #importUsersFromStream(String, ObjectMapper, InputStream, int, ExportImportExecutor, ExportImportProgress)}.
+     */
+    public static RealmRepresentation getRealmFromStreamWithoutUsers(ObjectMapper mapper, InputStream is) throws IOException {
+        JsonParser parser = mapper.getFactory().createParser(is);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("Expected realm object");
+            }
+
+            ObjectNode realmNode = mapper.createObjectNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if ("users".equals(fieldName)) {
+                    parser.skipChildren();
+                } else {
+                    realmNode.set(fieldName, parser.<JsonNode>readValueAsTree());
+                }
+            }
+            return mapper.treeToValue(realmNode, RealmRepresentation.class);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Imports users from the stream, which contains either users file or realm with users. Users are read and imported in
+     * chunks of given size, each chunk in separate transaction, so the whole stream is never held in memory.
+     */
+    public static void importUsersFromStream(String realmName, ObjectMapper mapper, InputStream is, int usersPerTransaction, ExportImportExecutor executor, ExportImportProgress progress) throws IOException {
+        JsonParser parser = mapper.getFactory().createParser(is);
         try {
             parser.nextToken();
 
             while (parser.nextToken() == JsonToken.FIELD_NAME) {
-                if ("realm".equals(parser.getText())) {
-                    parser.nextToken();
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+
+                if ("realm".equals(fieldName)) {
                     String currRealmName = parser.getText();
                     if (!currRealmName.equals(realmName)) {
                         throw new IllegalStateException("Trying to import users into invalid realm. Realm name: " + realmName + ", Expected realm name: " + currRealmName);
                     }
-                } else if ("users".equals(parser.getText())) {
-                    parser.nextToken();
-
-                    if (parser.getCurrentToken() == JsonToken.START_ARRAY) {
-                        parser.nextToken();
-                    }
-
-                    // TODO: support for more transactions per single users file (if needed)
+                } else if ("users".equals(fieldName) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
                     List<UserRepresentation> userReps = new ArrayList<UserRepresentation>();
-                    while (parser.getCurrentToken() == JsonToken.START_OBJECT) {
-                        UserRepresentation user = parser.readValueAs(UserRepresentation.class);
-                        userReps.add(user);
-                        parser.nextToken();
-                    }
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        userReps.add(parser.readValueAs(UserRepresentation.class));
 
-                    importUsers(session, model, realmName, userReps);
+                        if (userReps.size() >= usersPerTransaction) {
+                            importUsers(realmName, userReps, executor, progress);
+                            userReps = new ArrayList<UserRepresentation>();
+                        }
+                    }
 
-                    if (parser.getCurrentToken() == JsonToken.END_ARRAY) {
-                        parser.nextToken();
+                    if (!userReps.isEmpty()) {
+                        importUsers(realmName, userReps, executor, progress);
                     }
+                } else {
+                    parser.skipChildren();
                 }
             }
         } finally {
@@ -212,11 +241,26 @@ public class ImportUtils {
         }
     }
 
-    private static void importUsers(KeycloakSession session, RealmProvider model, String realmName, List<UserRepresentation> userReps) {
-        RealmModel realm = model.getRealmByName(realmName);
-        for (UserRepresentation user : userReps) {
-            RepresentationToModel.createUser(session, realm, user);
-        }
+    private static void importUsers(final String realmName, final List<UserRepresentation> userReps, ExportImportExecutor executor, final ExportImportProgress progress) throws IOException {
+        executor.submit(new ExportImportExecutor.Task<Integer>() {
+
+            @Override
+            public Integer run(KeycloakSession session) {
+                RealmModel realm = session.realms().getRealmByName(realmName);
+                for (UserRepresentation user : userReps) {
+                    RepresentationToModel.createUser(session, realm, user);
+                }
+                return userReps.size();
+            }
+
+        }, new ExportImportExecutor.Callback<Integer>() {
+
+            @Override
+            public void done(Integer imported) {
+                progress.add(imported);
+            }
+
+        });
     }
 
 }
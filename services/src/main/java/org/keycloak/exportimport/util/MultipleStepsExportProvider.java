@@ -17,6 +17,8 @@
 
 package org.keycloak.exportimport.util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.jboss.logging.Logger;
 import org.keycloak.exportimport.ExportImportConfig;
 import org.keycloak.exportimport.ExportProvider;
@@ -28,8 +30,10 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.representations.idm.RealmRepresentation;
+import org.keycloak.util.JsonSerialization;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -66,6 +70,7 @@ public abstract class MultipleStepsExportProvider implements ExportProvider {
     protected void exportRealmImpl(KeycloakSessionFactory factory, final String realmName) throws IOException {
         final UsersExportStrategy usersExportStrategy = ExportImportConfig.getUsersExportStrategy();
         final int usersPerFile = ExportImportConfig.getUsersPerFile();
+        final int usersPerTransaction = ExportImportConfig.getUsersPerTransaction();
         final UsersHolder usersHolder = new UsersHolder();
         final boolean exportUsersIntoRealmFile = usersExportStrategy == UsersExportStrategy.REALM_FILE;
 
@@ -74,54 +79,90 @@ public abstract class MultipleStepsExportProvider implements ExportProvider {
             @Override
             protected void runExportImportTask(KeycloakSession session) throws IOException {
                 RealmModel realm = session.realms().getRealmByName(realmName);
-                RealmRepresentation rep = ExportUtils.exportRealm(session, realm, exportUsersIntoRealmFile);
-                writeRealm(realmName + "-realm.json", rep);
-                logger.info("Realm '" + realmName + "' - data exported");
+                usersHolder.realmRep = ExportUtils.exportRealm(session, realm, false);
 
                 // Count total number of users
-                if (!exportUsersIntoRealmFile) {
+                if (usersExportStrategy != UsersExportStrategy.SKIP) {
                     usersHolder.totalCount = session.users().getUsersCount(realm);
                 }
             }
 
         });
 
-        if (usersExportStrategy != UsersExportStrategy.SKIP && !exportUsersIntoRealmFile) {
-            // We need to export users now
-            usersHolder.currentPageStart = 0;
+        ExportImportExecutor executor = new ExportImportExecutor(factory, ExportImportConfig.getThreads());
+        try {
+            // Users are loaded and written in chunks, so the whole realm is never held in memory
+            if (exportUsersIntoRealmFile) {
+                JsonGenerator generator = ExportUtils.createGenerator(getObjectMapper(), createOutputStream(realmName + "-realm.json"));
+                try {
+                    ExportUtils.exportRealmToStream(usersHolder.realmRep, usersHolder.totalCount, usersPerTransaction, executor, getObjectMapper(), generator);
+                } finally {
+                    generator.close();
+                }
+            } else {
+                getObjectMapper().writeValue(createOutputStream(realmName + "-realm.json"), usersHolder.realmRep);
+            }
+            logger.info("Realm '" + realmName + "' - data exported");
 
-            // usersExportStrategy==SAME_FILE  means exporting all users into single file (but separate to realm)
-            final int countPerPage = (usersExportStrategy == UsersExportStrategy.SAME_FILE) ? usersHolder.totalCount : usersPerFile;
+            if (usersHolder.totalCount == 0) {
+                return;
+            }
 
-            while (usersHolder.currentPageStart < usersHolder.totalCount) {
-                if (usersHolder.currentPageStart + countPerPage < usersHolder.totalCount) {
-                    usersHolder.currentPageEnd = usersHolder.currentPageStart + countPerPage;
-                } else {
-                    usersHolder.currentPageEnd = usersHolder.totalCount;
-                }
+            if (usersExportStrategy == UsersExportStrategy.SAME_FILE) {
+                // usersExportStrategy==SAME_FILE  means exporting all users into single file (but separate to realm)
+                ExportUtils.exportUsersToStream(realmName, 0, usersHolder.totalCount, usersPerTransaction, executor, getObjectMapper(), createOutputStream(realmName + "-users-0.json"));
+            } else if (usersExportStrategy == UsersExportStrategy.DIFFERENT_FILES) {
+                exportUsersIntoDifferentFiles(realmName, usersHolder.totalCount, usersPerFile, executor);
+            }
+        } finally {
+            executor.close();
+        }
+    }
 
-                KeycloakModelUtils.runJobInTransaction(factory, new ExportImportSessionTask() {
+    protected void exportUsersIntoDifferentFiles(final String realmName, int totalCount, final int usersPerFile, ExportImportExecutor executor) throws IOException {
+        final ExportImportProgress progress = new ExportImportProgress(logger, realmName, "exported", totalCount);
 
-                    @Override
-                    protected void runExportImportTask(KeycloakSession session) throws IOException {
-                        RealmModel realm = session.realms().getRealmByName(realmName);
-                        usersHolder.users = session.users().getUsers(realm, usersHolder.currentPageStart, usersHolder.currentPageEnd - usersHolder.currentPageStart, true);
+        // Each file is written by single task, so files are written in parallel when more threads are configured
+        for (int pageStart = 0; pageStart < totalCount; pageStart += usersPerFile) {
+            final int currentPageStart = pageStart;
+            final int currentPageEnd = Math.min(pageStart + usersPerFile, totalCount);
 
-                        writeUsers(realmName + "-users-" + (usersHolder.currentPageStart / countPerPage) + ".json", session, realm, usersHolder.users);
+            executor.submit(new ExportImportExecutor.Task<Integer>() {
 
-                        logger.info("Users " + usersHolder.currentPageStart + "-" + (usersHolder.currentPageEnd -1) + " exported");
-                    }
+                @Override
+                public Integer run(KeycloakSession session) throws IOException {
+                    RealmModel realm = session.realms().getRealmByName(realmName);
+                    List<UserModel> users = session.users().getUsers(realm, currentPageStart, currentPageEnd - currentPageStart, true);
 
-                });
+                    OutputStream os = createOutputStream(realmName + "-users-" + (currentPageStart / usersPerFile) + ".json");
+                    ExportUtils.exportUsersToStream(session, realm, users, getObjectMapper(), os);
 
-                usersHolder.currentPageStart = usersHolder.currentPageEnd;
-            }
+                    logger.debug("Users " + currentPageStart + "-" + (currentPageEnd - 1) + " exported");
+                    return users.size();
+                }
+
+            }, new ExportImportExecutor.Callback<Integer>() {
+
+                @Override
+                public void done(Integer exported) {
+                    progress.add(exported);
+                }
+
+            });
         }
+
+        executor.awaitAll();
+        progress.finish();
     }
 
-    protected abstract void writeRealm(String fileName, RealmRepresentation rep) throws IOException;
+    protected ObjectMapper getObjectMapper() {
+        return JsonSerialization.prettyMapper;
+    }
 
-    protected abstract void writeUsers(String fileName, KeycloakSession session, RealmModel realm, List<UserModel> users) throws IOException;
+    /**
+     * Creates stream for writing exported file of given name. Stream is closed by caller once the file is written.
+     */
+    protected abstract OutputStream createOutputStream(String fileName) throws IOException;
 
     public static class RealmsHolder {
         List<RealmModel> realms;
@@ -129,9 +170,7 @@ public abstract class MultipleStepsExportProvider implements ExportProvider {
     }
 
     public static class UsersHolder {
-        List<UserModel> users;
+        RealmRepresentation realmRep;
         int totalCount;
-        int currentPageStart;
-        int currentPageEnd;
     }
 }
@@ -17,14 +17,24 @@
 
 package org.keycloak.protocol;
 
+import org.keycloak.models.ClientSessionModel;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.protocol.oidc.OIDCLoginProtocol;
 import org.keycloak.protocol.oidc.OIDCLoginProtocolFactory;
 import org.keycloak.provider.ProviderFactory;
+import org.keycloak.services.managers.ClientSessionCode;
 
 import java.lang.reflect.Method;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -64,6 +74,42 @@ public class ProtocolMapperUtils {
         return null;
     }
 
+    /**
+     * Resolve protocol mappers requested by the client session to their implementations. Mappers without implementation
+     * are skipped. The result is sorted by mapper name, so mappers are always applied in the same order.
+     *
+     * @param session A KeycloakSession
+     * @param clientSession Client session with requested protocol mappers
+     * @return Pairs of mapper model and it's implementation
+     */
+    public static List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> getSortedProtocolMappers(KeycloakSession session, ClientSessionModel clientSession) {
+        Set<ProtocolMapperModel> mapperModels = new ClientSessionCode(clientSession.getRealm(), clientSession).getRequestedProtocolMappers();
+        KeycloakSessionFactory sessionFactory = session.getKeycloakSessionFactory();
+
+        List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> result = new ArrayList<>(mapperModels.size());
+        for (ProtocolMapperModel mapperModel : mapperModels) {
+            ProtocolMapper mapper = (ProtocolMapper) sessionFactory.getProviderFactory(ProtocolMapper.class, mapperModel.getProtocolMapper());
+            if (mapper != null) {
+                result.add(new AbstractMap.SimpleImmutableEntry<>(mapperModel, mapper));
+            }
+        }
+
+        Collections.sort(result, PROTOCOL_MAPPER_NAME_COMPARATOR);
+        return result;
+    }
+
+    private static final Comparator<Map.Entry<ProtocolMapperModel, ProtocolMapper>> PROTOCOL_MAPPER_NAME_COMPARATOR = new Comparator<Map.Entry<ProtocolMapperModel, ProtocolMapper>>() {
+
+        @Override
+        public int compare(Map.Entry<ProtocolMapperModel, ProtocolMapper> o1, Map.Entry<ProtocolMapperModel, ProtocolMapper> o2) {
+            String name1 = o1.getKey().getName() != null ? o1.getKey().getName() : "";
+            String name2 = o2.getKey().getName() != null ? o2.getKey().getName() : "";
+            int result = name1.compareTo(name2);
+            return result != 0 ? result : o1.getKey().getId().compareTo(o2.getKey().getId());
+        }
+
+    };
+
     /**
      * Find the builtin locale mapper.
      *
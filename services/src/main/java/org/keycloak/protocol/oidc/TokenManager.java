@@ -33,15 +33,16 @@ import org.keycloak.models.ClientSessionModel;
 import org.keycloak.models.ClientTemplateModel;
 import org.keycloak.models.GroupModel;
 import org.keycloak.models.KeycloakSession;
-import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleClosure;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.UserSessionProvider;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.protocol.ProtocolMapper;
+import org.keycloak.protocol.ProtocolMapperUtils;
 import org.keycloak.protocol.oidc.mappers.OIDCAccessTokenMapper;
 import org.keycloak.protocol.oidc.mappers.OIDCIDTokenMapper;
 import org.keycloak.protocol.oidc.utils.OIDCResponseType;
@@ -53,7 +54,6 @@ import org.keycloak.representations.RefreshToken;
 import org.keycloak.services.ErrorResponseException;
 import org.keycloak.services.ServicesLogger;
 import org.keycloak.services.managers.AuthenticationManager;
-import org.keycloak.services.managers.ClientSessionCode;
 import org.keycloak.services.managers.UserSessionManager;
 import org.keycloak.util.TokenUtil;
 import org.keycloak.common.util.Time;
@@ -62,6 +62,7 @@ import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -98,12 +99,19 @@ public class TokenManager {
         public final UserSessionModel userSession;
         public final ClientSessionModel clientSession;
         public final AccessToken newToken;
+        public final List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> protocolMappers;
 
         public TokenValidation(UserModel user, UserSessionModel userSession, ClientSessionModel clientSession, AccessToken newToken) {
+            this(user, userSession, clientSession, newToken, null);
+        }
+
+        public TokenValidation(UserModel user, UserSessionModel userSession, ClientSessionModel clientSession, AccessToken newToken,
+                               List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> protocolMappers) {
             this.user = user;
             this.userSession = userSession;
             this.clientSession = clientSession;
             this.newToken = newToken;
+            this.protocolMappers = protocolMappers;
         }
     }
 
@@ -170,10 +178,11 @@ public class TokenManager {
         // recreate token.
         String scopeParam = clientSession.getNote(OAuth2Constants.SCOPE);
         Set<RoleModel> requestedRoles = TokenManager.getAccess(scopeParam, true, clientSession.getClient(), user);
-        AccessToken newToken = createClientAccessToken(session, requestedRoles, realm, client, user, userSession, clientSession);
+        List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> protocolMappers = ProtocolMapperUtils.getSortedProtocolMappers(session, clientSession);
+        AccessToken newToken = createClientAccessToken(session, requestedRoles, realm, client, user, userSession, clientSession, protocolMappers);
         verifyAccess(oldToken, newToken);
 
-        return new TokenValidation(user, userSession, clientSession, newToken);
+        return new TokenValidation(user, userSession, clientSession, newToken, protocolMappers);
     }
 
     public boolean isTokenValid(KeycloakSession session, RealmModel realm, AccessToken token) throws OAuthErrorException {
@@ -229,6 +238,7 @@ public class TokenManager {
         validation.userSession.setLastSessionRefresh(currentTime);
 
         AccessTokenResponse res = responseBuilder(realm, authorizedClient, event, session, validation.userSession, validation.clientSession)
+                .protocolMappers(validation.protocolMappers)
                 .accessToken(validation.newToken)
                 .generateIDToken()
                 .generateRefreshToken()
@@ -287,11 +297,20 @@ public class TokenManager {
     }
 
     public AccessToken createClientAccessToken(KeycloakSession session, Set<RoleModel> requestedRoles, RealmModel realm, ClientModel client, UserModel user, UserSessionModel userSession, ClientSessionModel clientSession) {
+        return createClientAccessToken(session, requestedRoles, realm, client, user, userSession, clientSession, ProtocolMapperUtils.getSortedProtocolMappers(session, clientSession));
+    }
+
+    /**
+     * @param protocolMappers mappers of the client session resolved by {@link ProtocolMapperUtils#getSortedProtocolMappers}, so that they can
+     *                        be reused for the other tokens of the same response
+     */
+    public AccessToken createClientAccessToken(KeycloakSession session, Set<RoleModel> requestedRoles, RealmModel realm, ClientModel client, UserModel user, UserSessionModel userSession,
+                                               ClientSessionModel clientSession, List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> protocolMappers) {
         AccessToken token = initToken(realm, client, user, userSession, clientSession, session.getContext().getUri());
         for (RoleModel role : requestedRoles) {
             addComposites(token, role);
         }
-        token = transformAccessToken(session, token, realm, client, user, userSession, clientSession);
+        token = transformAccessToken(session, token, userSession, clientSession, protocolMappers);
         return token;
     }
 
@@ -384,10 +403,26 @@ public class TokenManager {
             scopeMappings.addAll(client.getRoles());
             Set<RoleModel> clientScopeMappings = client.getScopeMappings();
             scopeMappings.addAll(clientScopeMappings);
-            for (RoleModel role : roleMappings) {
-                for (RoleModel desiredRole : scopeMappings) {
-                    Set<RoleModel> visited = new HashSet<RoleModel>();
-                    applyScope(role, desiredRole, visited, requestedRoles);
+
+            RealmModel realm = client.getRealm();
+            Set<RoleModel> closureRoles = new HashSet<>(roleMappings);
+            closureRoles.addAll(scopeMappings);
+            RoleClosure closure = realm.getRoleClosure(closureRoles);
+            BitSet roleBits = closure.toBits(roleMappings);
+            BitSet scopeBits = closure.toBits(scopeMappings);
+            if (roleBits != null && scopeBits != null) {
+                BitSet requestedBits = closure.applyScope(roleBits, scopeBits);
+                for (int i = requestedBits.nextSetBit(0); i >= 0; i = requestedBits.nextSetBit(i + 1)) {
+                    RoleModel role = realm.getRoleById(closure.getRoleId(i));
+                    if (role != null) requestedRoles.add(role);
+                }
+            } else {
+                // Some role is not part of the closure yet, fallback to walking the composites
+                for (RoleModel role : roleMappings) {
+                    for (RoleModel desiredRole : scopeMappings) {
+                        Set<RoleModel> visited = new HashSet<RoleModel>();
+                        applyScope(role, desiredRole, visited, requestedRoles);
+                    }
                 }
             }
         }
@@ -481,27 +516,30 @@ public class TokenManager {
 
     public AccessToken transformAccessToken(KeycloakSession session, AccessToken token, RealmModel realm, ClientModel client, UserModel user,
                                             UserSessionModel userSession, ClientSessionModel clientSession) {
-        Set<ProtocolMapperModel> mappings = new ClientSessionCode(realm, clientSession).getRequestedProtocolMappers();
-        KeycloakSessionFactory sessionFactory = session.getKeycloakSessionFactory();
-        for (ProtocolMapperModel mapping : mappings) {
-
-            ProtocolMapper mapper = (ProtocolMapper)sessionFactory.getProviderFactory(ProtocolMapper.class, mapping.getProtocolMapper());
-            if (mapper == null || !(mapper instanceof OIDCAccessTokenMapper)) continue;
-            token = ((OIDCAccessTokenMapper)mapper).transformAccessToken(token, mapping, session, userSession, clientSession);
+        return transformAccessToken(session, token, userSession, clientSession, ProtocolMapperUtils.getSortedProtocolMappers(session, clientSession));
+    }
 
+    public AccessToken transformAccessToken(KeycloakSession session, AccessToken token, UserSessionModel userSession, ClientSessionModel clientSession,
+                                            List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> protocolMappers) {
+        for (Map.Entry<ProtocolMapperModel, ProtocolMapper> entry : protocolMappers) {
+            ProtocolMapper mapper = entry.getValue();
+            if (!(mapper instanceof OIDCAccessTokenMapper)) continue;
+            token = ((OIDCAccessTokenMapper) mapper).transformAccessToken(token, entry.getKey(), session, userSession, clientSession);
         }
         return token;
     }
+
     public void transformIDToken(KeycloakSession session, IDToken token, RealmModel realm, ClientModel client, UserModel user,
                                       UserSessionModel userSession, ClientSessionModel clientSession) {
-        Set<ProtocolMapperModel> mappings = new ClientSessionCode(realm, clientSession).getRequestedProtocolMappers();
-        KeycloakSessionFactory sessionFactory = session.getKeycloakSessionFactory();
-        for (ProtocolMapperModel mapping : mappings) {
-
-            ProtocolMapper mapper = (ProtocolMapper)sessionFactory.getProviderFactory(ProtocolMapper.class, mapping.getProtocolMapper());
-            if (mapper == null || !(mapper instanceof OIDCIDTokenMapper)) continue;
-            token = ((OIDCIDTokenMapper)mapper).transformIDToken(token, mapping, session, userSession, clientSession);
+        transformIDToken(session, token, userSession, clientSession, ProtocolMapperUtils.getSortedProtocolMappers(session, clientSession));
+    }
 
+    public void transformIDToken(KeycloakSession session, IDToken token, UserSessionModel userSession, ClientSessionModel clientSession,
+                                 List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> protocolMappers) {
+        for (Map.Entry<ProtocolMapperModel, ProtocolMapper> entry : protocolMappers) {
+            ProtocolMapper mapper = entry.getValue();
+            if (!(mapper instanceof OIDCIDTokenMapper)) continue;
+            token = ((OIDCIDTokenMapper) mapper).transformIDToken(token, entry.getKey(), session, userSession, clientSession);
         }
     }
 
@@ -591,6 +629,9 @@ public class TokenManager {
         RefreshToken refreshToken;
         IDToken idToken;
 
+        // Resolved once and shared by all the tokens of the response
+        List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> protocolMappers;
+
         public AccessTokenResponseBuilder(RealmModel realm, ClientModel client, EventBuilder event, KeycloakSession session, UserSessionModel userSession, ClientSessionModel clientSession) {
             this.realm = realm;
             this.client = client;
@@ -609,11 +650,23 @@ public class TokenManager {
             return this;
         }
 
+        /**
+         * Use protocol mappers already resolved for the client session, for example when the access token was created before
+         */
+        public AccessTokenResponseBuilder protocolMappers(List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> protocolMappers) {
+            this.protocolMappers = protocolMappers;
+            return this;
+        }
+
         public AccessTokenResponseBuilder generateAccessToken() {
             UserModel user = userSession.getUser();
             String scopeParam = clientSession.getNote(OIDCLoginProtocol.SCOPE_PARAM);
             Set<RoleModel> requestedRoles = getAccess(scopeParam, true, client, user);
-            accessToken = createClientAccessToken(session, requestedRoles, realm, client, user, userSession, clientSession);
+            return generateAccessToken(requestedRoles);
+        }
+
+        public AccessTokenResponseBuilder generateAccessToken(Set<RoleModel> requestedRoles) {
+            accessToken = createClientAccessToken(session, requestedRoles, realm, client, userSession.getUser(), userSession, clientSession, getProtocolMappers());
             return this;
         }
 
@@ -658,10 +711,17 @@ public class TokenManager {
             idToken.setNonce(accessToken.getNonce());
             idToken.setSessionState(accessToken.getSessionState());
             idToken.expiration(accessToken.getExpiration());
-            transformIDToken(session, idToken, realm, client, userSession.getUser(), userSession, clientSession);
+            transformIDToken(session, idToken, userSession, clientSession, getProtocolMappers());
             return this;
         }
 
+        private List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> getProtocolMappers() {
+            if (protocolMappers == null) {
+                protocolMappers = ProtocolMapperUtils.getSortedProtocolMappers(session, clientSession);
+            }
+            return protocolMappers;
+        }
+
 
 
         public AccessTokenResponse build() {
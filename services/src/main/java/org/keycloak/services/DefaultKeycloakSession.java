@@ -20,7 +20,6 @@ import org.keycloak.models.*;
 import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.cache.CacheUserProvider;
 import org.keycloak.provider.Provider;
-import org.keycloak.provider.ProviderFactory;
 
 import java.util.*;
 
@@ -30,7 +29,7 @@ import java.util.*;
 public class DefaultKeycloakSession implements KeycloakSession {
 
     private final DefaultKeycloakSessionFactory factory;
-    private final Map<Integer, Provider> providers = new HashMap<>();
+    private final Provider[] providers;
     private final List<Provider> closable = new LinkedList<Provider>();
     private final DefaultKeycloakTransactionManager transactionManager;
     private RealmProvider model;
@@ -41,6 +40,7 @@ public class DefaultKeycloakSession implements KeycloakSession {
 
     public DefaultKeycloakSession(DefaultKeycloakSessionFactory factory) {
         this.factory = factory;
+        this.providers = new Provider[factory.getProviderSlotCount()];
         this.transactionManager = new DefaultKeycloakTransactionManager();
         federationManager = new UserFederationManager(this);
         context = new DefaultKeycloakContext(this);
@@ -93,28 +93,21 @@ public class DefaultKeycloakSession implements KeycloakSession {
     }
 
     public <T extends Provider> T getProvider(Class<T> clazz) {
-        Integer hash = clazz.hashCode();
-        T provider = (T) providers.get(hash);
-        if (provider == null) {
-            ProviderFactory<T> providerFactory = factory.getProviderFactory(clazz);
-            if (providerFactory != null) {
-                provider = providerFactory.create(this);
-                providers.put(hash, provider);
-            }
-        }
-        return provider;
+        return (T) getProvider(factory.getProviderSlot(clazz));
     }
 
     public <T extends Provider> T getProvider(Class<T> clazz, String id) {
-        Integer hash = clazz.hashCode() + id.hashCode();
-        T provider = (T) providers.get(hash);
-        if (provider == null) {
-            ProviderFactory<T> providerFactory = factory.getProviderFactory(clazz, id);
+        return (T) getProvider(factory.getProviderSlot(clazz, id));
+    }
 
-            if (providerFactory != null) {
-                provider = providerFactory.create(this);
-                providers.put(hash, provider);
-            }
+    private Provider getProvider(int slot) {
+        if (slot == -1) {
+            return null;
+        }
+        Provider provider = providers[slot];
+        if (provider == null) {
+            provider = factory.getProviderFactory(slot).create(this);
+            providers[slot] = provider;
         }
         return provider;
     }
@@ -154,7 +147,10 @@ public class DefaultKeycloakSession implements KeycloakSession {
     }
 
     public void close() {
-        for (Provider p : providers.values()) {
+        for (Provider p : providers) {
+            if (p == null) {
+                continue;
+            }
             try {
                 p.close();
             } catch (Exception e) {
@@ -29,6 +29,7 @@ import org.keycloak.services.ServicesLogger;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +44,13 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory {
     private Set<Spi> spis = new HashSet<>();
     private Map<Class<? extends Provider>, String> provider = new HashMap<Class<? extends Provider>, String>();
     private Map<Class<? extends Provider>, Map<String, ProviderFactory>> factoriesMap = new HashMap<Class<? extends Provider>, Map<String, ProviderFactory>>();
+
+    // Frozen once the SPIs are loaded. Every enabled provider factory gets a slot, so sessions can keep their providers
+    // in a plain array instead of a map
+    private ProviderFactory[] slotFactories = new ProviderFactory[0];
+    private Map<Class<? extends Provider>, Integer> defaultSlots = new IdentityHashMap<Class<? extends Provider>, Integer>();
+    private Map<Class<? extends Provider>, Map<String, Integer>> slots = new IdentityHashMap<Class<? extends Provider>, Map<String, Integer>>();
+
     protected CopyOnWriteArrayList<ProviderEventListener> listeners = new CopyOnWriteArrayList<ProviderEventListener>();
 
     // TODO: Likely should be changed to int and use Time.currentTime() to be compatible with all our "time" reps
@@ -72,6 +80,7 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory {
 
         ServiceLoader<Spi> load = ServiceLoader.load(Spi.class, getClass().getClassLoader());
         loadSPIs(pm, load);
+        initProviderSlots();
         for ( Map<String, ProviderFactory> factories : factoriesMap.values()) {
             for (ProviderFactory factory : factories.values()) {
                 factory.postInit(this);
@@ -133,6 +142,58 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory {
         }
     }
 
+    protected void initProviderSlots() {
+        List<ProviderFactory> slotFactories = new LinkedList<ProviderFactory>();
+        Map<Class<? extends Provider>, Integer> defaultSlots = new IdentityHashMap<Class<? extends Provider>, Integer>();
+        Map<Class<? extends Provider>, Map<String, Integer>> slots = new IdentityHashMap<Class<? extends Provider>, Map<String, Integer>>();
+
+        for (Map.Entry<Class<? extends Provider>, Map<String, ProviderFactory>> e : factoriesMap.entrySet()) {
+            Map<String, Integer> spiSlots = new HashMap<String, Integer>();
+            for (ProviderFactory factory : e.getValue().values()) {
+                spiSlots.put(factory.getId(), slotFactories.size());
+                slotFactories.add(factory);
+            }
+            slots.put(e.getKey(), spiSlots);
+
+            String defaultProvider = provider.get(e.getKey());
+            if (defaultProvider != null && spiSlots.containsKey(defaultProvider)) {
+                defaultSlots.put(e.getKey(), spiSlots.get(defaultProvider));
+            }
+        }
+
+        this.slotFactories = slotFactories.toArray(new ProviderFactory[slotFactories.size()]);
+        this.defaultSlots = defaultSlots;
+        this.slots = slots;
+
+        logger.debugv("Assigned {0} provider slots", this.slotFactories.length);
+    }
+
+    int getProviderSlotCount() {
+        return slotFactories.length;
+    }
+
+    /**
+     * @return slot of the default provider for the given SPI or -1 if there is no default provider
+     */
+    int getProviderSlot(Class<? extends Provider> clazz) {
+        Integer slot = defaultSlots.get(clazz);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * @return slot of the provider with the given id or -1 if there is no such provider
+     */
+    int getProviderSlot(Class<? extends Provider> clazz, String id) {
+        Map<String, Integer> spiSlots = slots.get(clazz);
+        if (spiSlots == null) return -1;
+        Integer slot = spiSlots.get(id);
+        return slot != null ? slot : -1;
+    }
+
+    ProviderFactory getProviderFactory(int slot) {
+        return slotFactories[slot];
+    }
+
     public KeycloakSession create() {
         return new DefaultKeycloakSession(this);
     }
@@ -148,12 +209,14 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory {
 
     @Override
     public <T extends Provider> ProviderFactory<T> getProviderFactory(Class<T> clazz) {
-         return getProviderFactory(clazz, provider.get(clazz));
+        int slot = getProviderSlot(clazz);
+        return slot != -1 ? slotFactories[slot] : null;
     }
 
     @Override
     public <T extends Provider> ProviderFactory<T> getProviderFactory(Class<T> clazz, String id) {
-         return factoriesMap.get(clazz).get(id);
+        int slot = getProviderSlot(clazz, id);
+        return slot != -1 ? slotFactories[slot] : null;
     }
 
     @Override
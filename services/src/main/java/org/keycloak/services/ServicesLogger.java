@@ -406,4 +406,12 @@ public interface ServicesLogger extends BasicLogger {
     @LogMessage(level = WARN)
     @Message(id=91, value="Forced release of DB lock at startup requested by System property. Make sure to not use this in production environment! And especially when more cluster nodes are started concurrently.")
     void forcedReleaseDBLock();
+
+    @LogMessage(level = WARN)
+    @Message(id=92, value="Request %s to '%s' didn't complete in time")
+    void adminRequestTimedOut(String action, String managementUrl);
+
+    @LogMessage(level = WARN)
+    @Message(id=93, value="Request %s to '%s' failed")
+    void adminRequestFailed(@Cause Throwable t, String action, String managementUrl);
 }
@@ -17,9 +17,12 @@
 package org.keycloak.services.managers;
 
 
+import org.keycloak.cluster.ClusterEvent;
+import org.keycloak.cluster.ClusterProvider;
 import org.keycloak.common.ClientConnection;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransaction;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UsernameLoginFailureModel;
@@ -27,30 +30,52 @@ import org.keycloak.services.ServicesLogger;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
- * A single thread will log failures.  This is so that we can avoid concurrent writes as we want an accurate failure count
+ * Failures are logged by a fixed number of worker threads. Failures of the same username in the same realm are always logged by the same
+ * worker, so that we can avoid concurrent writes as we want an accurate failure count.
+ *
+ * Callers of {@link #failedLogin} don't wait until the failure is logged. Instead {@link #isTemporarilyDisabled(KeycloakSession, RealmModel, String)}
+ * waits until pending failures of the username are logged. Each worker keeps lockouts of its usernames in memory for a short time, so
+ * that repeated attempts to log in as temporarily disabled user don't need to look up the login failure.
+ *
+ * Optionally, failures are also counted for each client address across all usernames of the realm. The address is temporarily
+ * disabled after too many failures within the configured time window. Address failures are kept in memory of this node only.
  *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class DefaultBruteForceProtector implements Runnable, BruteForceProtector {
+public class DefaultBruteForceProtector implements BruteForceProtector {
     protected static ServicesLogger logger = ServicesLogger.ROOT_LOGGER;
 
-    protected volatile boolean run = true;
     protected int maxDeltaTimeSeconds = 60 * 60 * 12; // 12 hours
     protected KeycloakSessionFactory factory;
-    protected CountDownLatch shutdownLatch = new CountDownLatch(1);
 
     protected volatile long failures;
     protected volatile long lastFailure;
     protected volatile long totalTime;
 
-    protected LinkedBlockingQueue<LoginEvent> queue = new LinkedBlockingQueue<LoginEvent>();
+    public static final String CLEAR_LOCKOUT_TASK_KEY = "clearBruteForceLockout";
+
     public static final int TRANSACTION_SIZE = 20;
+    public static final int DEFAULT_LOCKOUT_CACHE_SECONDS = 5;
+
+    // Max time to wait until pending failures of a username are logged
+    protected static final long MAX_WAIT_MILLIS = 5000;
+    protected static final long CLEANUP_INTERVAL_MILLIS = 30000;
+
+    protected final Worker[] workers;
+    protected final int lockoutCacheSeconds;
+    protected final int addressMaxFailures;
+    protected final int addressFailureWindowSeconds;
+    protected final int addressWaitSeconds;
 
 
     protected abstract class LoginEvent implements Comparable<LoginEvent> {
@@ -77,23 +102,48 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
     }
 
     protected class FailedLogin extends LoginEvent {
-        protected final CountDownLatch latch = new CountDownLatch(1);
-
         public FailedLogin(String realmId, String username, String ip) {
             super(realmId, username, ip);
         }
     }
 
     public DefaultBruteForceProtector(KeycloakSessionFactory factory) {
+        this(factory, Runtime.getRuntime().availableProcessors(), DEFAULT_LOCKOUT_CACHE_SECONDS, 0, 0, 0);
+    }
+
+    /**
+     * @param workers count of threads logging failures
+     * @param lockoutCacheSeconds max time for which lockout of username is kept in memory. Lockouts are not cached if 0
+     * @param addressMaxFailures count of failures from single client address, after which the address is temporarily disabled. Addresses are not checked if 0
+     * @param addressFailureWindowSeconds time window in which the failures from single client address are counted
+     * @param addressWaitSeconds time for which the client address is disabled
+     */
+    public DefaultBruteForceProtector(KeycloakSessionFactory factory, int workers, int lockoutCacheSeconds, int addressMaxFailures,
+                                      int addressFailureWindowSeconds, int addressWaitSeconds) {
         this.factory = factory;
+        this.workers = new Worker[Math.max(workers, 1)];
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Worker();
+        }
+        this.lockoutCacheSeconds = lockoutCacheSeconds;
+        this.addressMaxFailures = addressMaxFailures;
+        this.addressFailureWindowSeconds = addressFailureWindowSeconds;
+        this.addressWaitSeconds = addressWaitSeconds;
     }
 
     public void failure(KeycloakSession session, LoginEvent event) {
-        logger.debug("failure");
         RealmModel realm = getRealmModel(session, event);
+        if (realm == null) return;
+        UserModel user = getUser(session, realm, event.username);
+        failure(session, realm, user, getUserModel(session, event), event);
+    }
+
+    /**
+     * @return login failure of the user. It's created if the user exists and didn't have any login failure yet
+     */
+    protected UsernameLoginFailureModel failure(KeycloakSession session, RealmModel realm, UserModel user, UsernameLoginFailureModel userLoginFailure, LoginEvent event) {
+        logger.debug("failure");
         logFailure(event);
-        UserModel user = session.users().getUserByUsername(event.username.toString(), realm);
-        UsernameLoginFailureModel userLoginFailure = getUserModel(session, event);
         if (user != null) {
             if (userLoginFailure == null) {
                 userLoginFailure = session.sessions().addUserLoginFailure(realm, event.username.toLowerCase());
@@ -132,6 +182,7 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
                 userLoginFailure.setFailedLoginNotBefore(notBefore);
             }
         }
+        return userLoginFailure;
     }
 
 
@@ -143,6 +194,10 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
         return user;
     }
 
+    protected UserModel getUser(KeycloakSession session, RealmModel realm, String username) {
+        return session.users().getUserByUsername(username, realm);
+    }
+
     protected RealmModel getRealmModel(KeycloakSession session, LoginEvent event) {
         RealmModel realm = session.realms().getRealm(event.realmId);
         if (realm == null) return null;
@@ -150,68 +205,26 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
     }
 
     public void start() {
-        new Thread(this, "Brute Force Protector").start();
+        for (int i = 0; i < workers.length; i++) {
+            new Thread(workers[i], "Brute Force Protector " + i).start();
+        }
     }
 
     public void shutdown() {
-        run = false;
-        try {
-            queue.offer(new ShutdownEvent());
-            shutdownLatch.await(10, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        for (Worker worker : workers) {
+            worker.run = false;
+            worker.queue.offer(new ShutdownEvent());
         }
-    }
-
-    public void run() {
-        final ArrayList<LoginEvent> events = new ArrayList<LoginEvent>(TRANSACTION_SIZE + 1);
         try {
-            while (run) {
-                try {
-                    LoginEvent take = queue.poll(2, TimeUnit.SECONDS);
-                    if (take == null) {
-                        continue;
-                    }
-                    try {
-                        events.add(take);
-                        queue.drainTo(events, TRANSACTION_SIZE);
-                        Collections.sort(events); // we sort to avoid deadlock due to ordered updates.  Maybe I'm overthinking this.
-                        KeycloakSession session = factory.create();
-                        session.getTransaction().begin();
-                        try {
-                            for (LoginEvent event : events) {
-                                if (event instanceof FailedLogin) {
-                                    failure(session, event);
-                                } else if (event instanceof ShutdownEvent) {
-                                    run = false;
-                                }
-                            }
-                            session.getTransaction().commit();
-                        } catch (Exception e) {
-                            session.getTransaction().rollback();
-                            throw e;
-                        } finally {
-                            for (LoginEvent event : events) {
-                                if (event instanceof FailedLogin) {
-                                    ((FailedLogin) event).latch.countDown();
-                                }
-                            }
-                            events.clear();
-                            session.close();
-                        }
-                    } catch (Exception e) {
-                        logger.failedProcessingType(e);
-                    }
-                } catch (InterruptedException e) {
-                    break;
-                }
+            for (Worker worker : workers) {
+                worker.shutdownLatch.await(10, TimeUnit.SECONDS);
             }
-        } finally {
-            shutdownLatch.countDown();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
         }
     }
 
-    protected void logFailure(LoginEvent event) {
+    protected synchronized void logFailure(LoginEvent event) {
         logger.loginFailure(event.username, event.ip);
         failures++;
         long delta = 0;
@@ -228,35 +241,482 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
 
     @Override
     public void failedLogin(RealmModel realm, String username, ClientConnection clientConnection) {
-        try {
-            FailedLogin event = new FailedLogin(realm.getId(), username, clientConnection.getRemoteAddr());
-            queue.offer(event);
-            // wait a minimum of seconds for type to process so that a hacker
-            // cannot flood with failed logins and overwhelm the queue and not have notBefore updated to block next requests
-            // todo failure HTTP responses should be queued via async HTTP
-            event.latch.await(5, TimeUnit.SECONDS);
-
-        } catch (InterruptedException e) {
+        String ip = clientConnection.getRemoteAddr();
+        if (addressMaxFailures > 0 && ip != null) {
+            String addressKey = getKey(realm.getId(), ip);
+            AddressState state = getWorker(addressKey).getAddressState(addressKey);
+            state.failure(System.currentTimeMillis(), addressMaxFailures, addressFailureWindowSeconds, addressWaitSeconds);
         }
+
+        // Failure is logged asynchronously. Next check whether the username is temporarily disabled waits until it's logged
+        String key = getKey(realm.getId(), username.toLowerCase());
+        Worker worker = getWorker(key);
+        worker.getLoginState(key);
+        worker.queue.offer(new FailedLogin(realm.getId(), username, ip));
     }
 
     @Override
     public boolean isTemporarilyDisabled(KeycloakSession session, RealmModel realm, String username) {
+        String key = getKey(realm.getId(), username.toLowerCase());
+        Worker worker = getWorker(key);
+        int currTime = (int)(System.currentTimeMillis()/1000);
+
+        LoginState state = worker.loginStates.get(key);
+        if (state != null) {
+            int notBefore;
+            try {
+                notBefore = state.awaitLogged(MAX_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                notBefore = 0;
+            }
+            if (currTime < notBefore) {
+                logger.debugv("Current: {0} notBefore: {1}", currTime , notBefore);
+                return true;
+            }
+        }
+
         UsernameLoginFailureModel failure = session.sessions().getUserLoginFailure(realm, username.toLowerCase());
         if (failure == null) {
             return false;
         }
 
-        int currTime = (int)(System.currentTimeMillis()/1000);
         if (currTime < failure.getFailedLoginNotBefore()) {
             logger.debugv("Current: {0} notBefore: {1}", currTime , failure.getFailedLoginNotBefore());
+            worker.cacheLockout(key, failure.getFailedLoginNotBefore());
             return true;
         }
         return false;
     }
 
+    @Override
+    public boolean isTemporarilyDisabled(KeycloakSession session, RealmModel realm, ClientConnection clientConnection) {
+        if (addressMaxFailures <= 0 || clientConnection == null || clientConnection.getRemoteAddr() == null) {
+            return false;
+        }
+
+        String key = getKey(realm.getId(), clientConnection.getRemoteAddr());
+        AddressState state = getWorker(key).addressStates.get(key);
+        if (state != null && state.isDisabled(System.currentTimeMillis())) {
+            logger.debugv("Address {0} temporarily disabled", clientConnection.getRemoteAddr());
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void clearLockout(KeycloakSession session, RealmModel realm, String username) {
+        session.getTransaction().enlistAfterCompletion(new ClearLockoutTransaction(session, new ClearLockoutEvent(realm.getId(), username.toLowerCase())));
+    }
+
+    @Override
+    public void clearLockouts(KeycloakSession session, RealmModel realm) {
+        session.getTransaction().enlistAfterCompletion(new ClearLockoutTransaction(session, new ClearLockoutEvent(realm.getId(), null)));
+    }
+
+    /**
+     * Forget the lockouts kept in memory of this node
+     */
+    public void clearLockout(ClearLockoutEvent event) {
+        if (event.getUsername() != null) {
+            String key = getKey(event.getRealmId(), event.getUsername());
+            LoginState state = getWorker(key).loginStates.get(key);
+            if (state != null) {
+                state.clearLockout();
+            }
+            return;
+        }
+
+        String prefix = getKey(event.getRealmId(), "");
+        for (Worker worker : workers) {
+            for (Map.Entry<String, LoginState> entry : worker.loginStates.entrySet()) {
+                if (entry.getKey().startsWith(prefix)) {
+                    entry.getValue().clearLockout();
+                }
+            }
+            for (Iterator<String> it = worker.addressStates.keySet().iterator(); it.hasNext(); ) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return count of failures waiting to be logged by all workers
+     */
+    public int getQueueSize() {
+        int size = 0;
+        for (Worker worker : workers) {
+            size += worker.queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return count of failures waiting to be logged by each worker
+     */
+    public int[] getQueueSizes() {
+        int[] sizes = new int[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            sizes[i] = workers[i].queue.size();
+        }
+        return sizes;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
     @Override
     public void close() {
 
     }
+
+    protected String getKey(String realmId, String name) {
+        return realmId + "::" + name;
+    }
+
+    protected Worker getWorker(String key) {
+        return workers[(key.hashCode() & Integer.MAX_VALUE) % workers.length];
+    }
+
+    protected class Worker implements Runnable {
+
+        protected volatile boolean run = true;
+        protected final CountDownLatch shutdownLatch = new CountDownLatch(1);
+        protected final LinkedBlockingQueue<LoginEvent> queue = new LinkedBlockingQueue<LoginEvent>();
+
+        protected final ConcurrentHashMap<String, LoginState> loginStates = new ConcurrentHashMap<String, LoginState>();
+        protected final ConcurrentHashMap<String, AddressState> addressStates = new ConcurrentHashMap<String, AddressState>();
+
+        private long lastCleanup = System.currentTimeMillis();
+
+        /**
+         * @return state of the username with one more pending failure
+         */
+        protected LoginState getLoginState(String key) {
+            while (true) {
+                LoginState state = loginStates.get(key);
+                if (state == null) {
+                    LoginState newState = new LoginState();
+                    state = loginStates.putIfAbsent(key, newState);
+                    if (state == null) state = newState;
+                }
+                // State could have been removed by cleanup in the meantime
+                if (state.failureAdded()) return state;
+            }
+        }
+
+        protected AddressState getAddressState(String key) {
+            AddressState state = addressStates.get(key);
+            if (state == null) {
+                AddressState newState = new AddressState();
+                state = addressStates.putIfAbsent(key, newState);
+                if (state == null) state = newState;
+            }
+            return state;
+        }
+
+        protected void cacheLockout(String key, int notBefore) {
+            if (lockoutCacheSeconds <= 0) return;
+            LoginState state = loginStates.get(key);
+            if (state == null) {
+                LoginState newState = new LoginState();
+                state = loginStates.putIfAbsent(key, newState);
+                if (state == null) state = newState;
+            }
+            state.lockout(notBefore, getLockoutExpiration(notBefore));
+        }
+
+        public void run() {
+            final ArrayList<LoginEvent> events = new ArrayList<LoginEvent>(TRANSACTION_SIZE + 1);
+            try {
+                while (run) {
+                    try {
+                        LoginEvent take = queue.poll(2, TimeUnit.SECONDS);
+                        if (take == null) {
+                            cleanup();
+                            continue;
+                        }
+                        try {
+                            events.add(take);
+                            queue.drainTo(events, TRANSACTION_SIZE);
+                            Collections.sort(events); // we sort to avoid deadlock due to ordered updates.  Maybe I'm overthinking this.
+                            logFailures(events);
+                        } catch (Exception e) {
+                            logger.failedProcessingType(e);
+                        }
+                        cleanup();
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            } finally {
+                shutdownLatch.countDown();
+            }
+        }
+
+        /**
+         * Log all the failures in single transaction. Realm, user and login failure are looked up just once for each username.
+         */
+        protected void logFailures(ArrayList<LoginEvent> events) throws Exception {
+            Map<String, RealmModel> realms = new HashMap<String, RealmModel>();
+            Map<String, UsernameLoginFailureModel> loginFailures = new HashMap<String, UsernameLoginFailureModel>();
+            Map<String, UserModel> users = new HashMap<String, UserModel>();
+            Map<String, Integer> logged = new HashMap<String, Integer>();
+            Map<String, Integer> lockouts = new HashMap<String, Integer>();
+
+            // Count all the failures upfront, so that each of them is settled even if logging of the batch fails
+            for (LoginEvent event : events) {
+                if (event instanceof FailedLogin) {
+                    String key = getKey(event.realmId, event.username.toLowerCase());
+                    Integer count = logged.get(key);
+                    logged.put(key, count == null ? 1 : count + 1);
+                } else if (event instanceof ShutdownEvent) {
+                    run = false;
+                }
+            }
+
+            KeycloakSession session = null;
+            try {
+                session = factory.create();
+                session.getTransaction().begin();
+                for (LoginEvent event : events) {
+                    if (event instanceof FailedLogin) {
+                        String key = getKey(event.realmId, event.username.toLowerCase());
+
+                        RealmModel realm = realms.get(event.realmId);
+                        if (realm == null) {
+                            realm = getRealmModel(session, event);
+                            if (realm == null) continue;
+                            realms.put(event.realmId, realm);
+                        }
+
+                        UserModel user;
+                        UsernameLoginFailureModel loginFailure;
+                        if (users.containsKey(key)) {
+                            user = users.get(key);
+                            loginFailure = loginFailures.get(key);
+                        } else {
+                            user = getUser(session, realm, event.username);
+                            loginFailure = session.sessions().getUserLoginFailure(realm, event.username.toLowerCase());
+                            users.put(key, user);
+                        }
+
+                        loginFailure = failure(session, realm, user, loginFailure, event);
+                        if (loginFailure != null) {
+                            loginFailures.put(key, loginFailure);
+                            lockouts.put(key, loginFailure.getFailedLoginNotBefore());
+                        }
+                    }
+                }
+                session.getTransaction().commit();
+            } catch (Exception e) {
+                lockouts.clear();
+                if (session != null) {
+                    try {
+                        session.getTransaction().rollback();
+                    } catch (Exception rollbackError) {
+                        logger.failedProcessingType(rollbackError);
+                    }
+                }
+                throw e;
+            } finally {
+                for (Map.Entry<String, Integer> entry : logged.entrySet()) {
+                    String key = entry.getKey();
+                    LoginState state = loginStates.get(key);
+                    if (state != null) {
+                        Integer notBefore = lockouts.get(key);
+                        state.failuresLogged(entry.getValue(), notBefore == null ? 0 : notBefore, notBefore == null ? 0 : getLockoutExpiration(notBefore));
+                    }
+                }
+                events.clear();
+                if (session != null) {
+                    session.close();
+                }
+            }
+        }
+
+        protected void cleanup() {
+            long currentTime = System.currentTimeMillis();
+            if (currentTime - lastCleanup < CLEANUP_INTERVAL_MILLIS) return;
+            lastCleanup = currentTime;
+
+            for (Iterator<LoginState> it = loginStates.values().iterator(); it.hasNext(); ) {
+                if (it.next().remove(currentTime)) {
+                    it.remove();
+                }
+            }
+            for (Iterator<AddressState> it = addressStates.values().iterator(); it.hasNext(); ) {
+                if (it.next().isExpired(currentTime, addressFailureWindowSeconds)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the lockouts on this node and notifies other cluster nodes once the transaction is committed, so that the lockouts
+     * can't be cached again from the login failures, which were not removed yet
+     */
+    protected class ClearLockoutTransaction implements KeycloakTransaction {
+
+        private final KeycloakSession session;
+        private final ClearLockoutEvent event;
+        private boolean active;
+        private boolean rollbackOnly;
+
+        protected ClearLockoutTransaction(KeycloakSession session, ClearLockoutEvent event) {
+            this.session = session;
+            this.event = event;
+        }
+
+        @Override
+        public void begin() {
+            active = true;
+        }
+
+        @Override
+        public void commit() {
+            active = false;
+            clearLockout(event);
+            ClusterProvider cluster = session.getProvider(ClusterProvider.class);
+            if (cluster != null) {
+                cluster.notify(CLEAR_LOCKOUT_TASK_KEY, event);
+            }
+        }
+
+        @Override
+        public void rollback() {
+            active = false;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            rollbackOnly = true;
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return rollbackOnly;
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+    }
+
+    /**
+     * Sent to cluster when lockouts of the username or of the whole realm were cleared
+     */
+    public static class ClearLockoutEvent implements ClusterEvent {
+
+        private String realmId;
+        private String username;
+
+        public ClearLockoutEvent(String realmId, String username) {
+            this.realmId = realmId;
+            this.username = username;
+        }
+
+        public String getRealmId() {
+            return realmId;
+        }
+
+        /**
+         * @return lowercase username or null if all the lockouts of the realm were cleared
+         */
+        public String getUsername() {
+            return username;
+        }
+    }
+
+    protected long getLockoutExpiration(int notBefore) {
+        return Math.min((long) notBefore * 1000L, System.currentTimeMillis() + lockoutCacheSeconds * 1000L);
+    }
+
+    /**
+     * Failures of the username, which were not logged yet, and its recent lockout
+     */
+    protected static class LoginState {
+        private int pending;
+        private int notBefore;
+        private long expiration;
+        private boolean removed;
+
+        protected synchronized boolean failureAdded() {
+            if (removed) return false;
+            pending++;
+            return true;
+        }
+
+        protected synchronized void failuresLogged(int count, int notBefore, long expiration) {
+            pending = Math.max(0, pending - count);
+            if (expiration > 0) {
+                lockout(notBefore, expiration);
+            }
+            notifyAll();
+        }
+
+        protected synchronized void lockout(int notBefore, long expiration) {
+            this.notBefore = notBefore;
+            this.expiration = expiration;
+        }
+
+        protected synchronized void clearLockout() {
+            this.notBefore = 0;
+            this.expiration = 0;
+        }
+
+        /**
+         * Wait until pending failures are logged
+         *
+         * @return notBefore of the lockout or 0 if the username is not locked out or the lockout expired from memory
+         */
+        protected synchronized int awaitLogged(long maxWaitMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            while (pending > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) break;
+                wait(wait);
+            }
+            return System.currentTimeMillis() < expiration ? notBefore : 0;
+        }
+
+        protected synchronized boolean remove(long currentTime) {
+            if (pending > 0 || currentTime < expiration) return false;
+            removed = true;
+            return true;
+        }
+    }
+
+    /**
+     * Failures from single client address within the current time window
+     */
+    protected static class AddressState {
+        private int failures;
+        private long windowStart;
+        private long disabledUntil;
+
+        protected synchronized void failure(long currentTime, int maxFailures, int windowSeconds, int waitSeconds) {
+            if (currentTime - windowStart > windowSeconds * 1000L) {
+                windowStart = currentTime;
+                failures = 0;
+            }
+            failures++;
+            if (failures >= maxFailures) {
+                disabledUntil = currentTime + waitSeconds * 1000L;
+            }
+        }
+
+        protected synchronized boolean isDisabled(long currentTime) {
+            return currentTime < disabledUntil;
+        }
+
+        protected synchronized boolean isExpired(long currentTime, int windowSeconds) {
+            return currentTime - windowStart > windowSeconds * 1000L && currentTime >= disabledUntil;
+        }
+    }
 }
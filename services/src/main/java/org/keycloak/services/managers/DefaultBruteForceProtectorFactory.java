@@ -18,16 +18,35 @@
 package org.keycloak.services.managers;
 
 import org.keycloak.Config;
+import org.keycloak.cluster.ClusterEvent;
+import org.keycloak.cluster.ClusterListener;
+import org.keycloak.cluster.ClusterProvider;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.PostMigrationEvent;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.provider.ProviderEventListener;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFactory {
+public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFactory, ServerInfoAwareProviderFactory {
     DefaultBruteForceProtector protector;
 
+    private int workers;
+    private int lockoutCacheSeconds;
+    private int addressMaxFailures;
+    private int addressFailureWindowSeconds;
+    private int addressWaitSeconds;
+
     @Override
     public BruteForceProtector create(KeycloakSession session) {
         return protector;
@@ -35,14 +54,44 @@ public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFac
 
     @Override
     public void init(Config.Scope config) {
-
+        workers = config.getInt("workers", Runtime.getRuntime().availableProcessors());
+        lockoutCacheSeconds = config.getInt("lockoutCacheSeconds", DefaultBruteForceProtector.DEFAULT_LOCKOUT_CACHE_SECONDS);
+        addressMaxFailures = config.getInt("addressMaxFailures", 0);
+        addressFailureWindowSeconds = config.getInt("addressFailureWindowSeconds", 60);
+        addressWaitSeconds = config.getInt("addressWaitSeconds", 60);
     }
 
     @Override
-    public void postInit(KeycloakSessionFactory factory) {
-        protector = new DefaultBruteForceProtector(factory);
+    public void postInit(final KeycloakSessionFactory factory) {
+        protector = new DefaultBruteForceProtector(factory, workers, lockoutCacheSeconds, addressMaxFailures, addressFailureWindowSeconds, addressWaitSeconds);
         protector.start();
 
+        factory.register(new ProviderEventListener() {
+
+            @Override
+            public void onEvent(ProviderEvent event) {
+                if (event instanceof PostMigrationEvent) {
+                    KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+
+                        @Override
+                        public void run(KeycloakSession session) {
+                            ClusterProvider cluster = session.getProvider(ClusterProvider.class);
+                            if (cluster != null) {
+                                cluster.registerListener(DefaultBruteForceProtector.CLEAR_LOCKOUT_TASK_KEY, new ClusterListener() {
+
+                                    @Override
+                                    public void run(ClusterEvent event) {
+                                        protector.clearLockout((DefaultBruteForceProtector.ClearLockoutEvent) event);
+                                    }
+
+                                });
+                            }
+                        }
+
+                    });
+                }
+            }
+        });
     }
 
     @Override
@@ -51,6 +100,17 @@ public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFac
 
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        int[] queueSizes = protector.getQueueSizes();
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("workers", String.valueOf(queueSizes.length));
+        info.put("queued", String.valueOf(protector.getQueueSize()));
+        info.put("queuedPerWorker", Arrays.toString(queueSizes));
+        info.put("failures", String.valueOf(protector.getFailures()));
+        return info;
+    }
+
     @Override
     public String getId() {
         return "default-brute-force-detector";
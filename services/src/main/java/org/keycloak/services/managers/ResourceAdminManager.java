@@ -47,6 +47,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -56,6 +63,23 @@ public class ResourceAdminManager {
     protected static ServicesLogger logger = ServicesLogger.ROOT_LOGGER;
     private static final String CLIENT_SESSION_HOST_PROPERTY = "${application.session.host}";
 
+    // Admin actions expire 30 seconds after they were issued, so there's no point in waiting for the nodes longer
+    private static final int ADMIN_ACTION_EXPIRATION = 30;
+    private static final int MAX_ATTEMPTS = 2;
+    private static final long RETRY_BACKOFF_MILLIS = 500;
+
+    private enum ActionType {
+        LOGOUT("logout"),
+        PUSH_NOT_BEFORE("pushRevocation"),
+        TEST_AVAILABILITY("testAvailability");
+
+        private final String name;
+
+        ActionType(String name) {
+            this.name = name;
+        }
+    }
+
     private KeycloakSession session;
 
     public ResourceAdminManager(KeycloakSession session) {
@@ -175,16 +199,16 @@ public class ResourceAdminManager {
             }
 
             if (managementUrl.contains(CLIENT_SESSION_HOST_PROPERTY)) {
-                boolean allPassed = true;
                 // Send logout separately to each host (needed for single-sign-out in cluster for non-distributable apps - KEYCLOAK-748)
+                List<AdminRequest> requests = new ArrayList<>();
                 for (Map.Entry<String, List<String>> entry : adapterSessionIds.entrySet()) {
                     String host = entry.getKey();
                     List<String> sessionIds = entry.getValue();
                     String currentHostMgmtUrl = managementUrl.replace(CLIENT_SESSION_HOST_PROPERTY, host);
-                    allPassed = sendLogoutRequest(realm, resource, sessionIds, userSessions, 0, currentHostMgmtUrl) && allPassed;
+                    requests.add(createLogoutRequest(realm, resource, sessionIds, userSessions, 0, currentHostMgmtUrl));
                 }
 
-                return allPassed;
+                return send(requests).getFailedRequests() == null;
             } else {
                 // Send single logout request
                 List<String> allSessionIds = new ArrayList<String>();
@@ -207,12 +231,11 @@ public class ResourceAdminManager {
         List<ClientModel> resources = realm.getClients();
         logger.debugv("logging out {0} resources ", resources.size());
 
-        GlobalRequestResult finalResult = new GlobalRequestResult();
+        List<AdminRequest> requests = new ArrayList<>();
         for (ClientModel resource : resources) {
-            GlobalRequestResult currentResult = logoutClient(requestUri, realm, resource, realm.getNotBefore());
-            finalResult.addAll(currentResult);
+            requests.addAll(createLogoutClientRequests(requestUri, realm, resource, realm.getNotBefore()));
         }
-        return finalResult;
+        return send(requests);
     }
 
     public GlobalRequestResult logoutClient(URI requestUri, RealmModel realm, ClientModel resource) {
@@ -222,49 +245,44 @@ public class ResourceAdminManager {
 
 
     protected GlobalRequestResult logoutClient(URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
+        return send(createLogoutClientRequests(requestUri, realm, resource, notBefore));
+    }
+
+    private List<AdminRequest> createLogoutClientRequests(URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
         List<String> mgmtUrls = getAllManagementUrls(requestUri, resource);
         if (mgmtUrls.isEmpty()) {
             logger.debug("No management URL or no registered cluster nodes for the client " + resource.getClientId());
-            return new GlobalRequestResult();
+            return Collections.emptyList();
         }
 
         if (logger.isDebugEnabled()) logger.debug("Send logoutClient for URLs: " + mgmtUrls);
 
         // Propagate this to all hosts
-        GlobalRequestResult result = new GlobalRequestResult();
+        List<AdminRequest> requests = new ArrayList<>();
         for (String mgmtUrl : mgmtUrls) {
-            if (sendLogoutRequest(realm, resource, null, null, notBefore, mgmtUrl)) {
-                result.addSuccessRequest(mgmtUrl);
-            } else {
-                result.addFailedRequest(mgmtUrl);
-            }
+            requests.add(createLogoutRequest(realm, resource, null, null, notBefore, mgmtUrl));
         }
-        return result;
+        return requests;
     }
 
     protected boolean sendLogoutRequest(RealmModel realm, ClientModel resource, List<String> adapterSessionIds, List<String> userSessions, int notBefore, String managementUrl) {
-        LogoutAction adminAction = new LogoutAction(TokenIdGenerator.generateId(), Time.currentTime() + 30, resource.getClientId(), adapterSessionIds, notBefore, userSessions);
+        return send(session.getProvider(HttpClientProvider.class), createLogoutRequest(realm, resource, adapterSessionIds, userSessions, notBefore, managementUrl));
+    }
+
+    private AdminRequest createLogoutRequest(RealmModel realm, ClientModel resource, List<String> adapterSessionIds, List<String> userSessions, int notBefore, String managementUrl) {
+        LogoutAction adminAction = new LogoutAction(TokenIdGenerator.generateId(), Time.currentTime() + ADMIN_ACTION_EXPIRATION, resource.getClientId(), adapterSessionIds, notBefore, userSessions);
         String token = new TokenManager().encodeToken(realm, adminAction);
         if (logger.isDebugEnabled()) logger.debugv("logout resource {0} url: {1} sessionIds: " + adapterSessionIds, resource.getClientId(), managementUrl);
         URI target = UriBuilder.fromUri(managementUrl).path(AdapterConstants.K_LOGOUT).build();
-        try {
-            int status = session.getProvider(HttpClientProvider.class).postText(target.toString(), token);
-            boolean success = status == 204 || status == 200;
-            logger.debugf("logout success for %s: %s", managementUrl, success);
-            return success;
-        } catch (IOException e) {
-            logger.logoutFailed(e, resource.getClientId());
-            return false;
-        }
+        return new AdminRequest(ActionType.LOGOUT, resource.getClientId(), managementUrl, target.toString(), token);
     }
 
     public GlobalRequestResult pushRealmRevocationPolicy(URI requestUri, RealmModel realm) {
-        GlobalRequestResult finalResult = new GlobalRequestResult();
+        List<AdminRequest> requests = new ArrayList<>();
         for (ClientModel client : realm.getClients()) {
-            GlobalRequestResult currentResult = pushRevocationPolicy(requestUri, realm, client, realm.getNotBefore());
-            finalResult.addAll(currentResult);
+            requests.addAll(createPushRevocationPolicyRequests(requestUri, realm, client, realm.getNotBefore()));
         }
-        return finalResult;
+        return send(requests);
     }
 
     public GlobalRequestResult pushClientRevocationPolicy(URI requestUri, RealmModel realm, ClientModel client) {
@@ -273,40 +291,36 @@ public class ResourceAdminManager {
 
 
     protected GlobalRequestResult pushRevocationPolicy(URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
+        return send(createPushRevocationPolicyRequests(requestUri, realm, resource, notBefore));
+    }
+
+    private List<AdminRequest> createPushRevocationPolicyRequests(URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
         List<String> mgmtUrls = getAllManagementUrls(requestUri, resource);
         if (mgmtUrls.isEmpty()) {
             logger.debugf("No management URL or no registered cluster nodes for the client %s", resource.getClientId());
-            return new GlobalRequestResult();
+            return Collections.emptyList();
         }
 
         if (logger.isDebugEnabled()) logger.debug("Sending push revocation to URLS: " + mgmtUrls);
 
         // Propagate this to all hosts
-        GlobalRequestResult result = new GlobalRequestResult();
+        List<AdminRequest> requests = new ArrayList<>();
         for (String mgmtUrl : mgmtUrls) {
-            if (sendPushRevocationPolicyRequest(realm, resource, notBefore, mgmtUrl)) {
-                result.addSuccessRequest(mgmtUrl);
-            } else {
-                result.addFailedRequest(mgmtUrl);
-            }
+            requests.add(createPushRevocationPolicyRequest(realm, resource, notBefore, mgmtUrl));
         }
-        return result;
+        return requests;
     }
 
     protected boolean sendPushRevocationPolicyRequest(RealmModel realm, ClientModel resource, int notBefore, String managementUrl) {
-        PushNotBeforeAction adminAction = new PushNotBeforeAction(TokenIdGenerator.generateId(), Time.currentTime() + 30, resource.getClientId(), notBefore);
+        return send(session.getProvider(HttpClientProvider.class), createPushRevocationPolicyRequest(realm, resource, notBefore, managementUrl));
+    }
+
+    private AdminRequest createPushRevocationPolicyRequest(RealmModel realm, ClientModel resource, int notBefore, String managementUrl) {
+        PushNotBeforeAction adminAction = new PushNotBeforeAction(TokenIdGenerator.generateId(), Time.currentTime() + ADMIN_ACTION_EXPIRATION, resource.getClientId(), notBefore);
         String token = new TokenManager().encodeToken(realm, adminAction);
         logger.debugv("pushRevocation resource: {0} url: {1}", resource.getClientId(), managementUrl);
         URI target = UriBuilder.fromUri(managementUrl).path(AdapterConstants.K_PUSH_NOT_BEFORE).build();
-        try {
-            int status = session.getProvider(HttpClientProvider.class).postText(target.toString(), token);
-            boolean success = status == 204 || status == 200;
-            logger.debugf("pushRevocation success for %s: %s", managementUrl, success);
-            return success;
-        } catch (IOException e) {
-            logger.failedToSendRevocation(e);
-            return false;
-        }
+        return new AdminRequest(ActionType.PUSH_NOT_BEFORE, resource.getClientId(), managementUrl, target.toString(), token);
     }
 
     public GlobalRequestResult testNodesAvailability(URI requestUri, RealmModel realm, ClientModel client) {
@@ -320,31 +334,151 @@ public class ResourceAdminManager {
         if (logger.isDebugEnabled()) logger.debug("Sending test nodes availability: " + mgmtUrls);
 
         // Propagate this to all hosts
-        GlobalRequestResult result = new GlobalRequestResult();
+        List<AdminRequest> requests = new ArrayList<>();
         for (String mgmtUrl : mgmtUrls) {
-            if (sendTestNodeAvailabilityRequest(realm, client, mgmtUrl)) {
-                result.addSuccessRequest(mgmtUrl);
-            } else {
-                result.addFailedRequest(mgmtUrl);
-            }
+            requests.add(createTestNodeAvailabilityRequest(realm, client, mgmtUrl));
         }
-        return result;
+        return send(requests);
     }
 
     protected boolean sendTestNodeAvailabilityRequest(RealmModel realm, ClientModel client, String managementUrl) {
-        TestAvailabilityAction adminAction = new TestAvailabilityAction(TokenIdGenerator.generateId(), Time.currentTime() + 30, client.getClientId());
+        return send(session.getProvider(HttpClientProvider.class), createTestNodeAvailabilityRequest(realm, client, managementUrl));
+    }
+
+    private AdminRequest createTestNodeAvailabilityRequest(RealmModel realm, ClientModel client, String managementUrl) {
+        TestAvailabilityAction adminAction = new TestAvailabilityAction(TokenIdGenerator.generateId(), Time.currentTime() + ADMIN_ACTION_EXPIRATION, client.getClientId());
         String token = new TokenManager().encodeToken(realm, adminAction);
         logger.debugv("testNodes availability resource: {0} url: {1}", client.getClientId(), managementUrl);
         URI target = UriBuilder.fromUri(managementUrl).path(AdapterConstants.K_TEST_AVAILABLE).build();
+        return new AdminRequest(ActionType.TEST_AVAILABILITY, client.getClientId(), managementUrl, target.toString(), token);
+    }
+
+    /**
+     * Sends the requests concurrently and waits until all of them completed or the admin actions expired. Requests
+     * which didn't complete in time are reported as failed. They are not interrupted, as that doesn't abort blocking
+     * I/O, but end once the socket timeout of the HTTP client expires.
+     */
+    private GlobalRequestResult send(List<AdminRequest> requests) {
+        GlobalRequestResult result = new GlobalRequestResult();
+        if (requests.isEmpty()) {
+            return result;
+        }
+
+        final HttpClientProvider httpClient = session.getProvider(HttpClientProvider.class);
+        if (requests.size() == 1) {
+            AdminRequest request = requests.get(0);
+            addResult(result, request, send(httpClient, request));
+            return result;
+        }
+
+        ExecutorService executor = httpClient.getExecutor();
+        List<Future<Boolean>> futures = new ArrayList<>(requests.size());
+        for (final AdminRequest request : requests) {
+            try {
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return send(httpClient, request);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                logger.adminRequestFailed(e, request.type.name, request.managementUrl);
+                futures.add(null);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + getResponseTimeout();
+        boolean interrupted = false;
+        for (int i = 0; i < requests.size(); i++) {
+            AdminRequest request = requests.get(i);
+            Future<Boolean> future = futures.get(i);
+            boolean success = false;
+            if (future != null && !interrupted) {
+                try {
+                    success = future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    logger.adminRequestTimedOut(request.type.name, request.managementUrl);
+                } catch (ExecutionException e) {
+                    logger.adminRequestFailed(e.getCause(), request.type.name, request.managementUrl);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            addResult(result, request, success);
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    /**
+     * @return how long to wait for responses of the nodes in milliseconds
+     */
+    protected long getResponseTimeout() {
+        return TimeUnit.SECONDS.toMillis(ADMIN_ACTION_EXPIRATION);
+    }
+
+    private static void addResult(GlobalRequestResult result, AdminRequest request, boolean success) {
+        if (success) {
+            result.addSuccessRequest(request.managementUrl);
+        } else {
+            result.addFailedRequest(request.managementUrl);
+        }
+    }
+
+    private static boolean send(HttpClientProvider httpClient, AdminRequest request) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                int status = httpClient.postText(request.target, request.token);
+                boolean success = status == 204 || status == 200;
+                logger.debugf("%s success for %s: %s", request.type.name, request.managementUrl, success);
+                return success;
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS || !backoff(attempt)) {
+                    switch (request.type) {
+                        case LOGOUT:
+                            logger.logoutFailed(e, request.clientId);
+                            break;
+                        case PUSH_NOT_BEFORE:
+                            logger.failedToSendRevocation(e);
+                            break;
+                        case TEST_AVAILABILITY:
+                            logger.availabilityTestFailed(request.managementUrl);
+                            break;
+                    }
+                    return false;
+                }
+                logger.debugf("%s failed for %s, retrying: %s", request.type.name, request.managementUrl, e.getMessage());
+            }
+        }
+    }
+
+    private static boolean backoff(int attempt) {
         try {
-            int status = session.getProvider(HttpClientProvider.class).postText(target.toString(), token);
-            boolean success = status == 204 || status == 200;
-            logger.debugf("testAvailability success for %s: %s", managementUrl, success);
-            return success;
-        } catch (IOException e) {
-            logger.availabilityTestFailed(managementUrl);
+            Thread.sleep(RETRY_BACKOFF_MILLIS * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
-   }
+    }
+
+    private static class AdminRequest {
+        private final ActionType type;
+        private final String clientId;
+        private final String managementUrl;
+        private final String target;
+        private final String token;
+
+        private AdminRequest(ActionType type, String clientId, String managementUrl, String target, String token) {
+            this.type = type;
+            this.clientId = clientId;
+            this.managementUrl = managementUrl;
+            this.target = target;
+            this.token = token;
+        }
+    }
 
 }
@@ -74,7 +74,15 @@ public class UserSessionManager {
     public ClientSessionModel findOfflineClientSession(RealmModel realm, String clientSessionId, String userSessionId) {
         ClientSessionModel clientSession = kcSession.sessions().getOfflineClientSession(realm, clientSessionId);
         if (clientSession == null) {
-            return null;
+            // Offline sessions may be still loading at startup. Looking up userSession loads it together with it's clientSessions
+            if (kcSession.sessions().getOfflineUserSession(realm, userSessionId) == null) {
+                return null;
+            }
+
+            clientSession = kcSession.sessions().getOfflineClientSession(realm, clientSessionId);
+            if (clientSession == null) {
+                return null;
+            }
         }
 
         if (!userSessionId.equals(clientSession.getUserSession().getId())) {
@@ -115,6 +115,7 @@ public class AttackDetectionResource {
         UsernameLoginFailureModel model = session.sessions().getUserLoginFailure(realm, username.toLowerCase());
         if (model != null) {
             session.sessions().removeUserLoginFailure(realm, username);
+            session.getProvider(BruteForceProtector.class).clearLockout(session, realm, username);
             adminEvent.operation(OperationType.DELETE).success();
         }
     }
@@ -131,6 +132,7 @@ public class AttackDetectionResource {
         auth.requireManage();
 
         session.sessions().removeAllUserLoginFailures(realm);
+        session.getProvider(BruteForceProtector.class).clearLockouts(session, realm);
         adminEvent.operation(OperationType.DELETE).success();
     }
 
@@ -91,9 +91,11 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.PatternSyntaxException;
 import org.keycloak.partialimport.PartialImportManager;
 
@@ -395,7 +397,8 @@ public class RealmAdminResource {
      * Get client session stats
      *
      * Returns a JSON map.  The key is the client id, the value is the number of sessions that currently are active
-     * with that client.  Only clients that actually have a session associated with them will be in this map.
+     * with that client, and the number of offline sessions of that client.  Only clients that actually have a session
+     * associated with them will be in this map.
      *
      * @return
      */
@@ -407,13 +410,19 @@ public class RealmAdminResource {
         auth.requireView();
 
         List<Map<String, String>> data = new LinkedList<Map<String, String>>();
-        for (ClientModel client : realm.getClients()) {
-            long size = session.sessions().getActiveUserSessions(client.getRealm(), client);
-            if (size == 0) continue;
+        Map<String, Long> active = session.sessions().getActiveClientSessionStats(realm, false);
+        Map<String, Long> offline = session.sessions().getActiveClientSessionStats(realm, true);
+
+        Set<String> clientIds = new HashSet<>(active.keySet());
+        clientIds.addAll(offline.keySet());
+        for (String clientId : clientIds) {
+            ClientModel client = realm.getClientById(clientId);
+            if (client == null) continue;
             Map<String, String> map = new HashMap<>();
             map.put("id", client.getId());
             map.put("clientId", client.getClientId());
-            map.put("active", size + "");
+            map.put("active", (active.containsKey(clientId) ? active.get(clientId) : 0) + "");
+            map.put("offline", (offline.containsKey(clientId) ? offline.get(clientId) : 0) + "");
             data.add(map);
         }
         return data;
@@ -18,11 +18,13 @@ package org.keycloak.services.resources.admin;
 
 import org.jboss.resteasy.annotations.cache.NoCache;
 import org.jboss.resteasy.spi.BadRequestException;
+import org.jboss.resteasy.spi.HttpResponse;
 import org.jboss.resteasy.spi.NotFoundException;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.keycloak.common.ClientConnection;
 import org.keycloak.authentication.RequiredActionProvider;
 import org.keycloak.email.EmailException;
+import org.keycloak.email.EmailSenderProvider;
 import org.keycloak.email.EmailTemplateProvider;
 import org.keycloak.events.Details;
 import org.keycloak.events.EventBuilder;
@@ -125,6 +127,9 @@ public class UsersResource {
     @Context
     protected UriInfo uriInfo;
 
+    @Context
+    protected HttpResponse response;
+
     @Context
     protected KeycloakSession session;
 
@@ -171,6 +176,7 @@ public class UsersResource {
                 if (failureModel != null) {
                     failureModel.clearFailures();
                 }
+                session.getProvider(BruteForceProtector.class).clearLockout(session, realm, rep.getUsername());
             }
 
             updateUserFromRep(user, rep, attrsToRemove, realm, session, true);
@@ -644,6 +650,9 @@ public class UsersResource {
      * @param username
      * @param first Pagination offset
      * @param maxResults Pagination size
+     * @param prefix Match search as prefix of username, first or last name, or email. Results are paged by username
+     *               instead of offset, if there are more results a Link header with rel="next" is returned
+     * @param after Username of the last user of the previous page, implies prefix
      * @return
      */
     @GET
@@ -655,9 +664,15 @@ public class UsersResource {
                                              @QueryParam("email") String email,
                                              @QueryParam("username") String username,
                                              @QueryParam("first") Integer firstResult,
-                                             @QueryParam("max") Integer maxResults) {
+                                             @QueryParam("max") Integer maxResults,
+                                             @QueryParam("prefix") Boolean prefix,
+                                             @QueryParam("after") String after) {
         auth.requireView();
 
+        if (after != null || (prefix != null && prefix)) {
+            return getUsersByPrefix(search, after, maxResults);
+        }
+
         firstResult = firstResult != null ? firstResult : -1;
         maxResults = maxResults != null ? maxResults : -1;
 
@@ -690,6 +705,25 @@ public class UsersResource {
         return results;
     }
 
+    private List<UserRepresentation> getUsersByPrefix(String search, String after, Integer maxResults) {
+        // Ask for one more user to find out if there is a next page without counting
+        int max = maxResults != null && maxResults > 0 ? maxResults : -1;
+        List<UserModel> userModels = session.users().searchForUserByPrefix(search, realm, after, max != -1 ? max + 1 : -1);
+
+        if (max != -1 && userModels.size() > max) {
+            userModels = userModels.subList(0, max);
+            String next = userModels.get(max - 1).getUsername();
+            URI nextUri = uriInfo.getRequestUriBuilder().replaceQueryParam("after", next).replaceQueryParam("first").build();
+            response.getOutputHeaders().add(HttpHeaders.LINK, "<" + nextUri + ">; rel=\"next\"");
+        }
+
+        List<UserRepresentation> results = new ArrayList<UserRepresentation>();
+        for (UserModel user : userModels) {
+            results.add(ModelToRepresentation.toRepresentation(user));
+        }
+        return results;
+    }
+
     @Path("count")
     @GET
     @NoCache
@@ -845,6 +879,8 @@ public class UsersResource {
             String link = builder.build(realm.getName()).toString();
             long expiration = TimeUnit.SECONDS.toMinutes(realm.getAccessCodeLifespanUserAction());
 
+            // Admin is told if the email couldn't be sent, so it's not left to the background delivery
+            this.session.getProvider(EmailSenderProvider.class).setSynchronous(true);
             this.session.getProvider(EmailTemplateProvider.class).setRealm(realm).setUser(user).sendExecuteActions(link, expiration);
 
             //audit.user(user).detail(Details.EMAIL, user.getEmail()).detail(Details.CODE_ID, accessCode.getCodeId()).success();
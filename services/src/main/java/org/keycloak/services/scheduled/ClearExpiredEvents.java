@@ -20,24 +20,53 @@ package org.keycloak.services.scheduled;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
-import org.keycloak.timer.ScheduledTask;
+import org.keycloak.timer.PartitionedScheduledTask;
+
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class ClearExpiredEvents implements ScheduledTask {
+public class ClearExpiredEvents implements PartitionedScheduledTask {
 
     @Override
     public void run(KeycloakSession session) {
         EventStoreProvider eventStore = session.getProvider(EventStoreProvider.class);
         if (eventStore != null) {
+            for (RealmModel realm : session.realms().getRealms()) {
+                clearExpired(eventStore, realm);
+            }
+        }
+    }
+
+    @Override
+    public List<String> getPartitions(KeycloakSession session) {
+        List<String> realmIds = new LinkedList<>();
+        if (session.getProvider(EventStoreProvider.class) != null) {
             for (RealmModel realm : session.realms().getRealms()) {
                 if (realm.isEventsEnabled() && realm.getEventsExpiration() > 0) {
-                    long olderThan = System.currentTimeMillis() - realm.getEventsExpiration() * 1000;
-                    eventStore.clear(realm.getId(), olderThan);
+                    realmIds.add(realm.getId());
                 }
             }
         }
+        return realmIds;
+    }
+
+    @Override
+    public void run(KeycloakSession session, String realmId) {
+        EventStoreProvider eventStore = session.getProvider(EventStoreProvider.class);
+        RealmModel realm = session.realms().getRealm(realmId);
+        if (eventStore != null && realm != null) {
+            clearExpired(eventStore, realm);
+        }
+    }
+
+    private void clearExpired(EventStoreProvider eventStore, RealmModel realm) {
+        if (realm.isEventsEnabled() && realm.getEventsExpiration() > 0) {
+            long olderThan = System.currentTimeMillis() - realm.getEventsExpiration() * 1000;
+            eventStore.clear(realm.getId(), olderThan);
+        }
     }
 
 }
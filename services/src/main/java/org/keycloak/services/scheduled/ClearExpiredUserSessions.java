@@ -20,12 +20,15 @@ package org.keycloak.services.scheduled;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserSessionProvider;
-import org.keycloak.timer.ScheduledTask;
+import org.keycloak.timer.PartitionedScheduledTask;
+
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class ClearExpiredUserSessions implements ScheduledTask {
+public class ClearExpiredUserSessions implements PartitionedScheduledTask {
 
     @Override
     public void run(KeycloakSession session) {
@@ -35,4 +38,21 @@ public class ClearExpiredUserSessions implements ScheduledTask {
         }
     }
 
+    @Override
+    public List<String> getPartitions(KeycloakSession session) {
+        List<String> realmIds = new LinkedList<>();
+        for (RealmModel realm : session.realms().getRealms()) {
+            realmIds.add(realm.getId());
+        }
+        return realmIds;
+    }
+
+    @Override
+    public void run(KeycloakSession session, String realmId) {
+        RealmModel realm = session.realms().getRealm(realmId);
+        if (realm != null) {
+            session.sessions().removeExpired(realm);
+        }
+    }
+
 }
@@ -17,30 +17,48 @@
 
 package org.keycloak.services.scheduled;
 
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Callable;
 
 import org.keycloak.cluster.ClusterProvider;
 import org.keycloak.cluster.ExecutionResult;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.timer.PartitionedScheduledTask;
 import org.keycloak.timer.ScheduledTask;
 
 /**
  * Ensures that there are not concurrent executions of same task (either on this host or any other cluster host)
  *
+ * Partitions of {@link PartitionedScheduledTask} are executed each in separate transaction and the check is done for each
+ * partition separately. Each node starts with randomly chosen partition and skips the partitions already executed by other nodes
+ * in the current interval, so every partition is executed once per interval in the whole cluster.
+ *
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
 public class ClusterAwareScheduledTaskRunner extends ScheduledTaskRunner {
 
+    private static final Random random = new Random();
+
     private final int intervalSecs;
 
+    // Execution of partition is remembered a bit shorter than the interval, so that the next run of the same node isn't skipped due to timer jitter
+    private final int partitionIntervalSecs;
+
     public ClusterAwareScheduledTaskRunner(KeycloakSessionFactory sessionFactory, ScheduledTask task, long intervalMillis) {
         super(sessionFactory, task);
         this.intervalSecs = (int) (intervalMillis / 1000);
+        this.partitionIntervalSecs = Math.max(intervalSecs - 1, 1);
     }
 
     @Override
     protected void runTask(final KeycloakSession session) {
+        if (task instanceof PartitionedScheduledTask) {
+            runPartitions(session, (PartitionedScheduledTask) task);
+            return;
+        }
+
         session.getTransaction().begin();
 
         ClusterProvider clusterProvider = session.getProvider(ClusterProvider.class);
@@ -65,5 +83,62 @@ public class ClusterAwareScheduledTaskRunner extends ScheduledTaskRunner {
         }
     }
 
+    protected void runPartitions(KeycloakSession session, PartitionedScheduledTask partitionedTask) {
+        session.getTransaction().begin();
+        List<String> partitions = partitionedTask.getPartitions(session);
+        session.getTransaction().commit();
+
+        String taskKey = task.getClass().getSimpleName();
+        if (partitions.isEmpty()) {
+            logger.debugf("No partitions of scheduled task %s to execute", taskKey);
+            return;
+        }
+
+        int offset = random.nextInt(partitions.size());
+        int executed = 0;
+        for (int i = 0; i < partitions.size(); i++) {
+            String partition = partitions.get((offset + i) % partitions.size());
+            if (runPartition(partitionedTask, taskKey, partition)) {
+                executed++;
+            }
+        }
+
+        logger.debugf("Executed %d of %d partitions of scheduled task %s", executed, partitions.size(), taskKey);
+    }
+
+    private boolean runPartition(final PartitionedScheduledTask partitionedTask, String taskKey, final String partition) {
+        final KeycloakSession session = sessionFactory.create();
+        try {
+            session.getTransaction().begin();
+
+            ClusterProvider clusterProvider = session.getProvider(ClusterProvider.class);
+            ExecutionResult<Void> result = clusterProvider.executeOncePerInterval(taskKey + "::" + partition, partitionIntervalSecs, new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    partitionedTask.run(session, partition);
+                    return null;
+                }
+
+            });
+
+            session.getTransaction().commit();
+            return result.isExecuted();
+        } catch (Throwable t) {
+            logger.failedToRunScheduledTask(t, taskKey + " (partition " + partition + ")");
+
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            return false;
+        } finally {
+            try {
+                session.close();
+            } catch (Throwable t) {
+                logger.failedToCloseProviderSession(t);
+            }
+        }
+    }
+
 
 }
@@ -171,8 +171,9 @@ public class ExtendingThemeManager implements ThemeProvider {
 
         private List<Theme> themes;
 
-        private Properties properties;
+        private volatile Properties properties;
 
+        // Messages merged from all themes, computed once per bundle and locale
         private ConcurrentHashMap<String, ConcurrentHashMap<Locale, Properties>> messages = new ConcurrentHashMap<>();
 
         public ExtendingTheme(List<Theme> themes) {
@@ -251,7 +252,14 @@ public class ExtendingThemeManager implements ThemeProvider {
 
         @Override
         public Properties getMessages(String baseBundlename, Locale locale) throws IOException {
-            if (messages.get(baseBundlename) == null || messages.get(baseBundlename).get(locale) == null) {
+            ConcurrentHashMap<Locale, Properties> bundle = this.messages.get(baseBundlename);
+            if (bundle == null) {
+                this.messages.putIfAbsent(baseBundlename, new ConcurrentHashMap<Locale, Properties>());
+                bundle = this.messages.get(baseBundlename);
+            }
+
+            Properties cached = bundle.get(locale);
+            if (cached == null) {
                 Properties messages = new Properties();
 
                 if (!Locale.ENGLISH.equals(locale)) {
@@ -266,12 +274,10 @@ public class ExtendingThemeManager implements ThemeProvider {
                     }
                 }
 
-                this.messages.putIfAbsent(baseBundlename, new ConcurrentHashMap<Locale, Properties>());
-                this.messages.get(baseBundlename).putIfAbsent(locale, messages);
-
-                return messages;
+                cached = bundle.putIfAbsent(locale, messages);
+                return cached != null ? cached : messages;
             } else {
-                return messages.get(baseBundlename).get(locale);
+                return cached;
             }
         }
 
@@ -17,6 +17,7 @@
 
 package org.keycloak.theme;
 
+import freemarker.cache.StrongCacheStorage;
 import freemarker.cache.URLTemplateLoader;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
@@ -33,7 +34,8 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class FreeMarkerUtil {
 
-    private ConcurrentHashMap<String, Template> cache;
+    // One configuration per theme, so templates imported or included by pages (for example template.ftl) are parsed just once per theme
+    private ConcurrentHashMap<String, Configuration> cache;
 
     public FreeMarkerUtil() {
         if (Config.scope("theme").getBoolean("cacheTemplates", true)) {
@@ -43,19 +45,7 @@ public class FreeMarkerUtil {
 
     public String processTemplate(Object data, String templateName, Theme theme) throws FreeMarkerException {
         try {
-            Template template;
-            if (cache != null) {
-                String key = theme.getName() + "/" + templateName;
-                template = cache.get(key);
-                if (template == null) {
-                    template = getTemplate(templateName, theme);
-                    if (cache.putIfAbsent(key, template) != null) {
-                        template = cache.get(key);
-                    }
-                }
-            } else {
-                template = getTemplate(templateName, theme);
-            }
+            Template template = getConfiguration(theme).getTemplate(templateName);
 
             Writer out = new StringWriter();
             template.process(data, out);
@@ -65,10 +55,32 @@ public class FreeMarkerUtil {
         }
     }
 
-    private Template getTemplate(String templateName, Theme theme) throws IOException {
+    private Configuration getConfiguration(Theme theme) throws IOException {
+        if (cache == null) {
+            return createConfiguration(theme);
+        }
+
+        String key = theme.getType() + "/" + theme.getName();
+        Configuration cfg = cache.get(key);
+        if (cfg == null) {
+            cfg = createConfiguration(theme);
+
+            // Templates never change when cached, so they are never evicted and never checked for updates
+            cfg.setCacheStorage(new StrongCacheStorage());
+            cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+
+            Configuration existing = cache.putIfAbsent(key, cfg);
+            if (existing != null) {
+                cfg = existing;
+            }
+        }
+        return cfg;
+    }
+
+    private Configuration createConfiguration(Theme theme) {
         Configuration cfg = new Configuration();
         cfg.setTemplateLoader(new ThemeTemplateLoader(theme));
-        return cfg.getTemplate(templateName);
+        return cfg;
     }
 
     class ThemeTemplateLoader extends URLTemplateLoader {
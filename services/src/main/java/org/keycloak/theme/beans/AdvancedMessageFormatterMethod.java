@@ -20,7 +20,6 @@ package org.keycloak.theme.beans;
 import freemarker.template.TemplateMethodModelEx;
 import freemarker.template.TemplateModelException;
 
-import java.text.MessageFormat;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
@@ -43,7 +42,7 @@ public class AdvancedMessageFormatterMethod implements TemplateMethodModelEx {
             String key = list.get(0).toString();
             if (key.startsWith("${") && key.endsWith("}")) {
                 key = key.substring(2, key.length() - 1);
-                return new MessageFormat(messages.getProperty(key, key), locale).format(list.subList(1, list.size()).toArray());
+                return MessageFormatterMethod.format(messages.getProperty(key, key), locale, list.subList(1, list.size()).toArray());
             } else {
                 return key;
             }
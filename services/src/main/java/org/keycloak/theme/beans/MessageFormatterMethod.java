@@ -41,9 +41,19 @@ public class MessageFormatterMethod implements TemplateMethodModelEx {
     public Object exec(List list) throws TemplateModelException {
         if (list.size() >= 1) {
             String key = list.get(0).toString();
-            return new MessageFormat(messages.getProperty(key,key),locale).format(list.subList(1, list.size()).toArray());
+            return format(messages.getProperty(key,key), locale, list.subList(1, list.size()).toArray());
         } else {
             return null;
         }
     }
+
+    /**
+     * Most messages are plain text without parameters or quotes. Those are returned as they are, without parsing them with {@link MessageFormat}.
+     */
+    static String format(String pattern, Locale locale, Object[] parameters) {
+        if (parameters.length == 0 && pattern.indexOf('{') == -1 && pattern.indexOf('\'') == -1) {
+            return pattern;
+        }
+        return new MessageFormat(pattern, locale).format(parameters);
+    }
 }
@@ -23,8 +23,9 @@ import org.keycloak.services.scheduled.ScheduledTaskRunner;
 import org.keycloak.timer.ScheduledTask;
 import org.keycloak.timer.TimerProvider;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -34,32 +35,47 @@ public class BasicTimerProvider implements TimerProvider {
     private static final Logger logger = Logger.getLogger(BasicTimerProvider.class);
 
     private final KeycloakSession session;
-    private final Timer timer;
+    private final ScheduledExecutorService executor;
     private final BasicTimerProviderFactory factory;
 
-    public BasicTimerProvider(KeycloakSession session, Timer timer, BasicTimerProviderFactory factory) {
+    public BasicTimerProvider(KeycloakSession session, ScheduledExecutorService executor, BasicTimerProviderFactory factory) {
         this.session = session;
-        this.timer = timer;
+        this.executor = executor;
         this.factory = factory;
     }
 
     @Override
-    public void schedule(final Runnable runnable, final long intervalMillis, String taskName) {
-        TimerTask task = new TimerTask() {
+    public void schedule(final Runnable runnable, final long intervalMillis, final String taskName) {
+        final TimerTaskStats stats = new TimerTaskStats(taskName, intervalMillis);
+        Runnable task = new Runnable() {
             @Override
             public void run() {
-                runnable.run();
+                long startTime = System.currentTimeMillis();
+                boolean failed = true;
+                try {
+                    runnable.run();
+                    failed = false;
+                } catch (Throwable t) {
+                    // Executor would suppress next executions of the task if we rethrow
+                    logger.errorf(t, "Failed to run timer task '%s'", taskName);
+                } finally {
+                    long duration = System.currentTimeMillis() - startTime;
+                    stats.executed(startTime, duration, failed);
+                    if (duration > intervalMillis) {
+                        logger.warnf("Timer task '%s' took %d ms, which is longer than its interval %d ms", taskName, duration, intervalMillis);
+                    }
+                }
             }
         };
 
-        TimerTask existingTask = factory.putTask(taskName, task);
+        logger.debugf("Starting task '%s' with interval '%d'", taskName, intervalMillis);
+        ScheduledFuture<?> future = executor.scheduleWithFixedDelay(task, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+
+        BasicTimerProviderFactory.TimerTaskContext existingTask = factory.putTask(taskName, new BasicTimerProviderFactory.TimerTaskContext(future, stats));
         if (existingTask != null) {
             logger.debugf("Existing timer task '%s' found. Cancelling it", taskName);
             existingTask.cancel();
         }
-
-        logger.debugf("Starting task '%s' with interval '%d'", taskName, intervalMillis);
-        timer.schedule(task, intervalMillis, intervalMillis);
     }
 
     @Override
@@ -70,7 +86,7 @@ public class BasicTimerProvider implements TimerProvider {
 
     @Override
     public void cancelTask(String taskName) {
-        TimerTask existingTask = factory.removeTask(taskName);
+        BasicTimerProviderFactory.TimerTaskContext existingTask = factory.removeTask(taskName);
         if (existingTask != null) {
             logger.debugf("Cancelling task '%s'", taskName);
             existingTask.cancel();
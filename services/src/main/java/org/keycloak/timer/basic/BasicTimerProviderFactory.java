@@ -17,34 +17,55 @@
 
 package org.keycloak.timer.basic;
 
+import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.timer.TimerProvider;
 import org.keycloak.timer.TimerProviderFactory;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
 public class BasicTimerProviderFactory implements TimerProviderFactory {
 
-    private Timer timer;
+    private static final Logger logger = Logger.getLogger(BasicTimerProviderFactory.class);
 
-    private ConcurrentMap<String, TimerTask> scheduledTasks = new ConcurrentHashMap<String, TimerTask>();
+    public static final int DEFAULT_THREADS = 4;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    private ConcurrentMap<String, TimerTaskContext> scheduledTasks = new ConcurrentHashMap<String, TimerTaskContext>();
 
     @Override
     public TimerProvider create(KeycloakSession session) {
-        return new BasicTimerProvider(session, timer, this);
+        return new BasicTimerProvider(session, executor, this);
     }
 
     @Override
     public void init(Config.Scope config) {
-        timer = new Timer();
+        int threads = config.getInt("threads", DEFAULT_THREADS);
+        logger.debugf("Timer uses %d threads", threads);
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "Timer-" + threadCounter.incrementAndGet());
+            }
+
+        });
+        executor.setRemoveOnCancelPolicy(true);
     }
 
     @Override
@@ -54,8 +75,8 @@ public class BasicTimerProviderFactory implements TimerProviderFactory {
 
     @Override
     public void close() {
-        timer.cancel();
-        timer = null;
+        executor.shutdownNow();
+        executor = null;
     }
 
     @Override
@@ -63,12 +84,37 @@ public class BasicTimerProviderFactory implements TimerProviderFactory {
         return "basic";
     }
 
-    protected TimerTask putTask(String taskName, TimerTask task) {
+    protected TimerTaskContext putTask(String taskName, TimerTaskContext task) {
         return scheduledTasks.put(taskName, task);
     }
 
-    protected TimerTask removeTask(String taskName) {
+    protected TimerTaskContext removeTask(String taskName) {
         return scheduledTasks.remove(taskName);
     }
 
+    /**
+     * @return execution statistics of currently scheduled tasks by task name
+     */
+    public Map<String, TimerTaskStats> getTaskStats() {
+        Map<String, TimerTaskStats> stats = new HashMap<String, TimerTaskStats>();
+        for (Map.Entry<String, TimerTaskContext> entry : scheduledTasks.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().stats);
+        }
+        return stats;
+    }
+
+    protected static class TimerTaskContext {
+        private final ScheduledFuture<?> future;
+        private final TimerTaskStats stats;
+
+        protected TimerTaskContext(ScheduledFuture<?> future, TimerTaskStats stats) {
+            this.future = future;
+            this.stats = stats;
+        }
+
+        protected void cancel() {
+            future.cancel(false);
+        }
+    }
+
 }
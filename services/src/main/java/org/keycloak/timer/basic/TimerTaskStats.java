@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.timer.basic;
+
+/**
+ * Execution statistics of single timer task
+ */
+public class TimerTaskStats {
+
+    private final String taskName;
+    private final long intervalMillis;
+
+    private long executions;
+    private long failures;
+    private long lastStartTime;
+    private long lastDuration;
+    private long maxDuration;
+    private long totalDuration;
+
+    public TimerTaskStats(String taskName, long intervalMillis) {
+        this.taskName = taskName;
+        this.intervalMillis = intervalMillis;
+    }
+
+    synchronized void executed(long startTime, long duration, boolean failed) {
+        executions++;
+        if (failed) failures++;
+        lastStartTime = startTime;
+        lastDuration = duration;
+        maxDuration = Math.max(maxDuration, duration);
+        totalDuration += duration;
+    }
+
+    public String getTaskName() {
+        return taskName;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public synchronized long getExecutions() {
+        return executions;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public synchronized long getLastStartTime() {
+        return lastStartTime;
+    }
+
+    public synchronized long getLastDuration() {
+        return lastDuration;
+    }
+
+    public synchronized long getMaxDuration() {
+        return maxDuration;
+    }
+
+    public synchronized long getAverageDuration() {
+        return executions > 0 ? totalDuration / executions : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("TimerTaskStats [ task: %s, executions: %d, failures: %d, last duration: %d ms, max duration: %d ms, average duration: %d ms ]",
+                taskName, executions, failures, lastDuration, maxDuration, getAverageDuration());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.email;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class EmailDeliveryQueueTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private EmailDeliveryQueue queue;
+
+    @Before
+    public void before() {
+        queue = new EmailDeliveryQueue(1, 1, 3, 1);
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        queue.shutdown(10000);
+    }
+
+    @Test
+    public void deliverInBackground() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+
+        queue.submit(new EmailDeliveryQueue.Delivery() {
+            @Override
+            public void deliver() throws Exception {
+                thread.set(Thread.currentThread());
+                delivered.countDown();
+            }
+        });
+
+        Assert.assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        Assert.assertNotSame(Thread.currentThread(), thread.get());
+    }
+
+    @Test
+    public void retryFailedDelivery() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch delivered = new CountDownLatch(1);
+
+        queue.submit(new EmailDeliveryQueue.Delivery() {
+            @Override
+            public void deliver() throws Exception {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new Exception("Connection refused");
+                }
+                delivered.countDown();
+            }
+        });
+
+        Assert.assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(3, attempts.get());
+        Assert.assertEquals(2, queue.getRetried());
+        Assert.assertEquals(0, queue.getDropped());
+    }
+
+    @Test
+    public void dropAfterMaxAttempts() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        queue.submit(new EmailDeliveryQueue.Delivery() {
+            @Override
+            public void deliver() throws Exception {
+                attempts.incrementAndGet();
+                throw new Exception("Connection refused");
+            }
+        });
+
+        for (int i = 0; i < 100 && queue.getDropped() == 0; i++) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(1, queue.getDropped());
+        Assert.assertEquals(3, attempts.get());
+        Assert.assertEquals(2, queue.getRetried());
+    }
+
+    @Test
+    public void sendInCallerWhenFull() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+
+        // Blocks the only sender thread
+        queue.submit(new EmailDeliveryQueue.Delivery() {
+            @Override
+            public void deliver() throws Exception {
+                started.countDown();
+                release.await();
+            }
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // Fills the queue
+        queue.submit(new EmailDeliveryQueue.Delivery() {
+            @Override
+            public void deliver() throws Exception {
+            }
+        });
+        Assert.assertEquals(1, queue.getQueued());
+
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        queue.submit(new EmailDeliveryQueue.Delivery() {
+            @Override
+            public void deliver() throws Exception {
+                thread.set(Thread.currentThread());
+            }
+        });
+        Assert.assertSame(Thread.currentThread(), thread.get());
+
+        // Sent once without retries, and the failure is reported to the caller
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            queue.submit(new EmailDeliveryQueue.Delivery() {
+                @Override
+                public void deliver() throws Exception {
+                    attempts.incrementAndGet();
+                    throw new Exception("Connection refused");
+                }
+            });
+            Assert.fail("Expected EmailException");
+        } catch (EmailException e) {
+            Assert.assertEquals(1, attempts.get());
+        }
+
+        Assert.assertEquals(2, queue.getSentByCaller());
+    }
+
+    @Test
+    public void rejectAfterShutdown() throws Exception {
+        queue.shutdown(10000);
+
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            queue.submit(new EmailDeliveryQueue.Delivery() {
+                @Override
+                public void deliver() throws Exception {
+                    attempts.incrementAndGet();
+                }
+            });
+            Assert.fail("Expected EmailException");
+        } catch (EmailException e) {
+            Assert.assertEquals(0, attempts.get());
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.services;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.provider.Provider;
+import org.keycloak.provider.ProviderFactory;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DefaultKeycloakSessionFactoryTest {
+
+    private DefaultKeycloakSessionFactory factory;
+    private TestProviderFactory<TestProvider> defaultProvider;
+    private TestProviderFactory<TestProvider> otherProvider;
+    private TestProviderFactory<MultiProvider> multiA;
+    private TestProviderFactory<MultiProvider> multiB;
+
+    @Before
+    public void before() throws Exception {
+        defaultProvider = new TestProviderFactory<TestProvider>("default");
+        otherProvider = new TestProviderFactory<TestProvider>("other");
+        multiA = new TestProviderFactory<MultiProvider>("a");
+        multiB = new TestProviderFactory<MultiProvider>("b");
+
+        Map<Class<? extends Provider>, Map<String, ProviderFactory>> factoriesMap = new HashMap<Class<? extends Provider>, Map<String, ProviderFactory>>();
+        factoriesMap.put(TestProvider.class, factories(defaultProvider, otherProvider));
+        factoriesMap.put(MultiProvider.class, factories(multiA, multiB));
+        factoriesMap.put(EmptyProvider.class, factories());
+
+        Map<Class<? extends Provider>, String> defaults = new HashMap<Class<? extends Provider>, String>();
+        defaults.put(TestProvider.class, "default");
+
+        // Same state loadSPIs leaves behind, without going through the ServiceLoader and the server config
+        factory = new DefaultKeycloakSessionFactory();
+        set(factory, "factoriesMap", factoriesMap);
+        set(factory, "provider", defaults);
+        factory.initProviderSlots();
+    }
+
+    @Test
+    public void everyFactoryGetsOwnSlot() {
+        Assert.assertEquals(4, factory.getProviderSlotCount());
+
+        int defaultSlot = factory.getProviderSlot(TestProvider.class, "default");
+        int otherSlot = factory.getProviderSlot(TestProvider.class, "other");
+        int slotA = factory.getProviderSlot(MultiProvider.class, "a");
+        int slotB = factory.getProviderSlot(MultiProvider.class, "b");
+
+        Assert.assertEquals(defaultSlot, factory.getProviderSlot(TestProvider.class));
+        Assert.assertSame(defaultProvider, factory.getProviderFactory(defaultSlot));
+        Assert.assertSame(otherProvider, factory.getProviderFactory(otherSlot));
+        Assert.assertSame(multiA, factory.getProviderFactory(slotA));
+        Assert.assertSame(multiB, factory.getProviderFactory(slotB));
+    }
+
+    @Test
+    public void unknownProvidersHaveNoSlot() {
+        Assert.assertEquals(-1, factory.getProviderSlot(TestProvider.class, "missing"));
+        Assert.assertEquals(-1, factory.getProviderSlot(MultiProvider.class));
+        Assert.assertEquals(-1, factory.getProviderSlot(EmptyProvider.class));
+        Assert.assertEquals(-1, factory.getProviderSlot(UnknownProvider.class));
+        Assert.assertEquals(-1, factory.getProviderSlot(UnknownProvider.class, "default"));
+    }
+
+    @Test
+    public void getProviderFactoryResolvesThroughSlots() {
+        Assert.assertSame(defaultProvider, factory.getProviderFactory(TestProvider.class));
+        Assert.assertSame(otherProvider, factory.getProviderFactory(TestProvider.class, "other"));
+        Assert.assertSame(multiB, factory.getProviderFactory(MultiProvider.class, "b"));
+        Assert.assertNull(factory.getProviderFactory(MultiProvider.class));
+        Assert.assertNull(factory.getProviderFactory(TestProvider.class, "missing"));
+        Assert.assertNull(factory.getProviderFactory(UnknownProvider.class));
+        Assert.assertNull(factory.getProviderFactory(UnknownProvider.class, "default"));
+    }
+
+    @Test
+    public void defaultAndExplicitIdShareProvider() {
+        KeycloakSession session = new DefaultKeycloakSession(factory);
+
+        TestProvider provider = session.getProvider(TestProvider.class);
+        Assert.assertNotNull(provider);
+        Assert.assertSame(provider, session.getProvider(TestProvider.class));
+        Assert.assertSame(provider, session.getProvider(TestProvider.class, "default"));
+        Assert.assertEquals(1, defaultProvider.created);
+
+        TestProvider other = session.getProvider(TestProvider.class, "other");
+        Assert.assertNotSame(provider, other);
+        Assert.assertSame(other, session.getProvider(TestProvider.class, "other"));
+        Assert.assertEquals(1, otherProvider.created);
+    }
+
+    @Test
+    public void missingProvidersResolveToNull() {
+        KeycloakSession session = new DefaultKeycloakSession(factory);
+
+        Assert.assertNull(session.getProvider(MultiProvider.class));
+        Assert.assertNull(session.getProvider(EmptyProvider.class));
+        Assert.assertNull(session.getProvider(UnknownProvider.class));
+        Assert.assertNull(session.getProvider(TestProvider.class, "missing"));
+        Assert.assertNull(session.getProvider(UnknownProvider.class, "default"));
+        Assert.assertEquals(0, multiA.created + multiB.created);
+    }
+
+    @Test
+    public void sessionsDoNotShareProviders() {
+        KeycloakSession session1 = new DefaultKeycloakSession(factory);
+        KeycloakSession session2 = new DefaultKeycloakSession(factory);
+
+        Assert.assertNotSame(session1.getProvider(TestProvider.class), session2.getProvider(TestProvider.class));
+        Assert.assertEquals(2, defaultProvider.created);
+    }
+
+    @Test
+    public void closeClosesCreatedProviders() {
+        KeycloakSession session = new DefaultKeycloakSession(factory);
+        TestProvider provider = session.getProvider(TestProvider.class);
+        MultiProvider a = session.getProvider(MultiProvider.class, "a");
+
+        session.close();
+
+        Assert.assertEquals(1, ((TestProviderInstance) provider).closed);
+        Assert.assertEquals(1, ((TestProviderInstance) a).closed);
+    }
+
+    private static Map<String, ProviderFactory> factories(ProviderFactory... factories) {
+        Map<String, ProviderFactory> map = new HashMap<String, ProviderFactory>();
+        for (ProviderFactory f : factories) {
+            map.put(f.getId(), f);
+        }
+        return map;
+    }
+
+    private static void set(Object target, String name, Object value) throws Exception {
+        Field field = DefaultKeycloakSessionFactory.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    public interface TestProvider extends Provider {
+    }
+
+    public interface MultiProvider extends Provider {
+    }
+
+    public interface EmptyProvider extends Provider {
+    }
+
+    public interface UnknownProvider extends Provider {
+    }
+
+    private static class TestProviderInstance implements TestProvider, MultiProvider {
+
+        private int closed;
+
+        @Override
+        public void close() {
+            closed++;
+        }
+    }
+
+    private static class TestProviderFactory<T extends Provider> implements ProviderFactory<T> {
+
+        private final String id;
+        private int created;
+
+        private TestProviderFactory(String id) {
+            this.id = id;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T create(KeycloakSession session) {
+            created++;
+            return (T) new TestProviderInstance();
+        }
+
+        @Override
+        public void init(Config.Scope config) {
+        }
+
+        @Override
+        public void postInit(KeycloakSessionFactory factory) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.test.managers;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.cluster.ClusterProvider;
+import org.keycloak.common.ClientConnection;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionProvider;
+import org.keycloak.models.UsernameLoginFailureModel;
+import org.keycloak.services.managers.DefaultBruteForceProtector;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class DefaultBruteForceProtectorTest {
+
+    private final Map<String, UsernameLoginFailureModel> loginFailures = new ConcurrentHashMap<String, UsernameLoginFailureModel>();
+    private final List<KeycloakTransaction> afterCompletion = new ArrayList<KeycloakTransaction>();
+    private final List<DefaultBruteForceProtector.ClearLockoutEvent> clusterEvents = new ArrayList<DefaultBruteForceProtector.ClearLockoutEvent>();
+    private volatile boolean failSessions;
+
+    private KeycloakSession session;
+    private RealmModel realm;
+    private DefaultBruteForceProtector protector;
+
+    @Before
+    public void before() {
+        realm = stub(RealmModel.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("getId")) return "test";
+                if (name.equals("getFailureFactor")) return 2;
+                if (name.equals("getWaitIncrementSeconds")) return 60;
+                if (name.equals("getMaxFailureWaitSeconds")) return 900;
+                if (name.equals("getMaxDeltaTimeSeconds")) return 3600;
+                return null;
+            }
+        });
+
+        session = createSession();
+        KeycloakSessionFactory factory = stub(KeycloakSessionFactory.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("create")) {
+                    if (failSessions) throw new IllegalStateException("Database is down");
+                    return session;
+                }
+                return null;
+            }
+        });
+
+        final UserModel user = stub(UserModel.class, new Handler());
+        protector = new DefaultBruteForceProtector(factory, 1, 5, 0, 0, 0) {
+            @Override
+            protected RealmModel getRealmModel(KeycloakSession session, LoginEvent event) {
+                return realm;
+            }
+
+            @Override
+            protected UserModel getUser(KeycloakSession session, RealmModel realm, String username) {
+                return user;
+            }
+        };
+        protector.start();
+    }
+
+    @After
+    public void after() {
+        protector.shutdown();
+    }
+
+    @Test
+    public void lockout() {
+        protector.failedLogin(realm, "user", new TestClientConnection());
+        Assert.assertFalse(protector.isTemporarilyDisabled(session, realm, "user"));
+
+        protector.failedLogin(realm, "User", new TestClientConnection());
+        Assert.assertTrue(protector.isTemporarilyDisabled(session, realm, "user"));
+        Assert.assertEquals(2, loginFailures.get("user").getNumFailures());
+
+        // Lockout is served from memory
+        loginFailures.clear();
+        Assert.assertTrue(protector.isTemporarilyDisabled(session, realm, "user"));
+    }
+
+    @Test
+    public void failedLoggingDoesNotBlockChecks() {
+        failSessions = true;
+        protector.failedLogin(realm, "user", new TestClientConnection());
+        protector.failedLogin(realm, "user", new TestClientConnection());
+
+        long start = System.currentTimeMillis();
+        Assert.assertFalse(protector.isTemporarilyDisabled(session, realm, "user"));
+        Assert.assertTrue(System.currentTimeMillis() - start < 2500);
+
+        failSessions = false;
+        protector.failedLogin(realm, "user", new TestClientConnection());
+        protector.failedLogin(realm, "user", new TestClientConnection());
+
+        start = System.currentTimeMillis();
+        Assert.assertTrue(protector.isTemporarilyDisabled(session, realm, "user"));
+        Assert.assertTrue(System.currentTimeMillis() - start < 2500);
+    }
+
+    @Test
+    public void clearLockout() {
+        protector.failedLogin(realm, "user", new TestClientConnection());
+        protector.failedLogin(realm, "user", new TestClientConnection());
+        protector.failedLogin(realm, "other", new TestClientConnection());
+        protector.failedLogin(realm, "other", new TestClientConnection());
+        Assert.assertTrue(protector.isTemporarilyDisabled(session, realm, "user"));
+        Assert.assertTrue(protector.isTemporarilyDisabled(session, realm, "other"));
+
+        loginFailures.remove("user");
+        protector.clearLockout(session, realm, "USER");
+
+        // Lockout is kept until the transaction is committed
+        Assert.assertTrue(protector.isTemporarilyDisabled(session, realm, "user"));
+        completeTransactions(true);
+        Assert.assertFalse(protector.isTemporarilyDisabled(session, realm, "user"));
+        Assert.assertTrue(protector.isTemporarilyDisabled(session, realm, "other"));
+        Assert.assertEquals(1, clusterEvents.size());
+        Assert.assertEquals("user", clusterEvents.get(0).getUsername());
+
+        loginFailures.clear();
+        protector.clearLockouts(session, realm);
+        completeTransactions(false);
+        Assert.assertTrue(protector.isTemporarilyDisabled(session, realm, "other"));
+        Assert.assertEquals(1, clusterEvents.size());
+
+        protector.clearLockouts(session, realm);
+        completeTransactions(true);
+        Assert.assertFalse(protector.isTemporarilyDisabled(session, realm, "other"));
+        Assert.assertEquals(2, clusterEvents.size());
+        Assert.assertNull(clusterEvents.get(1).getUsername());
+    }
+
+    @Test
+    public void clearLockoutFromCluster() {
+        protector.failedLogin(realm, "user", new TestClientConnection());
+        protector.failedLogin(realm, "user", new TestClientConnection());
+        Assert.assertTrue(protector.isTemporarilyDisabled(session, realm, "user"));
+
+        loginFailures.clear();
+        protector.clearLockout(new DefaultBruteForceProtector.ClearLockoutEvent("test", "user"));
+        Assert.assertFalse(protector.isTemporarilyDisabled(session, realm, "user"));
+    }
+
+    private void completeTransactions(boolean commit) {
+        for (KeycloakTransaction tx : afterCompletion) {
+            tx.begin();
+            if (commit) {
+                tx.commit();
+            } else {
+                tx.rollback();
+            }
+        }
+        afterCompletion.clear();
+    }
+
+    private KeycloakSession createSession() {
+        final KeycloakTransactionManager transaction = stub(KeycloakTransactionManager.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("enlistAfterCompletion")) afterCompletion.add((KeycloakTransaction) args[0]);
+                return null;
+            }
+        });
+        final ClusterProvider cluster = stub(ClusterProvider.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("notify")) clusterEvents.add((DefaultBruteForceProtector.ClearLockoutEvent) args[1]);
+                return null;
+            }
+        });
+        final UserSessionProvider sessions = stub(UserSessionProvider.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("getUserLoginFailure")) {
+                    return loginFailures.get(args[1]);
+                } else if (name.equals("addUserLoginFailure")) {
+                    UsernameLoginFailureModel failure = new TestLoginFailure((String) args[1]);
+                    loginFailures.put((String) args[1], failure);
+                    return failure;
+                }
+                return null;
+            }
+        });
+        return stub(KeycloakSession.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("getTransaction")) return transaction;
+                if (name.equals("sessions")) return sessions;
+                if (name.equals("getProvider") && args[0] == ClusterProvider.class) return cluster;
+                return null;
+            }
+        });
+    }
+
+    private static <T> T stub(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(DefaultBruteForceProtectorTest.class.getClassLoader(), new Class[] { type }, handler));
+    }
+
+    private static class Handler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = invoke(method.getName(), args);
+            if (result == null && method.getReturnType().isPrimitive() && method.getReturnType() != void.class) {
+                return method.getReturnType() == boolean.class ? Boolean.FALSE : defaultNumber(method.getReturnType());
+            }
+            return result;
+        }
+
+        protected Object invoke(String name, Object[] args) {
+            return null;
+        }
+
+        private static Object defaultNumber(Class<?> type) {
+            if (type == long.class) return 0L;
+            if (type == int.class) return 0;
+            throw new IllegalArgumentException(type.getName());
+        }
+    }
+
+    private static class TestClientConnection implements ClientConnection {
+
+        @Override
+        public String getRemoteAddr() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String getRemoteHost() {
+            return "localhost";
+        }
+
+        @Override
+        public int getRemotePort() {
+            return 0;
+        }
+
+        @Override
+        public String getLocalAddr() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public int getLocalPort() {
+            return 0;
+        }
+    }
+
+    private static class TestLoginFailure implements UsernameLoginFailureModel {
+
+        private final String username;
+        private int failedLoginNotBefore;
+        private int numFailures;
+        private long lastFailure;
+        private String lastIPFailure;
+
+        private TestLoginFailure(String username) {
+            this.username = username;
+        }
+
+        @Override
+        public String getUsername() {
+            return username;
+        }
+
+        @Override
+        public int getFailedLoginNotBefore() {
+            return failedLoginNotBefore;
+        }
+
+        @Override
+        public void setFailedLoginNotBefore(int notBefore) {
+            this.failedLoginNotBefore = notBefore;
+        }
+
+        @Override
+        public int getNumFailures() {
+            return numFailures;
+        }
+
+        @Override
+        public void incrementFailures() {
+            numFailures++;
+        }
+
+        @Override
+        public void clearFailures() {
+            numFailures = 0;
+        }
+
+        @Override
+        public long getLastFailure() {
+            return lastFailure;
+        }
+
+        @Override
+        public void setLastFailure(long lastFailure) {
+            this.lastFailure = lastFailure;
+        }
+
+        @Override
+        public String getLastIPFailure() {
+            return lastIPFailure;
+        }
+
+        @Override
+        public void setLastIPFailure(String ip) {
+            this.lastIPFailure = ip;
+        }
+    }
+}
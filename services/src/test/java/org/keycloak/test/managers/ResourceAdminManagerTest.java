@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.test.managers;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.connections.httpclient.HttpClientProvider;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.representations.adapters.action.GlobalRequestResult;
+import org.keycloak.services.managers.ResourceAdminManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ResourceAdminManagerTest {
+
+    private static final URI REQUEST_URI = URI.create("http://localhost:8081/auth/admin");
+
+    private final Map<String, Integer> registeredNodes = new HashMap<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private ExecutorService executor;
+    private RealmModel realm;
+    private ClientModel client;
+
+    @Before
+    public void before() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+
+        final KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        realm = stub(RealmModel.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("getPrivateKey")) return keyPair.getPrivate();
+                return null;
+            }
+        });
+        client = stub(ClientModel.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("getClientId")) return "app";
+                if (name.equals("getManagementUrl")) return "http://localhost:8080/app";
+                if (name.equals("getRegisteredNodes")) return registeredNodes;
+                return null;
+            }
+        });
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void sendConcurrently() {
+        registeredNodes.put("node1", 0);
+        registeredNodes.put("node2", 0);
+        registeredNodes.put("node3", 0);
+
+        // Each node answers only after all of them received the request
+        final CountDownLatch received = new CountDownLatch(3);
+        ResourceAdminManager manager = createManager(new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) throws Exception {
+                received.countDown();
+                return received.await(5, TimeUnit.SECONDS) ? 204 : 500;
+            }
+        }, 10000);
+
+        GlobalRequestResult result = manager.testNodesAvailability(REQUEST_URI, realm, client);
+        Assert.assertEquals(Arrays.asList("http://node1:8080/app", "http://node2:8080/app", "http://node3:8080/app"), result.getSuccessRequests());
+        Assert.assertNull(result.getFailedRequests());
+    }
+
+    @Test
+    public void reportTimedOutAndFailedRequests() throws Exception {
+        registeredNodes.put("down", 0);
+        registeredNodes.put("ok", 0);
+        registeredNodes.put("slow", 0);
+
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final CountDownLatch slowFinished = new CountDownLatch(1);
+        ResourceAdminManager manager = createManager(new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) throws Exception {
+                String uri = (String) args[0];
+                if (uri.startsWith("http://down")) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                if (uri.startsWith("http://slow")) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        interrupted.set(true);
+                    }
+                    slowFinished.countDown();
+                }
+                return 204;
+            }
+        }, 2000);
+
+        GlobalRequestResult result = manager.testNodesAvailability(REQUEST_URI, realm, client);
+        Assert.assertEquals(Arrays.asList("http://ok:8080/app"), result.getSuccessRequests());
+        Assert.assertEquals(Arrays.asList("http://down:8080/app", "http://slow:8080/app"), result.getFailedRequests());
+
+        // Request which didn't complete in time is left to the socket timeout instead of being interrupted
+        release.countDown();
+        Assert.assertTrue(slowFinished.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(interrupted.get());
+    }
+
+    private ResourceAdminManager createManager(final Handler postText, final long responseTimeout) {
+        final HttpClientProvider httpClient = stub(HttpClientProvider.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) throws Exception {
+                if (name.equals("getExecutor")) return executor;
+                if (name.equals("postText")) return postText.invoke(name, args);
+                return null;
+            }
+        });
+        KeycloakSession session = stub(KeycloakSession.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("getProvider") && args[0] == HttpClientProvider.class) return httpClient;
+                return null;
+            }
+        });
+        return new ResourceAdminManager(session) {
+            @Override
+            protected long getResponseTimeout() {
+                return responseTimeout;
+            }
+        };
+    }
+
+    private static <T> T stub(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(ResourceAdminManagerTest.class.getClassLoader(), new Class[] { type }, handler));
+    }
+
+    private static class Handler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = invoke(method.getName(), args);
+            if (result == null && method.getReturnType().isPrimitive() && method.getReturnType() != void.class) {
+                return method.getReturnType() == boolean.class ? Boolean.FALSE : 0;
+            }
+            return result;
+        }
+
+        protected Object invoke(String name, Object[] args) throws Exception {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.test.protocol;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.ClientTemplateModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.protocol.ProtocolMapper;
+import org.keycloak.protocol.ProtocolMapperUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ProtocolMapperUtilsTest {
+
+    private static final String KNOWN_TYPE = "test-mapper";
+
+    private final Map<String, ProtocolMapperModel> clientMappers = new HashMap<String, ProtocolMapperModel>();
+    private final Map<String, ProtocolMapperModel> templateMappers = new HashMap<String, ProtocolMapperModel>();
+    private final Set<String> requestedMappers = new HashSet<String>();
+
+    private KeycloakSession session;
+    private ClientSessionModel clientSession;
+    private ProtocolMapper mapper;
+
+    @Before
+    public void before() {
+        mapper = stub(ProtocolMapper.class, new Handler());
+
+        final KeycloakSessionFactory factory = stub(KeycloakSessionFactory.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("getProviderFactory") && args.length == 2 && KNOWN_TYPE.equals(args[1])) return mapper;
+                return null;
+            }
+        });
+        session = stub(KeycloakSession.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("getKeycloakSessionFactory")) return factory;
+                return null;
+            }
+        });
+
+        final ClientTemplateModel template = stub(ClientTemplateModel.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("getProtocolMapperById")) return templateMappers.get(args[0]);
+                return null;
+            }
+        });
+        final ClientModel client = stub(ClientModel.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("getProtocolMapperById")) return clientMappers.get(args[0]);
+                if (name.equals("getClientTemplate")) return template;
+                return null;
+            }
+        });
+        clientSession = stub(ClientSessionModel.class, new Handler() {
+            @Override
+            protected Object invoke(String name, Object[] args) {
+                if (name.equals("getClient")) return client;
+                if (name.equals("getProtocolMappers")) return requestedMappers;
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void sortedByName() {
+        addMapper(clientMappers, "1", "role list", KNOWN_TYPE);
+        addMapper(clientMappers, "2", "full name", KNOWN_TYPE);
+        addMapper(templateMappers, "3", "email", KNOWN_TYPE);
+        addMapper(clientMappers, "4", "username", KNOWN_TYPE);
+
+        Assert.assertEquals(names("email", "full name", "role list", "username"), sortedNames());
+    }
+
+    @Test
+    public void sameNameSortedById() {
+        addMapper(clientMappers, "b", "audience", KNOWN_TYPE);
+        addMapper(clientMappers, "c", "audience", KNOWN_TYPE);
+        addMapper(templateMappers, "a", "audience", KNOWN_TYPE);
+
+        List<String> ids = new ArrayList<String>();
+        for (Map.Entry<ProtocolMapperModel, ProtocolMapper> entry : ProtocolMapperUtils.getSortedProtocolMappers(session, clientSession)) {
+            ids.add(entry.getKey().getId());
+        }
+        Assert.assertEquals(names("a", "b", "c"), ids);
+    }
+
+    @Test
+    public void nullNameSortedFirst() {
+        addMapper(clientMappers, "1", "address", KNOWN_TYPE);
+        addMapper(clientMappers, "2", null, KNOWN_TYPE);
+
+        Assert.assertEquals(names(null, "address"), sortedNames());
+    }
+
+    @Test
+    public void unknownMappersSkipped() {
+        addMapper(clientMappers, "1", "zoneinfo", KNOWN_TYPE);
+        addMapper(clientMappers, "2", "removed", "removed-mapper");
+        requestedMappers.add("missing");
+
+        List<Map.Entry<ProtocolMapperModel, ProtocolMapper>> sorted = ProtocolMapperUtils.getSortedProtocolMappers(session, clientSession);
+        Assert.assertEquals(1, sorted.size());
+        Assert.assertEquals("zoneinfo", sorted.get(0).getKey().getName());
+        Assert.assertSame(mapper, sorted.get(0).getValue());
+    }
+
+    private void addMapper(Map<String, ProtocolMapperModel> mappers, String id, String name, String type) {
+        ProtocolMapperModel model = new ProtocolMapperModel();
+        model.setId(id);
+        model.setName(name);
+        model.setProtocolMapper(type);
+        mappers.put(id, model);
+        requestedMappers.add(id);
+    }
+
+    private List<String> sortedNames() {
+        List<String> names = new ArrayList<String>();
+        for (Map.Entry<ProtocolMapperModel, ProtocolMapper> entry : ProtocolMapperUtils.getSortedProtocolMappers(session, clientSession)) {
+            names.add(entry.getKey().getName());
+        }
+        return names;
+    }
+
+    private static List<String> names(String... names) {
+        List<String> result = new ArrayList<String>();
+        for (String name : names) {
+            result.add(name);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(ProtocolMapperUtilsTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static class Handler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("hashCode") && args == null) return System.identityHashCode(proxy);
+            if (method.getName().equals("equals") && args != null && args.length == 1) return proxy == args[0];
+            Object result = invoke(method.getName(), args);
+            if (result == null && method.getReturnType().isPrimitive() && method.getReturnType() != void.class) {
+                return method.getReturnType() == boolean.class ? Boolean.FALSE : 0;
+            }
+            return result;
+        }
+
+        protected Object invoke(String name, Object[] args) {
+            return null;
+        }
+    }
+}
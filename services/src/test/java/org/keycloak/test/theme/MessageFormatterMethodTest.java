@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.keycloak.test.theme;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.theme.beans.AdvancedMessageFormatterMethod;
+import org.keycloak.theme.beans.MessageFormatterMethod;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Unit test for {@link org.keycloak.theme.beans.MessageFormatterMethod}
+ */
+public class MessageFormatterMethodTest {
+
+    @Test
+    public void testFormat() throws Exception {
+        Properties messages = new Properties();
+        messages.setProperty("plain", "Log in");
+        messages.setProperty("quoted", "Don''t have an account?");
+        messages.setProperty("param", "Hello {0}");
+
+        MessageFormatterMethod msg = new MessageFormatterMethod(Locale.ENGLISH, messages);
+
+        Assert.assertEquals("Log in", msg.exec(Arrays.asList("plain")));
+        Assert.assertEquals("Don't have an account?", msg.exec(Arrays.asList("quoted")));
+        Assert.assertEquals("Hello john", msg.exec(Arrays.asList("param", "john")));
+        Assert.assertEquals("Hello {0}", msg.exec(Arrays.asList("param")));
+        Assert.assertEquals("unknown", msg.exec(Arrays.asList("unknown")));
+        Assert.assertNull(msg.exec(Arrays.asList()));
+    }
+
+    @Test
+    public void testAdvancedFormat() throws Exception {
+        Properties messages = new Properties();
+        messages.setProperty("plain", "Log in");
+
+        AdvancedMessageFormatterMethod msg = new AdvancedMessageFormatterMethod(Locale.ENGLISH, messages);
+
+        Assert.assertEquals("Log in", msg.exec(Arrays.asList("${plain}")));
+        Assert.assertEquals("plain", msg.exec(Arrays.asList("plain")));
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.keycloak.test.timer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.Config;
+import org.keycloak.timer.TimerProvider;
+import org.keycloak.timer.basic.BasicTimerProviderFactory;
+import org.keycloak.timer.basic.TimerTaskStats;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class BasicTimerProviderTest {
+
+    private BasicTimerProviderFactory factory;
+    private TimerProvider timer;
+
+    @Before
+    public void before() {
+        factory = new BasicTimerProviderFactory();
+        factory.init(new Config.SystemPropertiesScope("keycloak.timer.basic.test."));
+        timer = factory.create(null);
+    }
+
+    @After
+    public void after() {
+        factory.close();
+    }
+
+    @Test
+    public void slowTaskDoesNotDelayOtherTasks() throws Exception {
+        final CountDownLatch slowTaskRelease = new CountDownLatch(1);
+        final CountDownLatch fastTaskExecuted = new CountDownLatch(3);
+
+        timer.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    slowTaskRelease.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+        }, 10, "slow");
+
+        timer.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                fastTaskExecuted.countDown();
+            }
+
+        }, 10, "fast");
+
+        try {
+            Assert.assertTrue(fastTaskExecuted.await(5, TimeUnit.SECONDS));
+        } finally {
+            slowTaskRelease.countDown();
+        }
+    }
+
+    @Test
+    public void failingTaskIsRescheduled() throws Exception {
+        final CountDownLatch executed = new CountDownLatch(3);
+
+        timer.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                executed.countDown();
+                throw new RuntimeException("Expected failure");
+            }
+
+        }, 10, "failing");
+
+        Assert.assertTrue(executed.await(5, TimeUnit.SECONDS));
+
+        TimerTaskStats stats = factory.getTaskStats().get("failing");
+        Assert.assertTrue(stats.getExecutions() >= 2);
+        Assert.assertTrue(stats.getFailures() >= 2);
+    }
+
+    @Test
+    public void cancelTask() throws Exception {
+        timer.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+            }
+
+        }, 10, "cancelled");
+        Assert.assertNotNull(factory.getTaskStats().get("cancelled"));
+
+        timer.cancelTask("cancelled");
+        Assert.assertNull(factory.getTaskStats().get("cancelled"));
+    }
+}
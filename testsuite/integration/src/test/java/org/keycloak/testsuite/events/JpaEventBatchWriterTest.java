@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.keycloak.testsuite.events;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.events.Event;
+import org.keycloak.events.EventStoreProvider;
+import org.keycloak.events.EventType;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.AuthDetails;
+import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.jpa.JpaEventBatchWriter;
+import org.keycloak.events.jpa.JpaEventStoreProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.testsuite.rule.KeycloakRule;
+
+import java.util.Collections;
+
+public class JpaEventBatchWriterTest {
+
+    @ClassRule
+    public static KeycloakRule kc = new KeycloakRule();
+
+    private KeycloakSession session;
+
+    private JpaEventBatchWriter writer;
+
+    @Before
+    public void before() {
+        session = kc.startSession();
+        Assume.assumeTrue(session.getProvider(EventStoreProvider.class) instanceof JpaEventStoreProvider);
+    }
+
+    @After
+    public void after() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+        EventStoreProvider eventStore = session.getProvider(EventStoreProvider.class);
+        eventStore.clear();
+        eventStore.clearAdmin();
+        kc.stopSession(session, true);
+    }
+
+    @Test
+    public void writeBatches() {
+        writer = createWriter(100, 10, JpaEventBatchWriter.QueueFullPolicy.BLOCK);
+        writer.start();
+        EventStoreProvider eventStore = createEventStore(writer);
+
+        for (int i = 0; i < 25; i++) {
+            eventStore.onEvent(createEvent("user-" + i));
+        }
+        eventStore.onEvent(createAdminEvent(), true);
+
+        // Events are queued once the transaction is committed
+        resetSession();
+
+        writer.shutdown();
+        writer = null;
+
+        EventStoreProvider store = session.getProvider(EventStoreProvider.class);
+        Assert.assertEquals(25, store.createQuery().realm("realmId").getResultList().size());
+        Assert.assertEquals("value", store.createQuery().user("user-7").getResultList().get(0).getDetails().get("key"));
+        Assert.assertEquals(1, store.createAdminQuery().realm("realmId").getResultList().size());
+        Assert.assertEquals("{}", store.createAdminQuery().realm("realmId").getResultList().get(0).getRepresentation());
+    }
+
+    @Test
+    public void dropWhenQueueFull() {
+        // Writer is not started so events stay in the queue
+        writer = createWriter(1, 1, JpaEventBatchWriter.QueueFullPolicy.DROP);
+
+        Assert.assertTrue(writer.offer(new Object()));
+        Assert.assertTrue(writer.offer(new Object()));
+        Assert.assertEquals(1, writer.getDropped());
+        Assert.assertEquals(0, writer.getDelayed());
+        Assert.assertEquals(1, writer.getQueueSize());
+        writer = null;
+    }
+
+    @Test
+    public void syncWhenQueueFull() {
+        // Writer is not started so events stay in the queue
+        writer = createWriter(1, 1, JpaEventBatchWriter.QueueFullPolicy.SYNC);
+        EventStoreProvider eventStore = createEventStore(writer);
+
+        eventStore.onEvent(createEvent("user-1"));
+        eventStore.onEvent(createEvent("user-2"));
+        resetSession();
+        Assert.assertEquals(1, writer.getDelayed());
+
+        // Second event is written in a separate transaction after the commit
+        Assert.assertEquals(1, session.getProvider(EventStoreProvider.class).createQuery().user("user-2").getResultList().size());
+        writer = null;
+    }
+
+    @Test
+    public void dropOnRollback() {
+        // Writer is not started so events stay in the queue
+        writer = createWriter(10, 10, JpaEventBatchWriter.QueueFullPolicy.BLOCK);
+        EventStoreProvider eventStore = createEventStore(writer);
+
+        eventStore.onEvent(createEvent("user-1"));
+        eventStore.onEvent(createAdminEvent(), true);
+
+        kc.stopSession(session, false);
+        session = kc.startSession();
+        Assert.assertEquals(0, writer.getQueueSize());
+
+        eventStore = createEventStore(writer);
+        eventStore.onEvent(createEvent("user-2"));
+        resetSession();
+        Assert.assertEquals(1, writer.getQueueSize());
+        writer = null;
+    }
+
+    private JpaEventBatchWriter createWriter(int queueSize, int flushSize, JpaEventBatchWriter.QueueFullPolicy policy) {
+        return new JpaEventBatchWriter(session.getKeycloakSessionFactory(), null, queueSize, flushSize, 100, policy);
+    }
+
+    private EventStoreProvider createEventStore(JpaEventBatchWriter writer) {
+        return new JpaEventStoreProvider(session, session.getProvider(JpaConnectionProvider.class).getEntityManager(), writer);
+    }
+
+    private Event createEvent(String userId) {
+        Event e = new Event();
+        e.setTime(System.currentTimeMillis());
+        e.setType(EventType.LOGIN);
+        e.setRealmId("realmId");
+        e.setClientId("clientId");
+        e.setUserId(userId);
+        e.setIpAddress("127.0.0.1");
+        e.setDetails(Collections.singletonMap("key", "value"));
+        return e;
+    }
+
+    private AdminEvent createAdminEvent() {
+        AuthDetails authDetails = new AuthDetails();
+        authDetails.setRealmId("realmId");
+        authDetails.setClientId("clientId");
+        authDetails.setUserId("userId");
+        authDetails.setIpAddress("127.0.0.1");
+
+        AdminEvent e = new AdminEvent();
+        e.setTime(System.currentTimeMillis());
+        e.setRealmId("realmId");
+        e.setAuthDetails(authDetails);
+        e.setOperationType(OperationType.CREATE);
+        e.setResourcePath("users/1");
+        e.setRepresentation("{}");
+        return e;
+    }
+
+    private void resetSession() {
+        kc.stopSession(session, true);
+        session = kc.startSession();
+    }
+
+}
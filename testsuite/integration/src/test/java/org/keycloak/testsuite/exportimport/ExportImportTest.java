@@ -24,6 +24,7 @@ import org.junit.rules.ExternalResource;
 import org.junit.rules.RuleChain;
 import org.junit.rules.TestRule;
 import org.keycloak.exportimport.ExportImportConfig;
+import org.keycloak.exportimport.UsersExportStrategy;
 import org.keycloak.exportimport.dir.DirExportProvider;
 import org.keycloak.exportimport.dir.DirExportProviderFactory;
 import org.keycloak.exportimport.singlefile.SingleFileExportProviderFactory;
@@ -165,6 +166,40 @@ public class ExportImportTest {
         Assert.assertEquals(4, files.length);
     }
 
+    @Test
+    public void testDirRealmExportImportParallel() throws Throwable {
+        ExportImportConfig.setProvider(DirExportProviderFactory.PROVIDER_ID);
+        String targetDirPath = getExportImportTestDirectory() + File.separator + "dirRealmExportParallel";
+        DirExportProvider.recursiveDeleteDir(new File(targetDirPath));
+        ExportImportConfig.setDir(targetDirPath);
+        ExportImportConfig.setUsersPerFile(3);
+        ExportImportConfig.setUsersPerTransaction(1);
+        ExportImportConfig.setThreads(4);
+
+        testRealmExportImport();
+
+        // There should be 4 files in target directory (1 realm, 3 user)
+        File[] files = new File(targetDirPath).listFiles();
+        Assert.assertEquals(4, files.length);
+    }
+
+    @Test
+    public void testDirRealmFileExportImport() throws Throwable {
+        ExportImportConfig.setProvider(DirExportProviderFactory.PROVIDER_ID);
+        String targetDirPath = getExportImportTestDirectory() + File.separator + "dirRealmFileExport";
+        DirExportProvider.recursiveDeleteDir(new File(targetDirPath));
+        ExportImportConfig.setDir(targetDirPath);
+        ExportImportConfig.setUsersExportStrategy(UsersExportStrategy.REALM_FILE);
+        ExportImportConfig.setUsersPerTransaction(2);
+        ExportImportConfig.setThreads(2);
+
+        testRealmExportImport();
+
+        // Users are streamed into the realm file
+        File[] files = new File(targetDirPath).listFiles();
+        Assert.assertEquals(1, files.length);
+    }
+
     @Test
     public void testSingleFileFullExportImport() throws Throwable {
         ExportImportConfig.setProvider(SingleFileExportProviderFactory.PROVIDER_ID);
@@ -45,8 +45,11 @@ import org.keycloak.testsuite.rule.KeycloakRule;
 import org.keycloak.testsuite.rule.LDAPRule;
 import org.keycloak.common.util.Time;
 
+import java.util.List;
 import java.util.Map;
 
+import javax.persistence.PersistenceException;
+
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
@@ -358,6 +361,146 @@ public class LDAPSyncTest {
         }
     }
 
+    @Test
+    public void test05BatchedParallelSync() {
+        LDAPObject duplicatedLdapUser;
+
+        KeycloakSession session = keycloakRule.startSession();
+        try {
+            RealmModel testRealm = session.realms().getRealm("test");
+
+            // Remove all users from model
+            for (UserModel user : session.userStorage().getUsers(testRealm, true)) {
+                session.userStorage().removeUser(testRealm, user);
+            }
+
+            // Add user to LDAP with duplicated email of local user. It will fail the transaction of its batch
+            FederationTestUtils.addLocalUser(session, testRealm, "user9", "user9@email.org", "password");
+            LDAPFederationProvider ldapFedProvider = FederationTestUtils.getLdapProvider(session, ldapModel);
+            duplicatedLdapUser = FederationTestUtils.addLDAPUser(ldapFedProvider, testRealm, "user9-something", "User9FN", "User9LN", "user9@email.org", null, "129");
+
+            UserFederationProviderModel providerModel = KeycloakModelUtils.findUserFederationProviderByDisplayName(ldapModel.getDisplayName(), testRealm);
+            providerModel.getConfig().put(LDAPConstants.USERS_PER_TRANSACTION_FOR_SYNC, "3");
+            providerModel.getConfig().put(LDAPConstants.SYNC_THREADS, "2");
+
+            // Need to change this due to ApacheDS pagination bug (For other LDAP servers, pagination works fine) TODO: Remove once ApacheDS upgraded and pagination is fixed
+            providerModel.getConfig().put(LDAPConstants.BATCH_SIZE_FOR_SYNC, "4");
+            testRealm.updateUserFederationProvider(providerModel);
+        } finally {
+            keycloakRule.stopSession(session, true);
+        }
+
+        // Users of the failed batch are imported one by one. Just the user with duplicated email failed
+        session = keycloakRule.startSession();
+        try {
+            RealmModel testRealm = session.realms().getRealm("test");
+            UserFederationProviderModel providerModel = KeycloakModelUtils.findUserFederationProviderByDisplayName(ldapModel.getDisplayName(), testRealm);
+
+            KeycloakSessionFactory sessionFactory = session.getKeycloakSessionFactory();
+            UserFederationSyncResult syncResult = new UsersSyncManager().syncAllUsers(sessionFactory, "test", providerModel);
+            Assert.assertEquals(1, syncResult.getFailed());
+            Assert.assertTrue(syncResult.getAdded() >= 6);
+        } finally {
+            keycloakRule.stopSession(session, false);
+        }
+
+        session = keycloakRule.startSession();
+        try {
+            RealmModel testRealm = session.realms().getRealm("test");
+            UserProvider userProvider = session.userStorage();
+
+            FederationTestUtils.assertUserImported(userProvider, testRealm, "user1", "User1FN", "User1LN", "user1@email.org", "121");
+            FederationTestUtils.assertUserImported(userProvider, testRealm, "user2", "User2FN", "User2LN", "user2@email.org", "122");
+            FederationTestUtils.assertUserImported(userProvider, testRealm, "user3", "User3FN", "User3LN", "user3@email.org", "123");
+            FederationTestUtils.assertUserImported(userProvider, testRealm, "user4", "User4FN", "User4LN", "user4@email.org", "124");
+            FederationTestUtils.assertUserImported(userProvider, testRealm, "user6", "User6FN", "User6LN", "user6@email.org", "126");
+            Assert.assertNull(userProvider.getUserByUsername("user9-something", testRealm));
+
+            // Revert config changes
+            LDAPFederationProvider ldapFedProvider = FederationTestUtils.getLdapProvider(session, ldapModel);
+            ldapFedProvider.getLdapIdentityStore().remove(duplicatedLdapUser);
+
+            UserFederationProviderModel providerModel = KeycloakModelUtils.findUserFederationProviderByDisplayName(ldapModel.getDisplayName(), testRealm);
+            providerModel.getConfig().remove(LDAPConstants.USERS_PER_TRANSACTION_FOR_SYNC);
+            providerModel.getConfig().remove(LDAPConstants.SYNC_THREADS);
+            testRealm.updateUserFederationProvider(providerModel);
+        } finally {
+            keycloakRule.stopSession(session, true);
+        }
+    }
+
+    @Test
+    public void test06BatchFallbackOnPersistenceFailure() {
+        KeycloakSession session = keycloakRule.startSession();
+        try {
+            RealmModel testRealm = session.realms().getRealm("test");
+
+            // Remove all users from model
+            for (UserModel user : session.userStorage().getUsers(testRealm, true)) {
+                session.userStorage().removeUser(testRealm, user);
+            }
+
+            UserFederationProviderModel providerModel = KeycloakModelUtils.findUserFederationProviderByDisplayName(ldapModel.getDisplayName(), testRealm);
+            providerModel.getConfig().put(LDAPConstants.USERS_PER_TRANSACTION_FOR_SYNC, "10");
+            testRealm.updateUserFederationProvider(providerModel);
+        } finally {
+            keycloakRule.stopSession(session, true);
+        }
+
+        // Import of user2 fails with an exception, which is not ModelException. Just user2 fails, other users of its batch are imported
+        LDAPFederationProviderFactory factory = new LDAPFederationProviderFactory() {
+
+            @Override
+            public LDAPFederationProvider getInstance(KeycloakSession session, UserFederationProviderModel model) {
+                LDAPFederationProvider provider = super.getInstance(session, model);
+                return new LDAPFederationProvider(this, session, model, provider.getLdapIdentityStore()) {
+
+                    @Override
+                    protected UserModel importUserFromLDAP(KeycloakSession session, RealmModel realm, LDAPObject ldapUser, List<UserFederationMapperModel> sortedMappers) {
+                        UserModel imported = super.importUserFromLDAP(session, realm, ldapUser, sortedMappers);
+                        if (imported.getUsername().equals("user2")) {
+                            throw new PersistenceException("Failed to flush user2");
+                        }
+                        return imported;
+                    }
+
+                };
+            }
+
+        };
+        factory.init(null);
+
+        session = keycloakRule.startSession();
+        try {
+            RealmModel testRealm = session.realms().getRealm("test");
+            UserFederationProviderModel providerModel = KeycloakModelUtils.findUserFederationProviderByDisplayName(ldapModel.getDisplayName(), testRealm);
+
+            UserFederationSyncResult syncResult = factory.syncAllUsers(session.getKeycloakSessionFactory(), "test", providerModel);
+            Assert.assertEquals(1, syncResult.getFailed());
+            Assert.assertTrue(syncResult.getAdded() >= 4);
+        } finally {
+            keycloakRule.stopSession(session, false);
+            factory.close();
+        }
+
+        session = keycloakRule.startSession();
+        try {
+            RealmModel testRealm = session.realms().getRealm("test");
+            UserProvider userProvider = session.userStorage();
+
+            FederationTestUtils.assertUserImported(userProvider, testRealm, "user1", "User1FN", "User1LN", "user1@email.org", "121");
+            FederationTestUtils.assertUserImported(userProvider, testRealm, "user3", "User3FN", "User3LN", "user3@email.org", "123");
+            Assert.assertNull(userProvider.getUserByUsername("user2", testRealm));
+
+            // Revert config changes
+            UserFederationProviderModel providerModel = KeycloakModelUtils.findUserFederationProviderByDisplayName(ldapModel.getDisplayName(), testRealm);
+            providerModel.getConfig().remove(LDAPConstants.USERS_PER_TRANSACTION_FOR_SYNC);
+            testRealm.updateUserFederationProvider(providerModel);
+        } finally {
+            keycloakRule.stopSession(session, true);
+        }
+    }
+
     private void sleep(int time) {
         try {
             Thread.sleep(time);
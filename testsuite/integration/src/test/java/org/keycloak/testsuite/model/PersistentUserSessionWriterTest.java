@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.testsuite.model;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.jpa.session.JpaUserSessionPersisterProvider;
+import org.keycloak.models.jpa.session.PersistentUserSessionWriter;
+import org.keycloak.models.session.UserSessionPersisterProvider;
+import org.keycloak.services.managers.UserManager;
+import org.keycloak.testsuite.rule.KeycloakRule;
+
+public class PersistentUserSessionWriterTest {
+
+    @ClassRule
+    public static KeycloakRule kc = new KeycloakRule();
+
+    private KeycloakSession session;
+    private RealmModel realm;
+
+    // Not started, so updates stay pending until flushed by the test
+    private PersistentUserSessionWriter writer;
+
+    @Before
+    public void before() {
+        session = kc.startSession();
+        Assume.assumeTrue(session.getProvider(UserSessionPersisterProvider.class) instanceof JpaUserSessionPersisterProvider);
+        realm = session.realms().getRealm("test");
+        session.users().addUser(realm, "user1");
+        writer = new PersistentUserSessionWriter(session.getKeycloakSessionFactory(), null, 10, 1000);
+    }
+
+    @After
+    public void after() {
+        resetSession();
+        session.sessions().removeUserSessions(realm);
+        UserModel user1 = session.users().getUserByUsername("user1", realm);
+        if (user1 != null) {
+            new UserManager(session).removeUser(realm, user1);
+        }
+        kc.stopSession(session, true);
+    }
+
+    @Test
+    public void coalesceUpdates() {
+        String id = createPersistedSession();
+        int refresh = getLastSessionRefresh(session.getProvider(UserSessionPersisterProvider.class), id);
+
+        UserSessionPersisterProvider persister = createPersister();
+        updateLastSessionRefresh(persister, id, refresh + 10);
+        updateLastSessionRefresh(persister, id, refresh + 20);
+        Assert.assertEquals(0, writer.getPendingCount());
+
+        // Updates are handed to the writer once the transaction is committed
+        resetSession();
+        Assert.assertEquals(1, writer.getPendingCount());
+        Assert.assertEquals(1, writer.getReceived());
+
+        updateLastSessionRefresh(createPersister(), id, refresh + 30);
+        resetSession();
+        Assert.assertEquals(1, writer.getPendingCount());
+        Assert.assertEquals(2, writer.getReceived());
+
+        // Pending update is newer than the database state
+        Assert.assertEquals(refresh + 30, getLastSessionRefresh(createPersister(), id));
+        Assert.assertEquals(refresh, getLastSessionRefresh(session.getProvider(UserSessionPersisterProvider.class), id));
+    }
+
+    @Test
+    public void flushOnCommit() {
+        String id = createPersistedSession();
+        int refresh = getLastSessionRefresh(session.getProvider(UserSessionPersisterProvider.class), id);
+
+        updateLastSessionRefresh(createPersister(), id, refresh + 10);
+        resetSession();
+
+        writer.flush();
+        Assert.assertEquals(0, writer.getPendingCount());
+        Assert.assertEquals(1, writer.getWritten());
+        Assert.assertEquals(0, writer.getFailed());
+        Assert.assertEquals(refresh + 10, getLastSessionRefresh(session.getProvider(UserSessionPersisterProvider.class), id));
+    }
+
+    @Test
+    public void dropOnRollback() {
+        String id = createPersistedSession();
+        int refresh = getLastSessionRefresh(session.getProvider(UserSessionPersisterProvider.class), id);
+
+        updateLastSessionRefresh(createPersister(), id, refresh + 10);
+        rollbackSession();
+        Assert.assertEquals(0, writer.getPendingCount());
+
+        updateLastSessionRefresh(createPersister(), id, refresh + 20);
+        resetSession();
+        Assert.assertEquals(1, writer.getPendingCount());
+
+        // Removal rolled back keeps the update queued by the previous transaction
+        createPersister().removeUserSession(id, true);
+        Assert.assertEquals(1, writer.getPendingCount());
+        rollbackSession();
+        Assert.assertEquals(1, writer.getPendingCount());
+        Assert.assertEquals(refresh + 20, getLastSessionRefresh(createPersister(), id));
+
+        // Committed removal discards it
+        createPersister().removeUserSession(id, true);
+        resetSession();
+        Assert.assertEquals(0, writer.getPendingCount());
+        Assert.assertNull(createPersister().loadUserSession(realm, id, true));
+    }
+
+    private String createPersistedSession() {
+        UserSessionModel userSession = session.sessions().createUserSession(realm, session.users().getUserByUsername("user1", realm), "user1", "127.0.0.1", "form", true, null, null);
+        ClientSessionModel clientSession = session.sessions().createClientSession(realm, realm.getClientByClientId("test-app"));
+        clientSession.setUserSession(userSession);
+
+        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+        persister.createUserSession(userSession, true);
+        persister.createClientSession(clientSession, true);
+        resetSession();
+        return userSession.getId();
+    }
+
+    private UserSessionPersisterProvider createPersister() {
+        return new JpaUserSessionPersisterProvider(session, session.getProvider(JpaConnectionProvider.class).getEntityManager(), writer);
+    }
+
+    private void updateLastSessionRefresh(UserSessionPersisterProvider persister, String id, int lastSessionRefresh) {
+        UserSessionModel userSession = persister.loadUserSession(realm, id, true);
+        userSession.setLastSessionRefresh(lastSessionRefresh);
+        persister.updateUserSession(userSession, true);
+    }
+
+    private int getLastSessionRefresh(UserSessionPersisterProvider persister, String id) {
+        return persister.loadUserSession(realm, id, true).getLastSessionRefresh();
+    }
+
+    private void resetSession() {
+        kc.stopSession(session, true);
+        session = kc.startSession();
+        realm = session.realms().getRealm("test");
+    }
+
+    private void rollbackSession() {
+        kc.stopSession(session, false);
+        session = kc.startSession();
+        realm = session.realms().getRealm("test");
+    }
+
+}
@@ -222,6 +222,45 @@ public class UserModelTest extends AbstractModelTest {
         Assert.assertTrue(users.contains(user1));
     }
 
+    @Test
+    public void testSearchByPrefix() {
+        RealmModel realm = realmManager.createRealm("original");
+        for (int i = 0; i < 5; i++) {
+            UserModel user = session.users().addUser(realm, "user" + i);
+            user.setEmail("mail" + i + "@localhost");
+            user.setFirstName("John");
+            user.setLastName("Doe" + i);
+        }
+        UserModel other = session.users().addUser(realm, "other");
+        other.setFirstName("Jane");
+        other.setLastName("Smith");
+
+        commit();
+
+        realm = realmManager.getRealmByName("original");
+        assertUsernames(session.users().searchForUserByPrefix("USER", realm, null, -1), "user0", "user1", "user2", "user3", "user4");
+        assertUsernames(session.users().searchForUserByPrefix("mail3", realm, null, -1), "user3");
+        assertUsernames(session.users().searchForUserByPrefix("jan", realm, null, -1), "other");
+        assertUsernames(session.users().searchForUserByPrefix("smi", realm, null, -1), "other");
+        assertUsernames(session.users().searchForUserByPrefix("john doe2", realm, null, -1), "user2");
+        assertUsernames(session.users().searchForUserByPrefix("ser", realm, null, -1));
+        assertUsernames(session.users().searchForUserByPrefix(null, realm, null, -1), "other", "user0", "user1", "user2", "user3", "user4");
+
+        // Page through results using the last username as cursor
+        assertUsernames(session.users().searchForUserByPrefix("john", realm, null, 2), "user0", "user1");
+        assertUsernames(session.users().searchForUserByPrefix("john", realm, "user1", 2), "user2", "user3");
+        assertUsernames(session.users().searchForUserByPrefix("john", realm, "user3", 2), "user4");
+        assertUsernames(session.users().searchForUserByPrefix("john", realm, "user4", 2));
+    }
+
+    private static void assertUsernames(List<UserModel> users, String... expected) {
+        List<String> usernames = new ArrayList<String>();
+        for (UserModel user : users) {
+            usernames.add(user.getUsername());
+        }
+        Assert.assertEquals(Arrays.asList(expected), usernames);
+    }
+
     @Test
     public void testSearchByUserAttribute() throws Exception {
         RealmModel realm = realmManager.createRealm("original");
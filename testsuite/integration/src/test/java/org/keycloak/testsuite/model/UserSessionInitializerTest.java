@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.infinispan.Cache;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -36,6 +37,14 @@ import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.UserSessionProvider;
 import org.keycloak.models.UserSessionProviderFactory;
+import org.keycloak.models.session.UserSessionPersisterProvider;
+import org.keycloak.models.sessions.infinispan.InfinispanUserSessionProvider;
+import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
+import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexKey;
+import org.keycloak.models.sessions.infinispan.initializer.OfflineUserSessionLoader;
 import org.keycloak.protocol.oidc.OIDCLoginProtocol;
 import org.keycloak.services.managers.UserManager;
 import org.keycloak.services.managers.UserSessionManager;
@@ -128,6 +137,113 @@ public class UserSessionInitializerTest {
         UserSessionPersisterProviderTest.assertSessionLoaded(loadedSessions, origSessions[2].getId(), session.users().getUserByUsername("user2", realm), "127.0.0.3", started, serverStartTime, "test-app");
     }
 
+    @Test
+    public void testOfflineSessionsOfUserLoadedOnDemand() {
+        UserSessionModel[] origSessions = createSessions();
+
+        resetSession();
+
+        for (UserSessionModel origSession : origSessions) {
+            UserSessionModel userSession = session.sessions().getUserSession(realm, origSession.getId());
+            for (ClientSessionModel clientSession : userSession.getClientSessions()) {
+                sessionManager.createOrUpdateOfflineSession(clientSession, userSession);
+            }
+        }
+
+        resetSession();
+
+        // Delete cache (persisted sessions are still kept)
+        session.sessions().onRealmRemoved(realm);
+
+        resetSession();
+
+        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+        UserSessionModel persistentSession = persister.loadUserSession(realm, origSessions[1].getId(), true);
+
+        // Offline sessions of the user are loaded, even if they are not loaded from persister yet
+        UserModel user1 = session.users().getUserByUsername("user1", realm);
+        InfinispanUserSessionProvider provider = createLoadingProvider();
+        List<ClientSessionModel> clientSessions = provider.getOfflineClientSessions(realm, user1);
+        Assert.assertEquals(3, clientSessions.size());
+
+        // Revoke the token of third-party
+        for (ClientSessionModel clientSession : clientSessions) {
+            if (clientSession.getClient().getClientId().equals("third-party")) {
+                provider.removeOfflineClientSession(realm, clientSession.getId());
+                persister.removeClientSession(clientSession.getId(), true);
+            }
+        }
+
+        resetSession();
+
+        Assert.assertEquals(2, session.sessions().getOfflineClientSessions(realm, user1).size());
+        Assert.assertEquals(0, session.sessions().getOfflineSessionsCount(realm, realm.getClientByClientId("third-party")));
+        session.sessions().getOfflineUserSession(realm, origSessions[1].getId()).setLastSessionRefresh(1000);
+
+        resetSession();
+
+        // Session loaded on demand and updated since is not overwritten by the loader
+        session.sessions().importUserSession(persistentSession, true);
+
+        resetSession();
+
+        Assert.assertEquals(1000, session.sessions().getOfflineUserSession(realm, origSessions[1].getId()).getLastSessionRefresh());
+    }
+
+    @Test
+    public void testSessionRevokedDuringLoading() {
+        UserSessionModel[] origSessions = createSessions();
+
+        resetSession();
+
+        for (UserSessionModel origSession : origSessions) {
+            UserSessionModel userSession = session.sessions().getUserSession(realm, origSession.getId());
+            for (ClientSessionModel clientSession : userSession.getClientSessions()) {
+                sessionManager.createOrUpdateOfflineSession(clientSession, userSession);
+            }
+        }
+
+        resetSession();
+
+        // Delete cache (persisted sessions are still kept)
+        session.sessions().onRealmRemoved(realm);
+
+        resetSession();
+
+        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+        String thirdPartyClientSessionId = null;
+        for (ClientSessionModel clientSession : persister.loadUserSession(realm, origSessions[0].getId(), true).getClientSessions()) {
+            if (clientSession.getClient().getClientId().equals("third-party")) {
+                thirdPartyClientSessionId = clientSession.getId();
+            }
+        }
+
+        String from = persister.loadUserSessionIdBoundaries(100, true).get(0);
+        new OfflineUserSessionLoader().loadSessions(session, from, null);
+
+        // Revoked after the segment was read from persister, but before the imported sessions are in the cache
+        persister.removeUserSession(origSessions[1].getId(), true);
+        persister.removeClientSession(thirdPartyClientSessionId, true);
+
+        resetSession();
+
+        Assert.assertNull(session.sessions().getOfflineUserSession(realm, origSessions[1].getId()));
+        Assert.assertNull(session.sessions().getOfflineClientSession(realm, thirdPartyClientSessionId));
+        Assert.assertNotNull(session.sessions().getOfflineUserSession(realm, origSessions[0].getId()));
+        Assert.assertEquals(2, session.sessions().getOfflineSessionsCount(realm, realm.getClientByClientId("test-app")));
+        Assert.assertEquals(0, session.sessions().getOfflineSessionsCount(realm, realm.getClientByClientId("third-party")));
+    }
+
+    private InfinispanUserSessionProvider createLoadingProvider() {
+        InfinispanConnectionProvider infinispan = session.getProvider(InfinispanConnectionProvider.class);
+        Cache<String, SessionEntity> cache = infinispan.getCache(InfinispanConnectionProvider.SESSION_CACHE_NAME);
+        Cache<String, SessionEntity> offlineCache = infinispan.getCache(InfinispanConnectionProvider.OFFLINE_SESSION_CACHE_NAME);
+        Cache<LoginFailureKey, LoginFailureEntity> loginFailures = infinispan.getCache(InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME);
+        Cache<SessionIndexKey, SessionIndexEntity> indexCache = infinispan.getCache(InfinispanConnectionProvider.SESSION_INDEX_CACHE_NAME);
+        Cache<SessionIndexKey, SessionIndexEntity> offlineIndexCache = infinispan.getCache(InfinispanConnectionProvider.OFFLINE_SESSION_INDEX_CACHE_NAME);
+        return new InfinispanUserSessionProvider(session, cache, offlineCache, loginFailures, indexCache, offlineIndexCache, true);
+    }
+
     private ClientSessionModel createClientSession(ClientModel client, UserSessionModel userSession, String redirect, String state, Set<String> roles, Set<String> protocolMappers) {
         ClientSessionModel clientSession = session.sessions().createClientSession(realm, client);
         if (userSession != null) clientSession.setUserSession(userSession);
@@ -356,6 +356,52 @@ public class UserSessionPersisterProviderTest {
         Assert.assertEquals(0, sessions.size());
     }
 
+    @Test
+    public void testLoadSegments() {
+        // Create some sessions in infinispan
+        int started = Time.currentTime();
+        UserSessionModel[] origSessions = createSessions();
+
+        resetSession();
+
+        // Persist 3 created userSessions and clientSessions as offline
+        ClientModel testApp = realm.getClientByClientId("test-app");
+        List<UserSessionModel> userSessions = session.sessions().getUserSessions(realm, testApp);
+        for (UserSessionModel userSession : userSessions) {
+            persistUserSession(userSession, true);
+        }
+
+        resetSession();
+
+        // 3 sessions split into segments with 2 sessions
+        List<String> boundaries = persister.loadUserSessionIdBoundaries(2, true);
+        Assert.assertEquals(2, boundaries.size());
+
+        List<UserSessionModel> loadedSessions = new ArrayList<>(persister.loadUserSessions(boundaries.get(0), boundaries.get(1), true));
+        Assert.assertEquals(2, loadedSessions.size());
+        Assert.assertEquals(boundaries.get(0), loadedSessions.get(0).getId());
+
+        List<UserSessionModel> lastSegment = persister.loadUserSessions(boundaries.get(1), null, true);
+        Assert.assertEquals(1, lastSegment.size());
+        Assert.assertEquals(boundaries.get(1), lastSegment.get(0).getId());
+        loadedSessions.addAll(lastSegment);
+
+        UserSessionProviderTest.assertSessions(loadedSessions, origSessions);
+        assertSessionLoaded(loadedSessions, origSessions[0].getId(), session.users().getUserByUsername("user1", realm), "127.0.0.1", started, started, "test-app", "third-party");
+
+        // Single session
+        UserSessionModel loadedSession = persister.loadUserSession(realm, origSessions[1].getId(), true);
+        UserSessionProviderTest.assertSession(loadedSession, session.users().getUserByUsername("user1", realm), "127.0.0.2", started, started, "test-app");
+        Assert.assertNull(persister.loadUserSession(realm, origSessions[1].getId(), false));
+        Assert.assertNull(persister.loadUserSession(realm, "unknown", true));
+
+        // Sessions of single user
+        List<UserSessionModel> userSessions1 = persister.loadUserSessions(realm, session.users().getUserByUsername("user1", realm), true);
+        UserSessionProviderTest.assertSessions(userSessions1, origSessions[0], origSessions[1]);
+        assertSessionLoaded(userSessions1, origSessions[0].getId(), session.users().getUserByUsername("user1", realm), "127.0.0.1", started, started, "test-app", "third-party");
+        Assert.assertTrue(persister.loadUserSessions(realm, session.users().getUserByUsername("user2", realm), false).isEmpty());
+    }
+
 
     private ClientSessionModel createClientSession(ClientModel client, UserSessionModel userSession, String redirect, String state, Set<String> roles, Set<String> protocolMappers) {
         ClientSessionModel clientSession = session.sessions().createClientSession(realm, client);
@@ -17,11 +17,13 @@
 
 package org.keycloak.testsuite.model;
 
+import org.infinispan.Cache;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.ClientSessionModel;
 import org.keycloak.models.KeycloakSession;
@@ -29,6 +31,8 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.UsernameLoginFailureModel;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionIndexKey;
 import org.keycloak.protocol.oidc.OIDCLoginProtocol;
 import org.keycloak.services.managers.UserManager;
 import org.keycloak.testsuite.rule.KeycloakRule;
@@ -469,6 +473,26 @@ public class UserSessionProviderTest {
         assertEquals(1, session.sessions().getActiveUserSessions(realm, realm.getClientByClientId("third-party")));
     }
 
+    @Test
+    public void testGetClientSessionStats() {
+        UserSessionModel[] sessions = createSessions();
+
+        Map<String, Long> stats = session.sessions().getActiveClientSessionStats(realm, false);
+        assertEquals(2, stats.size());
+        assertEquals(3, stats.get(realm.getClientByClientId("test-app").getId()).longValue());
+        assertEquals(1, stats.get(realm.getClientByClientId("third-party").getId()).longValue());
+
+        session.sessions().removeUserSession(realm, session.sessions().getUserSession(realm, sessions[0].getId()));
+        resetSession();
+
+        // Stats agree with the count of single client
+        stats = session.sessions().getActiveClientSessionStats(realm, false);
+        assertEquals(1, stats.size());
+        assertEquals(2, stats.get(realm.getClientByClientId("test-app").getId()).longValue());
+        assertEquals(session.sessions().getActiveUserSessions(realm, realm.getClientByClientId("test-app")), stats.get(realm.getClientByClientId("test-app").getId()).longValue());
+        assertTrue(session.sessions().getActiveClientSessionStats(realm, true).isEmpty());
+    }
+
     @Test
     public void loginFailures() {
         UsernameLoginFailureModel failure1 = session.sessions().addUserLoginFailure(realm, "user1");
@@ -531,6 +555,62 @@ public class UserSessionProviderTest {
         assertNotNull(session.sessions().getUserLoginFailure(realm, "user2"));
     }
 
+    @Test
+    public void testRemoveUserSessionsWithLostIndex() {
+        UserSessionModel[] sessions = createSessions();
+        String thirdPartySession = null;
+        for (ClientSessionModel c : sessions[0].getClientSessions()) {
+            if (c.getClient().getClientId().equals("third-party")) {
+                thirdPartySession = c.getId();
+            }
+        }
+        String user2Session = sessions[2].getClientSessions().get(0).getId();
+
+        clearSessionIndex();
+
+        // Logout doesn't rely on the index
+        assertSessions(session.sessions().getUserSessions(realm, session.users().getUserByUsername("user1", realm)), sessions[0], sessions[1]);
+
+        session.sessions().removeUserSessions(realm, session.users().getUserByUsername("user1", realm));
+        session.sessions().onClientRemoved(realm, realm.getClientByClientId("test-app"));
+        resetSession();
+
+        assertNull(session.sessions().getUserSession(realm, sessions[0].getId()));
+        assertNull(session.sessions().getUserSession(realm, sessions[1].getId()));
+        assertNotNull(session.sessions().getUserSession(realm, sessions[2].getId()));
+        assertNull(session.sessions().getClientSession(realm, thirdPartySession));
+        assertNull(session.sessions().getClientSession(realm, user2Session));
+    }
+
+    @Test
+    public void testIndexEntryPerClientSession() {
+        UserSessionModel[] sessions = createSessions();
+        assertEquals(4, getSessionIndexSize());
+
+        session.sessions().removeUserSession(realm, session.sessions().getUserSession(realm, sessions[0].getId()));
+        resetSession();
+
+        assertEquals(2, getSessionIndexSize());
+        assertSessions(session.sessions().getUserSessions(realm, realm.getClientByClientId("test-app")), sessions[1], sessions[2]);
+        assertEquals(0, session.sessions().getActiveUserSessions(realm, realm.getClientByClientId("third-party")));
+    }
+
+    private int getSessionIndexSize() {
+        Cache<SessionIndexKey, SessionIndexEntity> indexCache = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.SESSION_INDEX_CACHE_NAME);
+        int size = 0;
+        for (SessionIndexKey key : indexCache.keySet()) {
+            if (key.getRealm().equals(realm.getId())) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private void clearSessionIndex() {
+        session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.SESSION_INDEX_CACHE_NAME).clear();
+        resetSession();
+    }
+
     private ClientSessionModel createClientSession(ClientModel client, UserSessionModel userSession, String redirect, String state, Set<String> roles, Set<String> protocolMappers) {
         ClientSessionModel clientSession = session.sessions().createClientSession(realm, client);
         if (userSession != null) clientSession.setUserSession(userSession);